@@ -0,0 +1,2 @@
+-- постраничный вывод всех заявок по (date, id); id входит в индекс InnoDB неявно
+ALTER TABLE request ADD KEY date (date);
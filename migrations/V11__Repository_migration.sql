@@ -0,0 +1,18 @@
+-- очередь записей, требующих внимания модератора: 0 - незаполненная версия, 1 - файл без категории
+CREATE TABLE attentionQueue (
+  kind tinyint(4) NOT NULL,
+  itemId int(11) NOT NULL,
+  PRIMARY KEY (kind, itemId)
+) DEFAULT CHARSET=utf8;
+
+-- количество записей очереди по видам; изменяется в той же транзакции, что и очередь
+CREATE TABLE attentionCounter (
+  kind tinyint(4) NOT NULL,
+  count int(11) NOT NULL DEFAULT 0,
+  PRIMARY KEY (kind)
+) DEFAULT CHARSET=utf8;
+
+INSERT INTO attentionQueue (kind, itemId) SELECT 0, id FROM fileVersion WHERE isFilled = 0;
+INSERT INTO attentionQueue (kind, itemId) SELECT 1, file.id FROM file LEFT JOIN fileCategory ON fileCategory.fileId = file.id WHERE fileCategory.id IS NULL;
+INSERT INTO attentionCounter (kind, count) SELECT 0, count(*) FROM attentionQueue WHERE kind = 0;
+INSERT INTO attentionCounter (kind, count) SELECT 1, count(*) FROM attentionQueue WHERE kind = 1;
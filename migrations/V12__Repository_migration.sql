@@ -0,0 +1,10 @@
+-- свойства, извлеченные из содержимого файла; extractorVersion - версия разборщика, которым они получены
+CREATE TABLE metadataCache (
+  hash varchar(64) NOT NULL,
+  hashAlgorithm varchar(10) NOT NULL,
+  fileSize bigint(20) NOT NULL,
+  extractorVersion varchar(64) NOT NULL,
+  properties text NOT NULL,
+  date bigint(20) NOT NULL,
+  PRIMARY KEY (hash, fileSize, hashAlgorithm)
+) DEFAULT CHARSET=utf8;
@@ -0,0 +1,16 @@
+-- задания на повторное извлечение свойств загруженных версий
+-- lastVersionId - контрольная точка: версии с id не больше нее уже обработаны
+CREATE TABLE extractionJob (
+  id int(11) NOT NULL AUTO_INCREMENT,
+  userId int(11) NOT NULL,
+  status varchar(20) NOT NULL,
+  lastVersionId int(11) NOT NULL DEFAULT 0,
+  totalCount int(11) NOT NULL DEFAULT 0,
+  processedCount int(11) NOT NULL DEFAULT 0,
+  changedCount int(11) NOT NULL DEFAULT 0,
+  errorCount int(11) NOT NULL DEFAULT 0,
+  dateCreated bigint(20) NOT NULL,
+  dateUpdated bigint(20) NOT NULL,
+  PRIMARY KEY (id),
+  KEY status (status)
+) AUTO_INCREMENT=1 DEFAULT CHARSET=utf8;
@@ -0,0 +1,2 @@
+-- максимальное время выполнения команды триггера, секунд
+ALTER TABLE fileTrigger ADD COLUMN timeout int(11) NOT NULL DEFAULT 30;
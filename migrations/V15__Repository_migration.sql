@@ -0,0 +1,4 @@
+-- хэш загруженного файла считается при приеме загрузки и передается заданию
+-- пустой хэш - файл принят до этой миграции, хэш считается при обработке
+ALTER TABLE ingestJobFile ADD hash varchar(64) NOT NULL DEFAULT '' AFTER sourcePath;
+ALTER TABLE ingestJobFile ADD hashAlgorithm varchar(10) NOT NULL DEFAULT '' AFTER hash;
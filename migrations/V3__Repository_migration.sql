@@ -0,0 +1,5 @@
+ALTER TABLE fileVersion MODIFY hash varchar(64) NOT NULL;
+ALTER TABLE fileVersion ADD hashAlgorithm varchar(10) NOT NULL DEFAULT 'md5' AFTER hash;
+
+ALTER TABLE requestFile MODIFY hash varchar(64) NOT NULL;
+ALTER TABLE requestFile ADD hashAlgorithm varchar(10) NOT NULL DEFAULT 'md5' AFTER hash;
@@ -0,0 +1,26 @@
+CREATE TABLE ingestJob (
+  id int(11) NOT NULL AUTO_INCREMENT,
+  type varchar(20) NOT NULL,
+  userId int(11) NOT NULL,
+  requestId int(11) NOT NULL DEFAULT 0,
+  status varchar(20) NOT NULL,
+  fileCount int(11) NOT NULL,
+  dateCreated bigint(20) NOT NULL,
+  dateUpdated bigint(20) NOT NULL,
+  PRIMARY KEY (id),
+  KEY status (status)
+) AUTO_INCREMENT=1 DEFAULT CHARSET=utf8;
+
+CREATE TABLE ingestJobFile (
+  id int(11) NOT NULL AUTO_INCREMENT,
+  jobId int(11) NOT NULL,
+  number int(11) NOT NULL,
+  fileName varchar(255) NOT NULL,
+  sourcePath varchar(1024) NOT NULL,
+  state varchar(20) NOT NULL,
+  msg text,
+  fileVersionId int(11) NOT NULL DEFAULT 0,
+  isFilled int(1) NOT NULL DEFAULT 0,
+  PRIMARY KEY (id),
+  KEY jobId (jobId, number)
+) AUTO_INCREMENT=1 DEFAULT CHARSET=utf8;
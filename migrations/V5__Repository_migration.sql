@@ -0,0 +1,21 @@
+ALTER TABLE fileVersion ADD KEY hash (hash, fileSize);
+ALTER TABLE fileVersion ADD KEY fileId (fileId, isDisabled);
+ALTER TABLE fileVersion ADD KEY isFilled (isFilled);
+
+ALTER TABLE file ADD KEY title (title);
+
+ALTER TABLE fileVersionProperty ADD KEY fileVersionId (fileVersionId, propertyId);
+ALTER TABLE fileVersionProperty ADD KEY propertyId (propertyId);
+
+ALTER TABLE fileProperty ADD KEY fileId (fileId, propertyId);
+ALTER TABLE fileProperty ADD KEY propertyId (propertyId);
+
+ALTER TABLE fileCategory ADD KEY fileId (fileId, categoryId);
+ALTER TABLE fileCategory ADD KEY categoryId (categoryId, fileId);
+
+ALTER TABLE requestFile ADD KEY requestId (requestId);
+ALTER TABLE requestFile ADD KEY hash (hash, fileSize);
+
+ALTER TABLE request ADD KEY userId (userId, date);
+
+ALTER TABLE fileTrigger ADD KEY extension (extension);
@@ -0,0 +1,14 @@
+ALTER TABLE fileVersion ADD versionKey char(50) NOT NULL DEFAULT '' AFTER version;
+
+-- ключ для версий только из цифр и точек; остальные версии заполняет приложение при старте
+UPDATE fileVersion SET versionKey = CONCAT(
+    LPAD(SUBSTRING_INDEX(SUBSTRING_INDEX(CONCAT(version, '.0.0.0.0'), '.', 1), '.', -1), 10, '0'),
+    LPAD(SUBSTRING_INDEX(SUBSTRING_INDEX(CONCAT(version, '.0.0.0.0'), '.', 2), '.', -1), 10, '0'),
+    LPAD(SUBSTRING_INDEX(SUBSTRING_INDEX(CONCAT(version, '.0.0.0.0'), '.', 3), '.', -1), 10, '0'),
+    LPAD(SUBSTRING_INDEX(SUBSTRING_INDEX(CONCAT(version, '.0.0.0.0'), '.', 4), '.', -1), 10, '0'),
+    LPAD(SUBSTRING_INDEX(SUBSTRING_INDEX(CONCAT(version, '.0.0.0.0'), '.', 5), '.', -1), 10, '0')
+) WHERE version REGEXP '^[0-9]{1,10}(\\.[0-9]{1,10}){0,4}$';
+
+ALTER TABLE fileVersion DROP KEY fileId;
+ALTER TABLE fileVersion ADD KEY fileId (fileId, isDisabled, versionKey);
+ALTER TABLE fileVersion ADD KEY fileIdVersionKey (fileId, versionKey);
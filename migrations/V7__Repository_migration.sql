@@ -0,0 +1,6 @@
+ALTER TABLE file ADD latestVersionId int(11) NOT NULL DEFAULT 0;
+ALTER TABLE file ADD latestEnabledVersionId int(11) NOT NULL DEFAULT 0;
+
+UPDATE file SET
+  latestVersionId = COALESCE((SELECT id FROM fileVersion WHERE fileVersion.fileId = file.id ORDER BY versionKey DESC, id DESC LIMIT 1), 0),
+  latestEnabledVersionId = COALESCE((SELECT id FROM fileVersion WHERE fileVersion.fileId = file.id AND isDisabled = 0 ORDER BY versionKey DESC, id DESC LIMIT 1), 0);
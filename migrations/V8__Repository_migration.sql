@@ -0,0 +1,11 @@
+CREATE TABLE categoryClosure (
+  ancestorId int(11) NOT NULL,
+  descendantId int(11) NOT NULL,
+  depth int(11) NOT NULL,
+  PRIMARY KEY (ancestorId, descendantId),
+  KEY descendantId (descendantId)
+) DEFAULT CHARSET=utf8;
+
+-- сама категория и ее прямые потомки; полностью таблица заполняется приложением при старте
+INSERT INTO categoryClosure (ancestorId, descendantId, depth) SELECT id, id, 0 FROM category;
+INSERT INTO categoryClosure (ancestorId, descendantId, depth) SELECT parent, id, 1 FROM category WHERE parent > 0 AND parent <> id;
@@ -0,0 +1,2 @@
+-- позиции категорий с промежутками, чтобы перемещение не требовало перенумерации соседей
+UPDATE category SET position = (position + 1) * 1024;
@@ -1,6 +1,7 @@
 package config;
 
 import exceptions.InternalException;
+import helpers.hash.HashAlgorithm;
 import models.SettingsModel;
 
 import java.io.File;
@@ -22,6 +23,21 @@ public class Settings {
     private static final String dbUser = "db.user";
     private static final String dbPass = "db.password";
     private static final String dbPoolSize = "db.poolSize";
+    // настройки пула соединений; необязательные, при отсутствии берутся значения по умолчанию из applicationContext.xml
+    public static final String dbMaxTotal = "db.maxTotal";
+    public static final String dbMaxIdle = "db.maxIdle";
+    public static final String dbMinIdle = "db.minIdle";
+    public static final String dbMaxWaitMillis = "db.maxWaitMillis";
+    public static final String dbValidationQuery = "db.validationQuery";
+    public static final String dbValidationQueryTimeout = "db.validationQueryTimeout";
+    public static final String dbEvictionRunsMillis = "db.timeBetweenEvictionRunsMillis";
+    public static final String dbMinEvictableIdleMillis = "db.minEvictableIdleTimeMillis";
+    public static final String dbRemoveAbandonedTimeout = "db.removeAbandonedTimeout";
+    public static final String dbMaxOpenPreparedStatements = "db.maxOpenPreparedStatements";
+    private static final String[] dbPoolProperties = {
+            dbMaxTotal, dbMaxIdle, dbMinIdle, dbMaxWaitMillis, dbValidationQuery, dbValidationQueryTimeout,
+            dbEvictionRunsMillis, dbMinEvictableIdleMillis, dbRemoveAbandonedTimeout, dbMaxOpenPreparedStatements
+    };
 
     private static final String ldapUrl = "ldap.url";
     private static final String ldapManagerDN = "ldap.manager-dn";
@@ -42,6 +58,8 @@ public class Settings {
     private static final String logSyslogHost = "log4j.appender.SYSLOG.syslogHost";
     private static final String logSyslogCategory = "log4j.appender.SYSLOG.facility";
 
+    private static volatile HashAlgorithm hashAlgorithm;
+
     public static String getUploadPath() {
         SettingsModel filePath = SettingsModel.findById(SettingsModel.UPLOAD_PATH);
         if (filePath != null) {
@@ -60,6 +78,29 @@ public class Settings {
         }
     }
 
+    /**
+     * Алгоритм хэширования новых файлов
+     * Если настройка не задана, используется MD5. Значение кэшируется до сохранения настройки (resetHashAlgorithm).
+     * Дубликаты ищутся по хэшу текущего алгоритма, поэтому после смены алгоритма файл, загруженный раньше
+     * под старым алгоритмом, не определяется как дубликат и сохраняется еще раз
+     */
+    public static HashAlgorithm getHashAlgorithm() {
+        HashAlgorithm algorithm = hashAlgorithm;
+        if (algorithm == null) {
+            SettingsModel setting = SettingsModel.findById(SettingsModel.HASH_ALGORITHM);
+            algorithm = setting != null ? HashAlgorithm.fromTitle(setting.getValue()) : HashAlgorithm.MD5;
+            hashAlgorithm = algorithm;
+        }
+        return algorithm;
+    }
+
+    /**
+     * Сброс кэша алгоритма хэширования после сохранения настройки
+     */
+    public static void resetHashAlgorithm() {
+        hashAlgorithm = null;
+    }
+
     public static String getAppHome() {
         String userHome = System.getProperty("user.home");
         String appHome = userHome + File.separator + Settings.appDir;
@@ -234,6 +275,13 @@ public class Settings {
             if (poolSize != null) {
                 res.put(dbPoolSize, poolSize);
             }
+
+            for (String key : dbPoolProperties) {
+                String value = property.getProperty(key);
+                if (value != null) {
+                    res.put(key, value);
+                }
+            }
             return res;
         } catch (IOException e) {
             throw new InternalException("Файл "+Settings.getDbPath()+" не найден");
@@ -348,7 +396,11 @@ public class Settings {
         }
     }
 
-    public static void setDbProperties(String url, String user, String pass, Integer pool) {
+    /**
+     * Сохранение настроек БД
+     * @param poolProperties Настройки пула соединений (ключи db.*); пустое значение удаляет настройку
+     */
+    public static void setDbProperties(String url, String user, String pass, Integer pool, HashMap<String, String> poolProperties) {
         String dbFilePath = getDbPath();
 
         FileInputStream fis;
@@ -370,6 +422,17 @@ public class Settings {
             if (pool != null && pool > 0) {
                 property.setProperty(dbPoolSize, pool.toString());
             }
+            for (String key : dbPoolProperties) {
+                if (!poolProperties.containsKey(key)) {
+                    continue;
+                }
+                String value = poolProperties.get(key);
+                if (value != null && value.trim().length() > 0) {
+                    property.setProperty(key, value.trim());
+                } else {
+                    property.remove(key);
+                }
+            }
 
             FileOutputStream out = new FileOutputStream(dbFilePath);
             property.store(out, null);
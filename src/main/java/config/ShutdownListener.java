@@ -0,0 +1,23 @@
+package config;
+
+import helpers.ingest.ExtractionJobRunner;
+import helpers.ingest.IngestJobRunner;
+import helpers.ingest.IngestPool;
+import helpers.process.ProcessRunner;
+import org.springframework.context.ApplicationListener;
+import org.springframework.context.event.ContextClosedEvent;
+
+/**
+ * Листенер события остановки приложения
+ */
+public class ShutdownListener implements ApplicationListener<ContextClosedEvent> {
+    public void onApplicationEvent(ContextClosedEvent contextClosedEvent) {
+        // остановка только при закрытии корневого контекста
+        if (contextClosedEvent.getApplicationContext().getParent() == null) {
+            IngestJobRunner.shutdown();
+            ExtractionJobRunner.shutdown();
+            IngestPool.shutdown();
+            ProcessRunner.shutdown();
+        }
+    }
+}
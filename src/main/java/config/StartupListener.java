@@ -1,9 +1,17 @@
 package config;
 
+import helpers.ingest.ExtractionJobRunner;
+import helpers.ingest.IngestJobRunner;
+import models.AttentionQueueModel;
+import models.CategoryClosureModel;
+import models.FileVersionModel;
+import models.QueryPlanChecker;
 import org.apache.log4j.*;
 import org.springframework.context.ApplicationContext;
 import org.springframework.context.ApplicationListener;
 import org.springframework.context.event.ContextRefreshedEvent;
+import search.SearchIndex;
+import search.TitleIndex;
 
 import java.io.FileInputStream;
 import java.io.IOException;
@@ -26,6 +34,61 @@ public class StartupListener implements ApplicationListener<ContextRefreshedEven
             }
             LogManager.resetConfiguration();
             PropertyConfigurator.configure(props);
+
+            // возобновление заданий на добавление файлов, прерванных остановкой сервера
+            try {
+                IngestJobRunner.resume();
+            } catch (Exception e) {
+                Logger.getLogger(StartupListener.class).warn("Не удалось возобновить задания на добавление файлов: " + e.getMessage());
+            }
+
+            // повторное извлечение свойств продолжается с контрольной точки
+            try {
+                ExtractionJobRunner.resume();
+            } catch (Exception e) {
+                Logger.getLogger(StartupListener.class).warn("Не удалось возобновить задания на извлечение свойств: " + e.getMessage());
+            }
+
+            // ключи сортировки для версий, которые миграция не смогла разобрать
+            try {
+                int count = FileVersionModel.fillVersionKeys();
+                if (count > 0) {
+                    Logger.getLogger(StartupListener.class).info("Заполнены ключи сортировки версий: " + count);
+                }
+            } catch (Exception e) {
+                Logger.getLogger(StartupListener.class).warn("Не удалось заполнить ключи сортировки версий: " + e.getMessage());
+            }
+
+            // таблица замыкания дерева категорий; миграция заполняет только два уровня
+            try {
+                CategoryClosureModel.rebuild();
+            } catch (Exception e) {
+                Logger.getLogger(StartupListener.class).warn("Не удалось пересчитать дерево категорий: " + e.getMessage());
+            }
+
+            // счетчики очереди /unfilled-files ведутся приращениями; при старте сверяются с самой очередью
+            try {
+                AttentionQueueModel.recount();
+            } catch (Exception e) {
+                Logger.getLogger(StartupListener.class).warn("Не удалось пересчитать очередь незаполненных файлов: " + e.getMessage());
+            }
+
+            // запросы, которые на текущих данных читают таблицы целиком, попадают в лог
+            try {
+                QueryPlanChecker.logFullScans();
+            } catch (Exception e) {
+                Logger.getLogger(StartupListener.class).warn("Не удалось проверить планы запросов: " + e.getMessage());
+            }
+
+            // названия файлов для автодополнения
+            try {
+                TitleIndex.getInstance().load();
+            } catch (Exception e) {
+                Logger.getLogger(StartupListener.class).warn("Не удалось загрузить названия файлов: " + e.getMessage());
+            }
+
+            // поисковый индекс строится в фоне; до окончания построения поиск дождется его сам
+            SearchIndex.rebuildInBackground();
         }
     }
 }
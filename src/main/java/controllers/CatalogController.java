@@ -21,6 +21,7 @@ import java.text.SimpleDateFormat;
 import java.util.ArrayList;
 import java.util.Date;
 import java.util.HashMap;
+import java.util.Map;
 
 @Controller
 public class CatalogController {
@@ -28,6 +29,7 @@ public class CatalogController {
     public String users(
             @RequestParam(value="categoryId", required=false, defaultValue = "0") int categoryId,
             @RequestParam(value="page", required=false, defaultValue = "1") int page,
+            @RequestParam(value="withSubcategories", required=false, defaultValue = "false") boolean withSubcategories,
             Principal principal,
             Model model
     ) {
@@ -38,12 +40,26 @@ public class CatalogController {
             ArrayList<CategoryModel> trees = CategoryModel.findAll();
             model.addAttribute("trees", trees);
 
+            // количество файлов в категории вместе с подкатегориями для подписи в дереве
+            HashMap<Integer, Integer> fileCounts = new HashMap<Integer, Integer>();
+            for (Map.Entry<Integer, int[]> entry : CategoryClosureModel.getFileCounts().entrySet()) {
+                fileCounts.put(entry.getKey(), entry.getValue()[1]);
+            }
+            model.addAttribute("fileCounts", fileCounts);
+
             if (categoryId > 0) {
                 CategoryModel category = CategoryModel.findById(categoryId);
                 model.addAttribute("category", category);
+                model.addAttribute("categoryPath", CategoryTree.get().getPath(categoryId));
 
-                ArrayList<CategoryFile> categoryFiles = category.getFiles(limit, offset);
+                ArrayList<CategoryFile> categoryFiles = category.getFiles(limit, offset, withSubcategories);
                 model.addAttribute("categoryFiles", categoryFiles);
+
+                int pageCount = (int) Math.ceil((float) category.getFileCount(withSubcategories) / limit);
+                model.addAttribute("page", page);
+                model.addAttribute("pageCount", pageCount);
+                model.addAttribute("pageUrl", "catalog");
+                model.addAttribute("pageParams", "categoryId=" + categoryId + "&withSubcategories=" + withSubcategories + "&");
             }
 
             CustomUserDetails activeUser = (CustomUserDetails) ((Authentication) principal).getPrincipal();
@@ -51,6 +67,7 @@ public class CatalogController {
             model.addAttribute("requestCount", requestCount);
 
             model.addAttribute("categoryId", categoryId);
+            model.addAttribute("withSubcategories", withSubcategories);
             model.addAttribute("pageTitle", "Каталог файлов");
             return "catalog/catalog";
         } catch (SQLException e) {
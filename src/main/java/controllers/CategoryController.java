@@ -5,6 +5,7 @@ import exceptions.ForbiddenException;
 import exceptions.NotFoundException;
 import helpers.UserHelper;
 import models.CategoryModel;
+import models.CategoryTree;
 import org.apache.log4j.Logger;
 import org.json.simple.JSONObject;
 import org.springframework.security.core.Authentication;
@@ -145,6 +146,11 @@ public class CategoryController {
         JSONObject result = new JSONObject();
         try {
             CategoryModel model = CategoryModel.findById(id);
+            if (newParentId == id || CategoryTree.get().getDescendantIds(id).contains(newParentId)) {
+                result.put("error", true);
+                result.put("msg", "Нельзя переместить категорию внутрь нее самой");
+                return result.toJSONString();
+            }
             if (model.getParent() != newParentId) {
                 model.setParent(newParentId);
                 model.update();
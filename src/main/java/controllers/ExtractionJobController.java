@@ -0,0 +1,97 @@
+package controllers;
+
+import auth.CustomUserDetails;
+import exceptions.ForbiddenException;
+import exceptions.InternalException;
+import helpers.UserHelper;
+import helpers.ingest.ExtractionJobRunner;
+import models.ExtractionJobModel;
+import org.apache.log4j.Logger;
+import org.json.simple.JSONObject;
+import org.springframework.security.core.Authentication;
+import org.springframework.stereotype.Controller;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestMethod;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.ResponseBody;
+
+import java.security.Principal;
+import java.sql.SQLException;
+
+/**
+ * Контроллер заданий на повторное извлечение свойств версий
+ */
+@Controller
+public class ExtractionJobController {
+    private static final Logger logger = Logger.getLogger(ExtractionJobController.class);
+
+    /**
+     * Ход выполнения последнего задания
+     * @return json строка; пустой объект, если заданий еще не было
+     */
+    @ResponseBody
+    @RequestMapping(value = {"/extraction-job" }, method = RequestMethod.GET, produces = "application/json; charset=UTF-8")
+    public String jobStatus(Principal principal) {
+        checkAdmin(principal, "/extraction-job");
+        ExtractionJobModel job = ExtractionJobModel.findLatest();
+        JSONObject result = new JSONObject();
+        if (job != null) {
+            result.put("id", job.getId());
+            result.put("status", job.getStatus());
+            result.put("isFinished", job.isFinished());
+            result.put("totalCount", job.getTotalCount());
+            result.put("processedCount", job.getProcessedCount());
+            result.put("changedCount", job.getChangedCount());
+            result.put("errorCount", job.getErrorCount());
+            result.put("lastVersionId", job.getLastVersionId());
+            result.put("dateUpdated", job.getDateUpdated());
+        }
+        return result.toJSONString();
+    }
+
+    /**
+     * Запуск задания; если задание уже выполняется, возвращается оно, а остановленное продолжается
+     * @return json строка
+     */
+    @ResponseBody
+    @RequestMapping(value = {"/extraction-job-start" }, method = RequestMethod.POST, produces = "application/json; charset=UTF-8")
+    public String startJob(Principal principal) {
+        CustomUserDetails activeUser = checkAdmin(principal, "/extraction-job-start");
+        try {
+            int jobId = ExtractionJobRunner.start(activeUser.getEmployeeId());
+            logger.info("Запущено задание на извлечение свойств id=" + jobId + "; служебный номер - " + activeUser.getEmployeeId());
+            JSONObject result = new JSONObject();
+            result.put("id", jobId);
+            return result.toJSONString();
+        } catch (SQLException e) {
+            throw new InternalException("Ошибка при создании задания");
+        }
+    }
+
+    /**
+     * Остановка задания
+     * @param id Id задания
+     * @return json строка
+     */
+    @ResponseBody
+    @RequestMapping(value = {"/extraction-job-stop" }, method = RequestMethod.POST, produces = "application/json; charset=UTF-8")
+    public String stopJob(@RequestParam("id") int id, Principal principal) {
+        CustomUserDetails activeUser = checkAdmin(principal, "/extraction-job-stop");
+        boolean isStopped = ExtractionJobRunner.stop(id);
+        if (isStopped) {
+            logger.info("Остановлено задание на извлечение свойств id=" + id + "; служебный номер - " + activeUser.getEmployeeId());
+        }
+        JSONObject result = new JSONObject();
+        result.put("error", !isStopped);
+        return result.toJSONString();
+    }
+
+    private static CustomUserDetails checkAdmin(Principal principal, String url) {
+        CustomUserDetails activeUser = (CustomUserDetails) ((Authentication) principal).getPrincipal();
+        if (!UserHelper.isAdmin(activeUser)) {
+            logger.warn("Попытка управления заданием на извлечение свойств (" + url + ") без прав администратора; служебный номер - " + activeUser.getEmployeeId());
+            throw new ForbiddenException("Доступ запрещен");
+        }
+        return activeUser;
+    }
+}
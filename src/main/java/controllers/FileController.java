@@ -2,28 +2,33 @@ package controllers;
 
 import auth.CustomUserDetails;
 import config.Settings;
+import db.UnitOfWork;
 import exceptions.ForbiddenException;
 import exceptions.InternalException;
 import exceptions.NotFoundException;
+import helpers.DownloadHelper;
 import helpers.FileHelper;
-import helpers.PEProperties;
-import helpers.TriggerHelper;
+import helpers.UploadedFile;
 import helpers.UserHelper;
+import helpers.hash.HashAlgorithm;
+import helpers.ingest.IngestJobRunner;
 import models.*;
 import models.helpers.CategoryFile;
 import models.helpers.FileCategory;
 import models.helpers.FileFilling;
+import models.helpers.KeysetPage;
 import org.apache.commons.io.FilenameUtils;
-import org.apache.commons.io.IOUtils;
 import org.apache.log4j.Logger;
 import org.json.simple.JSONArray;
 import org.json.simple.JSONObject;
 import org.springframework.security.core.Authentication;
 import org.springframework.stereotype.Controller;
 import org.springframework.ui.Model;
-import org.springframework.util.FileCopyUtils;
 import org.springframework.web.bind.annotation.*;
 import org.springframework.web.multipart.MultipartFile;
+import search.SearchIndex;
+import search.SearchResult;
+import search.TitleIndex;
 
 import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
@@ -39,6 +44,10 @@ import java.util.*;
 @Controller
 public class FileController {
     private static final Logger logger = Logger.getLogger(FileController.class);
+    // количество результатов на странице поиска модератора
+    private static final int SEARCH_LIMIT = 100;
+    // количество подсказок автодополнения названия
+    private static final int AUTOCOMPLETE_LIMIT = 20;
 
     /**
      * Список всех файлов, разбитый по страницам
@@ -48,7 +57,7 @@ public class FileController {
      */
     @RequestMapping(value = {"/files"}, method = RequestMethod.GET)
     public String index(
-            @RequestParam(value="page", required=false, defaultValue = "1") int page,
+            @RequestParam(value="cursor", required=false, defaultValue = "") String cursor,
             Model model,
             Principal principal
     ) {
@@ -57,20 +66,13 @@ public class FileController {
             logger.warn("Попытка доступа на страницу /files без прав модератора; служебный номер - "+activeUser.getEmployeeId());
             throw new ForbiddenException("Доступ запрещен");
         }
-        int limit = FileModel.PAGE_COUNT;
-        int offset = (page - 1) * limit;
-        try {
-            // массив файлов для нужной страницы
-            ArrayList<FileModel> files = FileModel.findAll(limit, offset);
-            model.addAttribute("files", files);
+        // файлы для нужной страницы
+        KeysetPage<FileModel> files = FileModel.findPage(cursor, FileModel.PAGE_COUNT);
+        model.addAttribute("files", files.getItems());
+        model.addAttribute("nextCursor", files.getNextCursor());
+        model.addAttribute("prevCursor", files.getPrevCursor());
+        model.addAttribute("total", FileModel.getCount());
 
-            int pageCount = (int) Math.ceil((float)FileModel.getCount() / limit);
-            model.addAttribute("pageCount", pageCount);
-        } catch (SQLException e) {
-            e.printStackTrace();
-        }
-
-        model.addAttribute("page", page);
         model.addAttribute("pageTitle", "Файлы");
         return "file/files";
     }
@@ -186,7 +188,8 @@ public class FileController {
 
         ArrayList<CategoryFile> files = null;
         if (text.length() > 0) {
-            files = FileModel.findFilesByTitles(text);
+            SearchResult result = SearchIndex.getInstance().search(text, SEARCH_LIMIT, 0);
+            files = FileModel.findFilesByIds(result.getFileIds());
         }
         model.addAttribute("files", files);
 
@@ -248,11 +251,10 @@ public class FileController {
         JSONArray array = new JSONArray();
         result.put("query", query);
 
-        ArrayList<FileModel> res = FileModel.findTitles(query);
-        for (FileModel row : res) {
+        for (Map.Entry<Integer, String> row : TitleIndex.getInstance().find(query, AUTOCOMPLETE_LIMIT)) {
             JSONObject obj = new JSONObject();
-            obj.put("value", row.getTitle());
-            obj.put("data", row.getId());
+            obj.put("value", row.getValue());
+            obj.put("data", row.getKey());
             array.add(obj);
         }
         result.put("suggestions", array);
@@ -298,21 +300,27 @@ public class FileController {
                 errors.add(file);
             } else {
                 // если ошибок в данных нет, то сохраняем информацию
-                FileModel fileModel = null;
+                // создание файла и привязка к нему версии выполняются одной транзакцией
+                final FileFilling filling = model;
                 try {
-                    FileVersionModel version = FileVersionModel.findById(model.getId());
-                    version.setVersion(model.getVersion());
-                    version.setIsFilled(true);
-                    // ищем файл с таким названием
-                    fileModel = FileModel.findByTitle(model.getTitle());
-                    if (fileModel == null) {
-                        // если такого файла нет, то создаем
-                        fileModel = new FileModel();
-                        fileModel.setTitle(model.getTitle());
-                        fileModel.add();
-                    }
-                    version.setFileId(fileModel.getId());
-                    version.update();
+                    UnitOfWork.run(new UnitOfWork.Work<Boolean>() {
+                        @Override
+                        public Boolean execute() throws SQLException {
+                            FileVersionModel version = FileVersionModel.findById(filling.getId());
+                            version.setVersion(filling.getVersion());
+                            version.setIsFilled(true);
+                            // ищем файл с таким названием
+                            FileModel fileModel = FileModel.findByTitle(filling.getTitle());
+                            if (fileModel == null) {
+                                // если такого файла нет, то создаем
+                                fileModel = new FileModel();
+                                fileModel.setTitle(filling.getTitle());
+                                fileModel.add();
+                            }
+                            version.setFileId(fileModel.getId());
+                            return version.update();
+                        }
+                    });
                 } catch (SQLException e) {
                     throw new InternalException(e.getMessage());
                 }
@@ -328,9 +336,10 @@ public class FileController {
 
     /**
      * Обработчик ajax запроса на загрузку файлов
+     * Файлы сохраняются во временную директорию хранилища, дальнейшая обработка идет в фоновом задании
      * @param files Массив файлов
      * @param request
-     * @return json строка
+     * @return json строка с id задания, ход выполнения доступен по /ingest-job
      */
     @ResponseBody
     @RequestMapping(value = {"/file-add-handler" }, method = RequestMethod.POST, produces = "application/json; charset=UTF-8")
@@ -345,153 +354,73 @@ public class FileController {
             throw new ForbiddenException("Доступ запрещен");
         }
 
-        JSONObject result = new JSONObject();
-        JSONArray errors = new JSONArray();
-        JSONArray success = new JSONArray();
-
-        String uploadRootDir = Settings.getUploadPath();
-
+        File tempDir = UploadedFile.getTempDir(Settings.getUploadPath());
+        HashAlgorithm hashAlgorithm = Settings.getHashAlgorithm();
+        // файлы сохраняются до создания задания, чтобы задание и его файлы записывались одной транзакцией
+        final ArrayList<IngestJobFileModel> jobFiles = new ArrayList<IngestJobFileModel>();
         int fileCounter = 0;
         for (MultipartFile file : files) {
+            IngestJobFileModel jobFile = new IngestJobFileModel();
+            jobFile.setNumber(fileCounter);
             if (!file.isEmpty()) {
                 try {
                     String uploadedFileName = new String(file.getOriginalFilename().getBytes("ISO-8859-1"), "UTF-8");
-                    InputStream inputStream = file.getInputStream();
-                    // формирование пути до файла
-                    String hash = FileHelper.getHash(inputStream);
-                    inputStream.close();
-                    StringBuilder newFileName = new StringBuilder();
-                    newFileName
-                            .append(uploadRootDir)
-                            .append(File.separator)
-                            .append(FileHelper.getHashPath(hash));
-
-                    // проверяем дублирование файла
-                    if (FileVersionModel.isExist(hash, file.getSize())) {
-                        JSONObject err = new JSONObject();
-                        err.put("number", fileCounter);
-                        err.put("msg", "Такой файл уже есть");
-                        errors.add(err);
-                    } else {
-                        // проверка существования пути до файла
-                        File uploadDir = new File(String.valueOf(newFileName));
-                        if (!uploadDir.exists()) {
-                            uploadDir.mkdirs();
-                        }
-
-                        // добавление конечного имени файла
-                        // к исходному имени добавляется хэш файла
-                        StringBuilder fileName = new StringBuilder()
-                                .append(FilenameUtils.getBaseName(uploadedFileName))
-                                .append("_")
-                                .append(hash);
-                        String extension = FilenameUtils.getExtension(uploadedFileName);
-                        if (!extension.equals("")) {
-                            fileName.append(".");
-                            fileName.append(extension);
-                        }
-                        newFileName.append(File.separator).append(fileName);
-
-                        // сохранение файла на диск
-                        inputStream = file.getInputStream();
-                        FileOutputStream stream = new FileOutputStream(new File(newFileName.toString()));
-                        IOUtils.copy(inputStream, stream);
-                        stream.close();
-                        inputStream.close();
-                        file.getInputStream().close();
-
-                        // получение свойств файла
-                        Map<Integer, String> properties = null;
-                        try {
-                            properties = PEProperties.parse(newFileName.toString());
-                        } catch (Exception e) {
-                            properties = TriggerHelper.getProperties(extension, newFileName.toString());
-                        }
-                        boolean isFilled = false;
-                        String fileTitle = null;
-                        String versionValue = null;
-                        if (properties != null && properties.size() > 0) {
-                            fileTitle = properties.get(PropertyModel.PRODUCT_NAME);
-                            versionValue = properties.get(PropertyModel.FILE_VERSION);
-                            if (fileTitle != null && !fileTitle.trim().equals("") && versionValue != null && !versionValue.trim().equals("")) {
-                                isFilled = true;
-                            }
-                        }
-
-                        // сохранение файла в бд, если свойства заполненены
-                        FileModel fileModel = null;
-                        if (isFilled) {
-                            fileModel = FileModel.findByTitle(fileTitle);
-                            if (fileModel == null) {
-                                fileModel = new FileModel();
-                                fileModel.setTitle(fileTitle);
-                                fileModel.add();
-                            }
-                        }
-
-                        // добавленией новой версии файла
-                        FileVersionModel fileVersion = new FileVersionModel();
-                        if (fileModel == null) {
-                            fileVersion.setFileId(0);
-                        } else {
-                            fileVersion.setFileId(fileModel.getId());
-                        }
-                        fileVersion.setFileName(fileName.toString());
-                        fileVersion.setHash(hash);
-                        fileVersion.setIsFilled(isFilled);
-                        fileVersion.setUserId(activeUser.getEmployeeId());
-                        long time = new Date().getTime();
-                        fileVersion.setDate(time);
-                        if (versionValue != null && !versionValue.trim().equals("")) {
-                            fileVersion.setVersion(versionValue);
-                        }
-                        fileVersion.setFileSize(file.getSize());
-                        if (fileVersion.add()) {
-                            logger.info("Загружена новая версия, id=" + fileVersion.getId()+"; служебный номер - " + activeUser.getEmployeeId());
-                        } else {
-                            logger.error("Ошибка при загрузке новой версии; служебный номер - " + activeUser.getEmployeeId());
-                        }
+                    jobFile.setFileName(uploadedFileName);
+                    // сохранение части запроса во временную директорию хранилища с подсчетом хэша за тот же проход
+                    String extension = FilenameUtils.getExtension(uploadedFileName);
+                    File spooled = File.createTempFile("upload_", extension.equals("") ? ".part" : "." + extension, tempDir);
+                    jobFile.setHash(UploadedFile.spool(file.getInputStream(), spooled, hashAlgorithm));
+                    jobFile.setHashAlgorithm(hashAlgorithm.getTitle());
+                    jobFile.setSourcePath(spooled.getPath());
+                } catch (IOException e) {
+                    jobFile.setState(IngestJobFileModel.FAILED);
+                    jobFile.setMsg(e.getMessage());
+                }
+            } else {
+                jobFile.setState(IngestJobFileModel.FAILED);
+                jobFile.setMsg("Проблема с обработкой файла");
+            }
+            if (jobFile.getFileName() == null) {
+                jobFile.setFileName(String.valueOf(file.getOriginalFilename()));
+            }
+            jobFiles.add(jobFile);
+            fileCounter++;
+        }
 
-                        // добавление остальных свойств версии в БД
-                        if (properties != null) {
-                            for (Map.Entry entry : properties.entrySet()) {
-                                int propertyId = (Integer) entry.getKey();
-                                if (propertyId != PropertyModel.FILE_VERSION && propertyId != PropertyModel.PRODUCT_NAME) {
-                                    FileVersionPropertyModel fileProperty = new FileVersionPropertyModel();
-                                    fileProperty.setFileVersionId(fileVersion.getId());
-                                    fileProperty.setPropertyId(propertyId);
-                                    fileProperty.setValue(String.valueOf(entry.getValue()));
-                                    if (fileProperty.add()) {
-                                        logger.info("Версии id=" + fileVersion.getId()+" добавлено новое свойство id="+propertyId+", значение - "+fileProperty.getValue()+"; служебный номер - " + activeUser.getEmployeeId());
-                                    } else {
-                                        logger.error("Ошибка при добавлении свойства id"+propertyId+" версии id="+fileVersion.getId()+"; служебный номер - " + activeUser.getEmployeeId());
-                                    }
-                                }
-                            }
+        final IngestJobModel job = new IngestJobModel();
+        job.setType(IngestJobModel.TYPE_UPLOAD);
+        job.setUserId(activeUser.getEmployeeId());
+        job.setFileCount(files.length);
+        try {
+            UnitOfWork.run(new UnitOfWork.Work<Void>() {
+                @Override
+                public Void execute() throws SQLException {
+                    if (!job.add()) {
+                        throw new SQLException("Ошибка при создании задания");
+                    }
+                    for (IngestJobFileModel jobFile : jobFiles) {
+                        jobFile.setJobId(job.getId());
+                        if (!jobFile.add()) {
+                            throw new SQLException("Ошибка при создании файла задания");
                         }
-                        JSONObject succ = new JSONObject();
-                        succ.put("fileVersionId", fileVersion.getId());
-
-                        succ.put("fileVersionName", uploadedFileName);
-                        succ.put("isFilled", isFilled);
-                        success.add(succ);
                     }
-                } catch (Exception e) {
-                    JSONObject err = new JSONObject();
-                    err.put("number", fileCounter);
-                    err.put("msg", e.getMessage());
-                    errors.add(err);
+                    return null;
+                }
+            });
+        } catch (SQLException e) {
+            for (IngestJobFileModel jobFile : jobFiles) {
+                if (jobFile.getSourcePath() != null) {
+                    new File(jobFile.getSourcePath()).delete();
                 }
-            } else {
-                JSONObject err = new JSONObject();
-                err.put("number", fileCounter);
-                err.put("msg", "Проблема с обработкой файла");
-                errors.add(err);
             }
-            fileCounter++;
+            throw new InternalException("Ошибка при создании задания на загрузку");
         }
-        result.put("errors", errors);
-        result.put("success", success);
+
+        IngestJobRunner.submit(job.getId());
+        logger.info("Создано задание на добавление файлов id=" + job.getId() + ", файлов - " + files.length + "; служебный номер - " + activeUser.getEmployeeId());
+
+        JSONObject result = new JSONObject();
+        result.put("jobId", job.getId());
         return result.toJSONString();
     }
 
@@ -510,19 +439,28 @@ public class FileController {
             throw new ForbiddenException("Доступ запрещен");
         }
         try {
-            FileModel file = FileModel.findById(fileId);
-            FileCategoryModel.deleteByFile(fileId);
-            for (int categoryId : categoriesId) {
-                CategoryModel category = CategoryModel.findById(categoryId);
-                FileCategoryModel fileCategory = new FileCategoryModel();
-                fileCategory.setFileId(fileId);
-                fileCategory.setCategoryId(categoryId);
-                if (fileCategory.add()) {
-                    logger.info("Файл "+file.getTitle()+" привязан к категории "+category.getTitle()+"; служебный номер - " + activeUser.getEmployeeId());
-                } else {
-                    logger.error("Ошибка при привязке файла "+file.getTitle()+" категории "+category.getTitle()+"; служебный номер - " + activeUser.getEmployeeId());
+            final FileModel file = FileModel.findById(fileId);
+            final int employeeId = activeUser.getEmployeeId();
+            final int[] categories = categoriesId;
+            // замена категорий и очередь файлов без категории фиксируются одной транзакцией
+            UnitOfWork.run(new UnitOfWork.Work<Void>() {
+                @Override
+                public Void execute() throws SQLException {
+                    FileCategoryModel.deleteByFile(file.getId());
+                    for (int categoryId : categories) {
+                        CategoryModel category = CategoryModel.findById(categoryId);
+                        FileCategoryModel fileCategory = new FileCategoryModel();
+                        fileCategory.setFileId(file.getId());
+                        fileCategory.setCategoryId(categoryId);
+                        if (fileCategory.add()) {
+                            logger.info("Файл "+file.getTitle()+" привязан к категории "+category.getTitle()+"; служебный номер - " + employeeId);
+                        } else {
+                            logger.error("Ошибка при привязке файла "+file.getTitle()+" категории "+category.getTitle()+"; служебный номер - " + employeeId);
+                        }
+                    }
+                    return null;
                 }
-            }
+            });
             return "redirect:/file-view?id=" + file.getId();
         } catch (SQLException e) {
             throw new InternalException("Ошибка при сохранении");
@@ -540,29 +478,19 @@ public class FileController {
     public void fileDownload(@RequestParam("id") int id, Model model, HttpServletRequest request, HttpServletResponse response) {
         try {
             FileVersionModel fileVersion = FileVersionModel.findById(id);
-            StringBuilder filePath = new StringBuilder();
             // формируем путь до файла
             String uploadRootDir = Settings.getUploadPath();
-            filePath.append(uploadRootDir);
-            String hash = fileVersion.getHash();
-            String firstDir = hash.substring(0, 2);
-            String secondDir = hash.substring(2, 4);
-            filePath
+            StringBuilder filePath = new StringBuilder()
+                    .append(uploadRootDir)
                     .append(File.separator)
-                    .append(firstDir)
-                    .append(File.separator)
-                    .append(secondDir)
+                    .append(FileHelper.getHashPath(fileVersion.getHash()))
                     .append(File.separator)
                     .append(fileVersion.getFileName());
-            System.out.println(filePath.toString());
             File file = new File(filePath.toString());
-            InputStream inputStream = new FileInputStream(file);
-            response.setContentType("application/octet-stream");
-            response.setHeader("Content-Disposition", "attachment; filename=\"" + fileVersion.getFileName() + "\"");
-            OutputStream os = response.getOutputStream();
-            FileCopyUtils.copy(inputStream, os);
-            os.close();
-            inputStream.close();
+            if (!file.exists() || file.isDirectory()) {
+                throw new FileNotFoundException(filePath.toString());
+            }
+            DownloadHelper.send(file, fileVersion.getHash(), fileVersion.getFileName(), request, response);
         } catch (SQLException e) {
             throw new NotFoundException("Файла не существует");
         } catch (FileNotFoundException e) {
@@ -592,7 +520,7 @@ public class FileController {
         try {
             FileVersionModel model = FileVersionModel.findById(versionId);
             model.setIsDisabled(true);
-            if (model.update()) {
+            if (updateVersion(model)) {
                 result.put("error", false);
                 logger.info("Версия файла id = "+model.getId()+" помечена как удаленная; служебный номер - " + activeUser.getEmployeeId());
             } else {
@@ -625,7 +553,7 @@ public class FileController {
         try {
             FileVersionModel model = FileVersionModel.findById(versionId);
             model.setIsDisabled(false);
-            if (model.update()) {
+            if (updateVersion(model)) {
                 result.put("error", false);
                 logger.warn("Файла id = "+model.getId()+" восстановлен; служебный номер - "+activeUser.getEmployeeId());
             } else {
@@ -659,7 +587,15 @@ public class FileController {
         try {
             FileVersionModel model = FileVersionModel.findById(versionId);
             if (model.getIsDisabled()) {
-                model.delete(request);
+                final FileVersionModel version = model;
+                final HttpServletRequest httpRequest = request;
+                // удаление версии, пустого файла и записей очереди фиксируется одной транзакцией
+                UnitOfWork.run(new UnitOfWork.Work<Boolean>() {
+                    @Override
+                    public Boolean execute() throws SQLException {
+                        return version.delete(httpRequest);
+                    }
+                });
                 result.put("error", false);
             } else {
                 result.put("error", true);
@@ -669,4 +605,16 @@ public class FileController {
             throw new NotFoundException("Версия не найдена");
         }
     }
-}
\ No newline at end of file
+
+    /**
+     * Сохранение версии вместе с последней версией файла и очередью незаполненных в одной транзакции
+     */
+    private static boolean updateVersion(final FileVersionModel model) throws SQLException {
+        return UnitOfWork.run(new UnitOfWork.Work<Boolean>() {
+            @Override
+            public Boolean execute() throws SQLException {
+                return model.update();
+            }
+        });
+    }
+}
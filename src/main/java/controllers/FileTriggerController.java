@@ -93,6 +93,7 @@ public class FileTriggerController {
             @RequestParam("extension") String extension,
             @RequestParam("command") String command,
             @RequestParam("regexp") String regexp,
+            @RequestParam(value="timeout", required=false, defaultValue = "30") int timeout,
             @RequestParam(value="id", required=false, defaultValue = "0") int id,
             RedirectAttributes attr,
             Principal principal
@@ -111,6 +112,7 @@ public class FileTriggerController {
                 trigger.setExtension(extension);
                 trigger.setCommand(command);
                 trigger.setRegexp(regexp);
+                trigger.setTimeout(timeout);
                 if (trigger.update()) {
                     logger.info("Триггер изменен, id=" + trigger.getId()+"; служебный номер - "+activeUser.getEmployeeId());
                     return "redirect:/file-triggers";
@@ -127,6 +129,7 @@ public class FileTriggerController {
             trigger.setExtension(extension);
             trigger.setCommand(command);
             trigger.setRegexp(regexp);
+            trigger.setTimeout(timeout);
             try {
                 if (trigger.add()) {
                     logger.info("Добавлен новый триггер, id=" + trigger.getId()+"; служебный номер - "+activeUser.getEmployeeId());
@@ -0,0 +1,83 @@
+package controllers;
+
+import auth.CustomUserDetails;
+import exceptions.ForbiddenException;
+import helpers.UserHelper;
+import models.IngestJobFileModel;
+import models.IngestJobModel;
+import org.apache.log4j.Logger;
+import org.json.simple.JSONArray;
+import org.json.simple.JSONObject;
+import org.springframework.security.core.Authentication;
+import org.springframework.stereotype.Controller;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestMethod;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.ResponseBody;
+
+import java.security.Principal;
+
+/**
+ * Контроллер заданий на добавление файлов
+ */
+@Controller
+public class IngestJobController {
+    private static final Logger logger = Logger.getLogger(IngestJobController.class);
+
+    /**
+     * Ход выполнения задания
+     * Ответ содержит статус задания, этапы файлов и, как и раньше у /file-add-handler,
+     * массивы success и errors для уже обработанных файлов
+     * @param id Id задания
+     * @return json строка
+     */
+    @ResponseBody
+    @RequestMapping(value = {"/ingest-job" }, method = RequestMethod.GET, produces = "application/json; charset=UTF-8")
+    public String jobStatus(@RequestParam("id") int id, Principal principal) {
+        CustomUserDetails activeUser = (CustomUserDetails) ((Authentication) principal).getPrincipal();
+        if (!UserHelper.isModerator(activeUser)) {
+            logger.warn("Попытка просмотра задания (/ingest-job) без прав модератора; служебный номер - "+activeUser.getEmployeeId());
+            throw new ForbiddenException("Доступ запрещен");
+        }
+
+        IngestJobModel job = IngestJobModel.findById(id);
+        JSONArray files = new JSONArray();
+        JSONArray errors = new JSONArray();
+        JSONArray success = new JSONArray();
+        int processedCount = 0;
+        for (IngestJobFileModel file : IngestJobFileModel.findByJob(id)) {
+            JSONObject fileState = new JSONObject();
+            fileState.put("number", file.getNumber());
+            fileState.put("fileName", file.getFileName());
+            fileState.put("state", file.getState());
+            files.add(fileState);
+
+            if (file.getState().equals(IngestJobFileModel.PERSISTED)) {
+                JSONObject succ = new JSONObject();
+                succ.put("fileVersionId", file.getFileVersionId());
+                succ.put("fileVersionName", file.getFileName());
+                succ.put("isFilled", file.isFilled());
+                success.add(succ);
+                processedCount++;
+            } else if (file.getState().equals(IngestJobFileModel.FAILED)) {
+                JSONObject err = new JSONObject();
+                err.put("number", file.getNumber());
+                err.put("msg", file.getMsg());
+                errors.add(err);
+                processedCount++;
+            }
+        }
+
+        JSONObject result = new JSONObject();
+        result.put("id", job.getId());
+        result.put("type", job.getType());
+        result.put("status", job.getStatus());
+        result.put("isFinished", job.isFinished());
+        result.put("fileCount", job.getFileCount());
+        result.put("processedCount", processedCount);
+        result.put("files", files);
+        result.put("errors", errors);
+        result.put("success", success);
+        return result.toJSONString();
+    }
+}
@@ -6,6 +6,7 @@ import exceptions.NotFoundException;
 import helpers.UserHelper;
 import models.FilePropertyModel;
 import models.PropertyModel;
+import models.helpers.KeysetPage;
 import org.apache.log4j.Logger;
 import org.json.simple.JSONObject;
 import org.springframework.security.core.Authentication;
@@ -19,7 +20,6 @@ import org.springframework.web.servlet.mvc.support.RedirectAttributes;
 
 import java.security.Principal;
 import java.sql.SQLException;
-import java.util.ArrayList;
 
 /**
  * Контроллер свойств для администратора
@@ -35,7 +35,7 @@ public class PropertyController {
      */
     @RequestMapping(value = {"/properties" }, method = RequestMethod.GET)
     public String index(
-            @RequestParam(value="page", required=false, defaultValue = "1") int page,
+            @RequestParam(value="cursor", required=false, defaultValue = "") String cursor,
             Model model,
             Principal principal
     ) {
@@ -45,17 +45,13 @@ public class PropertyController {
             throw new ForbiddenException("Доступ запрещен");
         }
 
-        int limit = PropertyModel.PAGE_COUNT;
-        int offset = (page - 1) * limit;
-
         try {
-            ArrayList<PropertyModel> properties = PropertyModel.findAll(limit, offset);
-            model.addAttribute("properties", properties);
-
-            int pageCount = (int) Math.ceil((float)PropertyModel.getCount() / limit);
-            model.addAttribute("pageCount", pageCount);
+            KeysetPage<PropertyModel> properties = PropertyModel.findPage(cursor, PropertyModel.PAGE_COUNT);
+            model.addAttribute("properties", properties.getItems());
+            model.addAttribute("nextCursor", properties.getNextCursor());
+            model.addAttribute("prevCursor", properties.getPrevCursor());
+            model.addAttribute("total", PropertyModel.getCount());
 
-            model.addAttribute("page", page);
             model.addAttribute("pageTitle", "Свойства файлов");
             return "property/properties";
         } catch (SQLException e) {
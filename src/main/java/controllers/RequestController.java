@@ -2,13 +2,16 @@ package controllers;
 
 import auth.CustomUserDetails;
 import config.Settings;
+import db.UnitOfWork;
 import exceptions.ForbiddenException;
 import exceptions.InternalException;
 import exceptions.NotFoundException;
 import helpers.FileHelper;
-import helpers.PEProperties;
 import helpers.UserHelper;
+import helpers.ingest.IngestJobRunner;
+import helpers.hash.HashAlgorithm;
 import models.*;
+import models.helpers.KeysetPage;
 import org.apache.commons.io.FilenameUtils;
 import org.apache.log4j.Logger;
 import org.springframework.security.core.Authentication;
@@ -28,7 +31,6 @@ import java.text.SimpleDateFormat;
 import java.util.ArrayList;
 import java.util.Date;
 import java.util.HashMap;
-import java.util.Map;
 
 /**
  * Контроллер заявок
@@ -42,38 +44,34 @@ public class RequestController {
      */
     @RequestMapping(value = {"/request-list"}, method = RequestMethod.GET)
     public String requests(
-            @RequestParam(value="page", required=false, defaultValue = "1") int page,
+            @RequestParam(value="cursor", required=false, defaultValue = "") String cursor,
             Principal principal,
             Model model
     ) {
-        int limit = RequestModel.PAGE_COUNT;
-        int offset = (page - 1) * limit;
-
         CustomUserDetails activeUser = (CustomUserDetails) ((Authentication) principal).getPrincipal();
         UserModel user = UserModel.findById(activeUser.getEmployeeId());
         if (user == null) {
             throw new NotFoundException("Пользователь не найден");
         }
 
-        int pageCount = 0;
-        ArrayList<RequestModel> requests = null;
+        KeysetPage<RequestModel> requests;
         if (UserHelper.isModerator(activeUser)) {
             // для модератора выбираем все заявки
-            requests = RequestModel.findAll(limit, offset);
-            pageCount = (int) Math.ceil((float)RequestModel.getCount() / limit);
+            requests = RequestModel.findPage(cursor, RequestModel.PAGE_COUNT);
+            model.addAttribute("total", RequestModel.getCount());
         } else {
             // для пользователя выбираем только его заявки
-            requests = RequestModel.findAllByUser(user.getId(), limit, offset);
-            pageCount = (int) Math.ceil((float)RequestModel.getCountForUser(user.getId()) / limit);
+            requests = RequestModel.findPage(user.getId(), cursor, RequestModel.PAGE_COUNT);
+            model.addAttribute("total", RequestModel.getCountForUser(user.getId()));
         }
-        model.addAttribute("pageCount", pageCount);
-        model.addAttribute("requests", requests);
+        model.addAttribute("requests", requests.getItems());
+        model.addAttribute("nextCursor", requests.getNextCursor());
+        model.addAttribute("prevCursor", requests.getPrevCursor());
 
         // количество необработанных заявок текущего пользователя
         int requestCount = RequestModel.getNewCountForUser(activeUser.getEmployeeId());
         model.addAttribute("requestCount", requestCount);
 
-        model.addAttribute("page", page);
         model.addAttribute("pageTitle", "Заявки");
         return "request/requests";
     }
@@ -178,6 +176,7 @@ public class RequestController {
             requestModel.setUserId(user.getId());
 
             String uploadPath = Settings.getRequestUploadPath();
+            HashAlgorithm hashAlgorithm = Settings.getHashAlgorithm();
             ArrayList<String> names = new ArrayList<String>();
             ArrayList<String> hashes = new ArrayList<String>();
             // проверка файлов на дублирование
@@ -186,7 +185,7 @@ public class RequestController {
                     String uploadedFileName = new String(file.getOriginalFilename().getBytes("ISO-8859-1"), "UTF-8");
                     InputStream inputStream = file.getInputStream();
                     // формирование пути до файла
-                    String hash = FileHelper.getHash(inputStream);
+                    String hash = FileHelper.getHash(inputStream, hashAlgorithm);
                     inputStream.close();
 
                     names.add(uploadedFileName);
@@ -247,6 +246,7 @@ public class RequestController {
                     RequestFileModel fileModel = new RequestFileModel();
                     fileModel.setRequestId(requestModel.getId());
                     fileModel.setHash(hash);
+                    fileModel.setHashAlgorithm(hashAlgorithm.getTitle());
                     fileModel.setFileName(fileName.toString());
                     fileModel.setFileSize(file.getSize());
                     fileModel.setExtension(extension);
@@ -375,6 +375,7 @@ public class RequestController {
 
     /**
      * Обработчик принятия заявки
+     * Файлы заявки переносятся в каталог фоновым заданием, ход выполнения показывается на странице заявки
      */
     @RequestMapping(value = {"/request-accept-handler"}, method = RequestMethod.POST)
     public String requestAcceptHandler(
@@ -389,126 +390,57 @@ public class RequestController {
             throw new ForbiddenException("Доступ запрещен");
         }
 
-        RequestModel request = RequestModel.findById(requestId);
+        final RequestModel request = RequestModel.findById(requestId);
         request.setComment(comment);
         request.setStatus(RequestModel.ACCEPTED);
+        final int userId = activeUser.getEmployeeId();
+        IngestJobModel job;
         try {
-            if (request.update()) {
-                ArrayList<RequestFileModel> files = request.getFiles();
-                String catalogDirectory = Settings.getUploadPath();
-                String requestDirectory = Settings.getRequestUploadPath();
-                for (RequestFileModel file : files) {
-                    String firstDir = file.getHash().substring(0, 2);
-                    String secondDir = file.getHash().substring(2, 4);
-                    StringBuilder requestFile = new StringBuilder();
-                    requestFile
-                            .append(requestDirectory)
-                            .append(File.separator)
-                            .append(firstDir)
-                            .append(File.separator)
-                            .append(secondDir)
-                            .append(File.separator)
-                            .append(file.getFileName());
-                    StringBuilder catalogFile = new StringBuilder();
-                    catalogFile
-                            .append(catalogDirectory)
-                            .append(File.separator)
-                            .append(firstDir)
-                            .append(File.separator)
-                            .append(secondDir)
-                            .append(File.separator);
-
-                    // проверка существования пути до файла
-                    File uploadDir = new File(String.valueOf(catalogFile));
-                    if (!uploadDir.exists()) {
-                        uploadDir.mkdirs();
+            // смена статуса заявки и создание задания с его файлами фиксируются одной транзакцией,
+            // иначе при ошибке заявка осталась бы принятой без задания
+            job = UnitOfWork.run(new UnitOfWork.Work<IngestJobModel>() {
+                @Override
+                public IngestJobModel execute() throws SQLException {
+                    if (!request.update()) {
+                        return null;
+                    }
+                    ArrayList<RequestFileModel> files = request.getFiles();
+
+                    IngestJobModel created = new IngestJobModel();
+                    created.setType(IngestJobModel.TYPE_REQUEST);
+                    created.setUserId(userId);
+                    created.setRequestId(request.getId());
+                    created.setFileCount(files.size());
+                    if (!created.add()) {
+                        throw new SQLException("Ошибка при создании задания");
                     }
 
-                    String resultFilename = FilenameUtils.removeExtension(file.getFileName()) + "." + file.getExtension();
-                    String resultFilePath = catalogFile.toString() + resultFilename;
-                    try {
-                        FileHelper.decodeBase64(requestFile.toString(), resultFilePath);
-
-                        // получение свойств файла
-                        Map<Integer, String> properties = null;
-                        try {
-                            properties = PEProperties.parse(resultFilePath);
-                        } catch (Exception e) {
-                            e.printStackTrace();
-                        }
-                        boolean isFilled = false;
-                        String fileTitle = null;
-                        String versionValue = null;
-                        if (properties != null) {
-                            fileTitle = properties.get(PropertyModel.PRODUCT_NAME);
-                            versionValue = properties.get(PropertyModel.FILE_VERSION);
-                            if (fileTitle != null && !fileTitle.trim().equals("") && versionValue != null && !versionValue.trim().equals("")) {
-                                isFilled = true;
-                            }
-                        }
-
-                        // сохранение файла в бд, если свойства заполненены
-                        FileModel fileModel = null;
-                        if (isFilled) {
-                            fileModel = FileModel.findByTitle(fileTitle);
-                            if (fileModel == null) {
-                                fileModel = new FileModel();
-                                fileModel.setTitle(fileTitle);
-                                fileModel.add();
-                            }
-                        }
-
-                        // добавленией новой версии файла
-                        FileVersionModel fileVersion = new FileVersionModel();
-                        if (fileModel == null) {
-                            fileVersion.setFileId(0);
-                        } else {
-                            fileVersion.setFileId(fileModel.getId());
-                        }
-                        fileVersion.setFileName(resultFilename);
-                        fileVersion.setHash(file.getHash());
-                        fileVersion.setIsFilled(isFilled);
-                        fileVersion.setUserId(activeUser.getEmployeeId());
-                        long time = new Date().getTime();
-                        fileVersion.setDate(time);
-                        if (versionValue != null && !versionValue.trim().equals("")) {
-                            fileVersion.setVersion(versionValue);
-                        }
-                        fileVersion.setFileSize(file.getFileSize());
-                        if (fileVersion.add()) {
-                            logger.info("Добавлена версия из заявки, id=" + fileVersion.getId()+"; служебный номер - " + activeUser.getEmployeeId());
-                        } else {
-                            logger.error("Ошибка при добавлении версии из заявки; служебный номер - " + activeUser.getEmployeeId());
-                        }
-
-                        // добавление остальных свойств версии в БД
-                        if (properties != null) {
-                            for (Map.Entry entry : properties.entrySet()) {
-                                int propertyId = (Integer) entry.getKey();
-                                if (propertyId != PropertyModel.FILE_VERSION && propertyId != PropertyModel.PRODUCT_NAME) {
-                                    FileVersionPropertyModel fileProperty = new FileVersionPropertyModel();
-                                    fileProperty.setFileVersionId(fileVersion.getId());
-                                    fileProperty.setPropertyId(propertyId);
-                                    fileProperty.setValue(String.valueOf(entry.getValue()));
-                                    if (fileProperty.add()) {
-                                        logger.info("Версии id=" + fileVersion.getId()+" добавлено новое свойство id="+propertyId+", значение - "+fileProperty.getValue()+"; служебный номер - " + activeUser.getEmployeeId());
-                                    } else {
-                                        logger.error("Ошибка при добавлении свойства id"+propertyId+" версии id="+fileVersion.getId()+"; служебный номер - " + activeUser.getEmployeeId());
-                                    }
-                                }
-                            }
+                    int fileCounter = 0;
+                    for (RequestFileModel file : files) {
+                        IngestJobFileModel jobFile = new IngestJobFileModel();
+                        jobFile.setJobId(created.getId());
+                        jobFile.setNumber(fileCounter);
+                        jobFile.setFileName(file.getFileName());
+                        if (!jobFile.add()) {
+                            throw new SQLException("Ошибка при создании файла задания");
                         }
-                    } catch (IOException e) {
-                        throw new InternalException(e.getMessage());
+                        fileCounter++;
                     }
+                    return created;
                 }
-                return "redirect:/request-view?requestId="+request.getId();
-            } else {
-                attr.addFlashAttribute("errors", true);
-                return "redirect:/request-accept?requestId="+request.getId();
-            }
+            });
         } catch (SQLException e) {
             throw new InternalException("Ошибка при сохранении");
         }
+
+        if (job == null) {
+            attr.addFlashAttribute("errors", true);
+            return "redirect:/request-accept?requestId="+request.getId();
+        }
+        // задание ставится в очередь после фиксации, чтобы фоновый поток видел его файлы
+        IngestJobRunner.submit(job.getId());
+        logger.info("Заявка id=" + request.getId() + " принята, создано задание на добавление файлов id=" + job.getId() + "; служебный номер - " + activeUser.getEmployeeId());
+        attr.addFlashAttribute("ingestJobId", job.getId());
+        return "redirect:/request-view?requestId="+request.getId();
     }
 }
@@ -11,7 +11,11 @@ import org.springframework.ui.Model;
 import org.springframework.web.bind.annotation.RequestMapping;
 import org.springframework.web.bind.annotation.RequestMethod;
 import org.springframework.web.bind.annotation.RequestParam;
+import search.SearchIndex;
+import search.SearchResult;
 
+import java.io.UnsupportedEncodingException;
+import java.net.URLEncoder;
 import java.security.Principal;
 import java.util.ArrayList;
 
@@ -22,12 +26,22 @@ public class SearchController {
     @RequestMapping(value = {"/search"}, method = RequestMethod.GET)
     public String users(
             @RequestParam String text,
+            @RequestParam(value="page", required=false, defaultValue = "1") int page,
             Principal principal,
             Model model
-    ) {
-        ArrayList<CategoryFile> files = FileModel.findFilesByTitles(text);
+    ) throws UnsupportedEncodingException {
+        int limit = FileModel.PAGE_COUNT;
+        int offset = (Math.max(page, 1) - 1) * limit;
+        SearchResult result = SearchIndex.getInstance().search(text, limit, offset);
+        ArrayList<CategoryFile> files = FileModel.findFilesByIds(result.getFileIds());
         model.addAttribute("files", files);
 
+        model.addAttribute("page", page);
+        model.addAttribute("pageCount", (int) Math.ceil((float) result.getTotal() / limit));
+        model.addAttribute("pageUrl", "search");
+        model.addAttribute("pageParams", "text=" + URLEncoder.encode(text, "UTF-8") + "&");
+        model.addAttribute("total", result.getTotal());
+
         CustomUserDetails activeUser = (CustomUserDetails) ((Authentication) principal).getPrincipal();
         int requestCount = RequestModel.getNewCountForUser(activeUser.getEmployeeId());
         model.addAttribute("requestCount", requestCount);
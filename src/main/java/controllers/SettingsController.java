@@ -3,9 +3,13 @@ package controllers;
 import auth.CustomUserDetails;
 import config.IsFilled;
 import config.Settings;
+import db.Database2;
 import exceptions.ForbiddenException;
 import exceptions.InternalException;
 import helpers.UserHelper;
+import helpers.hash.HashAlgorithm;
+import helpers.process.ProcessRunner;
+import models.QueryPlanChecker;
 import models.SettingsModel;
 import org.apache.log4j.Logger;
 import org.springframework.context.ApplicationContext;
@@ -15,6 +19,7 @@ import org.springframework.ui.Model;
 import org.springframework.web.bind.annotation.RequestMapping;
 import org.springframework.web.bind.annotation.RequestMethod;
 import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.ResponseBody;
 import org.springframework.web.context.ContextLoader;
 import org.springframework.web.servlet.mvc.support.RedirectAttributes;
 
@@ -110,6 +115,8 @@ public class SettingsController {
         }
         model.addAttribute("model1", model1);
         model.addAttribute("model2", model2);
+        model.addAttribute("hashAlgorithm", Settings.getHashAlgorithm().getTitle());
+        model.addAttribute("hashAlgorithms", HashAlgorithm.values());
 
         HashMap<String, String> dbProperties = Settings.getDbProperties();
         model.addAttribute("dbProperties", dbProperties);
@@ -147,10 +154,20 @@ public class SettingsController {
     public String settingsInitSave(
             @RequestParam String catalogPath,
             @RequestParam String requestPath,
+            @RequestParam(value="hashAlgorithm", required=false) String hashAlgorithm,
             @RequestParam String dbUrl,
             @RequestParam String dbUser,
             @RequestParam(value="dbPass", required=false) String dbPass,
             @RequestParam(value="dbPool", required=true) Integer dbPool,
+            @RequestParam(value="dbMaxTotal", required=false) Integer dbMaxTotal,
+            @RequestParam(value="dbMaxIdle", required=false) Integer dbMaxIdle,
+            @RequestParam(value="dbMinIdle", required=false) Integer dbMinIdle,
+            @RequestParam(value="dbMaxWait", required=false) Integer dbMaxWait,
+            @RequestParam(value="dbValidationQuery", required=false) String dbValidationQuery,
+            @RequestParam(value="dbEvictionRuns", required=false) Integer dbEvictionRuns,
+            @RequestParam(value="dbMinEvictableIdle", required=false) Integer dbMinEvictableIdle,
+            @RequestParam(value="dbRemoveAbandonedTimeout", required=false) Integer dbRemoveAbandonedTimeout,
+            @RequestParam(value="dbMaxStatements", required=false) Integer dbMaxStatements,
             @RequestParam String ldapUrl,
             @RequestParam String ldapManager,
             @RequestParam String ldapPassword,
@@ -216,6 +233,23 @@ public class SettingsController {
                     }
                 }
             }
+
+            if (hashAlgorithm != null && hashAlgorithm.length() > 0) {
+                SettingsModel hashModel = SettingsModel.findById(SettingsModel.HASH_ALGORITHM);
+                try {
+                    if (hashModel == null) {
+                        hashModel = new SettingsModel(SettingsModel.HASH_ALGORITHM, HashAlgorithm.fromTitle(hashAlgorithm).getTitle());
+                        hashModel.add();
+                    } else {
+                        hashModel.setValue(HashAlgorithm.fromTitle(hashAlgorithm).getTitle());
+                        hashModel.update();
+                    }
+                } catch (SQLException e) {
+                    throw new InternalException("Ошибка при сохранении алгоритма хэширования в БД");
+                } finally {
+                    Settings.resetHashAlgorithm();
+                }
+            }
         }
 
         boolean logFileError = false;
@@ -280,7 +314,48 @@ public class SettingsController {
             Settings.disableSyslogLogger();
         }
 
-        Settings.setDbProperties(dbUrl, dbUser, dbPass, dbPool);
+        // настройки пула есть только в панели; при первоначальной настройке они не меняются
+        HashMap<String, String> poolProperties = new HashMap<>();
+        if (isFromPanel) {
+            boolean poolError = false;
+            if (dbMaxTotal != null && dbMaxTotal <= 0) {
+                poolError = true;
+                errors.put("dbMaxTotal", "Максимальное количество соединений должно быть больше 0");
+            }
+            if (dbMaxTotal != null && dbPool != null && dbPool > dbMaxTotal) {
+                poolError = true;
+                errors.put("dbMaxTotal", "Максимальное количество соединений должно быть не меньше размера пула");
+            }
+            if ((dbMaxIdle != null && dbMaxIdle < 0) || (dbMinIdle != null && dbMinIdle < 0)) {
+                poolError = true;
+                errors.put("dbMaxIdle", "Количество свободных соединений не может быть отрицательным");
+            }
+            if (dbMaxWait != null && dbMaxWait < 0) {
+                poolError = true;
+                errors.put("dbMaxWait", "Время ожидания не может быть отрицательным");
+            }
+            if ((dbEvictionRuns != null && dbEvictionRuns < 0) || (dbMinEvictableIdle != null && dbMinEvictableIdle < 0)
+                    || (dbRemoveAbandonedTimeout != null && dbRemoveAbandonedTimeout < 0)) {
+                poolError = true;
+                errors.put("dbEvictionRuns", "Интервалы не могут быть отрицательными");
+            }
+            if (dbMaxStatements != null && dbMaxStatements < 0) {
+                poolError = true;
+                errors.put("dbMaxStatements", "Количество запросов не может быть отрицательным");
+            }
+            if (!poolError) {
+                poolProperties.put(Settings.dbMaxTotal, toProperty(dbMaxTotal));
+                poolProperties.put(Settings.dbMaxIdle, toProperty(dbMaxIdle));
+                poolProperties.put(Settings.dbMinIdle, toProperty(dbMinIdle));
+                poolProperties.put(Settings.dbMaxWaitMillis, toProperty(dbMaxWait));
+                poolProperties.put(Settings.dbValidationQuery, dbValidationQuery);
+                poolProperties.put(Settings.dbEvictionRunsMillis, toProperty(dbEvictionRuns));
+                poolProperties.put(Settings.dbMinEvictableIdleMillis, toProperty(dbMinEvictableIdle));
+                poolProperties.put(Settings.dbRemoveAbandonedTimeout, toProperty(dbRemoveAbandonedTimeout));
+                poolProperties.put(Settings.dbMaxOpenPreparedStatements, toProperty(dbMaxStatements));
+            }
+        }
+        Settings.setDbProperties(dbUrl, dbUser, dbPass, dbPool, poolProperties);
 
         Settings.setAdProperties(ldapUrl, ldapManager, ldapPassword, ldapUserFilter, ldapGroupSearch, ldapGroupFilter, ldapRole, ldapAdminGroup, ldapModeratorGroup);
 
@@ -300,4 +375,54 @@ public class SettingsController {
             return "redirect:/init-settings";
         }
     }
+
+    /**
+     * Состояние пула соединений с БД
+     * Активные и свободные соединения, время ожидания соединения и количество неудачных попыток его получить
+     * @return json строка
+     */
+    @ResponseBody
+    @RequestMapping(value = {"/settings-db-pool" }, method = RequestMethod.GET, produces = "application/json; charset=UTF-8")
+    public String dbPoolMetrics(Principal principal) {
+        CustomUserDetails activeUser = (CustomUserDetails) ((Authentication) principal).getPrincipal();
+        if (!UserHelper.isAdmin(activeUser)) {
+            logger.warn("Попытка просмотра состояния пула соединений (/settings-db-pool) без прав администратора; служебный номер - "+activeUser.getEmployeeId());
+            throw new ForbiddenException("Доступ запрещен");
+        }
+        return Database2.getInstance().getPoolMetrics().toJSONString();
+    }
+
+    /**
+     * Планы частых запросов моделей (EXPLAIN) с пометкой запросов, читающих таблицу полным просмотром
+     * @return json строка
+     */
+    @ResponseBody
+    @RequestMapping(value = {"/settings-query-plans" }, method = RequestMethod.GET, produces = "application/json; charset=UTF-8")
+    public String queryPlans(Principal principal) {
+        CustomUserDetails activeUser = (CustomUserDetails) ((Authentication) principal).getPrincipal();
+        if (!UserHelper.isAdmin(activeUser)) {
+            logger.warn("Попытка просмотра планов запросов (/settings-query-plans) без прав администратора; служебный номер - "+activeUser.getEmployeeId());
+            throw new ForbiddenException("Доступ запрещен");
+        }
+        return QueryPlanChecker.check().toJSONString();
+    }
+
+    /**
+     * Состояние пула внешних команд и гистограммы времени выполнения триггеров по расширениям
+     * @return json строка
+     */
+    @ResponseBody
+    @RequestMapping(value = {"/settings-trigger-metrics" }, method = RequestMethod.GET, produces = "application/json; charset=UTF-8")
+    public String triggerMetrics(Principal principal) {
+        CustomUserDetails activeUser = (CustomUserDetails) ((Authentication) principal).getPrincipal();
+        if (!UserHelper.isAdmin(activeUser)) {
+            logger.warn("Попытка просмотра времени выполнения триггеров (/settings-trigger-metrics) без прав администратора; служебный номер - "+activeUser.getEmployeeId());
+            throw new ForbiddenException("Доступ запрещен");
+        }
+        return ProcessRunner.getInstance().getMetrics().toJSONString();
+    }
+
+    private static String toProperty(Integer value) {
+        return value == null ? null : value.toString();
+    }
 }
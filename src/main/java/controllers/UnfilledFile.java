@@ -1,10 +1,13 @@
 package controllers;
 
 import auth.CustomUserDetails;
+import db.UnitOfWork;
 import exceptions.NotFoundException;
 import helpers.UserHelper;
+import models.AttentionQueueModel;
 import models.FileModel;
 import models.FileVersionModel;
+import models.helpers.KeysetPage;
 import org.apache.log4j.Logger;
 import org.springframework.security.access.AccessDeniedException;
 import org.springframework.security.core.Authentication;
@@ -31,7 +34,7 @@ public class UnfilledFile {
      */
     @RequestMapping(value = {"/unfilled-files" }, method = RequestMethod.GET)
     public String filesUnfilled(
-            @RequestParam(value="page", required=false, defaultValue = "1") int page,
+            @RequestParam(value="cursor", required=false, defaultValue = "") String cursor,
             Model model,
             Principal principal
     ) {
@@ -41,18 +44,12 @@ public class UnfilledFile {
             throw new AccessDeniedException("Доступ запрещен");
         }
 
-        int limit = FileModel.PAGE_COUNT;
-        int offset = (page - 1) * limit;
+        KeysetPage<HashMap<String, String>> unfilledFiles = AttentionQueueModel.findPage(cursor, FileModel.PAGE_COUNT);
+        model.addAttribute("files", unfilledFiles.getItems());
+        model.addAttribute("nextCursor", unfilledFiles.getNextCursor());
+        model.addAttribute("prevCursor", unfilledFiles.getPrevCursor());
+        model.addAttribute("total", AttentionQueueModel.getCount());
 
-        ArrayList<HashMap> unfilledFiles;
-        int pageCount;
-
-        unfilledFiles = FileModel.findUnfilled(limit, offset);
-        pageCount = (int) Math.ceil((float)FileModel.getUnfilledCount() / limit);
-        model.addAttribute("files", unfilledFiles);
-        model.addAttribute("pageCount", pageCount);
-
-        model.addAttribute("page", page);
         model.addAttribute("pageTitle", "Незаполненные файлы");
         return "unfilled-file/files";
     }
@@ -104,35 +101,45 @@ public class UnfilledFile {
                 throw new AccessDeniedException("Доступ запрещен");
             }
 
-            FileVersionModel fileVersion = FileVersionModel.findById(versionId);
-            FileModel file = FileModel.findByTitle(title);
-            if (file == null) {
-                file = new FileModel();
-                file.setTitle(title);
-                file.add();
-            }
+            final FileVersionModel fileVersion = FileVersionModel.findById(versionId);
+            final int filledVersionId = versionId;
+            final String fileTitle = title;
+            final String fileVersionNumber = version;
+            // файл, версия и очередь незаполненных фиксируются одной транзакцией
+            FileModel file = UnitOfWork.run(new UnitOfWork.Work<FileModel>() {
+                @Override
+                public FileModel execute() throws SQLException {
+                    FileModel file = FileModel.findByTitle(fileTitle);
+                    if (file == null) {
+                        file = new FileModel();
+                        file.setTitle(fileTitle);
+                        file.add();
+                    }
 
-            // если файл уже был заполнен, т.е. файл отредактировали
-            if (fileVersion.isFilled()) {
-                FileModel prevFileModel = FileModel.findById(fileVersion.getFileId());
-                if (prevFileModel.getId() != file.getId()) {
-                    ArrayList<FileVersionModel> versionList = prevFileModel.getVersionList(false);
-                    boolean haveMoreVersions = false;
-                    for (FileVersionModel line : versionList) {
-                        if (versionId != line.getId()) {
-                            haveMoreVersions = true;
+                    // если файл уже был заполнен, т.е. файл отредактировали
+                    if (fileVersion.isFilled()) {
+                        FileModel prevFileModel = FileModel.findById(fileVersion.getFileId());
+                        if (prevFileModel.getId() != file.getId()) {
+                            ArrayList<FileVersionModel> versionList = prevFileModel.getVersionList(false);
+                            boolean haveMoreVersions = false;
+                            for (FileVersionModel line : versionList) {
+                                if (filledVersionId != line.getId()) {
+                                    haveMoreVersions = true;
+                                }
+                            }
+                            // если у файла больше не осталось версий, то удаляем его
+                            if (!haveMoreVersions) {
+                                prevFileModel.delete();
+                            }
                         }
                     }
-                    // если у файла больше не осталось версий, то удаляем его
-                    if (!haveMoreVersions) {
-                        prevFileModel.delete();
-                    }
+                    fileVersion.setFileId(file.getId());
+                    fileVersion.setVersion(fileVersionNumber);
+                    fileVersion.setIsFilled(true);
+                    fileVersion.update();
+                    return file;
                 }
-            }
-            fileVersion.setFileId(file.getId());
-            fileVersion.setVersion(version);
-            fileVersion.setIsFilled(true);
-            fileVersion.update();
+            });
             logger.info("Заполнен файл id=" + versionId+"; служебный номер - "+activeUser.getEmployeeId());
 
             return "redirect:/file-view?id="+file.getId()+"&versionId="+fileVersion.getId();
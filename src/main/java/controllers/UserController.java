@@ -5,6 +5,7 @@ import exceptions.ForbiddenException;
 import exceptions.NotFoundException;
 import helpers.UserHelper;
 import models.UserModel;
+import models.helpers.KeysetPage;
 import org.apache.log4j.Logger;
 import org.springframework.security.core.Authentication;
 import org.springframework.stereotype.Controller;
@@ -15,7 +16,6 @@ import org.springframework.web.bind.annotation.RequestParam;
 
 import java.security.Principal;
 import java.sql.SQLException;
-import java.util.ArrayList;
 
 @Controller
 public class UserController {
@@ -23,7 +23,7 @@ public class UserController {
 
     @RequestMapping(value = {"/users" }, method = RequestMethod.GET)
     public String users(
-            @RequestParam(value="page", required=false, defaultValue = "1") int page,
+            @RequestParam(value="cursor", required=false, defaultValue = "") String cursor,
             Model model,
             Principal principal
     ) {
@@ -33,20 +33,17 @@ public class UserController {
             throw new ForbiddenException("Доступ запрещен");
         }
 
-        int limit = UserModel.PAGE_COUNT;
-        int offset = (page - 1) * limit;
-
-        int pageCount = (int) Math.ceil((float)UserModel.getCount() / limit);
-        model.addAttribute("pageCount", pageCount);
+        model.addAttribute("total", UserModel.getCount());
 
         try {
-            ArrayList<UserModel> users = UserModel.findAll(limit, offset);
-            model.addAttribute("users", users);
+            KeysetPage<UserModel> users = UserModel.findPage(cursor, UserModel.PAGE_COUNT);
+            model.addAttribute("users", users.getItems());
+            model.addAttribute("nextCursor", users.getNextCursor());
+            model.addAttribute("prevCursor", users.getPrevCursor());
         } catch (SQLException e) {
             e.printStackTrace();
         }
 
-        model.addAttribute("page", page);
         model.addAttribute("pageTitle", "Пользователи");
         return "user/users";
     }
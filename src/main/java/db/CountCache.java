@@ -0,0 +1,47 @@
+package db;
+
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Кэш количества строк для постраничного вывода
+ * Количество пересчитывается не чаще раза в TTL_MILLIS, поэтому итог на странице приблизительный:
+ * добавленные за это время строки появятся в нем позже
+ */
+public class CountCache {
+    private static final long TTL_MILLIS = 60 * 1000;
+
+    private static final ConcurrentHashMap<String, Entry> entries = new ConcurrentHashMap<String, Entry>();
+
+    /**
+     * Подсчет количества строк
+     */
+    public interface Counter {
+        public int count();
+    }
+
+    /**
+     * @param key Ключ кэша, например имя таблицы и условие
+     * @param counter Подсчет, если значения нет или оно устарело
+     * @return Количество строк
+     */
+    public static int get(String key, Counter counter) {
+        long now = System.currentTimeMillis();
+        Entry entry = entries.get(key);
+        if (entry != null && now - entry.time < TTL_MILLIS) {
+            return entry.value;
+        }
+        int value = counter.count();
+        entries.put(key, new Entry(value, now));
+        return value;
+    }
+
+    private static class Entry {
+        private final int value;
+        private final long time;
+
+        private Entry(int value, long time) {
+            this.value = value;
+            this.time = time;
+        }
+    }
+}
@@ -3,14 +3,26 @@ package db;
 
 import helpers.ConfigDB;
 import org.apache.commons.dbcp2.BasicDataSource;
+import org.json.simple.JSONObject;
 import org.springframework.context.ApplicationContext;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
+import org.springframework.jdbc.datasource.DataSourceTransactionManager;
 import org.springframework.web.context.ContextLoader;
 
 /**
  * Соединение с базой данных
  */
 public class Database2 {
-    private BasicDataSource bds = new BasicDataSource();
+    // сколько разобранных запросов с именованными параметрами хранит общий шаблон
+    private static final int PARSED_SQL_CACHE_LIMIT = 512;
+
+    private BasicDataSource bds = new MonitoredDataSource();
+    private DataSourceTransactionManager transactionManager;
+    // шаблоны потокобезопасны, поэтому используются всеми моделями;
+    // разобранный SQL кэшируется в шаблоне и не разбирается заново на каждый запрос
+    private volatile NamedParameterJdbcTemplate template;
+    private volatile JdbcTemplate jdbcTemplate;
 
     private Database2() {
         ApplicationContext ctx = ContextLoader.getCurrentWebApplicationContext();
@@ -25,8 +37,49 @@ public class Database2 {
         bds.setPassword(configDB.getDbPassword());
         // размер пула
         bds.setInitialSize(Integer.parseInt(configDB.getPoolSize()));
-        // свойства соединения
-        bds.setConnectionProperties("useUnicode=yes;characterEncoding=utf8;");
+        bds.setMaxTotal(parseInt(configDB.getMaxTotal(), 20));
+        bds.setMaxIdle(parseInt(configDB.getMaxIdle(), 10));
+        bds.setMinIdle(parseInt(configDB.getMinIdle(), 0));
+        // сколько ждать свободное соединение, прежде чем вернуть ошибку
+        bds.setMaxWaitMillis(parseInt(configDB.getMaxWaitMillis(), 10000));
+        // проверка соединений, простаивающих в пуле, и закрытие лишних
+        if (configDB.getValidationQuery() != null && configDB.getValidationQuery().trim().length() > 0) {
+            bds.setValidationQuery(configDB.getValidationQuery());
+            bds.setValidationQueryTimeout(parseInt(configDB.getValidationQueryTimeout(), 5));
+            bds.setTestWhileIdle(true);
+        }
+        bds.setTimeBetweenEvictionRunsMillis(parseInt(configDB.getTimeBetweenEvictionRunsMillis(), 60000));
+        bds.setMinEvictableIdleTimeMillis(parseInt(configDB.getMinEvictableIdleTimeMillis(), 300000));
+        // соединения, не возвращенные в пул за отведенное время, считаются утечкой: закрываются и пишутся в лог
+        int removeAbandonedTimeout = parseInt(configDB.getRemoveAbandonedTimeout(), 0);
+        if (removeAbandonedTimeout > 0) {
+            bds.setRemoveAbandonedTimeout(removeAbandonedTimeout);
+            bds.setRemoveAbandonedOnMaintenance(true);
+            bds.setLogAbandoned(true);
+        }
+        // свойства соединения; rewriteBatchedStatements - пакетные INSERT уходят в БД одним запросом
+        bds.setConnectionProperties("useUnicode=yes;characterEncoding=utf8;rewriteBatchedStatements=true;");
+        // подготовленные запросы переиспользуются в пределах соединения; кэшируются только пулом,
+        // кэш драйвера (cachePrepStmts) не включается, чтобы не хранить те же запросы дважды. 0 - кэш выключен
+        int maxOpenPreparedStatements = parseInt(configDB.getMaxOpenPreparedStatements(), 100);
+        bds.setPoolPreparedStatements(maxOpenPreparedStatements > 0);
+        if (maxOpenPreparedStatements > 0) {
+            bds.setMaxOpenPreparedStatements(maxOpenPreparedStatements);
+        }
+        createTemplates();
+    }
+
+    private static int parseInt(String value, int defaultValue) {
+        if (value == null || value.trim().length() == 0) {
+            return defaultValue;
+        }
+        return Integer.parseInt(value.trim());
+    }
+
+    private void createTemplates() {
+        jdbcTemplate = new JdbcTemplate(bds);
+        template = new NamedParameterJdbcTemplate(jdbcTemplate);
+        template.setCacheLimit(PARSED_SQL_CACHE_LIMIT);
     }
 
     private static class DataSourceHolder {
@@ -43,5 +96,46 @@ public class Database2 {
 
     public void setBds(BasicDataSource bds) {
         this.bds = bds;
+        this.transactionManager = null;
+        createTemplates();
+    }
+
+    /**
+     * Состояние пула соединений
+     * @return json со статистикой; для пула, подмененного через setBds, только текущие размеры
+     */
+    public JSONObject getPoolMetrics() {
+        if (bds instanceof MonitoredDataSource) {
+            return ((MonitoredDataSource) bds).getMetrics();
+        }
+        JSONObject result = new JSONObject();
+        result.put("numActive", bds.getNumActive());
+        result.put("numIdle", bds.getNumIdle());
+        result.put("maxTotal", bds.getMaxTotal());
+        return result;
+    }
+
+    /**
+     * Общий шаблон запросов с именованными параметрами
+     */
+    public NamedParameterJdbcTemplate getTemplate() {
+        return template;
+    }
+
+    /**
+     * Общий шаблон запросов без именованных параметров
+     */
+    public JdbcTemplate getJdbcTemplate() {
+        return jdbcTemplate;
+    }
+
+    /**
+     * Менеджер транзакций поверх пула соединений
+     */
+    public synchronized DataSourceTransactionManager getTransactionManager() {
+        if (transactionManager == null) {
+            transactionManager = new DataSourceTransactionManager(bds);
+        }
+        return transactionManager;
     }
 }
@@ -0,0 +1,64 @@
+package db;
+
+/**
+ * Значение в памяти, которое строится из БД при первом обращении и сбрасывается после изменения данных
+ * Сброс выполняется после фиксации текущей транзакции, иначе кэш мог бы перечитать данные, которые потом откатятся.
+ * Значение, построенное до сброса, не сохраняется, даже если построение закончилось после него
+ */
+public class InvalidatingCache<T> {
+    /**
+     * Построение значения из БД
+     */
+    public interface Loader<T> {
+        public T load();
+    }
+
+    private final Loader<T> loader;
+    private final Object lock = new Object();
+    private volatile T value;
+    // увеличивается при каждом сбросе
+    private long generation = 0;
+
+    public InvalidatingCache(Loader<T> loader) {
+        this.loader = loader;
+    }
+
+    /**
+     * Текущее значение; при первом обращении после сброса строится заново
+     */
+    public T get() {
+        T current = value;
+        if (current != null) {
+            return current;
+        }
+        long builtGeneration;
+        synchronized (lock) {
+            if (value != null) {
+                return value;
+            }
+            builtGeneration = generation;
+        }
+        current = loader.load();
+        synchronized (lock) {
+            if (generation == builtGeneration) {
+                value = current;
+            }
+        }
+        return current;
+    }
+
+    /**
+     * Сброс значения после фиксации текущей транзакции или сразу, если транзакции нет
+     */
+    public void invalidate() {
+        UnitOfWork.afterCommit(new Runnable() {
+            @Override
+            public void run() {
+                synchronized (lock) {
+                    generation++;
+                    value = null;
+                }
+            }
+        });
+    }
+}
@@ -0,0 +1,79 @@
+package db;
+
+import org.apache.commons.dbcp2.BasicDataSource;
+import org.apache.log4j.Logger;
+import org.json.simple.JSONObject;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Пул соединений со сбором статистики выдачи соединений
+ * Считает ожидание каждого получения соединения и неудачные попытки (например, исчерпание пула по maxWaitMillis)
+ */
+public class MonitoredDataSource extends BasicDataSource {
+    private static final Logger logger = Logger.getLogger(MonitoredDataSource.class);
+
+    private final AtomicLong borrowCount = new AtomicLong();
+    private final AtomicLong borrowFailures = new AtomicLong();
+    private final AtomicLong totalWaitNanos = new AtomicLong();
+    private final AtomicLong maxWaitNanos = new AtomicLong();
+    private volatile String lastFailure;
+    private volatile long lastFailureDate;
+
+    @Override
+    public Connection getConnection() throws SQLException {
+        long start = System.nanoTime();
+        try {
+            Connection connection = super.getConnection();
+            registerWait(System.nanoTime() - start);
+            return connection;
+        } catch (SQLException e) {
+            registerFailure(e);
+            throw e;
+        } catch (RuntimeException e) {
+            registerFailure(e);
+            throw e;
+        }
+    }
+
+    private void registerWait(long nanos) {
+        borrowCount.incrementAndGet();
+        totalWaitNanos.addAndGet(nanos);
+        long max = maxWaitNanos.get();
+        while (nanos > max && !maxWaitNanos.compareAndSet(max, nanos)) {
+            max = maxWaitNanos.get();
+        }
+    }
+
+    private void registerFailure(Exception e) {
+        borrowFailures.incrementAndGet();
+        lastFailure = e.getMessage();
+        lastFailureDate = System.currentTimeMillis();
+        logger.error("Не удалось получить соединение из пула (активных - " + getNumActive() + ", свободных - " + getNumIdle() + ", максимум - " + getMaxTotal() + "): " + e.getMessage());
+    }
+
+    /**
+     * Текущее состояние пула и накопленная статистика
+     */
+    public JSONObject getMetrics() {
+        JSONObject result = new JSONObject();
+        result.put("numActive", getNumActive());
+        result.put("numIdle", getNumIdle());
+        result.put("maxTotal", getMaxTotal());
+        result.put("maxIdle", getMaxIdle());
+        result.put("minIdle", getMinIdle());
+        result.put("maxWaitMillis", getMaxWaitMillis());
+        result.put("removeAbandonedTimeout", getRemoveAbandonedTimeout());
+
+        long count = borrowCount.get();
+        result.put("borrowCount", count);
+        result.put("borrowFailures", borrowFailures.get());
+        result.put("averageWaitMillis", count > 0 ? totalWaitNanos.get() / count / 1000000.0 : 0.0);
+        result.put("maxObservedWaitMillis", maxWaitNanos.get() / 1000000.0);
+        result.put("lastFailure", lastFailure);
+        result.put("lastFailureDate", lastFailureDate);
+        return result;
+    }
+}
@@ -0,0 +1,75 @@
+package db;
+
+import org.springframework.transaction.TransactionStatus;
+import org.springframework.transaction.support.TransactionCallback;
+import org.springframework.transaction.support.TransactionSynchronizationAdapter;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.sql.SQLException;
+
+/**
+ * Единица работы с БД: все запросы моделей внутри work выполняются на одном соединении из пула
+ * и фиксируются одним commit; при исключении изменения откатываются
+ * Шаблоны запросов берут соединение через DataSourceUtils, поэтому модели менять не нужно;
+ * вложенные единицы работы присоединяются к внешней транзакции
+ */
+public class UnitOfWork {
+    /**
+     * Действия, выполняемые в одной транзакции
+     */
+    public interface Work<T> {
+        public T execute() throws SQLException;
+    }
+
+    public static <T> T run(final Work<T> work) throws SQLException {
+        TransactionTemplate transaction = new TransactionTemplate(Database2.getInstance().getTransactionManager());
+        try {
+            return transaction.execute(new TransactionCallback<T>() {
+                @Override
+                public T doInTransaction(TransactionStatus status) {
+                    try {
+                        return work.execute();
+                    } catch (SQLException e) {
+                        throw new WrappedSQLException(e);
+                    }
+                }
+            });
+        } catch (WrappedSQLException e) {
+            throw e.getSqlException();
+        }
+    }
+
+    /**
+     * Выполнение действия после фиксации текущей транзакции или сразу, если транзакции нет
+     * Нужно кэшам в памяти: иначе они могут перечитать или запомнить данные, которые потом откатятся
+     */
+    public static void afterCommit(final Runnable action) {
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronizationAdapter() {
+                @Override
+                public void afterCommit() {
+                    action.run();
+                }
+            });
+        } else {
+            action.run();
+        }
+    }
+
+    /**
+     * Проброс проверяемого SQLException через TransactionCallback, чтобы сработал откат
+     */
+    private static class WrappedSQLException extends RuntimeException {
+        private final SQLException sqlException;
+
+        WrappedSQLException(SQLException sqlException) {
+            super(sqlException);
+            this.sqlException = sqlException;
+        }
+
+        SQLException getSqlException() {
+            return sqlException;
+        }
+    }
+}
@@ -9,6 +9,16 @@ public class ConfigDB {
     private String dbUser;
     private String dbPassword;
     private String poolSize;
+    private String maxTotal;
+    private String maxIdle;
+    private String minIdle;
+    private String maxWaitMillis;
+    private String validationQuery;
+    private String validationQueryTimeout;
+    private String timeBetweenEvictionRunsMillis;
+    private String minEvictableIdleTimeMillis;
+    private String removeAbandonedTimeout;
+    private String maxOpenPreparedStatements;
 
     public String getDriverClassName() {
         return driverClassName;
@@ -49,4 +59,84 @@ public class ConfigDB {
     public void setPoolSize(String poolSize) {
         this.poolSize = poolSize;
     }
+
+    public String getMaxTotal() {
+        return maxTotal;
+    }
+
+    public void setMaxTotal(String maxTotal) {
+        this.maxTotal = maxTotal;
+    }
+
+    public String getMaxIdle() {
+        return maxIdle;
+    }
+
+    public void setMaxIdle(String maxIdle) {
+        this.maxIdle = maxIdle;
+    }
+
+    public String getMinIdle() {
+        return minIdle;
+    }
+
+    public void setMinIdle(String minIdle) {
+        this.minIdle = minIdle;
+    }
+
+    public String getMaxWaitMillis() {
+        return maxWaitMillis;
+    }
+
+    public void setMaxWaitMillis(String maxWaitMillis) {
+        this.maxWaitMillis = maxWaitMillis;
+    }
+
+    public String getValidationQuery() {
+        return validationQuery;
+    }
+
+    public void setValidationQuery(String validationQuery) {
+        this.validationQuery = validationQuery;
+    }
+
+    public String getValidationQueryTimeout() {
+        return validationQueryTimeout;
+    }
+
+    public void setValidationQueryTimeout(String validationQueryTimeout) {
+        this.validationQueryTimeout = validationQueryTimeout;
+    }
+
+    public String getTimeBetweenEvictionRunsMillis() {
+        return timeBetweenEvictionRunsMillis;
+    }
+
+    public void setTimeBetweenEvictionRunsMillis(String timeBetweenEvictionRunsMillis) {
+        this.timeBetweenEvictionRunsMillis = timeBetweenEvictionRunsMillis;
+    }
+
+    public String getMinEvictableIdleTimeMillis() {
+        return minEvictableIdleTimeMillis;
+    }
+
+    public void setMinEvictableIdleTimeMillis(String minEvictableIdleTimeMillis) {
+        this.minEvictableIdleTimeMillis = minEvictableIdleTimeMillis;
+    }
+
+    public String getRemoveAbandonedTimeout() {
+        return removeAbandonedTimeout;
+    }
+
+    public void setRemoveAbandonedTimeout(String removeAbandonedTimeout) {
+        this.removeAbandonedTimeout = removeAbandonedTimeout;
+    }
+
+    public String getMaxOpenPreparedStatements() {
+        return maxOpenPreparedStatements;
+    }
+
+    public void setMaxOpenPreparedStatements(String maxOpenPreparedStatements) {
+        this.maxOpenPreparedStatements = maxOpenPreparedStatements;
+    }
 }
@@ -0,0 +1,177 @@
+package helpers;
+
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+
+/**
+ * Отдача файлов с поддержкой докачки (Range, If-Range) и проверкой ETag
+ * Если контейнер поддерживает sendfile, тело ответа отправляется им без копирования в куче.
+ * Иначе файл передается через FileChannel.transferTo в поток ответа; поток сервлета не является каналом,
+ * поэтому данные идут через буфер в куче (без чтения файла целиком)
+ */
+public class DownloadHelper {
+    private static final String sendfileSupport = "org.apache.tomcat.sendfile.support";
+    private static final String sendfileFilename = "org.apache.tomcat.sendfile.filename";
+    private static final String sendfileStart = "org.apache.tomcat.sendfile.start";
+    private static final String sendfileEnd = "org.apache.tomcat.sendfile.end";
+
+    /**
+     * Отправка файла клиенту
+     * @param file Файл на диске
+     * @param hash Хэш содержимого, используется как строгий ETag
+     * @param fileName Имя файла для Content-Disposition
+     */
+    public static void send(File file, String hash, String fileName, HttpServletRequest request, HttpServletResponse response) throws IOException {
+        long length = file.length();
+        long lastModified = file.lastModified();
+        String etag = "\"" + hash + "\"";
+
+        response.setHeader("ETag", etag);
+        response.setHeader("Accept-Ranges", "bytes");
+        response.setDateHeader("Last-Modified", lastModified);
+
+        // файл у клиента уже актуален
+        if (isEtagMatch(request.getHeader("If-None-Match"), etag)) {
+            response.setStatus(HttpServletResponse.SC_NOT_MODIFIED);
+            return;
+        }
+
+        long start = 0;
+        long end = length - 1;
+        boolean isPartial = false;
+        String range = request.getHeader("Range");
+        if (range != null && isIfRangeMatch(request, etag, lastModified)) {
+            long[] bounds = parseRange(range, length);
+            if (bounds == null) {
+                response.setHeader("Content-Range", "bytes */" + length);
+                response.sendError(HttpServletResponse.SC_REQUESTED_RANGE_NOT_SATISFIABLE);
+                return;
+            }
+            if (bounds.length == 2) {
+                start = bounds[0];
+                end = bounds[1];
+                isPartial = true;
+            }
+        }
+
+        long contentLength = end - start + 1;
+        response.setContentType("application/octet-stream");
+        response.setHeader("Content-Disposition", "attachment; filename=\"" + fileName + "\"");
+        response.setHeader("Content-Length", String.valueOf(contentLength));
+        if (isPartial) {
+            response.setStatus(HttpServletResponse.SC_PARTIAL_CONTENT);
+            response.setHeader("Content-Range", "bytes " + start + "-" + end + "/" + length);
+        }
+        if (contentLength <= 0) {
+            return;
+        }
+
+        // контейнер сам отправит файл через sendfile после выхода из обработчика
+        if (Boolean.TRUE.equals(request.getAttribute(sendfileSupport))) {
+            request.setAttribute(sendfileFilename, file.getCanonicalPath());
+            request.setAttribute(sendfileStart, start);
+            request.setAttribute(sendfileEnd, end + 1);
+            return;
+        }
+
+        // запасной путь: Channels.newChannel копирует данные через буфер в куче
+        try (FileInputStream inputStream = new FileInputStream(file)) {
+            FileChannel channel = inputStream.getChannel();
+            WritableByteChannel output = Channels.newChannel(response.getOutputStream());
+            long position = start;
+            long remaining = contentLength;
+            while (remaining > 0) {
+                long sent = channel.transferTo(position, remaining, output);
+                if (sent <= 0) {
+                    break;
+                }
+                position += sent;
+                remaining -= sent;
+            }
+            response.flushBuffer();
+        }
+    }
+
+    /**
+     * Разбор заголовка Range
+     * Поддерживается один диапазон; для нескольких диапазонов отдается весь файл
+     * @return {start, end}; пустой массив, если диапазон надо проигнорировать; null, если диапазон недопустим
+     */
+    private static long[] parseRange(String range, long length) {
+        if (!range.startsWith("bytes=")) {
+            return new long[0];
+        }
+        String spec = range.substring("bytes=".length()).trim();
+        if (spec.contains(",")) {
+            return new long[0];
+        }
+        int dash = spec.indexOf('-');
+        if (dash < 0) {
+            return null;
+        }
+        try {
+            String from = spec.substring(0, dash).trim();
+            String to = spec.substring(dash + 1).trim();
+            long start;
+            long end;
+            if (from.length() == 0) {
+                // bytes=-N - последние N байт
+                long suffix = Long.parseLong(to);
+                if (suffix <= 0) {
+                    return null;
+                }
+                start = Math.max(0, length - suffix);
+                end = length - 1;
+            } else {
+                start = Long.parseLong(from);
+                end = to.length() == 0 ? length - 1 : Math.min(Long.parseLong(to), length - 1);
+            }
+            if (start < 0 || start >= length || start > end) {
+                return null;
+            }
+            return new long[]{start, end};
+        } catch (NumberFormatException e) {
+            return null;
+        }
+    }
+
+    /**
+     * Проверка If-Range: диапазон учитывается, только если файл не изменился
+     */
+    private static boolean isIfRangeMatch(HttpServletRequest request, String etag, long lastModified) {
+        String ifRange = request.getHeader("If-Range");
+        if (ifRange == null) {
+            return true;
+        }
+        ifRange = ifRange.trim();
+        if (ifRange.startsWith("\"") || ifRange.startsWith("W/")) {
+            // для If-Range допустимо только строгое сравнение
+            return ifRange.equals(etag);
+        }
+        try {
+            long date = request.getDateHeader("If-Range");
+            return date >= 0 && lastModified / 1000 <= date / 1000;
+        } catch (IllegalArgumentException e) {
+            return false;
+        }
+    }
+
+    private static boolean isEtagMatch(String header, String etag) {
+        if (header == null) {
+            return false;
+        }
+        for (String value : header.split(",")) {
+            value = value.trim();
+            if (value.equals("*") || value.equals(etag) || value.equals("W/" + etag)) {
+                return true;
+            }
+        }
+        return false;
+    }
+}
@@ -3,92 +3,120 @@ package helpers;
 import org.apache.commons.codec.binary.Base64InputStream;
 import org.apache.commons.codec.binary.Base64OutputStream;
 
+import config.Settings;
+import helpers.hash.ContentHasher;
+import helpers.hash.HashAlgorithm;
+
 import java.io.*;
-import java.security.MessageDigest;
-import java.security.NoSuchAlgorithmException;
-import java.util.Base64;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
 
 /**
  * Получение хэша файла
  */
 public class FileHelper {
+    private static final int BUFFER_SIZE = 1024 * 1024;
+    private static final char[] HEX_DIGITS = "0123456789abcdef".toCharArray();
+
+    // прямой буфер переиспользуется потоком, чтобы не выделять его на каждый файл
+    private static final ThreadLocal<ByteBuffer> directBuffer = new ThreadLocal<ByteBuffer>() {
+        @Override
+        protected ByteBuffer initialValue() {
+            return ByteBuffer.allocateDirect(BUFFER_SIZE);
+        }
+    };
+
     /**
-     * Взять хэш от файла
+     * Взять хэш от файла алгоритмом из настроек
      * @param filePath Путь до файла
      * @return хэш
      */
-    public static String getHash(String filePath){
-        try {
-            MessageDigest md = MessageDigest.getInstance("MD5");
-            FileInputStream fis = new FileInputStream(filePath);
-            byte[] dataBytes = new byte[1024];
-            int nread = 0;
-            while ((nread = fis.read(dataBytes)) != -1) {
-                md.update(dataBytes, 0, nread);
-            }
-            byte[] mdbytes = md.digest();
+    public static String getHash(String filePath) throws IOException {
+        return getHash(filePath, Settings.getHashAlgorithm());
+    }
 
-            //
-            StringBuilder sb = new StringBuilder();
-            for (int i = 0; i < mdbytes.length; i++) {
-                sb.append(Integer.toString((mdbytes[i] & 0xff) + 0x100, 16).substring(1));
+    /**
+     * Взять хэш от файла
+     * Файл читается через FileChannel в прямой буфер
+     * @param filePath Путь до файла
+     * @param algorithm Алгоритм хэширования
+     * @return хэш
+     */
+    public static String getHash(String filePath, HashAlgorithm algorithm) throws IOException {
+        ContentHasher hasher = algorithm.createHasher();
+        ByteBuffer buffer = directBuffer.get();
+        try (FileChannel channel = FileChannel.open(Paths.get(filePath), StandardOpenOption.READ)) {
+            buffer.clear();
+            while (channel.read(buffer) != -1) {
+                buffer.flip();
+                hasher.update(buffer);
+                buffer.clear();
             }
-            return sb.toString();
-        } catch (NoSuchAlgorithmException e) {
-            e.printStackTrace();
-        } catch (IOException e) {
-            e.printStackTrace();
         }
-        return "";
+        return toHex(hasher.digest());
     }
 
     /**
-     * Взять хэш от файла
+     * Взять хэш от файла алгоритмом из настроек
      * @param stream Input stream файла
      * @return хэш
      */
-    public static String getHash(InputStream stream){
-        try {
-            MessageDigest md = MessageDigest.getInstance("MD5");
-            byte[] dataBytes = new byte[1024];
-            int nread = 0;
-            while ((nread = stream.read(dataBytes)) != -1) {
-                md.update(dataBytes, 0, nread);
-            }
-            byte[] mdbytes = md.digest();
+    public static String getHash(InputStream stream) throws IOException {
+        return getHash(stream, Settings.getHashAlgorithm());
+    }
 
-            StringBuilder sb = new StringBuilder();
-            for (int i = 0; i < mdbytes.length; i++) {
-                sb.append(Integer.toString((mdbytes[i] & 0xff) + 0x100, 16).substring(1));
-            }
-            return sb.toString();
-        } catch (NoSuchAlgorithmException e) {
-            e.printStackTrace();
-        } catch (IOException e) {
-            e.printStackTrace();
+    /**
+     * Взять хэш от файла
+     * @param stream Input stream файла
+     * @param algorithm Алгоритм хэширования
+     * @return хэш
+     */
+    public static String getHash(InputStream stream, HashAlgorithm algorithm) throws IOException {
+        ContentHasher hasher = algorithm.createHasher();
+        byte[] dataBytes = new byte[BUFFER_SIZE];
+        int nread;
+        while ((nread = stream.read(dataBytes)) != -1) {
+            hasher.update(dataBytes, 0, nread);
         }
-        return "";
+        return toHex(hasher.digest());
     }
 
     /**
-     * Взять хэш от файла
+     * Взять хэш от массива байт
      * @param bytes Массив байт
+     * @param algorithm Алгоритм хэширования
      * @return хэш
      */
-    public static String getHash(byte[] bytes){
-        try {
-            MessageDigest md = MessageDigest.getInstance("MD5");
-            byte[] hashBytes = md.digest(bytes);
+    public static String getHash(byte[] bytes, HashAlgorithm algorithm) {
+        ContentHasher hasher = algorithm.createHasher();
+        hasher.update(bytes, 0, bytes.length);
+        return toHex(hasher.digest());
+    }
 
-            StringBuilder sb = new StringBuilder();
-            for (byte b : hashBytes) {
-                sb.append(Integer.toString((b & 0xff) + 0x100, 16).substring(1));
-            }
-            return sb.toString();
-        } catch (NoSuchAlgorithmException e) {
-            e.printStackTrace();
+    /**
+     * Перевод байт в шестнадцатеричную строку
+     * @param bytes Массив байт
+     * @return Строка в нижнем регистре
+     */
+    public static String toHex(byte[] bytes) {
+        char[] result = new char[bytes.length * 2];
+        toHex(bytes, result, 0);
+        return new String(result);
+    }
+
+    /**
+     * Запись байт в шестнадцатеричном виде в готовый массив символов
+     * @param bytes Массив байт
+     * @param out Массив для результата, длиной не меньше offset + bytes.length * 2
+     * @param offset Позиция начала записи
+     */
+    public static void toHex(byte[] bytes, char[] out, int offset) {
+        for (int i = 0; i < bytes.length; i++) {
+            out[offset + i * 2] = HEX_DIGITS[(bytes[i] >> 4) & 0xf];
+            out[offset + i * 2 + 1] = HEX_DIGITS[bytes[i] & 0xf];
         }
-        return "";
     }
 
     public static String getHashPath(String hash) {
@@ -1,6 +1,7 @@
 package helpers;
 
 import models.PropertyModel;
+import org.apache.log4j.Logger;
 import org.boris.pecoff4j.PE;
 import org.boris.pecoff4j.ResourceDirectory;
 import org.boris.pecoff4j.ResourceEntry;
@@ -12,20 +13,48 @@ import org.boris.pecoff4j.resources.StringTable;
 import org.boris.pecoff4j.resources.VersionInfo;
 import org.boris.pecoff4j.util.ResourceHelper;
 
+import java.io.File;
 import java.io.IOException;
 import java.util.HashMap;
 import java.util.Map;
 
 /**
  * Получение свойств из файла
+ * Свойства читаются PEVersionReader без загрузки файла в память; если он не смог разобрать структуру файла,
+ * используется pecoff4j, но только для файлов не больше FALLBACK_MAX_SIZE - он читает файл целиком
  */
 public class PEProperties {
+    private static final Logger logger = Logger.getLogger(PEProperties.class);
+
+    private static final long FALLBACK_MAX_SIZE = 64L * 1024 * 1024;
+
     /**
      * ПОлучение свойств файла
      * @param filePath Путь до файла
-     * @return Набор полученных свойств
+     * @return Набор полученных свойств; null, если файл не PE
      */
     public static Map<Integer, String> parse(String filePath){
+        Map<Integer, String> properties = new HashMap<Integer, String>();
+        try {
+            PEVersionReader reader = PEVersionReader.read(filePath);
+            if (reader == null) {
+                return null;
+            }
+            properties.put(PropertyModel.FILE_BITS, reader.is64() ? "x64" : "x86");
+            for (Map.Entry<String, String> string : reader.getStrings().entrySet()) {
+                put(properties, string.getKey(), string.getValue());
+            }
+            return properties;
+        } catch (IOException e) {
+            logger.warn("Не удалось прочитать ресурс версии " + filePath + ": " + e.getMessage());
+        }
+        if (new File(filePath).length() <= FALLBACK_MAX_SIZE) {
+            return parseWithPecoff(filePath);
+        }
+        return properties;
+    }
+
+    private static Map<Integer, String> parseWithPecoff(String filePath) {
         Map<Integer, String> properties = new HashMap<Integer, String>();
         PE pe = null;
         try {
@@ -48,14 +77,7 @@ public class PEProperties {
                     for (int j = 0; j < table.getCount(); j++) {
                         String key = table.getString(j).getKey();
                         String value = new String(table.getString(j).getValue().getBytes("ISO-8859-1"), "UTF-8");
-                        value = value.replaceAll("[^\\x20-\\x7e]", "").replaceAll("[^\\u0000-\\uFFFF]", "").trim();
-                        int propertyId = PropertyModel.getDefaultProperty(key);
-                        if (propertyId > 0) {
-                            properties.put(propertyId, value);
-                        } else {
-                            System.out.println("Not user properties:");
-                            System.out.println(key + " = " + value);
-                        }
+                        put(properties, key, value);
                     }
                 }
             }
@@ -66,4 +88,17 @@ public class PEProperties {
         }
         return properties;
     }
+
+    /**
+     * Сохранение строки версии, если для ее ключа есть свойство
+     */
+    private static void put(Map<Integer, String> properties, String key, String value) {
+        value = value.replaceAll("[^\\x20-\\x7e]", "").replaceAll("[^\\u0000-\\uFFFF]", "").trim();
+        int propertyId = PropertyModel.getDefaultProperty(key);
+        if (propertyId > 0) {
+            properties.put(propertyId, value);
+        } else {
+            logger.debug("Строка версии без свойства: " + key + " = " + value);
+        }
+    }
 }
@@ -0,0 +1,315 @@
+package helpers;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Чтение ресурса версии (VS_VERSIONINFO) из PE файла без загрузки файла в память
+ * По заголовкам и таблице секций находится каталог ресурсов, из него - ресурс RT_VERSION;
+ * читаются только сами заголовки, записи каталога и байты ресурса, поэтому расход памяти
+ * не зависит от размера файла
+ */
+public class PEVersionReader {
+    private static final int DOS_HEADER_SIZE = 64;
+    private static final int COFF_HEADER_SIZE = 20;
+    private static final int SECTION_HEADER_SIZE = 40;
+    private static final int MAX_SECTIONS = 96;
+    private static final int MAGIC_PE32 = 0x10b;
+    private static final int MAGIC_PE32_PLUS = 0x20b;
+    private static final int RESOURCE_DIRECTORY_INDEX = 2;
+    private static final int RT_VERSION = 16;
+    // ограничения обхода поврежденного каталога ресурсов; три уровня (тип, имя, язык) заданы форматом
+    private static final int MAX_DIRECTORY_ENTRIES = 256;
+    private static final int MAX_VERSION_RESOURCES = 16;
+    // длина VS_VERSIONINFO хранится в WORD
+    private static final int MAX_VERSION_INFO_SIZE = 0xFFFF;
+
+    private final boolean is64;
+    private final Map<String, String> strings;
+
+    private PEVersionReader(boolean is64, Map<String, String> strings) {
+        this.is64 = is64;
+        this.strings = strings;
+    }
+
+    /**
+     * @param filePath Путь до файла
+     * @return Разрядность и строки версии; null, если файл не PE
+     * @throws IOException Ошибка чтения или поврежденная структура файла
+     */
+    public static PEVersionReader read(String filePath) throws IOException {
+        FileChannel channel = FileChannel.open(Paths.get(filePath), StandardOpenOption.READ);
+        try {
+            return read(channel);
+        } finally {
+            channel.close();
+        }
+    }
+
+    private static PEVersionReader read(FileChannel channel) throws IOException {
+        long size = channel.size();
+        if (size < DOS_HEADER_SIZE) {
+            return null;
+        }
+        ByteBuffer dosHeader = readAt(channel, 0, DOS_HEADER_SIZE);
+        if (dosHeader.get(0) != 'M' || dosHeader.get(1) != 'Z') {
+            return null;
+        }
+        long peOffset = dosHeader.getInt(0x3C) & 0xFFFFFFFFL;
+        if (peOffset + 4 + COFF_HEADER_SIZE > size) {
+            return null;
+        }
+        ByteBuffer header = readAt(channel, peOffset, 4 + COFF_HEADER_SIZE);
+        if (header.getInt(0) != 0x00004550) {
+            return null;
+        }
+        int sectionCount = header.getShort(4 + 2) & 0xFFFF;
+        int optionalHeaderSize = header.getShort(4 + 16) & 0xFFFF;
+        if (sectionCount > MAX_SECTIONS) {
+            throw new IOException("Слишком много секций: " + sectionCount);
+        }
+
+        if (optionalHeaderSize < 2) {
+            throw new IOException("Нет необязательного заголовка: " + optionalHeaderSize);
+        }
+
+        long optionalHeaderOffset = peOffset + 4 + COFF_HEADER_SIZE;
+        ByteBuffer optionalHeader = readAt(channel, optionalHeaderOffset, optionalHeaderSize);
+        int magic = optionalHeader.getShort(0) & 0xFFFF;
+        int directoriesOffset;
+        if (magic == MAGIC_PE32) {
+            directoriesOffset = 96;
+        } else if (magic == MAGIC_PE32_PLUS) {
+            directoriesOffset = 112;
+        } else {
+            throw new IOException("Неизвестный тип заголовка: " + magic);
+        }
+        if (optionalHeaderSize < directoriesOffset) {
+            throw new IOException("Необязательный заголовок короче каталогов данных: " + optionalHeaderSize);
+        }
+        boolean is64 = magic == MAGIC_PE32_PLUS;
+        LinkedHashMap<String, String> strings = new LinkedHashMap<String, String>();
+
+        int directoryCount = optionalHeader.getInt(directoriesOffset - 4);
+        int resourceEntry = directoriesOffset + RESOURCE_DIRECTORY_INDEX * 8;
+        if (directoryCount <= RESOURCE_DIRECTORY_INDEX || resourceEntry + 8 > optionalHeaderSize) {
+            return new PEVersionReader(is64, strings);
+        }
+        long resourceRva = optionalHeader.getInt(resourceEntry) & 0xFFFFFFFFL;
+        if (resourceRva == 0) {
+            return new PEVersionReader(is64, strings);
+        }
+
+        ByteBuffer sectionTable = readAt(channel, optionalHeaderOffset + optionalHeaderSize, sectionCount * SECTION_HEADER_SIZE);
+        Sections sections = new Sections(sectionTable, sectionCount);
+        long resourceOffset = sections.toOffset(resourceRva);
+        if (resourceOffset < 0) {
+            throw new IOException("Каталог ресурсов вне секций");
+        }
+
+        List<long[]> versionData = new ArrayList<long[]>();
+        findVersionData(channel, resourceOffset, 0, 0, versionData);
+        for (long[] data : versionData) {
+            long offset = sections.toOffset(data[0]);
+            int length = (int) Math.min(data[1], MAX_VERSION_INFO_SIZE);
+            if (offset < 0 || offset + length > size) {
+                continue;
+            }
+            parseVersionInfo(readAt(channel, offset, length), strings);
+        }
+        return new PEVersionReader(is64, strings);
+    }
+
+    /**
+     * Обход каталога ресурсов: на первом уровне - только тип RT_VERSION, ниже - все имена и языки
+     * @param result Найденные ресурсы: {RVA данных, размер}
+     */
+    private static void findVersionData(FileChannel channel, long resourceOffset, long directoryOffset, int level, List<long[]> result) throws IOException {
+        if (level > 2 || result.size() >= MAX_VERSION_RESOURCES) {
+            return;
+        }
+        ByteBuffer directory = readAt(channel, resourceOffset + directoryOffset, 16);
+        int entryCount = (directory.getShort(12) & 0xFFFF) + (directory.getShort(14) & 0xFFFF);
+        if (entryCount > MAX_DIRECTORY_ENTRIES) {
+            throw new IOException("Слишком много записей в каталоге ресурсов: " + entryCount);
+        }
+        ByteBuffer entries = readAt(channel, resourceOffset + directoryOffset + 16, entryCount * 8);
+        for (int i = 0; i < entryCount; i++) {
+            int name = entries.getInt(i * 8);
+            int offset = entries.getInt(i * 8 + 4);
+            if (level == 0 && name != RT_VERSION) {
+                continue;
+            }
+            if (result.size() >= MAX_VERSION_RESOURCES) {
+                return;
+            }
+            boolean isDirectory = (offset & 0x80000000) != 0;
+            long target = offset & 0x7FFFFFFFL;
+            if (isDirectory) {
+                findVersionData(channel, resourceOffset, target, level + 1, result);
+            } else {
+                ByteBuffer dataEntry = readAt(channel, resourceOffset + target, 8);
+                result.add(new long[]{dataEntry.getInt(0) & 0xFFFFFFFFL, dataEntry.getInt(4) & 0xFFFFFFFFL});
+            }
+        }
+    }
+
+    /**
+     * Разбор VS_VERSIONINFO: строки первой таблицы каждого StringFileInfo
+     */
+    private static void parseVersionInfo(ByteBuffer data, Map<String, String> strings) {
+        Block root = Block.read(data, 0, data.limit());
+        if (root == null || !"VS_VERSION_INFO".equals(root.key)) {
+            return;
+        }
+        for (Block child : root.children(data)) {
+            if (!"StringFileInfo".equals(child.key)) {
+                continue;
+            }
+            List<Block> tables = child.children(data);
+            if (tables.isEmpty()) {
+                continue;
+            }
+            for (Block string : tables.get(0).children(data)) {
+                strings.put(string.key, readString(data, string.valueOffset, string.end));
+            }
+        }
+    }
+
+    /**
+     * Строка UTF-16LE до нулевого символа или до конца блока
+     */
+    private static String readString(ByteBuffer data, int from, int to) {
+        int end = from;
+        while (end + 1 < to && data.getShort(end) != 0) {
+            end += 2;
+        }
+        byte[] bytes = new byte[end - from];
+        for (int i = 0; i < bytes.length; i++) {
+            bytes[i] = data.get(from + i);
+        }
+        return new String(bytes, StandardCharsets.UTF_16LE);
+    }
+
+    private static ByteBuffer readAt(FileChannel channel, long position, int length) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(length).order(ByteOrder.LITTLE_ENDIAN);
+        while (buffer.hasRemaining()) {
+            int read = channel.read(buffer, position + buffer.position());
+            if (read < 0) {
+                throw new IOException("Неожиданный конец файла");
+            }
+        }
+        buffer.flip();
+        return buffer;
+    }
+
+    /**
+     * Перевод RVA в смещение в файле по таблице секций
+     */
+    private static class Sections {
+        private final long[] virtualAddresses;
+        private final long[] virtualSizes;
+        private final long[] rawOffsets;
+
+        private Sections(ByteBuffer table, int count) {
+            virtualAddresses = new long[count];
+            virtualSizes = new long[count];
+            rawOffsets = new long[count];
+            for (int i = 0; i < count; i++) {
+                int base = i * SECTION_HEADER_SIZE;
+                long virtualSize = table.getInt(base + 8) & 0xFFFFFFFFL;
+                long rawSize = table.getInt(base + 16) & 0xFFFFFFFFL;
+                virtualAddresses[i] = table.getInt(base + 12) & 0xFFFFFFFFL;
+                virtualSizes[i] = Math.max(virtualSize, rawSize);
+                rawOffsets[i] = table.getInt(base + 20) & 0xFFFFFFFFL;
+            }
+        }
+
+        /**
+         * @return Смещение в файле или -1, если адрес не попадает ни в одну секцию
+         */
+        private long toOffset(long rva) {
+            for (int i = 0; i < virtualAddresses.length; i++) {
+                if (rva >= virtualAddresses[i] && rva < virtualAddresses[i] + virtualSizes[i]) {
+                    return rva - virtualAddresses[i] + rawOffsets[i];
+                }
+            }
+            return -1;
+        }
+    }
+
+    /**
+     * Блок структуры версии: wLength, wValueLength, wType, szKey, выравнивание, значение, дочерние блоки
+     */
+    private static class Block {
+        private String key;
+        private int valueOffset;
+        private int childrenOffset;
+        private int end;
+
+        private static Block read(ByteBuffer data, int offset, int limit) {
+            if (offset + 6 > limit) {
+                return null;
+            }
+            int length = data.getShort(offset) & 0xFFFF;
+            int valueLength = data.getShort(offset + 2) & 0xFFFF;
+            int type = data.getShort(offset + 4) & 0xFFFF;
+            if (length < 6 || offset + length > limit) {
+                return null;
+            }
+            Block block = new Block();
+            block.end = offset + length;
+            int keyEnd = offset + 6;
+            while (keyEnd + 1 < block.end && data.getShort(keyEnd) != 0) {
+                keyEnd += 2;
+            }
+            block.key = readString(data, offset + 6, keyEnd);
+            block.valueOffset = align(keyEnd + 2);
+            // для текстовых значений длина задана в символах
+            int valueBytes = type == 1 ? valueLength * 2 : valueLength;
+            block.childrenOffset = Math.min(align(block.valueOffset + valueBytes), block.end);
+            return block;
+        }
+
+        private List<Block> children(ByteBuffer data) {
+            List<Block> result = new ArrayList<Block>();
+            int offset = childrenOffset;
+            while (offset < end) {
+                Block child = read(data, offset, end);
+                if (child == null) {
+                    break;
+                }
+                result.add(child);
+                offset = align(child.end);
+            }
+            return result;
+        }
+
+        private static int align(int offset) {
+            return (offset + 3) & ~3;
+        }
+    }
+
+    /**
+     * @return true для PE32+ (64 бита)
+     */
+    public boolean is64() {
+        return is64;
+    }
+
+    /**
+     * @return Строки версии: ключ (например ProductName) - значение
+     */
+    public Map<String, String> getStrings() {
+        return strings;
+    }
+}
@@ -0,0 +1,69 @@
+package helpers;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+
+/**
+ * Курсор постраничного вывода по ключу (keyset)
+ * Хранит ключ сортировки крайней строки страницы и направление: следующая страница - строки после ключа,
+ * предыдущая - строки перед ним. Для клиента это непрозрачная строка, безопасная для URL
+ */
+public class PageCursor {
+    private static final String FORWARD = "n";
+    private static final String BACKWARD = "p";
+
+    private final boolean isBackward;
+    private final long[] key;
+
+    private PageCursor(boolean isBackward, long[] key) {
+        this.isBackward = isBackward;
+        this.key = key;
+    }
+
+    /**
+     * Разбор курсора из запроса
+     * @param value Строка курсора
+     * @param keyLength Количество частей ключа сортировки списка
+     * @return Курсор или null для первой страницы, в том числе если строка повреждена
+     */
+    public static PageCursor parse(String value, int keyLength) {
+        if (value == null || value.length() == 0) {
+            return null;
+        }
+        try {
+            String decoded = new String(Base64.getUrlDecoder().decode(value), StandardCharsets.UTF_8);
+            String[] parts = decoded.split(":");
+            if (parts.length != keyLength + 1 || !(FORWARD.equals(parts[0]) || BACKWARD.equals(parts[0]))) {
+                return null;
+            }
+            long[] key = new long[keyLength];
+            for (int i = 0; i < keyLength; i++) {
+                key[i] = Long.parseLong(parts[i + 1]);
+            }
+            return new PageCursor(BACKWARD.equals(parts[0]), key);
+        } catch (IllegalArgumentException e) {
+            return null;
+        }
+    }
+
+    /**
+     * @param isBackward Курсор на предыдущую страницу
+     * @param key Ключ сортировки крайней строки текущей страницы
+     * @return Строка курсора
+     */
+    public static String encode(boolean isBackward, long[] key) {
+        StringBuilder value = new StringBuilder(isBackward ? BACKWARD : FORWARD);
+        for (long part : key) {
+            value.append(':').append(part);
+        }
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(value.toString().getBytes(StandardCharsets.UTF_8));
+    }
+
+    public boolean isBackward() {
+        return isBackward;
+    }
+
+    public long getKey(int index) {
+        return key[index];
+    }
+}
@@ -0,0 +1,89 @@
+package helpers;
+
+import helpers.hash.HashAlgorithm;
+import models.MetadataCacheModel;
+import models.TriggerRegistry;
+import org.apache.log4j.Logger;
+import org.springframework.dao.DataAccessException;
+
+import java.io.IOException;
+import java.util.Map;
+
+/**
+ * Извлечение свойств файла: ресурс версии PE, для остальных файлов и при ошибке разбора - триггер по расширению
+ * Результат сохраняется в metadataCache по содержимому файла, поэтому повторная загрузка того же файла
+ * (например, из принятой заявки) не разбирает его заново
+ */
+public class PropertyExtractor {
+    private static final Logger logger = Logger.getLogger(PropertyExtractor.class);
+
+    /**
+     * Версия разбора PE; увеличивается при изменении PEProperties/PEVersionReader, чтобы старые записи кэша устарели
+     */
+    public static final String PE_VERSION = "pe-3";
+
+    /**
+     * Версия разборщика для расширения: разбор PE и текущие команда и выражение триггера
+     * @param extension Расширение файла
+     */
+    public static String getVersion(String extension) {
+        TriggerRegistry.CompiledTrigger trigger = TriggerRegistry.get().findByExtension(extension);
+        if (trigger == null) {
+            return PE_VERSION;
+        }
+        return PE_VERSION + "/t" + Integer.toHexString(trigger.getDefinition().hashCode());
+    }
+
+    /**
+     * Свойства файла из кэша или, если записи нет или она устарела, разбором файла
+     * @param extension Расширение файла
+     * @param filePath Путь до файла
+     * @param hash Хэш содержимого
+     * @param algorithm Алгоритм хэша
+     * @param fileSize Размер файла
+     * @return Набор полученных свойств; null, если свойств нет
+     */
+    public static Map<Integer, String> getProperties(String extension, String filePath, String hash, HashAlgorithm algorithm, long fileSize) {
+        String version = getVersion(extension);
+        try {
+            Map<Integer, String> cached = MetadataCacheModel.find(hash, algorithm, fileSize, version);
+            if (cached != null) {
+                return cached;
+            }
+        } catch (DataAccessException e) {
+            logger.warn("Не удалось прочитать кэш свойств файла: " + e.getMessage());
+        }
+        Map<Integer, String> properties;
+        try {
+            properties = extract(extension, filePath);
+        } catch (IOException e) {
+            // триггер не выполнился; результат не сохраняется, чтобы файл разобрался при следующей попытке
+            logger.warn("Не удалось получить свойства файла " + filePath + ": " + e.getMessage());
+            return null;
+        }
+        try {
+            MetadataCacheModel.save(hash, algorithm, fileSize, version, properties);
+        } catch (DataAccessException e) {
+            logger.warn("Не удалось сохранить кэш свойств файла: " + e.getMessage());
+        }
+        return properties;
+    }
+
+    /**
+     * Разбор файла без кэша
+     * @param extension Расширение файла
+     * @param filePath Путь до файла
+     * @throws IOException Команда триггера не выполнилась
+     */
+    public static Map<Integer, String> extract(String extension, String filePath) throws IOException {
+        try {
+            Map<Integer, String> properties = PEProperties.parse(filePath);
+            if (properties != null) {
+                return properties;
+            }
+        } catch (RuntimeException e) {
+            logger.warn("Ошибка разбора PE " + filePath + ": " + e.getMessage());
+        }
+        return TriggerHelper.getProperties(extension, filePath);
+    }
+}
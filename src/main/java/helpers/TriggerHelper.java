@@ -1,55 +1,84 @@
 package helpers;
 
-import exceptions.InternalException;
-import models.FileTriggerModel;
+import helpers.process.ProcessResult;
+import helpers.process.ProcessRunner;
 import models.PropertyModel;
+import models.TriggerRegistry;
+import org.apache.log4j.Logger;
 
-import java.io.BufferedReader;
-import java.io.InputStreamReader;
+import java.io.IOException;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 import java.util.regex.Matcher;
-import java.util.regex.Pattern;
 
+/**
+ * Получение свойств файла внешней командой (триггером), заданной для его расширения
+ */
 public class TriggerHelper {
+    private static final Logger logger = Logger.getLogger(TriggerHelper.class);
+
     public final static String titleKey = "title";
     public final static String versionKey = "version";
     public final static String descriptionKey = "description"; // 1
     public final static String copyrightKey = "copyright"; // 5
     public final static String authorKey = "author"; // 6
 
-    public static Map<Integer, String> getProperties(String extension, String filePath) {
-        FileTriggerModel trigger = FileTriggerModel.findByExtension(extension);
+    /**
+     * Свойства файла, полученные командой триггера для его расширения
+     * @param extension Расширение файла
+     * @param filePath Путь до файла; передается команде одним аргументом
+     * @return Набор полученных свойств; null, если триггера для расширения нет
+     * @throws IOException Команда не запустилась, не уложилась во время или была отклонена пулом;
+     *                     такой результат не окончательный и не должен попадать в кэш свойств
+     */
+    public static Map<Integer, String> getProperties(String extension, String filePath) throws IOException {
+        TriggerRegistry.CompiledTrigger trigger = TriggerRegistry.get().findByExtension(extension);
         if (trigger != null) {
             Map<Integer, String> properties = new HashMap<Integer, String>();
 
-            String fileCommand = trigger.getCommand().replace("{filePath}", filePath);
-            String commandResult = executeCommand(fileCommand);
+            List<String> command = trigger.getCommand(filePath);
+            if (command.isEmpty() || trigger.getPattern() == null) {
+                return properties;
+            }
+            ProcessResult result = ProcessRunner.getInstance().run(extension, command, trigger.getTimeout() * 1000L);
+            switch (result.getStatus()) {
+                case OK:
+                    break;
+                case FAILED:
+                    logger.warn("Триггер для расширения " + extension + " завершился с кодом " + result.getExitCode() + " на файле " + filePath + ": " + abbreviate(result.getStderr()));
+                    return properties;
+                case TIMEOUT:
+                    throw new IOException("Триггер для расширения " + extension + " не завершился за " + trigger.getTimeout() + " с");
+                default:
+                    throw new IOException("Триггер для расширения " + extension + " не выполнен: " + result.getStderr());
+            }
+            if (result.isTruncated()) {
+                logger.warn("Вывод триггера для расширения " + extension + " обрезан до " + ProcessRunner.MAX_OUTPUT_SIZE + " байт");
+            }
+            String commandResult = result.getStdout().replace("\r\n", "\n");
 
-            if (commandResult != null) {
-                Pattern pattern = Pattern.compile(trigger.getRegexp());
-                Matcher matcher = pattern.matcher(commandResult);
-                if (matcher.find()) {
-                    try {
-                        properties.put(PropertyModel.PRODUCT_NAME, matcher.group(titleKey));
-                    } catch (Exception ignored) {
-                    }
-                    try {
-                        properties.put(PropertyModel.FILE_VERSION, matcher.group(versionKey));
-                    } catch (Exception ignored) {
-                    }
-                    try {
-                        properties.put(1, matcher.group(descriptionKey));
-                    } catch (Exception ignored) {
-                    }
-                    try {
-                        properties.put(5, matcher.group(copyrightKey));
-                    } catch (Exception ignored) {
-                    }
-                    try {
-                        properties.put(6, matcher.group(authorKey));
-                    } catch (Exception ignored) {
-                    }
+            Matcher matcher = trigger.getPattern().matcher(commandResult);
+            if (matcher.find()) {
+                try {
+                    properties.put(PropertyModel.PRODUCT_NAME, matcher.group(titleKey));
+                } catch (Exception ignored) {
+                }
+                try {
+                    properties.put(PropertyModel.FILE_VERSION, matcher.group(versionKey));
+                } catch (Exception ignored) {
+                }
+                try {
+                    properties.put(1, matcher.group(descriptionKey));
+                } catch (Exception ignored) {
+                }
+                try {
+                    properties.put(5, matcher.group(copyrightKey));
+                } catch (Exception ignored) {
+                }
+                try {
+                    properties.put(6, matcher.group(authorKey));
+                } catch (Exception ignored) {
                 }
             }
 
@@ -58,29 +87,8 @@ public class TriggerHelper {
         return null;
     }
 
-
-
-    private static String executeCommand(String command) {
-        StringBuffer output = new StringBuffer();
-        Process p;
-        try {
-            p = Runtime.getRuntime().exec(command);
-            p.waitFor();
-            BufferedReader reader = new BufferedReader(new InputStreamReader(p.getInputStream()));
-
-            StringBuilder sb = new StringBuilder();
-            String line = "";
-            while ((line = reader.readLine()) != null) {
-                String value = new String(line.getBytes("ISO-8859-1"), "UTF-8");
-                sb.append(value).append("\n");
-            }
-            reader.close();
-            return sb.toString();
-
-        } catch (Exception e) {
-            e.printStackTrace();
-//            throw new InternalException(e.getMessage());
-        }
-        return null;
+    private static String abbreviate(String text) {
+        text = text.trim();
+        return text.length() > 500 ? text.substring(0, 500) + "..." : text;
     }
 }
@@ -0,0 +1,125 @@
+package helpers;
+
+import helpers.hash.ContentHasher;
+import helpers.hash.HashAlgorithm;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+
+/**
+ * Загруженный файл во временной директории хранилища
+ * Хэш считается во время записи на диск (spool), поэтому содержимое загрузки читается один раз
+ */
+public class UploadedFile {
+    public static final String tempDir = ".tmp";
+    private static final int BUFFER_SIZE = 1024 * 1024;
+
+    private File file;
+    private String hash;
+    private HashAlgorithm hashAlgorithm;
+    private long size;
+    private boolean isMoved = false;
+
+    private UploadedFile(File file, String hash, HashAlgorithm hashAlgorithm, long size) {
+        this.file = file;
+        this.hash = hash;
+        this.hashAlgorithm = hashAlgorithm;
+        this.size = size;
+    }
+
+    /**
+     * Сохранение потока в файл с одновременным подсчетом хэша, поэтому содержимое читается один раз
+     * Файл создается во временной директории хранилища, чтобы перенос в итоговую директорию был атомарным
+     * @param inputStream Поток загружаемого файла; закрывается
+     * @param target Файл во временной директории хранилища
+     * @param algorithm Алгоритм хэширования
+     * @return Хэш содержимого
+     */
+    public static String spool(InputStream inputStream, File target, HashAlgorithm algorithm) throws IOException {
+        ContentHasher hasher = algorithm.createHasher();
+        byte[] buffer = new byte[BUFFER_SIZE];
+        try (OutputStream output = new FileOutputStream(target)) {
+            int n;
+            while ((n = inputStream.read(buffer)) != -1) {
+                hasher.update(buffer, 0, n);
+                output.write(buffer, 0, n);
+            }
+        } catch (IOException e) {
+            target.delete();
+            throw e;
+        } finally {
+            inputStream.close();
+        }
+        return FileHelper.toHex(hasher.digest());
+    }
+
+    /**
+     * Временный файл с заранее известным хэшем (например, расшифрованный файл заявки)
+     * @param file Файл во временной директории
+     * @param hash Хэш содержимого
+     * @param algorithm Алгоритм, которым получен хэш
+     */
+    public static UploadedFile adopt(File file, String hash, HashAlgorithm algorithm) {
+        return new UploadedFile(file, hash, algorithm, file.length());
+    }
+
+    /**
+     * Временная директория внутри хранилища; создается при необходимости
+     * @param uploadRootDir Корневая директория хранилища
+     */
+    public static File getTempDir(String uploadRootDir) {
+        File dir = new File(uploadRootDir + File.separator + tempDir);
+        if (!dir.exists()) {
+            dir.mkdirs();
+        }
+        return dir;
+    }
+
+    /**
+     * Атомарный перенос временного файла на итоговое место
+     * @param target Итоговый путь до файла
+     */
+    public void moveTo(File target) throws IOException {
+        File dir = target.getParentFile();
+        if (!dir.exists()) {
+            dir.mkdirs();
+        }
+        Files.move(file.toPath(), target.toPath(), StandardCopyOption.ATOMIC_MOVE);
+        file = target;
+        isMoved = true;
+    }
+
+    /**
+     * Удаление временного файла, если он не был перенесен
+     */
+    public void discard() {
+        if (!isMoved && file.exists()) {
+            file.delete();
+        }
+    }
+
+    public File getFile() {
+        return file;
+    }
+
+    public String getPath() {
+        return file.getPath();
+    }
+
+    public String getHash() {
+        return hash;
+    }
+
+    public HashAlgorithm getHashAlgorithm() {
+        return hashAlgorithm;
+    }
+
+    public long getSize() {
+        return size;
+    }
+}
@@ -0,0 +1,55 @@
+package helpers;
+
+/**
+ * Ключ сортировки версий
+ * Версия разбирается на числовые части, каждая часть дополняется нулями до одной ширины,
+ * поэтому ключи сравниваются как строки и сортируются по индексу: 9.1 < 10.0.2
+ */
+public class VersionHelper {
+    public static final int PARTS = 5;
+    public static final int PART_WIDTH = 10;
+    public static final int KEY_LENGTH = PARTS * PART_WIDTH;
+
+    private static final long MAX_PART = 9999999999L;
+
+    /**
+     * Ключ сортировки для версии
+     * В каждой части учитываются только начальные цифры ("3-beta" - это 3); части после пятой отбрасываются
+     * @param version Версия файла
+     * @return Строка из KEY_LENGTH цифр
+     */
+    public static String toKey(String version) {
+        char[] key = new char[KEY_LENGTH];
+        int part = 0;
+        long value = 0;
+        boolean isDigits = true;
+        if (version != null) {
+            for (int i = 0; i < version.length() && part < PARTS; i++) {
+                char c = version.charAt(i);
+                if (c == '.') {
+                    writePart(key, part, value);
+                    part++;
+                    value = 0;
+                    isDigits = true;
+                } else if (isDigits && c >= '0' && c <= '9') {
+                    value = Math.min(MAX_PART, value * 10 + (c - '0'));
+                } else {
+                    isDigits = false;
+                }
+            }
+        }
+        for (; part < PARTS; part++) {
+            writePart(key, part, value);
+            value = 0;
+        }
+        return new String(key);
+    }
+
+    private static void writePart(char[] key, int part, long value) {
+        int end = (part + 1) * PART_WIDTH;
+        for (int i = end - 1; i >= part * PART_WIDTH; i--) {
+            key[i] = (char) ('0' + value % 10);
+            value /= 10;
+        }
+    }
+}
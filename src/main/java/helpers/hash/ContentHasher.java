@@ -0,0 +1,25 @@
+package helpers.hash;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Потоковый подсчет хэша содержимого файла
+ */
+public interface ContentHasher {
+    /**
+     * Добавление части данных
+     */
+    public void update(byte[] bytes, int offset, int length);
+
+    /**
+     * Добавление части данных из буфера; позиция буфера сдвигается до limit
+     */
+    public void update(ByteBuffer buffer);
+
+    /**
+     * Получение итогового хэша; после вызова хэшер сбрасывается
+     */
+    public byte[] digest();
+
+    public HashAlgorithm getAlgorithm();
+}
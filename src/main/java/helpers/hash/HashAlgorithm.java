@@ -0,0 +1,53 @@
+package helpers.hash;
+
+/**
+ * Поддерживаемые алгоритмы хэширования содержимого
+ * MD5 оставлен для совместимости с уже загруженными файлами,
+ * XXH64 - быстрый некриптографический хэш для поиска дубликатов
+ */
+public enum HashAlgorithm {
+    MD5("md5"),
+    SHA256("sha256"),
+    XXH64("xxh64");
+
+    private final String title;
+
+    HashAlgorithm(String title) {
+        this.title = title;
+    }
+
+    /**
+     * Новый экземпляр хэшера для алгоритма
+     */
+    public ContentHasher createHasher() {
+        switch (this) {
+            case SHA256:
+                return new MessageDigestHasher(this, "SHA-256");
+            case XXH64:
+                return new XxHash64Hasher();
+            default:
+                return new MessageDigestHasher(this, "MD5");
+        }
+    }
+
+    /**
+     * Название алгоритма, хранимое в БД
+     */
+    public String getTitle() {
+        return title;
+    }
+
+    /**
+     * Поиск алгоритма по названию из БД; для пустого или неизвестного значения - MD5
+     */
+    public static HashAlgorithm fromTitle(String title) {
+        if (title != null) {
+            for (HashAlgorithm algorithm : values()) {
+                if (algorithm.title.equalsIgnoreCase(title.trim())) {
+                    return algorithm;
+                }
+            }
+        }
+        return MD5;
+    }
+}
@@ -0,0 +1,39 @@
+package helpers.hash;
+
+import java.nio.ByteBuffer;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+
+/**
+ * Хэшер поверх стандартного MessageDigest (MD5, SHA-256)
+ */
+public class MessageDigestHasher implements ContentHasher {
+    private final HashAlgorithm algorithm;
+    private final MessageDigest md;
+
+    public MessageDigestHasher(HashAlgorithm algorithm, String digestName) {
+        this.algorithm = algorithm;
+        try {
+            this.md = MessageDigest.getInstance(digestName);
+        } catch (NoSuchAlgorithmException e) {
+            // MD5 и SHA-256 обязаны поддерживаться любой JVM
+            throw new IllegalStateException(e);
+        }
+    }
+
+    public void update(byte[] bytes, int offset, int length) {
+        md.update(bytes, offset, length);
+    }
+
+    public void update(ByteBuffer buffer) {
+        md.update(buffer);
+    }
+
+    public byte[] digest() {
+        return md.digest();
+    }
+
+    public HashAlgorithm getAlgorithm() {
+        return algorithm;
+    }
+}
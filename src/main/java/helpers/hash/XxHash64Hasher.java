@@ -0,0 +1,139 @@
+package helpers.hash;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+/**
+ * Потоковая реализация XXH64 (seed = 0)
+ * Данные читаются из буфера по 8 байт без промежуточного копирования
+ */
+public class XxHash64Hasher implements ContentHasher {
+    private static final long PRIME1 = 0x9E3779B185EBCA87L;
+    private static final long PRIME2 = 0xC2B2AE3D27D4EB4FL;
+    private static final long PRIME3 = 0x165667B19E3779F9L;
+    private static final long PRIME4 = 0x85EBCA77C2B2AE63L;
+    private static final long PRIME5 = 0x27D4EB2F165667C5L;
+    private static final int STRIPE = 32;
+
+    private long v1;
+    private long v2;
+    private long v3;
+    private long v4;
+    private long totalLength;
+    // хвост данных, не набравший полного блока в 32 байта
+    private final byte[] memory = new byte[STRIPE];
+    private final ByteBuffer memoryBuffer = ByteBuffer.wrap(memory).order(ByteOrder.LITTLE_ENDIAN);
+    private int memorySize;
+
+    public XxHash64Hasher() {
+        reset();
+    }
+
+    private void reset() {
+        v1 = PRIME1 + PRIME2;
+        v2 = PRIME2;
+        v3 = 0;
+        v4 = -PRIME1;
+        totalLength = 0;
+        memorySize = 0;
+    }
+
+    public void update(byte[] bytes, int offset, int length) {
+        update(ByteBuffer.wrap(bytes, offset, length));
+    }
+
+    public void update(ByteBuffer buffer) {
+        ByteOrder order = buffer.order();
+        buffer.order(ByteOrder.LITTLE_ENDIAN);
+        int length = buffer.remaining();
+        totalLength += length;
+
+        if (memorySize + length < STRIPE) {
+            buffer.get(memory, memorySize, length);
+            memorySize += length;
+            buffer.order(order);
+            return;
+        }
+
+        if (memorySize > 0) {
+            buffer.get(memory, memorySize, STRIPE - memorySize);
+            v1 = round(v1, memoryBuffer.getLong(0));
+            v2 = round(v2, memoryBuffer.getLong(8));
+            v3 = round(v3, memoryBuffer.getLong(16));
+            v4 = round(v4, memoryBuffer.getLong(24));
+            memorySize = 0;
+        }
+
+        while (buffer.remaining() >= STRIPE) {
+            v1 = round(v1, buffer.getLong());
+            v2 = round(v2, buffer.getLong());
+            v3 = round(v3, buffer.getLong());
+            v4 = round(v4, buffer.getLong());
+        }
+
+        memorySize = buffer.remaining();
+        buffer.get(memory, 0, memorySize);
+        buffer.order(order);
+    }
+
+    public byte[] digest() {
+        long hash;
+        if (totalLength >= STRIPE) {
+            hash = Long.rotateLeft(v1, 1) + Long.rotateLeft(v2, 7) + Long.rotateLeft(v3, 12) + Long.rotateLeft(v4, 18);
+            hash = mergeRound(hash, v1);
+            hash = mergeRound(hash, v2);
+            hash = mergeRound(hash, v3);
+            hash = mergeRound(hash, v4);
+        } else {
+            hash = v3 + PRIME5;
+        }
+        hash += totalLength;
+
+        int position = 0;
+        while (position + 8 <= memorySize) {
+            hash ^= round(0, memoryBuffer.getLong(position));
+            hash = Long.rotateLeft(hash, 27) * PRIME1 + PRIME4;
+            position += 8;
+        }
+        if (position + 4 <= memorySize) {
+            hash ^= (memoryBuffer.getInt(position) & 0xFFFFFFFFL) * PRIME1;
+            hash = Long.rotateLeft(hash, 23) * PRIME2 + PRIME3;
+            position += 4;
+        }
+        while (position < memorySize) {
+            hash ^= (memory[position] & 0xFF) * PRIME5;
+            hash = Long.rotateLeft(hash, 11) * PRIME1;
+            position++;
+        }
+
+        hash ^= hash >>> 33;
+        hash *= PRIME2;
+        hash ^= hash >>> 29;
+        hash *= PRIME3;
+        hash ^= hash >>> 32;
+
+        reset();
+        // каноническое представление XXH64 - big-endian
+        byte[] result = new byte[8];
+        for (int i = 7; i >= 0; i--) {
+            result[i] = (byte) hash;
+            hash >>>= 8;
+        }
+        return result;
+    }
+
+    public HashAlgorithm getAlgorithm() {
+        return HashAlgorithm.XXH64;
+    }
+
+    private static long round(long acc, long input) {
+        acc += input * PRIME2;
+        acc = Long.rotateLeft(acc, 31);
+        return acc * PRIME1;
+    }
+
+    private static long mergeRound(long acc, long value) {
+        acc ^= round(0, value);
+        return acc * PRIME1 + PRIME4;
+    }
+}
@@ -0,0 +1,247 @@
+package helpers.ingest;
+
+import config.Settings;
+import db.UnitOfWork;
+import helpers.FileHelper;
+import helpers.PropertyExtractor;
+import helpers.hash.HashAlgorithm;
+import models.ExtractionJobModel;
+import models.FileVersionModel;
+import models.FileVersionPropertyModel;
+import models.PropertyModel;
+import org.apache.commons.io.FilenameUtils;
+import org.apache.log4j.Logger;
+
+import java.io.File;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Фоновое повторное извлечение свойств уже загруженных версий
+ * Версии обходятся пачками по возрастанию id; свойства извлекаются из файлов в хранилище (через кэш свойств),
+ * отличия записываются в fileVersionProperty вместе с контрольной точкой задания одной транзакцией.
+ * После каждой пачки задание делает паузу не короче времени обработки пачки, чтобы не занимать сервер целиком
+ */
+public class ExtractionJobRunner {
+    private static final Logger logger = Logger.getLogger(ExtractionJobRunner.class);
+
+    public static final int BATCH_SIZE = 100;
+    private static final long MIN_PAUSE_MILLIS = 100;
+
+    private static ExecutorService executor;
+
+    private static synchronized ExecutorService getExecutor() {
+        if (executor == null) {
+            executor = Executors.newSingleThreadExecutor(new ThreadFactory() {
+                @Override
+                public Thread newThread(Runnable runnable) {
+                    Thread thread = new Thread(runnable, "extraction-job");
+                    thread.setDaemon(true);
+                    return thread;
+                }
+            });
+        }
+        return executor;
+    }
+
+    /**
+     * Запуск задания; одновременно выполняется только одно задание
+     * Если последнее задание было остановлено, оно продолжается с контрольной точки, а не начинается заново
+     * @param userId Служебный номер пользователя, запустившего задание
+     * @return Id нового, продолженного или уже выполняющегося задания
+     */
+    public static synchronized int start(int userId) throws SQLException {
+        List<ExtractionJobModel> unfinished = ExtractionJobModel.findUnfinished();
+        if (!unfinished.isEmpty()) {
+            return unfinished.get(0).getId();
+        }
+        ExtractionJobModel latest = ExtractionJobModel.findLatest();
+        if (latest != null && ExtractionJobModel.changeStatus(latest.getId(), ExtractionJobModel.QUEUED, ExtractionJobModel.STOPPED)) {
+            logger.info("Продолжено задание на извлечение свойств id=" + latest.getId() + " с версии id=" + latest.getLastVersionId());
+            submit(latest.getId());
+            return latest.getId();
+        }
+        ExtractionJobModel job = new ExtractionJobModel();
+        job.setUserId(userId);
+        job.setTotalCount(FileVersionModel.getCount());
+        if (!job.add()) {
+            throw new SQLException("Ошибка при создании задания");
+        }
+        submit(job.getId());
+        return job.getId();
+    }
+
+    /**
+     * Остановка задания; текущая пачка будет дописана
+     * @return true, если задание еще выполнялось
+     */
+    public static boolean stop(int jobId) {
+        return ExtractionJobModel.changeStatus(jobId, ExtractionJobModel.STOPPED, ExtractionJobModel.QUEUED, ExtractionJobModel.RUNNING);
+    }
+
+    /**
+     * Возобновление незавершенных заданий с контрольной точки при старте приложения
+     */
+    public static void resume() {
+        for (ExtractionJobModel job : ExtractionJobModel.findUnfinished()) {
+            logger.info("Возобновлено задание на извлечение свойств id=" + job.getId() + " с версии id=" + job.getLastVersionId());
+            submit(job.getId());
+        }
+    }
+
+    private static void submit(final int jobId) {
+        try {
+            getExecutor().submit(new Runnable() {
+                @Override
+                public void run() {
+                    process(jobId);
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            // задание останется незавершенным и будет возобновлено при следующем запуске
+            logger.warn("Задание на извлечение свойств id=" + jobId + " не поставлено в очередь: сервер останавливается");
+        }
+    }
+
+    private static void process(int jobId) {
+        try {
+            ExtractionJobModel job = ExtractionJobModel.findById(jobId);
+            if (!ExtractionJobModel.changeStatus(jobId, ExtractionJobModel.RUNNING, ExtractionJobModel.QUEUED, ExtractionJobModel.RUNNING)) {
+                return;
+            }
+            String uploadPath = Settings.getUploadPath();
+            int lastVersionId = job.getLastVersionId();
+            while (true) {
+                if (Thread.currentThread().isInterrupted()) {
+                    // сервер останавливается; задание продолжится с контрольной точки
+                    return;
+                }
+                if (ExtractionJobModel.STOPPED.equals(ExtractionJobModel.findById(jobId).getStatus())) {
+                    logger.info("Задание на извлечение свойств id=" + jobId + " остановлено на версии id=" + lastVersionId);
+                    return;
+                }
+                long start = System.currentTimeMillis();
+                List<FileVersionModel> versions = FileVersionModel.findBatchAfter(lastVersionId, BATCH_SIZE);
+                if (versions.isEmpty()) {
+                    ExtractionJobModel.changeStatus(jobId, ExtractionJobModel.DONE, ExtractionJobModel.RUNNING);
+                    logger.info("Задание на извлечение свойств id=" + jobId + " выполнено");
+                    return;
+                }
+                processBatch(jobId, uploadPath, versions);
+                lastVersionId = versions.get(versions.size() - 1).getId();
+                try {
+                    Thread.sleep(Math.max(MIN_PAUSE_MILLIS, System.currentTimeMillis() - start));
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    return;
+                }
+            }
+        } catch (Exception e) {
+            logger.error("Ошибка при выполнении задания на извлечение свойств id=" + jobId, e);
+            try {
+                ExtractionJobModel.changeStatus(jobId, ExtractionJobModel.FAILED, ExtractionJobModel.QUEUED, ExtractionJobModel.RUNNING);
+            } catch (Exception updateException) {
+                logger.error("Не удалось сохранить статус задания id=" + jobId, updateException);
+            }
+        }
+    }
+
+    /**
+     * Извлечение свойств пачки версий и запись отличий
+     * Разбор файлов (в том числе внешние команды триггеров) выполняется до открытия транзакции
+     */
+    private static void processBatch(final int jobId, String uploadPath, final List<FileVersionModel> versions) throws SQLException {
+        LinkedHashMap<Integer, Map<Integer, String>> extracted = new LinkedHashMap<Integer, Map<Integer, String>>();
+        int errorCount = 0;
+        for (FileVersionModel version : versions) {
+            File file = new File(uploadPath + File.separator + FileHelper.getHashPath(version.getHash()) + File.separator + version.getFileName());
+            if (!file.isFile()) {
+                errorCount++;
+                continue;
+            }
+            try {
+                Map<Integer, String> properties = PropertyExtractor.getProperties(FilenameUtils.getExtension(version.getFileName()),
+                        file.getPath(), version.getHash(), HashAlgorithm.fromTitle(version.getHashAlgorithm()), version.getFileSize());
+                extracted.put(version.getId(), properties == null ? new HashMap<Integer, String>() : properties);
+            } catch (Exception e) {
+                logger.warn("Не удалось извлечь свойства версии id=" + version.getId() + ": " + e.getMessage());
+                errorCount++;
+            }
+        }
+
+        // текущие свойства версий: id версии - id свойства - свойство
+        HashMap<Integer, HashMap<Integer, FileVersionPropertyModel>> current = new HashMap<Integer, HashMap<Integer, FileVersionPropertyModel>>();
+        for (FileVersionPropertyModel property : FileVersionPropertyModel.findByVersions(new ArrayList<Integer>(extracted.keySet()))) {
+            HashMap<Integer, FileVersionPropertyModel> byProperty = current.get(property.getFileVersionId());
+            if (byProperty == null) {
+                byProperty = new HashMap<Integer, FileVersionPropertyModel>();
+                current.put(property.getFileVersionId(), byProperty);
+            }
+            byProperty.put(property.getPropertyId(), property);
+        }
+
+        final List<FileVersionPropertyModel> added = new ArrayList<FileVersionPropertyModel>();
+        final List<FileVersionPropertyModel> updated = new ArrayList<FileVersionPropertyModel>();
+        final Set<Integer> changedVersions = new HashSet<Integer>();
+        for (Map.Entry<Integer, Map<Integer, String>> entry : extracted.entrySet()) {
+            int versionId = entry.getKey();
+            HashMap<Integer, FileVersionPropertyModel> byProperty = current.get(versionId);
+            for (Map.Entry<Integer, String> property : entry.getValue().entrySet()) {
+                int propertyId = property.getKey();
+                String value = property.getValue();
+                // название и версия хранятся в самих файле и версии, как и при загрузке
+                if (propertyId == PropertyModel.FILE_VERSION || propertyId == PropertyModel.PRODUCT_NAME || value == null || value.trim().length() == 0) {
+                    continue;
+                }
+                FileVersionPropertyModel existing = byProperty == null ? null : byProperty.get(propertyId);
+                if (existing == null) {
+                    added.add(new FileVersionPropertyModel(versionId, propertyId, value));
+                    changedVersions.add(versionId);
+                } else if (!value.equals(existing.getValue())) {
+                    existing.setValue(value);
+                    updated.add(existing);
+                    changedVersions.add(versionId);
+                }
+            }
+        }
+
+        final int lastVersionId = versions.get(versions.size() - 1).getId();
+        final int errors = errorCount;
+        UnitOfWork.run(new UnitOfWork.Work<Void>() {
+            @Override
+            public Void execute() throws SQLException {
+                FileVersionPropertyModel.addBatch(added);
+                FileVersionPropertyModel.updateBatch(updated);
+                ExtractionJobModel.saveCheckpoint(jobId, lastVersionId, versions.size(), changedVersions.size(), errors);
+                return null;
+            }
+        });
+    }
+
+    /**
+     * Остановка очереди заданий при выключении приложения
+     * Прерванное задание продолжится с контрольной точки при следующем запуске
+     */
+    public static synchronized void shutdown() {
+        if (executor != null) {
+            executor.shutdownNow();
+            try {
+                executor.awaitTermination(30, TimeUnit.SECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            executor = null;
+        }
+    }
+}
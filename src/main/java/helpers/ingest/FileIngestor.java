@@ -0,0 +1,294 @@
+package helpers.ingest;
+
+import config.Settings;
+import db.UnitOfWork;
+import helpers.FileHelper;
+import helpers.PropertyExtractor;
+import helpers.UploadedFile;
+import helpers.hash.HashAlgorithm;
+import models.FileModel;
+import models.FileVersionModel;
+import models.FileVersionPropertyModel;
+import models.IngestJobFileModel;
+import models.PropertyModel;
+import models.RequestFileModel;
+import org.apache.commons.io.FilenameUtils;
+import org.apache.log4j.Logger;
+
+import java.io.File;
+import java.io.IOException;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Добавление одного загруженного файла в каталог:
+ * хэш, проверка дублирования, перенос в хранилище, разбор свойств и запись в БД
+ * Может вызываться из нескольких потоков одновременно
+ */
+public class FileIngestor {
+    private static final Logger logger = Logger.getLogger(FileIngestor.class);
+
+    private static final String DUPLICATE_MESSAGE = "Такой файл уже есть";
+    private static final int LOCK_COUNT = 64;
+    // блокировки по хэшу: проверка дублирования и добавление версии должны идти атомарно
+    private static final Object[] hashLocks = createLocks();
+    // блокировки по названию: чтобы параллельные загрузки не создали два файла с одним названием
+    private static final Object[] titleLocks = createLocks();
+
+    private final String uploadRootDir;
+    private final int userId;
+    private final HashAlgorithm hashAlgorithm;
+
+    public FileIngestor(String uploadRootDir, int userId) {
+        this.uploadRootDir = uploadRootDir;
+        this.userId = userId;
+        this.hashAlgorithm = Settings.getHashAlgorithm();
+    }
+
+    /**
+     * Обработка файла, сохраненного во временную директорию хранилища при приеме загрузки
+     * @param number Порядковый номер файла в загрузке
+     * @param uploadedFileName Исходное имя файла
+     * @param spooled Временный файл
+     * @param hash Хэш, посчитанный при приеме файла; если пустой, считается здесь
+     * @param algorithm Алгоритм, которым получен хэш
+     * @param progress Получатель этапов обработки, может быть null
+     * @return Результат обработки; исключения превращаются в ошибку с текстом исключения
+     */
+    public IngestResult ingestSpooled(int number, String uploadedFileName, File spooled, String hash, HashAlgorithm algorithm, IngestProgress progress) {
+        try {
+            String extension = FilenameUtils.getExtension(uploadedFileName);
+            if (hash == null || hash.equals("")) {
+                // файл принят до того, как хэш стал считаться при приеме
+                notify(progress, IngestJobFileModel.HASHING);
+                algorithm = hashAlgorithm;
+                hash = FileHelper.getHash(spooled.getPath(), algorithm);
+            }
+            UploadedFile upload = UploadedFile.adopt(spooled, hash, algorithm);
+            try {
+                // добавление конечного имени файла
+                // к исходному имени добавляется хэш файла
+                StringBuilder fileName = new StringBuilder()
+                        .append(FilenameUtils.getBaseName(uploadedFileName))
+                        .append("_")
+                        .append(upload.getHash());
+                if (!extension.equals("")) {
+                    fileName.append(".");
+                    fileName.append(extension);
+                }
+                if (isDuplicate(upload)) {
+                    return IngestResult.error(number, DUPLICATE_MESSAGE);
+                }
+                notify(progress, IngestJobFileModel.PARSING);
+                Map<Integer, String> properties = parseProperties(extension, upload);
+                return store(number, uploadedFileName, fileName.toString(), upload, properties);
+            } finally {
+                upload.discard();
+            }
+        } catch (Exception e) {
+            return IngestResult.error(number, e.getMessage());
+        }
+    }
+
+    /**
+     * Обработка файла принятой заявки: файл расшифровывается из Base64 во временную директорию хранилища
+     * Хэш берется из заявки, повторно не считается
+     * @param number Порядковый номер файла в заявке
+     * @param file Файл заявки
+     * @param requestDirectory Директория файлов заявок
+     * @param progress Получатель этапов обработки, может быть null
+     * @return Результат обработки
+     */
+    public IngestResult ingestRequestFile(int number, RequestFileModel file, String requestDirectory, IngestProgress progress) {
+        try {
+            StringBuilder requestFile = new StringBuilder()
+                    .append(requestDirectory)
+                    .append(File.separator)
+                    .append(FileHelper.getHashPath(file.getHash()))
+                    .append(File.separator)
+                    .append(file.getFileName());
+            String extension = file.getExtension() == null ? "" : file.getExtension();
+            String resultFilename = FilenameUtils.removeExtension(file.getFileName());
+            if (!extension.equals("")) {
+                resultFilename += "." + extension;
+            }
+
+            notify(progress, IngestJobFileModel.HASHING);
+            File decoded = new File(UploadedFile.getTempDir(uploadRootDir), "request_" + file.getId() + "_" + resultFilename);
+            FileHelper.decodeBase64(requestFile.toString(), decoded.getPath());
+            UploadedFile upload = UploadedFile.adopt(decoded, file.getHash(), HashAlgorithm.fromTitle(file.getHashAlgorithm()));
+            try {
+                if (isDuplicate(upload)) {
+                    return IngestResult.error(number, DUPLICATE_MESSAGE);
+                }
+                notify(progress, IngestJobFileModel.PARSING);
+                Map<Integer, String> properties = parseProperties(extension, upload);
+                return store(number, resultFilename, resultFilename, upload, properties);
+            } finally {
+                upload.discard();
+            }
+        } catch (Exception e) {
+            return IngestResult.error(number, e.getMessage());
+        }
+    }
+
+    /**
+     * Предварительная проверка дублирования без блокировки, чтобы не разбирать файл, который все равно будет отклонен
+     * (разбор может запускать внешние команды). Окончательная проверка повторяется в store под блокировкой по хэшу
+     */
+    private boolean isDuplicate(UploadedFile upload) {
+        return FileVersionModel.isExist(upload.getHash(), upload.getSize());
+    }
+
+    /**
+     * Получение свойств файла; разбор не зависит от БД, поэтому выполняется вне блокировок
+     * Файл с тем же содержимым, уже разобранный текущей версией разборщика, берется из кэша
+     */
+    private Map<Integer, String> parseProperties(String extension, UploadedFile upload) {
+        return PropertyExtractor.getProperties(extension, upload.getPath(), upload.getHash(), upload.getHashAlgorithm(), upload.getSize());
+    }
+
+    private IngestResult store(int number, String uploadedFileName, String fileName, UploadedFile upload, Map<Integer, String> properties) throws IOException, SQLException {
+        boolean isFilled = false;
+        String fileTitle = null;
+        String versionValue = null;
+        if (properties != null && properties.size() > 0) {
+            fileTitle = properties.get(PropertyModel.PRODUCT_NAME);
+            versionValue = properties.get(PropertyModel.FILE_VERSION);
+            if (fileTitle != null && !fileTitle.trim().equals("") && versionValue != null && !versionValue.trim().equals("")) {
+                isFilled = true;
+            }
+        }
+
+        String hash = upload.getHash();
+        synchronized (lockFor(hashLocks, hash)) {
+            // проверяем дублирование файла еще раз: параллельная загрузка могла сохранить его после isDuplicate
+            if (FileVersionModel.isExist(hash, upload.getSize())) {
+                return IngestResult.error(number, DUPLICATE_MESSAGE);
+            }
+
+            StringBuilder newFileName = new StringBuilder()
+                    .append(uploadRootDir)
+                    .append(File.separator)
+                    .append(FileHelper.getHashPath(hash))
+                    .append(File.separator)
+                    .append(fileName);
+            File target = new File(newFileName.toString());
+
+            // перенос файла в хранилище
+            upload.moveTo(target);
+            try {
+                if (isFilled) {
+                    // название блокируется до фиксации транзакции, иначе параллельная загрузка не увидит созданный файл
+                    synchronized (lockFor(titleLocks, fileTitle)) {
+                        return persist(number, uploadedFileName, fileName, upload, properties, fileTitle, versionValue);
+                    }
+                }
+                return persist(number, uploadedFileName, fileName, upload, properties, null, versionValue);
+            } catch (SQLException | RuntimeException e) {
+                // транзакция откачена, файл без версии в хранилище не нужен
+                target.delete();
+                throw e;
+            }
+        }
+    }
+
+    /**
+     * Запись файла, версии и ее свойств в БД одной транзакцией
+     * @param fileTitle Название файла, если свойства заполнены; иначе null
+     */
+    private IngestResult persist(
+            int number,
+            String uploadedFileName,
+            final String fileName,
+            final UploadedFile upload,
+            final Map<Integer, String> properties,
+            final String fileTitle,
+            final String versionValue
+    ) throws SQLException {
+        FileVersionModel fileVersion = UnitOfWork.run(new UnitOfWork.Work<FileVersionModel>() {
+            @Override
+            public FileVersionModel execute() throws SQLException {
+                // сохранение файла в бд, если свойства заполненены
+                FileModel fileModel = null;
+                if (fileTitle != null) {
+                    fileModel = findOrCreateFile(fileTitle);
+                }
+
+                // добавленией новой версии файла
+                FileVersionModel fileVersion = new FileVersionModel();
+                if (fileModel == null) {
+                    fileVersion.setFileId(0);
+                } else {
+                    fileVersion.setFileId(fileModel.getId());
+                }
+                fileVersion.setFileName(fileName);
+                fileVersion.setHash(upload.getHash());
+                fileVersion.setHashAlgorithm(upload.getHashAlgorithm().getTitle());
+                fileVersion.setIsFilled(fileTitle != null);
+                fileVersion.setUserId(userId);
+                long time = new Date().getTime();
+                fileVersion.setDate(time);
+                if (versionValue != null && !versionValue.trim().equals("")) {
+                    fileVersion.setVersion(versionValue);
+                }
+                fileVersion.setFileSize(upload.getSize());
+                if (!fileVersion.add()) {
+                    throw new SQLException("Ошибка при загрузке новой версии");
+                }
+
+                // добавление остальных свойств версии в БД одним пакетом
+                if (properties != null) {
+                    List<FileVersionPropertyModel> versionProperties = new ArrayList<FileVersionPropertyModel>();
+                    for (Map.Entry<Integer, String> entry : properties.entrySet()) {
+                        int propertyId = entry.getKey();
+                        if (propertyId != PropertyModel.FILE_VERSION && propertyId != PropertyModel.PRODUCT_NAME) {
+                            versionProperties.add(new FileVersionPropertyModel(fileVersion.getId(), propertyId, String.valueOf(entry.getValue())));
+                        }
+                    }
+                    int added = FileVersionPropertyModel.addBatch(versionProperties);
+                    if (added != versionProperties.size()) {
+                        logger.error("Версии id=" + fileVersion.getId()+" добавлено свойств: "+added+" из "+versionProperties.size()+", остальные не прошли проверку; служебный номер - " + userId);
+                    }
+                }
+                return fileVersion;
+            }
+        });
+        logger.info("Загружена новая версия, id=" + fileVersion.getId()+"; служебный номер - " + userId);
+        return IngestResult.success(number, fileVersion.getId(), uploadedFileName, fileTitle != null);
+    }
+
+    /**
+     * Поиск файла по названию или создание нового; вызывается под блокировкой названия
+     */
+    private static FileModel findOrCreateFile(String fileTitle) throws SQLException {
+        FileModel fileModel = FileModel.findByTitle(fileTitle);
+        if (fileModel == null) {
+            fileModel = new FileModel();
+            fileModel.setTitle(fileTitle);
+            fileModel.add();
+        }
+        return fileModel;
+    }
+
+    private static void notify(IngestProgress progress, String state) {
+        if (progress != null) {
+            progress.onState(state);
+        }
+    }
+
+    private static Object lockFor(Object[] locks, String key) {
+        return locks[(key.hashCode() & 0x7fffffff) % locks.length];
+    }
+
+    private static Object[] createLocks() {
+        Object[] locks = new Object[LOCK_COUNT];
+        for (int i = 0; i < LOCK_COUNT; i++) {
+            locks[i] = new Object();
+        }
+        return locks;
+    }
+}
@@ -0,0 +1,205 @@
+package helpers.ingest;
+
+import config.Settings;
+import helpers.hash.HashAlgorithm;
+import models.IngestJobFileModel;
+import models.IngestJobModel;
+import models.RequestFileModel;
+import models.RequestModel;
+import org.apache.log4j.Logger;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Фоновое выполнение заданий на добавление файлов
+ * Задание ведет свои файлы через IngestPool, поэтому ограничения пула действуют и здесь;
+ * состояние заданий хранится в БД, незавершенные задания возобновляются после перезапуска
+ */
+public class IngestJobRunner {
+    private static final Logger logger = Logger.getLogger(IngestJobRunner.class);
+
+    // сколько заданий может выполняться одновременно
+    public static final int JOB_THREADS = 2;
+
+    private static ExecutorService executor;
+
+    private static synchronized ExecutorService getExecutor() {
+        if (executor == null) {
+            final AtomicInteger threadCounter = new AtomicInteger();
+            executor = Executors.newFixedThreadPool(JOB_THREADS, new ThreadFactory() {
+                @Override
+                public Thread newThread(Runnable runnable) {
+                    Thread thread = new Thread(runnable, "ingest-job-" + threadCounter.incrementAndGet());
+                    thread.setDaemon(true);
+                    return thread;
+                }
+            });
+        }
+        return executor;
+    }
+
+    /**
+     * Постановка задания в очередь
+     * @param jobId Id задания
+     */
+    public static void submit(final int jobId) {
+        try {
+            getExecutor().submit(new Runnable() {
+                @Override
+                public void run() {
+                    process(jobId);
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            // задание останется в статусе queued и будет возобновлено при следующем запуске
+            logger.warn("Задание id=" + jobId + " не поставлено в очередь: сервер останавливается");
+        }
+    }
+
+    /**
+     * Возобновление незавершенных заданий при старте приложения
+     */
+    public static void resume() {
+        for (IngestJobModel job : IngestJobModel.findUnfinished()) {
+            IngestJobFileModel.resetInterrupted(job.getId());
+            logger.info("Возобновлено задание на добавление файлов id=" + job.getId());
+            submit(job.getId());
+        }
+    }
+
+    private static void process(int jobId) {
+        IngestJobModel job;
+        try {
+            job = IngestJobModel.findById(jobId);
+        } catch (Exception e) {
+            logger.error("Задание id=" + jobId + " не найдено", e);
+            return;
+        }
+        if (job.isFinished()) {
+            return;
+        }
+        try {
+            job.setStatus(IngestJobModel.RUNNING);
+            job.update();
+
+            FileIngestor ingestor = new FileIngestor(Settings.getUploadPath(), job.getUserId());
+            List<IngestTask> tasks = new ArrayList<>();
+            if (job.getType().equals(IngestJobModel.TYPE_REQUEST)) {
+                String requestDirectory = Settings.getRequestUploadPath();
+                HashMap<String, RequestFileModel> requestFiles = new HashMap<>();
+                for (RequestFileModel requestFile : RequestModel.findById(job.getRequestId()).getFiles()) {
+                    requestFiles.put(requestFile.getFileName(), requestFile);
+                }
+                for (IngestJobFileModel file : IngestJobFileModel.findByJob(jobId)) {
+                    if (!file.isFinished()) {
+                        tasks.add(createRequestTask(ingestor, file, requestFiles.get(file.getFileName()), requestDirectory));
+                    }
+                }
+            } else {
+                for (IngestJobFileModel file : IngestJobFileModel.findByJob(jobId)) {
+                    if (!file.isFinished()) {
+                        tasks.add(createUploadTask(ingestor, file));
+                    }
+                }
+            }
+
+            IngestPool.getInstance().run(job.getUserId(), tasks);
+            if (Thread.currentThread().isInterrupted()) {
+                // сервер останавливается; задание останется незавершенным и возобновится при запуске
+                return;
+            }
+
+            job.setStatus(IngestJobModel.DONE);
+            job.update();
+            logger.info("Задание на добавление файлов id=" + jobId + " выполнено; служебный номер - " + job.getUserId());
+        } catch (Exception e) {
+            logger.error("Ошибка при выполнении задания на добавление файлов id=" + jobId, e);
+            try {
+                job.setStatus(IngestJobModel.FAILED);
+                job.update();
+            } catch (Exception updateException) {
+                logger.error("Не удалось сохранить статус задания id=" + jobId, updateException);
+            }
+        }
+    }
+
+    private static IngestTask createUploadTask(final FileIngestor ingestor, final IngestJobFileModel file) {
+        return new IngestTask(file.getNumber()) {
+            @Override
+            public IngestResult call() {
+                IngestResult result = ingestor.ingestSpooled(file.getNumber(), file.getFileName(), new File(file.getSourcePath()),
+                        file.getHash(), HashAlgorithm.fromTitle(file.getHashAlgorithm()), progressOf(file));
+                return finish(file, result);
+            }
+        };
+    }
+
+    private static IngestTask createRequestTask(final FileIngestor ingestor, final IngestJobFileModel file, final RequestFileModel requestFile, final String requestDirectory) {
+        return new IngestTask(file.getNumber()) {
+            @Override
+            public IngestResult call() {
+                IngestResult result;
+                if (requestFile == null) {
+                    result = IngestResult.error(file.getNumber(), "Файл заявки не найден");
+                } else {
+                    result = ingestor.ingestRequestFile(file.getNumber(), requestFile, requestDirectory, progressOf(file));
+                }
+                return finish(file, result);
+            }
+        };
+    }
+
+    private static IngestProgress progressOf(final IngestJobFileModel file) {
+        return new IngestProgress() {
+            @Override
+            public void onState(String state) {
+                IngestJobFileModel.updateState(file.getId(), state);
+            }
+        };
+    }
+
+    /**
+     * Сохранение итога обработки файла в задании
+     */
+    private static IngestResult finish(IngestJobFileModel file, IngestResult result) {
+        if (result.isSuccess()) {
+            file.setState(IngestJobFileModel.PERSISTED);
+            file.setFileVersionId(result.getFileVersionId());
+            file.setIsFilled(result.isFilled());
+        } else {
+            file.setState(IngestJobFileModel.FAILED);
+            file.setMsg(result.getMsg());
+        }
+        try {
+            file.update();
+        } catch (Exception e) {
+            logger.error("Не удалось сохранить результат файла id=" + file.getId() + " задания id=" + file.getJobId(), e);
+        }
+        return result;
+    }
+
+    /**
+     * Остановка очереди заданий при выключении приложения
+     * Прерванные задания возобновятся при следующем запуске
+     */
+    public static synchronized void shutdown() {
+        if (executor != null) {
+            executor.shutdownNow();
+            try {
+                executor.awaitTermination(30, TimeUnit.SECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            executor = null;
+        }
+    }
+}
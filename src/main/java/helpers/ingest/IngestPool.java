@@ -0,0 +1,128 @@
+package helpers.ingest;
+
+import org.apache.log4j.Logger;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Общий пул потоков для обработки загружаемых файлов
+ * Число одновременно обрабатываемых файлов ограничено для всего сервера (размер пула)
+ * и для каждого пользователя, чтобы одна большая загрузка не занимала все потоки
+ */
+public class IngestPool {
+    private static final Logger logger = Logger.getLogger(IngestPool.class);
+
+    public static final int POOL_SIZE = Math.max(2, Runtime.getRuntime().availableProcessors());
+    public static final int PER_USER_LIMIT = Math.max(1, POOL_SIZE / 2);
+
+    private static IngestPool instance;
+
+    private final ExecutorService executor;
+    private final ConcurrentHashMap<Integer, Semaphore> userPermits = new ConcurrentHashMap<>();
+
+    private IngestPool() {
+        final AtomicInteger threadCounter = new AtomicInteger();
+        executor = Executors.newFixedThreadPool(POOL_SIZE, new ThreadFactory() {
+            @Override
+            public Thread newThread(Runnable runnable) {
+                Thread thread = new Thread(runnable, "ingest-" + threadCounter.incrementAndGet());
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+    }
+
+    public static synchronized IngestPool getInstance() {
+        if (instance == null) {
+            instance = new IngestPool();
+        }
+        return instance;
+    }
+
+    /**
+     * Параллельная обработка файлов одной загрузки
+     * Вызывающий поток ждет, пока у пользователя освободится место, и возвращает управление после обработки всех файлов
+     * @param userId Служебный номер пользователя, для него действует ограничение PER_USER_LIMIT
+     * @param tasks Задачи обработки файлов
+     * @return Результаты в порядке номеров файлов
+     */
+    public List<IngestResult> run(int userId, List<IngestTask> tasks) {
+        Semaphore permits = userPermits.get(userId);
+        if (permits == null) {
+            Semaphore created = new Semaphore(PER_USER_LIMIT);
+            permits = userPermits.putIfAbsent(userId, created);
+            if (permits == null) {
+                permits = created;
+            }
+        }
+
+        List<IngestResult> results = new ArrayList<>();
+        List<Future<IngestResult>> futures = new ArrayList<>();
+        List<IngestTask> submitted = new ArrayList<>();
+        try {
+            for (final IngestTask task : tasks) {
+                permits.acquire();
+                final Semaphore userLimit = permits;
+                try {
+                    futures.add(executor.submit(new Callable<IngestResult>() {
+                        @Override
+                        public IngestResult call() {
+                            try {
+                                return task.call();
+                            } finally {
+                                userLimit.release();
+                            }
+                        }
+                    }));
+                    submitted.add(task);
+                } catch (RejectedExecutionException e) {
+                    permits.release();
+                    results.add(IngestResult.error(task.getNumber(), "Сервер останавливается, файл не обработан"));
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            for (int i = submitted.size() + results.size(); i < tasks.size(); i++) {
+                results.add(IngestResult.error(tasks.get(i).getNumber(), "Обработка прервана"));
+            }
+        }
+
+        for (int i = 0; i < futures.size(); i++) {
+            int number = submitted.get(i).getNumber();
+            try {
+                results.add(futures.get(i).get());
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                results.add(IngestResult.error(number, "Обработка прервана"));
+            } catch (ExecutionException e) {
+                logger.error("Ошибка при обработке файла номер " + number, e.getCause());
+                results.add(IngestResult.error(number, String.valueOf(e.getCause().getMessage())));
+            }
+        }
+
+        Collections.sort(results, IngestResult.byNumber);
+        return results;
+    }
+
+    /**
+     * Остановка пула при выключении приложения
+     */
+    public static synchronized void shutdown() {
+        if (instance != null) {
+            instance.executor.shutdown();
+            try {
+                if (!instance.executor.awaitTermination(30, TimeUnit.SECONDS)) {
+                    instance.executor.shutdownNow();
+                }
+            } catch (InterruptedException e) {
+                instance.executor.shutdownNow();
+                Thread.currentThread().interrupt();
+            }
+            instance = null;
+        }
+    }
+}
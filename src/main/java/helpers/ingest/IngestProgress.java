@@ -0,0 +1,12 @@
+package helpers.ingest;
+
+/**
+ * Получатель сведений об этапах обработки файла
+ */
+public interface IngestProgress {
+    /**
+     * Файл перешел на новый этап обработки
+     * @param state Этап, см. константы IngestJobFileModel
+     */
+    public void onState(String state);
+}
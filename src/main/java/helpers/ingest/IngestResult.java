@@ -0,0 +1,69 @@
+package helpers.ingest;
+
+import java.util.Comparator;
+
+/**
+ * Результат обработки одного файла загрузки
+ */
+public class IngestResult {
+    /**
+     * Сортировка результатов по номеру файла в загрузке
+     */
+    public static final Comparator<IngestResult> byNumber = new Comparator<IngestResult>() {
+        @Override
+        public int compare(IngestResult a, IngestResult b) {
+            return Integer.compare(a.getNumber(), b.getNumber());
+        }
+    };
+
+    private int number;
+    private boolean isSuccess;
+    private String msg;
+    private int fileVersionId;
+    private String fileVersionName;
+    private boolean isFilled;
+
+    private IngestResult(int number) {
+        this.number = number;
+    }
+
+    public static IngestResult success(int number, int fileVersionId, String fileVersionName, boolean isFilled) {
+        IngestResult result = new IngestResult(number);
+        result.isSuccess = true;
+        result.fileVersionId = fileVersionId;
+        result.fileVersionName = fileVersionName;
+        result.isFilled = isFilled;
+        return result;
+    }
+
+    public static IngestResult error(int number, String msg) {
+        IngestResult result = new IngestResult(number);
+        result.isSuccess = false;
+        result.msg = msg;
+        return result;
+    }
+
+    public int getNumber() {
+        return number;
+    }
+
+    public boolean isSuccess() {
+        return isSuccess;
+    }
+
+    public String getMsg() {
+        return msg;
+    }
+
+    public int getFileVersionId() {
+        return fileVersionId;
+    }
+
+    public String getFileVersionName() {
+        return fileVersionName;
+    }
+
+    public boolean isFilled() {
+        return isFilled;
+    }
+}
@@ -0,0 +1,24 @@
+package helpers.ingest;
+
+import java.util.concurrent.Callable;
+
+/**
+ * Задача обработки одного файла загрузки
+ */
+public abstract class IngestTask implements Callable<IngestResult> {
+    private final int number;
+
+    public IngestTask(int number) {
+        this.number = number;
+    }
+
+    /**
+     * Обработка файла; ошибки должны возвращаться как IngestResult.error
+     */
+    @Override
+    public abstract IngestResult call();
+
+    public int getNumber() {
+        return number;
+    }
+}
@@ -0,0 +1,65 @@
+package helpers.process;
+
+import org.json.simple.JSONArray;
+import org.json.simple.JSONObject;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Гистограмма времени выполнения команд с фиксированными границами корзин
+ * Запись не блокирует потоки, поэтому ее можно вести на каждый запуск
+ */
+public class LatencyHistogram {
+    /**
+     * Верхние границы корзин в миллисекундах; последняя корзина - все, что больше
+     */
+    private static final long[] BOUNDS = {10, 50, 100, 250, 500, 1000, 2500, 5000, 10000, 30000, 60000};
+
+    private final AtomicLongArray buckets = new AtomicLongArray(BOUNDS.length + 1);
+    private final AtomicLongArray statuses = new AtomicLongArray(ProcessResult.Status.values().length);
+    private final AtomicLong totalMillis = new AtomicLong();
+    private final AtomicLong maxMillis = new AtomicLong();
+
+    public void record(ProcessResult result) {
+        statuses.incrementAndGet(result.getStatus().ordinal());
+        if (result.getStatus() == ProcessResult.Status.REJECTED || result.getStatus() == ProcessResult.Status.ERROR) {
+            // команда не выполнялась, время не показательно
+            return;
+        }
+        long millis = result.getElapsedMillis();
+        int bucket = 0;
+        while (bucket < BOUNDS.length && millis > BOUNDS[bucket]) {
+            bucket++;
+        }
+        buckets.incrementAndGet(bucket);
+        totalMillis.addAndGet(millis);
+        long max = maxMillis.get();
+        while (millis > max && !maxMillis.compareAndSet(max, millis)) {
+            max = maxMillis.get();
+        }
+    }
+
+    public JSONObject toJSON() {
+        JSONObject result = new JSONObject();
+        JSONArray bucketList = new JSONArray();
+        long count = 0;
+        for (int i = 0; i < buckets.length(); i++) {
+            JSONObject bucket = new JSONObject();
+            bucket.put("le", i < BOUNDS.length ? BOUNDS[i] : null);
+            bucket.put("count", buckets.get(i));
+            bucketList.add(bucket);
+            count += buckets.get(i);
+        }
+        JSONObject statusCounts = new JSONObject();
+        for (ProcessResult.Status status : ProcessResult.Status.values()) {
+            statusCounts.put(status.name().toLowerCase(), statuses.get(status.ordinal()));
+        }
+        result.put("count", count);
+        result.put("totalMillis", totalMillis.get());
+        result.put("maxMillis", maxMillis.get());
+        result.put("buckets", bucketList);
+        result.put("statuses", statusCounts);
+        return result;
+    }
+}
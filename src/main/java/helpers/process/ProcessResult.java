@@ -0,0 +1,70 @@
+package helpers.process;
+
+/**
+ * Результат выполнения внешней команды
+ */
+public class ProcessResult {
+    public enum Status {
+        /** Команда завершилась с кодом 0 */
+        OK,
+        /** Команда завершилась с ненулевым кодом */
+        FAILED,
+        /** Команда не уложилась в отведенное время и была остановлена */
+        TIMEOUT,
+        /** Очередь пула заполнена, команда не запускалась */
+        REJECTED,
+        /** Команду не удалось запустить */
+        ERROR
+    }
+
+    private final Status status;
+    private final int exitCode;
+    private final String stdout;
+    private final String stderr;
+    private final boolean truncated;
+    private final long elapsedMillis;
+
+    ProcessResult(Status status, int exitCode, String stdout, String stderr, boolean truncated, long elapsedMillis) {
+        this.status = status;
+        this.exitCode = exitCode;
+        this.stdout = stdout;
+        this.stderr = stderr;
+        this.truncated = truncated;
+        this.elapsedMillis = elapsedMillis;
+    }
+
+    static ProcessResult notStarted(Status status, String message) {
+        return new ProcessResult(status, -1, "", message, false, 0);
+    }
+
+    public Status getStatus() {
+        return status;
+    }
+
+    public boolean isOk() {
+        return status == Status.OK;
+    }
+
+    public int getExitCode() {
+        return exitCode;
+    }
+
+    public String getStdout() {
+        return stdout;
+    }
+
+    public String getStderr() {
+        return stderr;
+    }
+
+    /**
+     * @return true, если вывод команды превысил ProcessRunner.MAX_OUTPUT_SIZE и был обрезан
+     */
+    public boolean isTruncated() {
+        return truncated;
+    }
+
+    public long getElapsedMillis() {
+        return elapsedMillis;
+    }
+}
@@ -0,0 +1,335 @@
+package helpers.process;
+
+import org.apache.log4j.Logger;
+import org.json.simple.JSONObject;
+
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Запуск внешних команд (триггеров файлов) в ограниченном пуле
+ * Одновременно выполняется не больше POOL_SIZE команд, еще QUEUE_SIZE ждут в очереди, остальные отклоняются.
+ * Каждая команда ограничена по времени; stdout и stderr читаются параллельно с ожиданием процесса,
+ * поэтому команда с большим выводом не блокируется на заполненном канале. Сохраняется не больше
+ * MAX_OUTPUT_SIZE байт каждого потока, остальное читается и отбрасывается. Потоков чтения не больше двух на команду;
+ * при превышении времени процесс останавливается, а его потоки закрываются.
+ * Время выполнения записывается в гистограмму по ключу (расширению файла)
+ */
+public class ProcessRunner {
+    private static final Logger logger = Logger.getLogger(ProcessRunner.class);
+
+    public static final int POOL_SIZE = Math.max(2, Runtime.getRuntime().availableProcessors());
+    public static final int QUEUE_SIZE = POOL_SIZE * 8;
+    public static final int MAX_OUTPUT_SIZE = 1024 * 1024;
+    // время на дочитывание вывода после завершения или остановки процесса
+    private static final long DRAIN_TIMEOUT_MILLIS = 2000;
+
+    private static ProcessRunner instance;
+
+    private final ThreadPoolExecutor executor;
+    private final ExecutorService pumps;
+    private final ConcurrentHashMap<String, LatencyHistogram> histograms = new ConcurrentHashMap<>();
+
+    private ProcessRunner() {
+        final AtomicInteger threadCounter = new AtomicInteger();
+        executor = new ThreadPoolExecutor(POOL_SIZE, POOL_SIZE, 0L, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<Runnable>(QUEUE_SIZE), new ThreadFactory() {
+            @Override
+            public Thread newThread(Runnable runnable) {
+                Thread thread = new Thread(runnable, "process-" + threadCounter.incrementAndGet());
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+        // по два потока чтения на каждую выполняющуюся команду; чтение заканчивается вместе с процессом,
+        // даже если канал держит потомок, а после DRAIN_TIMEOUT_MILLIS прекращается закрытием потоков
+        final AtomicInteger pumpCounter = new AtomicInteger();
+        pumps = Executors.newFixedThreadPool(POOL_SIZE * 2, new ThreadFactory() {
+            @Override
+            public Thread newThread(Runnable runnable) {
+                Thread thread = new Thread(runnable, "process-output-" + pumpCounter.incrementAndGet());
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+    }
+
+    public static synchronized ProcessRunner getInstance() {
+        if (instance == null) {
+            instance = new ProcessRunner();
+        }
+        return instance;
+    }
+
+    /**
+     * Выполнение команды; вызывающий поток ждет результат
+     * @param key Ключ гистограммы времени выполнения (расширение файла)
+     * @param command Программа и аргументы
+     * @param timeoutMillis Максимальное время выполнения; по истечении процесс останавливается
+     * @return Результат выполнения; исключений не бросает
+     */
+    public ProcessResult run(String key, final List<String> command, final long timeoutMillis) {
+        ProcessResult result;
+        Future<ProcessResult> future = null;
+        try {
+            future = executor.submit(new Callable<ProcessResult>() {
+                @Override
+                public ProcessResult call() {
+                    return execute(command, timeoutMillis);
+                }
+            });
+            result = future.get();
+        } catch (RejectedExecutionException e) {
+            result = ProcessResult.notStarted(ProcessResult.Status.REJECTED, "Очередь внешних команд заполнена");
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            future.cancel(true);
+            result = ProcessResult.notStarted(ProcessResult.Status.ERROR, "Ожидание команды прервано");
+        } catch (ExecutionException e) {
+            logger.error("Ошибка при выполнении команды " + command, e.getCause());
+            result = ProcessResult.notStarted(ProcessResult.Status.ERROR, String.valueOf(e.getCause().getMessage()));
+        }
+        getHistogram(key).record(result);
+        return result;
+    }
+
+    private ProcessResult execute(List<String> command, long timeoutMillis) {
+        long start = System.currentTimeMillis();
+        Process process;
+        try {
+            process = new ProcessBuilder(command).start();
+        } catch (IOException e) {
+            return ProcessResult.notStarted(ProcessResult.Status.ERROR, String.valueOf(e.getMessage()));
+        }
+        try {
+            process.getOutputStream().close();
+        } catch (IOException ignored) {
+        }
+        Future<Output> stdout = pumps.submit(new OutputReader(process, process.getInputStream()));
+        Future<Output> stderr = pumps.submit(new OutputReader(process, process.getErrorStream()));
+
+        boolean timedOut = false;
+        try {
+            if (!process.waitFor(timeoutMillis, TimeUnit.MILLISECONDS)) {
+                timedOut = true;
+                stop(process);
+            }
+        } catch (InterruptedException e) {
+            // пул останавливается
+            stop(process);
+            Thread.currentThread().interrupt();
+            return ProcessResult.notStarted(ProcessResult.Status.ERROR, "Выполнение команды прервано");
+        }
+
+        long drainDeadline = System.currentTimeMillis() + DRAIN_TIMEOUT_MILLIS;
+        Output out = collect(stdout, drainDeadline);
+        Output err = collect(stderr, drainDeadline);
+        if (out.abandoned || err.abandoned) {
+            logger.warn("Вывод команды " + command + " не дочитан за " + DRAIN_TIMEOUT_MILLIS + " мс");
+            stop(process);
+        }
+        long elapsed = System.currentTimeMillis() - start;
+        boolean truncated = out.truncated || err.truncated;
+        if (timedOut) {
+            return new ProcessResult(ProcessResult.Status.TIMEOUT, -1, out.text, err.text, truncated, elapsed);
+        }
+        int exitCode = process.exitValue();
+        ProcessResult.Status status = exitCode == 0 ? ProcessResult.Status.OK : ProcessResult.Status.FAILED;
+        return new ProcessResult(status, exitCode, out.text, err.text, truncated, elapsed);
+    }
+
+    /**
+     * Остановка процесса и закрытие его потоков, чтобы чтение вывода не осталось ждать данных
+     */
+    private static void stop(Process process) {
+        process.destroyForcibly();
+        closeQuietly(process.getOutputStream());
+        closeQuietly(process.getInputStream());
+        closeQuietly(process.getErrorStream());
+    }
+
+    private static void closeQuietly(Closeable stream) {
+        try {
+            stream.close();
+        } catch (IOException ignored) {
+        }
+    }
+
+    /**
+     * Вывод, прочитанный к этому моменту; если поток не закрылся к сроку, чтение прекращается
+     * @param deadline Общий для stdout и stderr срок дочитывания, мс
+     */
+    private static Output collect(Future<Output> reader, long deadline) {
+        try {
+            return reader.get(Math.max(0, deadline - System.currentTimeMillis()), TimeUnit.MILLISECONDS);
+        } catch (TimeoutException e) {
+            reader.cancel(true);
+            return new Output("", true, true);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return new Output("", true, true);
+        } catch (ExecutionException e) {
+            return new Output("", true);
+        }
+    }
+
+    private LatencyHistogram getHistogram(String key) {
+        String name = key == null ? "" : key.toLowerCase();
+        LatencyHistogram histogram = histograms.get(name);
+        if (histogram == null) {
+            LatencyHistogram created = new LatencyHistogram();
+            histogram = histograms.putIfAbsent(name, created);
+            if (histogram == null) {
+                histogram = created;
+            }
+        }
+        return histogram;
+    }
+
+    /**
+     * Состояние пула и гистограммы времени выполнения по ключам
+     */
+    public JSONObject getMetrics() {
+        JSONObject result = new JSONObject();
+        result.put("poolSize", POOL_SIZE);
+        result.put("active", executor.getActiveCount());
+        result.put("queued", executor.getQueue().size());
+        result.put("queueSize", QUEUE_SIZE);
+        JSONObject byKey = new JSONObject();
+        for (Map.Entry<String, LatencyHistogram> entry : new TreeMap<String, LatencyHistogram>(histograms).entrySet()) {
+            byKey.put(entry.getKey(), entry.getValue().toJSON());
+        }
+        result.put("latency", byKey);
+        return result;
+    }
+
+    /**
+     * Разбор строки команды на программу и аргументы
+     * Разделитель - пробельные символы; в одинарных или двойных кавычках пробелы сохраняются, сами кавычки убираются.
+     * Обратная косая черта не экранирует, чтобы пути Windows передавались как есть
+     */
+    public static List<String> split(String command) {
+        List<String> result = new ArrayList<String>();
+        StringBuilder current = new StringBuilder();
+        boolean inToken = false;
+        char quote = 0;
+        for (int i = 0; i < command.length(); i++) {
+            char c = command.charAt(i);
+            if (quote != 0) {
+                if (c == quote) {
+                    quote = 0;
+                } else {
+                    current.append(c);
+                }
+            } else if (c == '"' || c == '\'') {
+                quote = c;
+                inToken = true;
+            } else if (Character.isWhitespace(c)) {
+                if (inToken) {
+                    result.add(current.toString());
+                    current.setLength(0);
+                    inToken = false;
+                }
+            } else {
+                current.append(c);
+                inToken = true;
+            }
+        }
+        if (inToken) {
+            result.add(current.toString());
+        }
+        return result;
+    }
+
+    /**
+     * Остановка пула при выключении приложения; выполняющиеся команды останавливаются
+     */
+    public static synchronized void shutdown() {
+        if (instance != null) {
+            instance.executor.shutdownNow();
+            try {
+                instance.executor.awaitTermination(10, TimeUnit.SECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            instance.pumps.shutdownNow();
+            instance = null;
+        }
+    }
+
+    private static class Output {
+        private final String text;
+        private final boolean truncated;
+        // чтение не завершилось и было прервано
+        private final boolean abandoned;
+
+        private Output(String text, boolean truncated) {
+            this(text, truncated, false);
+        }
+
+        private Output(String text, boolean truncated, boolean abandoned) {
+            this.text = text;
+            this.truncated = truncated;
+            this.abandoned = abandoned;
+        }
+    }
+
+    /**
+     * Чтение потока с сохранением первых MAX_OUTPUT_SIZE байт, пока процесс выполняется, и остатка после его завершения
+     * Читается только то, что уже есть в канале: канал может держать открытым процесс-потомок,
+     * и блокирующее чтение до конца потока заняло бы поток пула до завершения потомка
+     */
+    private static class OutputReader implements Callable<Output> {
+        private static final long POLL_MILLIS = 10;
+
+        private final Process process;
+        private final InputStream stream;
+
+        private OutputReader(Process process, InputStream stream) {
+            this.process = process;
+            this.stream = stream;
+        }
+
+        @Override
+        public Output call() throws IOException, InterruptedException {
+            ByteArrayOutputStream kept = new ByteArrayOutputStream();
+            boolean truncated = false;
+            byte[] buffer = new byte[8192];
+            try {
+                while (true) {
+                    int available = stream.available();
+                    if (available <= 0) {
+                        if (!process.isAlive() && stream.available() <= 0) {
+                            break;
+                        }
+                        Thread.sleep(POLL_MILLIS);
+                        continue;
+                    }
+                    int read = stream.read(buffer, 0, Math.min(available, buffer.length));
+                    if (read < 0) {
+                        break;
+                    }
+                    int free = MAX_OUTPUT_SIZE - kept.size();
+                    if (read > free) {
+                        truncated = true;
+                    }
+                    if (free > 0) {
+                        kept.write(buffer, 0, Math.min(read, free));
+                    }
+                }
+            } finally {
+                stream.close();
+            }
+            return new Output(new String(kept.toByteArray(), StandardCharsets.UTF_8), truncated);
+        }
+    }
+}
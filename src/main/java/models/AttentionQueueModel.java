@@ -0,0 +1,138 @@
+package models;
+
+import db.Database2;
+import helpers.PageCursor;
+import models.helpers.KeysetPage;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowMapper;
+import org.springframework.jdbc.core.namedparam.MapSqlParameterSource;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
+
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+
+/**
+ * Очередь записей, требующих внимания модератора: незаполненные версии и файлы без категории
+ * Очередь и счетчики по видам обновляются моделями версий, файлов и категорий файла,
+ * поэтому страница /unfilled-files и количество не пересчитываются по таблицам файлов.
+ * В одной транзакции с изменением они фиксируются, только если вызывающий код выполняется в UnitOfWork
+ * (так сделаны загрузка, заполнение, удаление версий и привязка категорий); вне ее каждый запрос
+ * фиксируется отдельно, и расхождение счетчиков исправляет recount() при запуске приложения
+ */
+public class AttentionQueueModel {
+    public static final int KIND_UNFILLED_VERSION = 0;
+    public static final int KIND_NO_CATEGORY_FILE = 1;
+
+    private static final String saveNew = "INSERT IGNORE INTO attentionQueue(kind, itemId) VALUES (:kind, :itemId)";
+    private static final String deleteItem = "DELETE FROM attentionQueue WHERE kind = :kind AND itemId = :itemId";
+    private static final String updateCounter = "UPDATE attentionCounter SET count = count + :delta WHERE kind = :kind";
+    private static final String getCount = "SELECT COALESCE(SUM(count), 0) FROM attentionCounter";
+    private static final String recount = "UPDATE attentionCounter SET count = (SELECT count(*) FROM attentionQueue WHERE attentionQueue.kind = attentionCounter.kind)";
+    private static final String isFileWithoutCategory = "SELECT count(file.id) FROM file WHERE file.id = :fileId " +
+            "AND NOT EXISTS (SELECT 1 FROM fileCategory WHERE fileCategory.fileId = file.id)";
+    private static final String selectPage = "SELECT attentionQueue.kind, attentionQueue.itemId, COALESCE(fileVersion.fileName, file.title) FROM attentionQueue " +
+            "LEFT JOIN fileVersion ON attentionQueue.kind = " + KIND_UNFILLED_VERSION + " AND fileVersion.id = attentionQueue.itemId " +
+            "LEFT JOIN file ON attentionQueue.kind = " + KIND_NO_CATEGORY_FILE + " AND file.id = attentionQueue.itemId ";
+    static final String getFirstPage = selectPage + "ORDER BY attentionQueue.kind ASC, attentionQueue.itemId ASC LIMIT :limit";
+    private static final String getPageAfter = selectPage +
+            "WHERE attentionQueue.kind > :kind OR (attentionQueue.kind = :kind AND attentionQueue.itemId > :itemId) " +
+            "ORDER BY attentionQueue.kind ASC, attentionQueue.itemId ASC LIMIT :limit";
+    private static final String getPageBefore = selectPage +
+            "WHERE attentionQueue.kind < :kind OR (attentionQueue.kind = :kind AND attentionQueue.itemId < :itemId) " +
+            "ORDER BY attentionQueue.kind DESC, attentionQueue.itemId DESC LIMIT :limit";
+
+    /**
+     * Обновление очереди после добавления, изменения или удаления версии
+     * @param versionId Id версии
+     * @param isUnfilled Версия существует и не заполнена
+     */
+    public static void refreshVersion(int versionId, boolean isUnfilled) {
+        if (versionId > 0) {
+            set(KIND_UNFILLED_VERSION, versionId, isUnfilled);
+        }
+    }
+
+    /**
+     * Обновление очереди после добавления или удаления файла или изменения его категорий
+     * @param fileId Id файла
+     */
+    public static void refreshFile(int fileId) {
+        if (fileId <= 0) {
+            return;
+        }
+        NamedParameterJdbcTemplate template = Database2.getInstance().getTemplate();
+        MapSqlParameterSource parameters = new MapSqlParameterSource();
+        parameters.addValue("fileId", fileId);
+        boolean isWithoutCategory = template.queryForObject(isFileWithoutCategory, parameters, Integer.class) > 0;
+        set(KIND_NO_CATEGORY_FILE, fileId, isWithoutCategory);
+    }
+
+    /**
+     * Добавление или удаление записи; счетчик меняется, только если очередь действительно изменилась
+     */
+    private static void set(int kind, int itemId, boolean isInQueue) {
+        NamedParameterJdbcTemplate template = Database2.getInstance().getTemplate();
+        MapSqlParameterSource parameters = new MapSqlParameterSource();
+        parameters.addValue("kind", kind);
+        parameters.addValue("itemId", itemId);
+        int rows = template.update(isInQueue ? saveNew : deleteItem, parameters);
+        if (rows > 0) {
+            parameters.addValue("delta", isInQueue ? rows : -rows);
+            template.update(updateCounter, parameters);
+        }
+    }
+
+    /**
+     * Количество записей в очереди; читается из счетчиков, а не подсчетом строк
+     */
+    public static int getCount() {
+        JdbcTemplate template = Database2.getInstance().getJdbcTemplate();
+        return template.queryForObject(getCount, Integer.class);
+    }
+
+    /**
+     * Сверка счетчиков с очередью, например после ручного изменения данных в БД
+     */
+    public static void recount() {
+        JdbcTemplate template = Database2.getInstance().getJdbcTemplate();
+        template.update(recount);
+    }
+
+    /**
+     * Страница очереди: сначала незаполненные версии, затем файлы без категории; внутри вида - по id
+     * @param cursor Курсор страницы; пустая строка - первая страница
+     * @param limit Размер страницы
+     * @return Записи с ключами id, title и isNoCategory
+     */
+    public static KeysetPage<HashMap<String, String>> findPage(String cursor, int limit) {
+        PageCursor pageCursor = PageCursor.parse(cursor, 2);
+        NamedParameterJdbcTemplate template = Database2.getInstance().getTemplate();
+        MapSqlParameterSource parameters = new MapSqlParameterSource();
+        parameters.addValue("limit", limit + 1);
+        String sql = getFirstPage;
+        if (pageCursor != null) {
+            parameters.addValue("kind", pageCursor.getKey(0));
+            parameters.addValue("itemId", pageCursor.getKey(1));
+            sql = pageCursor.isBackward() ? getPageBefore : getPageAfter;
+        }
+        List<HashMap<String, String>> rows = template.query(sql, parameters, new RowMapper<HashMap<String, String>>() {
+            @Override
+            public HashMap<String, String> mapRow(ResultSet rs, int rowNum) throws SQLException {
+                HashMap<String, String> info = new HashMap<String, String>();
+                info.put("id", String.valueOf(rs.getInt(2)));
+                info.put("title", rs.getString(3));
+                info.put("isNoCategory", rs.getInt(1) == KIND_NO_CATEGORY_FILE ? "1" : "0");
+                return info;
+            }
+        });
+        return KeysetPage.of(new ArrayList<HashMap<String, String>>(rows), limit, pageCursor, new KeysetPage.KeyExtractor<HashMap<String, String>>() {
+            @Override
+            public long[] getKey(HashMap<String, String> item) {
+                return new long[]{Long.parseLong(item.get("isNoCategory")), Long.parseLong(item.get("id"))};
+            }
+        });
+    }
+}
@@ -0,0 +1,197 @@
+package models;
+
+import db.Database2;
+import db.UnitOfWork;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowCallbackHandler;
+import org.springframework.jdbc.core.namedparam.MapSqlParameterSource;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
+import org.springframework.transaction.TransactionStatus;
+import org.springframework.transaction.support.TransactionCallback;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.*;
+
+/**
+ * Таблица замыкания дерева категорий: строка на каждую пару предок - потомок (и категорию саму с собой)
+ * Позволяет выбрать файлы всего поддерева и посчитать их одним запросом без передачи списка id.
+ * Категорий немного, поэтому при любом изменении дерева таблица пересчитывается целиком
+ */
+public class CategoryClosureModel {
+    private static final String getCategories = "SELECT id, parent FROM category";
+    private static final String deleteAll = "DELETE FROM categoryClosure";
+    private static final String saveNew = "INSERT INTO categoryClosure(ancestorId, descendantId, depth) VALUES (:ancestorId, :descendantId, :depth)";
+    private static final String fileCountsSelect = "SELECT categoryClosure.ancestorId, " +
+            "COUNT(DISTINCT CASE WHEN categoryClosure.depth = 0 THEN fileCategory.fileId END), " +
+            "COUNT(DISTINCT fileCategory.fileId) FROM categoryClosure " +
+            "INNER JOIN fileCategory ON fileCategory.categoryId = categoryClosure.descendantId " +
+            "INNER JOIN file ON file.id = fileCategory.fileId AND file.latestEnabledVersionId > 0 ";
+    static final String getFileCounts = fileCountsSelect + "GROUP BY categoryClosure.ancestorId";
+    static final String getFileCountsByAncestors = fileCountsSelect +
+            "WHERE categoryClosure.ancestorId IN (:ids) GROUP BY categoryClosure.ancestorId";
+    private static final String getAncestorsByFile = "SELECT DISTINCT categoryClosure.ancestorId FROM categoryClosure " +
+            "INNER JOIN fileCategory ON fileCategory.categoryId = categoryClosure.descendantId WHERE fileCategory.fileId = :fileId";
+    private static final String getAncestorsByCategory = "SELECT ancestorId FROM categoryClosure WHERE descendantId = :categoryId";
+
+    private static final Object lock = new Object();
+    // актуальные количества; null, пока есть устаревшие категории или количества еще не считались
+    private static volatile HashMap<Integer, int[]> fileCounts;
+    // последние посчитанные количества, в том числе устаревшие; null - пересчитать все
+    private static HashMap<Integer, int[]> lastFileCounts;
+    // категории, количества которых в lastFileCounts устарели
+    private static final HashSet<Integer> staleCategories = new HashSet<Integer>();
+    // увеличивается при каждом сбросе; количества, посчитанные до сброса, не сохраняются
+    private static long generation = 0;
+
+    /**
+     * Пересчет таблицы замыкания по текущим категориям в одной транзакции
+     * @return Количество строк в таблице
+     */
+    public static int rebuild() {
+        final NamedParameterJdbcTemplate template = Database2.getInstance().getTemplate();
+        TransactionTemplate transaction = new TransactionTemplate(Database2.getInstance().getTransactionManager());
+        int count = transaction.execute(new TransactionCallback<Integer>() {
+            @Override
+            public Integer doInTransaction(TransactionStatus status) {
+                final HashMap<Integer, Integer> parents = new HashMap<Integer, Integer>();
+                template.getJdbcOperations().query(getCategories, new RowCallbackHandler() {
+                    @Override
+                    public void processRow(ResultSet rs) throws SQLException {
+                        parents.put(rs.getInt(1), rs.getInt(2));
+                    }
+                });
+                List<MapSqlParameterSource> batch = new ArrayList<MapSqlParameterSource>();
+                for (Integer id : parents.keySet()) {
+                    // подъем к корню; visited защищает от цикла в данных
+                    HashSet<Integer> visited = new HashSet<Integer>();
+                    Integer ancestor = id;
+                    int depth = 0;
+                    while (ancestor != null && visited.add(ancestor)) {
+                        MapSqlParameterSource parameters = new MapSqlParameterSource();
+                        parameters.addValue("ancestorId", ancestor);
+                        parameters.addValue("descendantId", id);
+                        parameters.addValue("depth", depth);
+                        batch.add(parameters);
+                        Integer parent = parents.get(ancestor);
+                        ancestor = parents.containsKey(parent) ? parent : null;
+                        depth++;
+                    }
+                }
+                template.getJdbcOperations().update(deleteAll);
+                if (batch.size() > 0) {
+                    template.batchUpdate(saveNew, batch.toArray(new MapSqlParameterSource[batch.size()]));
+                }
+                return batch.size();
+            }
+        });
+        invalidateFileCounts();
+        return count;
+    }
+
+    /**
+     * Количество файлов в категориях
+     * Считается одним запросом и хранится в памяти; после изменения файлов пересчитываются только
+     * категории, в которых эти файлы лежат, и их предки
+     * @return id категории - {файлов в самой категории, файлов в категории и всех ее потомках}
+     */
+    public static Map<Integer, int[]> getFileCounts() {
+        HashMap<Integer, int[]> counts = fileCounts;
+        if (counts != null) {
+            return counts;
+        }
+        HashMap<Integer, int[]> previous;
+        List<Integer> stale;
+        long builtGeneration;
+        synchronized (lock) {
+            if (fileCounts != null) {
+                return fileCounts;
+            }
+            previous = lastFileCounts;
+            stale = new ArrayList<Integer>(staleCategories);
+            builtGeneration = generation;
+        }
+        final HashMap<Integer, int[]> result = new HashMap<Integer, int[]>();
+        RowCallbackHandler handler = new RowCallbackHandler() {
+            @Override
+            public void processRow(ResultSet rs) throws SQLException {
+                result.put(rs.getInt(1), new int[]{rs.getInt(2), rs.getInt(3)});
+            }
+        };
+        if (previous == null) {
+            Database2.getInstance().getJdbcTemplate().query(getFileCounts, handler);
+        } else {
+            // опубликованные карты не изменяются, поэтому устаревшие категории заменяются в копии
+            result.putAll(previous);
+            for (Integer categoryId : stale) {
+                result.remove(categoryId);
+            }
+            MapSqlParameterSource parameters = new MapSqlParameterSource();
+            parameters.addValue("ids", stale);
+            Database2.getInstance().getTemplate().query(getFileCountsByAncestors, parameters, handler);
+        }
+        synchronized (lock) {
+            if (generation == builtGeneration) {
+                lastFileCounts = result;
+                staleCategories.clear();
+                fileCounts = result;
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Сброс количества файлов во всех категориях после фиксации текущей транзакции
+     */
+    public static void invalidateFileCounts() {
+        UnitOfWork.afterCommit(new Runnable() {
+            @Override
+            public void run() {
+                synchronized (lock) {
+                    generation++;
+                    lastFileCounts = null;
+                    staleCategories.clear();
+                    fileCounts = null;
+                }
+            }
+        });
+    }
+
+    /**
+     * Сброс количества файлов в категориях файла и их предках после фиксации текущей транзакции
+     * Категории читаются сразу, поэтому при удалении привязок метод вызывается до удаления
+     */
+    public static void invalidateFileCountsByFile(int fileId) {
+        MapSqlParameterSource parameters = new MapSqlParameterSource();
+        parameters.addValue("fileId", fileId);
+        invalidateFileCounts(Database2.getInstance().getTemplate().queryForList(getAncestorsByFile, parameters, Integer.class));
+    }
+
+    /**
+     * Сброс количества файлов в категории и ее предках после фиксации текущей транзакции
+     */
+    public static void invalidateFileCountsByCategory(int categoryId) {
+        MapSqlParameterSource parameters = new MapSqlParameterSource();
+        parameters.addValue("categoryId", categoryId);
+        invalidateFileCounts(Database2.getInstance().getTemplate().queryForList(getAncestorsByCategory, parameters, Integer.class));
+    }
+
+    private static void invalidateFileCounts(final List<Integer> categoryIds) {
+        if (categoryIds.isEmpty()) {
+            return;
+        }
+        UnitOfWork.afterCommit(new Runnable() {
+            @Override
+            public void run() {
+                synchronized (lock) {
+                    generation++;
+                    if (lastFileCounts != null) {
+                        staleCategories.addAll(categoryIds);
+                    }
+                    fileCounts = null;
+                }
+            }
+        });
+    }
+}
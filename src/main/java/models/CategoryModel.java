@@ -3,31 +3,41 @@ package models;
 import db.Database2;
 import exceptions.NotFoundException;
 import models.helpers.CategoryFile;
+import models.mappers.CategoryFileMapper;
 import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowCallbackHandler;
 import org.springframework.jdbc.core.namedparam.MapSqlParameterSource;
 import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
 import org.springframework.jdbc.support.GeneratedKeyHolder;
 import org.springframework.jdbc.support.KeyHolder;
+import org.springframework.transaction.TransactionStatus;
+import org.springframework.transaction.support.TransactionCallback;
+import org.springframework.transaction.support.TransactionTemplate;
 
 import java.sql.*;
 import java.sql.Date;
-import java.text.SimpleDateFormat;
 import java.util.*;
 
 public class CategoryModel implements ModelInterface {
-    private static String getById = "SELECT * FROM category where id = :id";
-    private static String getAll = "SELECT * FROM category";
     private static String updateElem = "UPDATE category SET parent = :parent, title = :title WHERE id = :id";
     private static String updateParents = "UPDATE category SET parent = :parent WHERE parent = :id";
-    private static String getChildren = "SELECT * FROM category WHERE parent = :parentId";
     private static String saveNew = "INSERT INTO category(parent, title, position) VALUES (:parent, :title, :position)";
     private static String deleteById = "DELETE FROM category WHERE id = :id";
-    private static final String getTreeElements = "SELECT * FROM category ORDER BY position ASC, id ASC";
     private static final String getCount = "SELECT count(id) FROM category";
-    private static final String getFiles = "SELECT fileId FROM fileCategory WHERE categoryId = :categoryId;";
-    private static final String getFilesInfo = "SELECT file.id, file.title, fileVersion.version, fileVersion.date, fileVersion.id as versionId, user.displayName FROM file " +
-            " RIGHT JOIN fileVersion ON fileVersion.id = (SELECT id FROM fileVersion WHERE fileVersion.fileId = file.id AND fileVersion.isDisabled = :isDisabled ORDER BY version DESC LIMIT 1) " +
-            " LEFT JOIN user ON user.id = fileVersion.userId WHERE file.id IN (:idList) ORDER BY fileVersion.version DESC LIMIT :limit OFFSET :offset";
+    private static final String getChildPositions = "SELECT id, position FROM category WHERE parent = :parentId ORDER BY position ASC, id ASC";
+    private static final String updatePosition = "UPDATE category SET position = :position WHERE id = :id";
+    private static final String getFilesColumns = "SELECT file.id, file.title, fileVersion.version, fileVersion.date, user.displayName, fileVersion.id as versionId FROM file " +
+            " INNER JOIN fileVersion ON fileVersion.id = file.latestEnabledVersionId " +
+            " LEFT JOIN user ON user.id = fileVersion.userId ";
+    static final String getFiles = getFilesColumns +
+            "WHERE file.id IN (SELECT fileId FROM fileCategory WHERE categoryId = :categoryId) " +
+            "ORDER BY fileVersion.versionKey DESC LIMIT :limit OFFSET :offset";
+    static final String getFilesWithDescendants = getFilesColumns +
+            "WHERE file.id IN (SELECT fileCategory.fileId FROM categoryClosure INNER JOIN fileCategory ON fileCategory.categoryId = categoryClosure.descendantId WHERE categoryClosure.ancestorId = :categoryId) " +
+            "ORDER BY fileVersion.versionKey DESC LIMIT :limit OFFSET :offset";
+
+    // шаг между позициями соседних категорий; оставляет место для перемещения без перенумерации
+    public static final int POSITION_GAP = 1024;
 
     public HashMap<String, List<String>> errors = new HashMap<String, List<String>>();
 
@@ -82,49 +92,19 @@ public class CategoryModel implements ModelInterface {
     }
 
     public static CategoryModel findById(int id) throws SQLException {
-        NamedParameterJdbcTemplate template = new NamedParameterJdbcTemplate(Database2.getInstance().getBds());
-        MapSqlParameterSource parameters = new MapSqlParameterSource();
-        parameters.addValue("id", id);
-        List<Map<String,Object>> res = template.queryForList(getById, parameters);
-        if (!res.isEmpty()) {
-            int categoryId = Integer.parseInt(String.valueOf(res.get(0).get("id")));
-            int parent = Integer.parseInt(String.valueOf(res.get(0).get("parent")));
-            String title = String.valueOf(res.get(0).get("title"));
-            int position = Integer.parseInt(String.valueOf(res.get(0).get("position")));
-            return new CategoryModel(categoryId, parent, position, title);
+        CategoryModel category = CategoryTree.get().findById(id);
+        if (category != null) {
+            return category;
         }
         throw new NotFoundException("Категория не найдена");
     }
 
     public static ArrayList<CategoryModel> findAll() throws SQLException {
-        ArrayList<CategoryModel> result = new ArrayList<CategoryModel>();
-        JdbcTemplate template = new JdbcTemplate(Database2.getInstance().getBds());
-        List<Map<String, Object>> rows = template.queryForList(getTreeElements);
-        for (Map row : rows) {
-            Integer modelId =  (Integer) row.get("id");
-            Integer parent =  (Integer) row.get("parent");
-            String title = (String) row.get("title");
-            Integer position = (Integer) row.get("position");
-            result.add(new CategoryModel(modelId, parent, position, title));
-        }
-        return result;
+        return CategoryTree.get().getAll();
     }
 
-    public ArrayList children() throws SQLException {
-        ArrayList<CategoryModel> result = new ArrayList<CategoryModel>();
-        NamedParameterJdbcTemplate template = new NamedParameterJdbcTemplate(Database2.getInstance().getBds());
-        MapSqlParameterSource parameters = new MapSqlParameterSource();
-        parameters.addValue("parentId", id);
-        List<Map<String, Object>> rows = template.queryForList(getChildren, parameters);
-
-        for (Map row : rows) {
-            Integer categoryId = (Integer) row.get("id");
-            Integer parent = (Integer) row.get("parent");
-            String title = (String) row.get("title");
-            Integer position = (Integer) row.get("position");
-            result.add(new CategoryModel(categoryId, parent, position, title));
-        }
-        return result;
+    public ArrayList<CategoryModel> children() throws SQLException {
+        return CategoryTree.get().getChildren(id);
     }
 
     /**
@@ -134,12 +114,14 @@ public class CategoryModel implements ModelInterface {
      */
     public boolean update() throws SQLException {
         if (validate()) {
-            NamedParameterJdbcTemplate template = new NamedParameterJdbcTemplate(Database2.getInstance().getBds());
+            NamedParameterJdbcTemplate template = Database2.getInstance().getTemplate();
             MapSqlParameterSource parameters = new MapSqlParameterSource();
             parameters.addValue("id", id);
             parameters.addValue("parent", parent);
             parameters.addValue("title", title);
             template.update(updateElem, parameters);
+            CategoryClosureModel.rebuild();
+            CategoryTree.invalidate();
         }
         return false;
     }
@@ -149,92 +131,198 @@ public class CategoryModel implements ModelInterface {
      * @return Количество категорий
      */
     public static int getCount() {
-        JdbcTemplate template = new JdbcTemplate(Database2.getInstance().getBds());
+        JdbcTemplate template = Database2.getInstance().getJdbcTemplate();
         return template.queryForObject(getCount, Integer.class);
     }
 
     /**
-     * Обновление сортировки внутри родителя
+     * Перемещение категории на позицию среди детей родителя
      * @param parentId id родителя, внутри которого обвноляем сортировку
      * @param nodeId id элемента, которому задали позицию
-     * @param newPosition заданная позиция для элемента с id = nodeId
+     * @param newPosition номер элемента среди детей родителя, начиная с 0
      * @throws SQLException
      */
     public static void updateSortingOfNode(int parentId, int nodeId, int newPosition) throws SQLException {
-        NamedParameterJdbcTemplate template = new NamedParameterJdbcTemplate(Database2.getInstance().getBds());
-        String sql = "SELECT * FROM category WHERE parent = :parentId ORDER BY position";
+        List<Integer> order = new ArrayList<Integer>(getChildPositions(parentId).keySet());
+        order.remove(Integer.valueOf(nodeId));
+        order.add(Math.max(0, Math.min(newPosition, order.size())), nodeId);
+        reorderChildren(parentId, order);
+    }
+
+    /**
+     * Применение итогового порядка детей родителя
+     * Позиции хранятся с шагом POSITION_GAP. Категории, которые уже стоят в нужном порядке (наибольшая возрастающая
+     * подпоследовательность текущих позиций), не меняются; остальные получают позиции в промежутках между ними,
+     * поэтому перемещение одной категории обычно обновляет одну строку. Если промежутка не хватает, дети нумеруются заново.
+     * Изменения записываются одним пакетом в одной транзакции
+     * @param parentId Id родителя
+     * @param orderedIds Id детей в нужном порядке; id чужих категорий пропускаются, не перечисленные дети остаются в конце
+     * @return Количество обновленных категорий
+     */
+    public static int reorderChildren(int parentId, List<Integer> orderedIds) {
+        LinkedHashMap<Integer, Integer> current = getChildPositions(parentId);
+        LinkedHashSet<Integer> order = new LinkedHashSet<Integer>();
+        for (Integer id : orderedIds) {
+            if (current.containsKey(id)) {
+                order.add(id);
+            }
+        }
+        order.addAll(current.keySet());
+        List<Integer> ids = new ArrayList<Integer>(order);
+        int[] oldPositions = new int[ids.size()];
+        for (int i = 0; i < oldPositions.length; i++) {
+            oldPositions[i] = current.get(ids.get(i));
+        }
+        int[] newPositions = planPositions(oldPositions);
+
+        final List<MapSqlParameterSource> batch = new ArrayList<MapSqlParameterSource>();
+        for (int i = 0; i < newPositions.length; i++) {
+            if (newPositions[i] != oldPositions[i]) {
+                MapSqlParameterSource parameters = new MapSqlParameterSource();
+                parameters.addValue("id", ids.get(i));
+                parameters.addValue("position", newPositions[i]);
+                batch.add(parameters);
+            }
+        }
+        if (batch.size() == 0) {
+            return 0;
+        }
+        final NamedParameterJdbcTemplate template = Database2.getInstance().getTemplate();
+        TransactionTemplate transaction = new TransactionTemplate(Database2.getInstance().getTransactionManager());
+        transaction.execute(new TransactionCallback<Integer>() {
+            @Override
+            public Integer doInTransaction(TransactionStatus status) {
+                template.batchUpdate(updatePosition, batch.toArray(new MapSqlParameterSource[batch.size()]));
+                return batch.size();
+            }
+        });
+        CategoryTree.invalidate();
+        return batch.size();
+    }
+
+    /**
+     * Текущие позиции детей родителя в порядке сортировки
+     */
+    private static LinkedHashMap<Integer, Integer> getChildPositions(int parentId) {
+        final LinkedHashMap<Integer, Integer> result = new LinkedHashMap<Integer, Integer>();
+        NamedParameterJdbcTemplate template = Database2.getInstance().getTemplate();
         MapSqlParameterSource parameters = new MapSqlParameterSource();
         parameters.addValue("parentId", parentId);
-        List<Map<String, Object>> rows = template.queryForList(sql, parameters);
-        int counter = 0;
-        sql = "UPDATE category SET position = :position WHERE id = :id";
-        for (Map row : rows) {
-            Integer position = (Integer) row.get("position");
-            Integer id = (Integer) row.get("id");
-            if (id == nodeId) {
-                parameters.addValue("id", nodeId);
-                parameters.addValue("position", newPosition);
-            } else {
-                if (position == newPosition) {
-                    counter++;
+        template.query(getChildPositions, parameters, new RowCallbackHandler() {
+            @Override
+            public void processRow(ResultSet rs) throws SQLException {
+                result.put(rs.getInt(1), rs.getInt(2));
+            }
+        });
+        return result;
+    }
+
+    /**
+     * Расчет новых позиций
+     * @param oldPositions Текущие позиции в нужном порядке
+     * @return Новые позиции: строго возрастают, совпадают с текущими у наибольшего возможного числа элементов
+     */
+    static int[] planPositions(int[] oldPositions) {
+        int count = oldPositions.length;
+        // наибольшая строго возрастающая подпоследовательность: tails[k] - индекс последнего элемента цепочки длины k + 1
+        int[] tails = new int[count];
+        int[] previous = new int[count];
+        int length = 0;
+        for (int i = 0; i < count; i++) {
+            int low = 0;
+            int high = length;
+            while (low < high) {
+                int middle = (low + high) >>> 1;
+                if (oldPositions[tails[middle]] < oldPositions[i]) {
+                    low = middle + 1;
+                } else {
+                    high = middle;
+                }
+            }
+            previous[i] = low > 0 ? tails[low - 1] : -1;
+            tails[low] = i;
+            if (low == length) {
+                length++;
+            }
+        }
+        boolean[] isKept = new boolean[count];
+        for (int i = length > 0 ? tails[length - 1] : -1; i >= 0; i = previous[i]) {
+            isKept[i] = true;
+        }
+
+        int[] result = new int[count];
+        int lastKept = -1;
+        for (int i = 0; i <= count; i++) {
+            if (i < count && !isKept[i]) {
+                continue;
+            }
+            // элементы между lastKept и i размещаются в промежутке между их позициями
+            int runLength = i - lastKept - 1;
+            if (runLength > 0) {
+                long low = lastKept >= 0 ? oldPositions[lastKept] : -1;
+                if (i < count) {
+                    long high = oldPositions[i];
+                    if (high - low <= runLength) {
+                        return renumber(count);
+                    }
+                    for (int j = 0; j < runLength; j++) {
+                        result[lastKept + 1 + j] = (int) (low + (high - low) * (j + 1) / (runLength + 1));
+                    }
+                } else {
+                    long base = Math.max(low, 0);
+                    if (base + (long) POSITION_GAP * runLength > Integer.MAX_VALUE) {
+                        return renumber(count);
+                    }
+                    for (int j = 0; j < runLength; j++) {
+                        result[lastKept + 1 + j] = (int) (base + (long) POSITION_GAP * (j + 1));
+                    }
                 }
-                parameters.addValue("id", id);
-                parameters.addValue("position", counter);
-                counter++;
             }
-            template.update(sql, parameters);
+            if (i < count) {
+                result[i] = oldPositions[i];
+                lastKept = i;
+            }
         }
+        return result;
+    }
+
+    private static int[] renumber(int count) {
+        int[] result = new int[count];
+        for (int i = 0; i < count; i++) {
+            result[i] = (i + 1) * POSITION_GAP;
+        }
+        return result;
     }
 
     /**
      * Список файлов в категории постранично
+     * @param withDescendants Включая файлы всех подкатегорий
      */
-    public ArrayList<CategoryFile> getFiles(int limit, int offset) {
-        ArrayList<CategoryFile> result = new ArrayList<CategoryFile>();
-        NamedParameterJdbcTemplate template = new NamedParameterJdbcTemplate(Database2.getInstance().getBds());
+    public ArrayList<CategoryFile> getFiles(int limit, int offset, boolean withDescendants) {
+        NamedParameterJdbcTemplate template = Database2.getInstance().getTemplate();
         MapSqlParameterSource parameters = new MapSqlParameterSource();
         parameters.addValue("categoryId", id);
-        List<Map<String, Object>> idArray = template.queryForList(getFiles, parameters);
-        List<Integer> ids = new ArrayList<Integer>();
-        for (Map row : idArray) {
-            Integer fileId = (Integer) row.get("fileId");
-            ids.add(fileId);
-        }
+        parameters.addValue("limit", limit);
+        parameters.addValue("offset", offset);
+        String sql = withDescendants ? getFilesWithDescendants : getFiles;
+        return new ArrayList<CategoryFile>(template.query(sql, parameters, new CategoryFileMapper(true)));
+    }
 
-        if (ids.size() > 0) {
-            parameters.addValue("limit", limit);
-            parameters.addValue("offset", offset);
-            parameters.addValue("idList", ids);
-            parameters.addValue("isDisabled", false);
-            List<Map<String, Object>> rows = template.queryForList(getFilesInfo, parameters);
-            for (Map row : rows) {
-                Integer fileId = (Integer) row.get("id");
-                Integer versionId = (Integer) row.get("versionId");
-                String title = (String) row.get("title");
-                String version = (String) row.get("version");
-                Long intDate = (Long) row.get("date");
-                java.util.Date date = new java.util.Date(intDate);
-                SimpleDateFormat df = new SimpleDateFormat("dd.MM.yyyy");
-                String strDate = df.format(date);
-                String userDN = (String) row.get("displayName");
-
-                CategoryFile categoryFile = new CategoryFile();
-                categoryFile.setId(fileId);
-                categoryFile.setVersionId(versionId);
-                categoryFile.setTitle(title);
-                categoryFile.setVersion(version);
-                categoryFile.setDate(strDate);
-                categoryFile.setUserDN(userDN);
-                result.add(categoryFile);
-            }
+    /**
+     * Количество файлов в категории
+     * @param withDescendants Включая файлы всех подкатегорий
+     */
+    public int getFileCount(boolean withDescendants) {
+        int[] counts = CategoryClosureModel.getFileCounts().get(id);
+        if (counts == null) {
+            return 0;
         }
-
-        return result;
+        return withDescendants ? counts[1] : counts[0];
     }
 
     public boolean add() throws SQLException {
         if (this.validate()) {
-            NamedParameterJdbcTemplate template = new NamedParameterJdbcTemplate(Database2.getInstance().getBds());
+            NamedParameterJdbcTemplate template = Database2.getInstance().getTemplate();
             MapSqlParameterSource parameters = new MapSqlParameterSource();
             KeyHolder keyHolder = new GeneratedKeyHolder();
             parameters.addValue("parent", parent);
@@ -242,6 +330,10 @@ public class CategoryModel implements ModelInterface {
             parameters.addValue("position", position);
             template.update(saveNew, parameters, keyHolder);
             this.id = keyHolder.getKey().intValue();
+            // переданная позиция - номер среди детей, переводим ее в позицию с промежутками
+            updateSortingOfNode(parent, id, position);
+            CategoryClosureModel.rebuild();
+            CategoryTree.invalidate();
             return true;
         }
         return false;
@@ -288,7 +380,7 @@ public class CategoryModel implements ModelInterface {
 
     public boolean delete() throws SQLException {
         // всем категориям, прявязанным к этому элементу, надо изменить родителя на родителя этого элемента
-        NamedParameterJdbcTemplate template = new NamedParameterJdbcTemplate(Database2.getInstance().getBds());
+        NamedParameterJdbcTemplate template = Database2.getInstance().getTemplate();
         MapSqlParameterSource parameters = new MapSqlParameterSource();
         parameters.addValue("parent", parent);
         parameters.addValue("id", id);
@@ -297,6 +389,8 @@ public class CategoryModel implements ModelInterface {
         // удаляем этот элемент
         parameters.addValue("id", id);
         int rows = template.update(deleteById, parameters);
+        CategoryClosureModel.rebuild();
+        CategoryTree.invalidate();
         return rows > 0;
     }
 }
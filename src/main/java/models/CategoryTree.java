@@ -0,0 +1,140 @@
+package models;
+
+import db.Database2;
+import db.InvalidatingCache;
+import models.mappers.CategoryMapper;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import java.util.*;
+
+/**
+ * Дерево категорий в памяти
+ * Строится одним запросом и не изменяется; после добавления, переименования, перемещения или удаления категории
+ * кэш сбрасывается и при следующем обращении строится заново. Наружу отдаются копии категорий,
+ * поэтому изменение полученной модели не меняет кэш
+ */
+public class CategoryTree {
+    private static final String getAll = "SELECT " + CategoryMapper.COLUMNS + " FROM category ORDER BY position ASC, id ASC";
+
+    private static final InvalidatingCache<CategoryTree> cache = new InvalidatingCache<CategoryTree>(new InvalidatingCache.Loader<CategoryTree>() {
+        @Override
+        public CategoryTree load() {
+            JdbcTemplate template = Database2.getInstance().getJdbcTemplate();
+            return new CategoryTree(template.query(getAll, CategoryMapper.INSTANCE));
+        }
+    });
+
+    // все категории в порядке сортировки
+    private final List<CategoryModel> categories;
+    private final Map<Integer, CategoryModel> byId;
+    // id родителя (0 - корень) - дочерние категории в порядке сортировки
+    private final Map<Integer, List<CategoryModel>> children;
+
+    private CategoryTree(List<CategoryModel> categories) {
+        this.categories = categories;
+        HashMap<Integer, CategoryModel> byId = new HashMap<Integer, CategoryModel>();
+        HashMap<Integer, List<CategoryModel>> children = new HashMap<Integer, List<CategoryModel>>();
+        for (CategoryModel category : categories) {
+            byId.put(category.getId(), category);
+            List<CategoryModel> list = children.get(category.getParent());
+            if (list == null) {
+                list = new ArrayList<CategoryModel>();
+                children.put(category.getParent(), list);
+            }
+            list.add(category);
+        }
+        this.byId = byId;
+        this.children = children;
+    }
+
+    /**
+     * Текущее дерево; при первом обращении после сброса читается из БД
+     */
+    public static CategoryTree get() {
+        return cache.get();
+    }
+
+    /**
+     * Сброс кэша после фиксации текущей транзакции
+     */
+    public static void invalidate() {
+        cache.invalidate();
+    }
+
+    /**
+     * @return Все категории в порядке сортировки
+     */
+    public ArrayList<CategoryModel> getAll() {
+        return copy(categories);
+    }
+
+    /**
+     * @param id Id категории
+     * @return Категория или null, если ее нет
+     */
+    public CategoryModel findById(int id) {
+        CategoryModel category = byId.get(id);
+        return category == null ? null : copy(category);
+    }
+
+    /**
+     * @param parentId Id родителя; 0 - корневые категории
+     * @return Дочерние категории в порядке сортировки
+     */
+    public ArrayList<CategoryModel> getChildren(int parentId) {
+        List<CategoryModel> list = children.get(parentId);
+        return list == null ? new ArrayList<CategoryModel>() : copy(list);
+    }
+
+    /**
+     * Путь от корня до категории
+     * @param id Id категории
+     * @return Категории от корневой до самой категории включительно; пустой список, если категории нет
+     */
+    public ArrayList<CategoryModel> getPath(int id) {
+        LinkedList<CategoryModel> path = new LinkedList<CategoryModel>();
+        HashSet<Integer> visited = new HashSet<Integer>();
+        CategoryModel category = byId.get(id);
+        // visited защищает от цикла в данных
+        while (category != null && visited.add(category.getId())) {
+            path.addFirst(category);
+            category = byId.get(category.getParent());
+        }
+        return copy(path);
+    }
+
+    /**
+     * Id всех потомков категории
+     * @param id Id категории; 0 - все категории
+     * @return Id потомков без самой категории
+     */
+    public Set<Integer> getDescendantIds(int id) {
+        LinkedHashSet<Integer> result = new LinkedHashSet<Integer>();
+        ArrayDeque<Integer> queue = new ArrayDeque<Integer>();
+        queue.add(id);
+        while (!queue.isEmpty()) {
+            List<CategoryModel> list = children.get(queue.poll());
+            if (list == null) {
+                continue;
+            }
+            for (CategoryModel child : list) {
+                if (child.getId() != id && result.add(child.getId())) {
+                    queue.add(child.getId());
+                }
+            }
+        }
+        return result;
+    }
+
+    private static CategoryModel copy(CategoryModel category) {
+        return new CategoryModel(category.getId(), category.getParent(), category.getPosition(), category.getTitle());
+    }
+
+    private static ArrayList<CategoryModel> copy(List<CategoryModel> list) {
+        ArrayList<CategoryModel> result = new ArrayList<CategoryModel>(list.size());
+        for (CategoryModel category : list) {
+            result.add(copy(category));
+        }
+        return result;
+    }
+}
@@ -3,6 +3,7 @@ package models;
 import db.Database2;
 import exceptions.NotFoundException;
 import models.helpers.LogOutput;
+import models.mappers.ExportTemplateMapper;
 import org.springframework.jdbc.core.JdbcTemplate;
 import org.springframework.jdbc.core.namedparam.MapSqlParameterSource;
 import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
@@ -13,15 +14,14 @@ import java.sql.SQLException;
 import java.util.ArrayList;
 import java.util.Date;
 import java.util.List;
-import java.util.Map;
 
 /**
  * Модель шаблонов экспорта
  */
 public class ExportTemplateModel implements ModelInterface {
     private static final String saveNew = "INSERT INTO exportTemplate(title, parameters, finalCommands, finalCommandsInterpreter) VALUES (:title, :parameters, :finalCommands, :finalCommandsInterpreter)";
-    private static final String getAll = "SELECT * FROM exportTemplate";
-    private static final String getById = "SELECT * FROM exportTemplate WHERE id = :id";
+    private static final String getAll = "SELECT " + ExportTemplateMapper.COLUMNS + " FROM exportTemplate";
+    private static final String getById = "SELECT " + ExportTemplateMapper.COLUMNS + " FROM exportTemplate WHERE id = :id";
     private static final String getCountByTitle = "SELECT count(id) FROM exportTemplate WHERE title = :title";
     private static final String deleteById = "DELETE FROM exportTemplate WHERE id = :id";
     private static final String updateById = "UPDATE exportTemplate SET parameters = :parameters, finalCommands = :finalCommands, finalCommandsInterpreter = :finalCommandsInterpreter WHERE id = :id";
@@ -45,7 +45,7 @@ public class ExportTemplateModel implements ModelInterface {
 
     public boolean update() throws SQLException {
         if (validate()) {
-            NamedParameterJdbcTemplate template = new NamedParameterJdbcTemplate(Database2.getInstance().getBds());
+            NamedParameterJdbcTemplate template = Database2.getInstance().getTemplate();
             MapSqlParameterSource queryParameters = new MapSqlParameterSource();
             queryParameters.addValue("id", id);
             queryParameters.addValue("parameters", parameters);
@@ -61,7 +61,7 @@ public class ExportTemplateModel implements ModelInterface {
 
     public boolean add() throws SQLException {
         if (validate()) {
-            NamedParameterJdbcTemplate template = new NamedParameterJdbcTemplate(Database2.getInstance().getBds());
+            NamedParameterJdbcTemplate template = Database2.getInstance().getTemplate();
             MapSqlParameterSource queryParameters = new MapSqlParameterSource();
             queryParameters.addValue("title", title);
             queryParameters.addValue("parameters", parameters);
@@ -80,7 +80,7 @@ public class ExportTemplateModel implements ModelInterface {
     }
 
     public boolean delete() throws SQLException {
-        NamedParameterJdbcTemplate template = new NamedParameterJdbcTemplate(Database2.getInstance().getBds());
+        NamedParameterJdbcTemplate template = Database2.getInstance().getTemplate();
         MapSqlParameterSource parameters = new MapSqlParameterSource();
         parameters.addValue("id", id);
         int rows = template.update(deleteById, parameters);
@@ -88,25 +88,18 @@ public class ExportTemplateModel implements ModelInterface {
     }
 
     public static ExportTemplateModel findById(int id) throws SQLException {
-        NamedParameterJdbcTemplate template = new NamedParameterJdbcTemplate(Database2.getInstance().getBds());
+        NamedParameterJdbcTemplate template = Database2.getInstance().getTemplate();
         MapSqlParameterSource parameters = new MapSqlParameterSource();
         parameters.addValue("id", id);
-        List<Map<String, Object>> rows = template.queryForList(getById, parameters);
-
-        if (rows.size() > 0) {
-            Map<String, Object> result = rows.get(0);
-            int templateId = (Integer) result.get("id");
-            String title = (String) result.get("title");
-            String params = (String) result.get("parameters");
-            String finalCommands = (String) result.get("finalCommands");
-            Integer finalCommandsInterpreter = (Integer) result.get("finalCommandsInterpreter");
-            return new ExportTemplateModel(templateId, title, params, finalCommands, finalCommandsInterpreter);
+        List<ExportTemplateModel> rows = template.query(getById, parameters, ExportTemplateMapper.INSTANCE);
+        if (!rows.isEmpty()) {
+            return rows.get(0);
         }
         throw new NotFoundException("Шаблон не найден", "404");
     }
 
     public static boolean isTitleExist(String title) {
-        NamedParameterJdbcTemplate template = new NamedParameterJdbcTemplate(Database2.getInstance().getBds());
+        NamedParameterJdbcTemplate template = Database2.getInstance().getTemplate();
         MapSqlParameterSource parameters = new MapSqlParameterSource();
         parameters.addValue("title", title);
         return template.queryForObject(getCountByTitle, parameters, Integer.class) > 0;
@@ -114,20 +107,9 @@ public class ExportTemplateModel implements ModelInterface {
     }
 
     public static ArrayList<ExportTemplateModel> findAll() throws SQLException {
-        ArrayList<ExportTemplateModel> result = new ArrayList<ExportTemplateModel>();
-        NamedParameterJdbcTemplate template = new NamedParameterJdbcTemplate(Database2.getInstance().getBds());
+        NamedParameterJdbcTemplate template = Database2.getInstance().getTemplate();
         MapSqlParameterSource parameters = new MapSqlParameterSource();
-        List<Map<String, Object>> rows;
-        rows = template.queryForList(getAll, parameters);
-        for (Map<String, Object> row : rows) {
-            Integer templateId = (Integer) row.get("id");
-            String title = (String) row.get("title");
-            String params = (String) row.get("parameters");
-            String finalCommands = (String) row.get("finalCommands");
-            Integer finalCommandsInterpreter = (Integer) row.get("finalCommandsInterpreter");
-            result.add(new ExportTemplateModel(templateId, title, params, finalCommands, finalCommandsInterpreter));
-        }
-        return result;
+        return new ArrayList<ExportTemplateModel>(template.query(getAll, parameters, ExportTemplateMapper.INSTANCE));
     }
     public int getId() {
         return id;
@@ -0,0 +1,213 @@
+package models;
+
+import db.Database2;
+import exceptions.NotFoundException;
+import models.mappers.ExtractionJobMapper;
+import org.springframework.jdbc.core.namedparam.MapSqlParameterSource;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
+import org.springframework.jdbc.support.GeneratedKeyHolder;
+import org.springframework.jdbc.support.KeyHolder;
+
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.List;
+
+/**
+ * Модель задания на повторное извлечение свойств загруженных версий
+ * Версии обходятся по возрастанию id; после каждой пачки в задании сохраняется id последней обработанной версии,
+ * поэтому прерванное задание продолжается с этого места
+ */
+public class ExtractionJobModel implements ModelInterface {
+    private static final String saveNew = "INSERT INTO extractionJob(userId, status, lastVersionId, totalCount, processedCount, changedCount, errorCount, dateCreated, dateUpdated) " +
+            "VALUES (:userId, :status, 0, :totalCount, 0, 0, 0, :dateCreated, :dateUpdated)";
+    private static final String updateStatus = "UPDATE extractionJob SET status = :status, dateUpdated = :dateUpdated WHERE id = :id AND status IN (:statuses)";
+    private static final String updateCheckpoint = "UPDATE extractionJob SET lastVersionId = :lastVersionId, " +
+            "processedCount = processedCount + :processed, changedCount = changedCount + :changed, errorCount = errorCount + :errors, " +
+            "dateUpdated = :dateUpdated WHERE id = :id";
+    private static final String getById = "SELECT " + ExtractionJobMapper.COLUMNS + " FROM extractionJob WHERE id = :id";
+    private static final String getLatest = "SELECT " + ExtractionJobMapper.COLUMNS + " FROM extractionJob ORDER BY id DESC LIMIT 1";
+    private static final String getUnfinished = "SELECT " + ExtractionJobMapper.COLUMNS + " FROM extractionJob WHERE status IN (:statuses) ORDER BY id";
+
+    public static final String QUEUED = "queued";
+    public static final String RUNNING = "running";
+    public static final String DONE = "done";
+    public static final String FAILED = "failed";
+    public static final String STOPPED = "stopped";
+
+    private int id;
+    private int userId;
+    private String status = QUEUED;
+    private int lastVersionId = 0;
+    private int totalCount = 0;
+    private int processedCount = 0;
+    private int changedCount = 0;
+    private int errorCount = 0;
+    private long dateCreated;
+    private long dateUpdated;
+
+    public ExtractionJobModel() {}
+
+    public ExtractionJobModel(int id, int userId, String status, int lastVersionId, int totalCount, int processedCount, int changedCount, int errorCount, long dateCreated, long dateUpdated) {
+        this.id = id;
+        this.userId = userId;
+        this.status = status;
+        this.lastVersionId = lastVersionId;
+        this.totalCount = totalCount;
+        this.processedCount = processedCount;
+        this.changedCount = changedCount;
+        this.errorCount = errorCount;
+        this.dateCreated = dateCreated;
+        this.dateUpdated = dateUpdated;
+    }
+
+    public boolean add() throws SQLException {
+        if (validate()) {
+            long time = new Date().getTime();
+            dateCreated = time;
+            dateUpdated = time;
+            NamedParameterJdbcTemplate template = Database2.getInstance().getTemplate();
+            MapSqlParameterSource parameters = new MapSqlParameterSource();
+            parameters.addValue("userId", userId);
+            parameters.addValue("status", status);
+            parameters.addValue("totalCount", totalCount);
+            parameters.addValue("dateCreated", dateCreated);
+            parameters.addValue("dateUpdated", dateUpdated);
+            KeyHolder keyHolder = new GeneratedKeyHolder();
+            template.update(saveNew, parameters, keyHolder);
+            id = keyHolder.getKey().intValue();
+            return id > 0;
+        }
+        return false;
+    }
+
+    public boolean update() throws SQLException {
+        // статус и контрольная точка меняются отдельными запросами, см. changeStatus и saveCheckpoint
+        return false;
+    }
+
+    public boolean validate() {
+        return status != null;
+    }
+
+    public boolean delete() throws SQLException {
+        // задания хранятся как история
+        return false;
+    }
+
+    /**
+     * Смена статуса, только если текущий статус один из from
+     * Так остановка задания из панели не затирается статусом, который записывает само задание
+     * @return true, если статус изменен
+     */
+    public static boolean changeStatus(int id, String status, String... from) {
+        NamedParameterJdbcTemplate template = Database2.getInstance().getTemplate();
+        MapSqlParameterSource parameters = new MapSqlParameterSource();
+        parameters.addValue("id", id);
+        parameters.addValue("status", status);
+        parameters.addValue("statuses", Arrays.asList(from));
+        parameters.addValue("dateUpdated", new Date().getTime());
+        return template.update(updateStatus, parameters) > 0;
+    }
+
+    /**
+     * Сохранение контрольной точки; вызывается в транзакции вместе с записью свойств пачки
+     * @param lastVersionId Id последней обработанной версии
+     * @param processed Обработано версий в пачке
+     * @param changed Версий с измененными свойствами в пачке
+     * @param errors Версий, которые не удалось обработать
+     */
+    public static void saveCheckpoint(int id, int lastVersionId, int processed, int changed, int errors) {
+        NamedParameterJdbcTemplate template = Database2.getInstance().getTemplate();
+        MapSqlParameterSource parameters = new MapSqlParameterSource();
+        parameters.addValue("id", id);
+        parameters.addValue("lastVersionId", lastVersionId);
+        parameters.addValue("processed", processed);
+        parameters.addValue("changed", changed);
+        parameters.addValue("errors", errors);
+        parameters.addValue("dateUpdated", new Date().getTime());
+        template.update(updateCheckpoint, parameters);
+    }
+
+    public static ExtractionJobModel findById(int id) {
+        NamedParameterJdbcTemplate template = Database2.getInstance().getTemplate();
+        MapSqlParameterSource parameters = new MapSqlParameterSource();
+        parameters.addValue("id", id);
+        List<ExtractionJobModel> rows = template.query(getById, parameters, ExtractionJobMapper.INSTANCE);
+        if (!rows.isEmpty()) {
+            return rows.get(0);
+        }
+        throw new NotFoundException("Задание не найдено");
+    }
+
+    /**
+     * Последнее задание или null, если заданий еще не было
+     */
+    public static ExtractionJobModel findLatest() {
+        List<ExtractionJobModel> rows = Database2.getInstance().getJdbcTemplate().query(getLatest, ExtractionJobMapper.INSTANCE);
+        return rows.isEmpty() ? null : rows.get(0);
+    }
+
+    /**
+     * Задания, которые не были завершены (например, из-за перезапуска сервера)
+     */
+    public static ArrayList<ExtractionJobModel> findUnfinished() {
+        NamedParameterJdbcTemplate template = Database2.getInstance().getTemplate();
+        MapSqlParameterSource parameters = new MapSqlParameterSource();
+        parameters.addValue("statuses", Arrays.asList(QUEUED, RUNNING));
+        return new ArrayList<ExtractionJobModel>(template.query(getUnfinished, parameters, ExtractionJobMapper.INSTANCE));
+    }
+
+    public boolean isFinished() {
+        return DONE.equals(status) || FAILED.equals(status) || STOPPED.equals(status);
+    }
+
+    public int getId() {
+        return id;
+    }
+
+    public int getUserId() {
+        return userId;
+    }
+
+    public void setUserId(int userId) {
+        this.userId = userId;
+    }
+
+    public String getStatus() {
+        return status;
+    }
+
+    public int getLastVersionId() {
+        return lastVersionId;
+    }
+
+    public int getTotalCount() {
+        return totalCount;
+    }
+
+    public void setTotalCount(int totalCount) {
+        this.totalCount = totalCount;
+    }
+
+    public int getProcessedCount() {
+        return processedCount;
+    }
+
+    public int getChangedCount() {
+        return changedCount;
+    }
+
+    public int getErrorCount() {
+        return errorCount;
+    }
+
+    public long getDateCreated() {
+        return dateCreated;
+    }
+
+    public long getDateUpdated() {
+        return dateUpdated;
+    }
+}
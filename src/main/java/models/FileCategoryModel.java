@@ -3,6 +3,7 @@ package models;
 import db.Database2;
 import models.helpers.CategoryFile;
 import models.helpers.FileCategory;
+import models.mappers.FileCategoryMapper;
 import org.springframework.jdbc.core.namedparam.MapSqlParameterSource;
 import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
 import org.springframework.jdbc.support.GeneratedKeyHolder;
@@ -20,7 +21,7 @@ public class FileCategoryModel implements ModelInterface {
     private static final String saveNew = "INSERT INTO fileCategory(fileId, categoryId) VALUES (:fileId, :categoryId)";
     private static final String deleteById = "DELETE FROM fileCategory WHERE id = :id";
     private static final String deleteByFile = "DELETE FROM fileCategory WHERE fileId = :fileId";
-    private static final String getByFile = "SELECT category.title, category.id FROM fileCategory LEFT JOIN category ON category.id = fileCategory.categoryId WHERE fileId = :fileId";
+    static final String getByFile = "SELECT " + FileCategoryMapper.COLUMNS + " FROM fileCategory LEFT JOIN category ON category.id = fileCategory.categoryId WHERE fileId = :fileId";
 
     public int getId() {
         return id;
@@ -51,28 +52,23 @@ public class FileCategoryModel implements ModelInterface {
     }
 
     public static ArrayList<FileCategory> findByFile(int fileId) {
-        ArrayList<FileCategory> result = new ArrayList<FileCategory>();
-        NamedParameterJdbcTemplate template = new NamedParameterJdbcTemplate(Database2.getInstance().getBds());
+        NamedParameterJdbcTemplate template = Database2.getInstance().getTemplate();
         MapSqlParameterSource parameters = new MapSqlParameterSource();
         parameters.addValue("fileId", fileId);
-        List<Map<String, Object>> rows = template.queryForList(getByFile, parameters);
-        for (Map row : rows) {
-            Integer categoryId = (Integer) row.get("id");
-            String title = (String) row.get("title");
-            result.add(new FileCategory(categoryId, title));
-        }
-        return result;
+        return new ArrayList<FileCategory>(template.query(getByFile, parameters, FileCategoryMapper.INSTANCE));
     }
 
     public boolean add() throws SQLException {
         if (validate()) {
-            NamedParameterJdbcTemplate template = new NamedParameterJdbcTemplate(Database2.getInstance().getBds());
+            NamedParameterJdbcTemplate template = Database2.getInstance().getTemplate();
             MapSqlParameterSource parameters = new MapSqlParameterSource();
             KeyHolder keyHolder = new GeneratedKeyHolder();
             parameters.addValue("fileId", fileId);
             parameters.addValue("categoryId", categoryId);
             template.update(saveNew, parameters, keyHolder);
             this.id = keyHolder.getKey().intValue();
+            CategoryClosureModel.invalidateFileCountsByCategory(categoryId);
+            AttentionQueueModel.refreshFile(fileId);
             return this.id > 0;
         }
         return false;
@@ -91,17 +87,25 @@ public class FileCategoryModel implements ModelInterface {
     }
 
     public boolean delete() throws SQLException {
-        NamedParameterJdbcTemplate template = new NamedParameterJdbcTemplate(Database2.getInstance().getBds());
+        NamedParameterJdbcTemplate template = Database2.getInstance().getTemplate();
         MapSqlParameterSource parameters = new MapSqlParameterSource();
         parameters.addValue("id", id);
+        if (fileId > 0) {
+            CategoryClosureModel.invalidateFileCountsByFile(fileId);
+        } else {
+            CategoryClosureModel.invalidateFileCounts();
+        }
         int rows = template.update(deleteById, parameters);
+        AttentionQueueModel.refreshFile(fileId);
         return rows > 0;
     }
     public static boolean deleteByFile(int fileId) {
-        NamedParameterJdbcTemplate template = new NamedParameterJdbcTemplate(Database2.getInstance().getBds());
+        NamedParameterJdbcTemplate template = Database2.getInstance().getTemplate();
         MapSqlParameterSource parameters = new MapSqlParameterSource();
         parameters.addValue("fileId", fileId);
+        CategoryClosureModel.invalidateFileCountsByFile(fileId);
         int rows = template.update(deleteByFile, parameters);
+        AttentionQueueModel.refreshFile(fileId);
         return rows > 0;
     }
 }
@@ -1,42 +1,49 @@
 package models;
 
+import db.CountCache;
 import db.Database2;
+import helpers.PageCursor;
 import exceptions.NotFoundException;
 import models.helpers.CategoryFile;
 import models.helpers.FileCategory;
+import models.helpers.KeysetPage;
+import models.mappers.CategoryFileMapper;
+import models.mappers.FileMapper;
+import models.mappers.FileVersionMapper;
 import org.springframework.jdbc.core.JdbcTemplate;
 import org.springframework.jdbc.core.namedparam.MapSqlParameterSource;
 import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
 import org.springframework.jdbc.support.GeneratedKeyHolder;
 import org.springframework.jdbc.support.KeyHolder;
-import sun.plugin.cache.FileVersion;
+import search.SearchIndex;
+import search.TitleIndex;
 
 import java.sql.*;
-import java.text.SimpleDateFormat;
 import java.util.*;
 
 public class FileModel implements ModelInterface {
-    private static final String getById = "SELECT * FROM file WHERE id = :id";
-    private static final String getByTitle = "SELECT * FROM file WHERE title = :title";
+    private static final String getById = "SELECT " + FileMapper.COLUMNS + " FROM file WHERE id = :id";
+    static final String getByTitle = "SELECT " + FileMapper.COLUMNS + " FROM file WHERE title = :title";
     private static final String saveNew = "INSERT INTO file(title) VALUES(:title)";
-    private static final String getAll = "SELECT * FROM file";
-    private static final String getAllLimit = "SELECT * FROM file LIMIT :limit OFFSET :offset";
+    private static final String getAll = "SELECT " + FileMapper.COLUMNS + " FROM file";
+    private static final String getFirstPage = "SELECT " + FileMapper.COLUMNS + " FROM file ORDER BY id ASC LIMIT :limit";
+    private static final String getPageAfter = "SELECT " + FileMapper.COLUMNS + " FROM file WHERE id > :id ORDER BY id ASC LIMIT :limit";
+    private static final String getPageBefore = "SELECT " + FileMapper.COLUMNS + " FROM file WHERE id < :id ORDER BY id DESC LIMIT :limit";
     private static final String getCount = "SELECT count(id) FROM file";
     private static final String getVersionCountExclude = "SELECT count(id) FROM fileVersion WHERE fileId = :fileId AND id <> :id";
-    private static final String getTitles = "SELECT id, title FROM file WHERE title LIKE :str";
-    private static final String getVersions = "SELECT fileVersion.*, fileVersionProperty.`value` as `bits` FROM fileVersion LEFT JOIN fileVersionProperty ON fileVersionProperty.fileVersionId = fileVersion.id AND fileVersionProperty.propertyId = 11 WHERE fileId = :fileId ORDER BY CONVERT(version, decimal) DESC";
-    private static final String getEnabledVersions = "SELECT fileVersion.*, fileVersionProperty.`value` as `bits` FROM fileVersion LEFT JOIN fileVersionProperty ON fileVersionProperty.fileVersionId = fileVersion.id AND fileVersionProperty.propertyId = 11 WHERE fileId = :fileId AND isDisabled = :isDisabled ORDER BY CONVERT(version, decimal) DESC";
+    static final String getVersions = "SELECT " + FileVersionMapper.COLUMNS + ", fileVersionProperty.`value` as `bits` FROM fileVersion LEFT JOIN fileVersionProperty ON fileVersionProperty.fileVersionId = fileVersion.id AND fileVersionProperty.propertyId = 11 WHERE fileVersion.fileId = :fileId ORDER BY fileVersion.versionKey DESC";
+    static final String getEnabledVersions = "SELECT " + FileVersionMapper.COLUMNS + ", fileVersionProperty.`value` as `bits` FROM fileVersion LEFT JOIN fileVersionProperty ON fileVersionProperty.fileVersionId = fileVersion.id AND fileVersionProperty.propertyId = 11 WHERE fileVersion.fileId = :fileId AND fileVersion.isDisabled = :isDisabled ORDER BY fileVersion.versionKey DESC";
     private static final String deleteById = "DELETE FROM file WHERE id = :id";
-    private static final String getAllUnfilled = "SELECT id,fileName as title, 0 as isNoCategory FROM fileVersion WHERE isFilled = :isFilled " +
-                                                " UNION " +
-                                                " SELECT file.id,file.title as title, 1 as isNoCategory FROM file LEFT JOIN fileCategory ON fileCategory.fileId = file.id WHERE fileCategory.id IS NULL GROUP BY file.id " +
-                                                " LIMIT :limit OFFSET :offset;";
-    private static final String getAllUnfilledCount = "SELECT count(id) AS count FROM fileVersion WHERE isFilled = :isFilled" +
-            " UNION " +
-            " SELECT count(file.id) AS count FROM file LEFT JOIN fileCategory ON fileCategory.fileId = file.id WHERE fileCategory.id IS NULL GROUP BY file.id";
-    private static final String getFilesByTitle = "SELECT file.id, file.title, fileVersion.version, fileVersion.date, user.displayName FROM file " +
-            "LEFT JOIN fileVersion ON fileVersion.id = (SELECT id FROM fileVersion WHERE fileVersion.fileId = file.id ORDER BY version DESC LIMIT 1) " +
-            "LEFT JOIN user ON user.id = fileVersion.userId WHERE file.title like :str ORDER BY fileVersion.version DESC LIMIT 100";
+    private static final String getLatestVersion = "SELECT " + FileVersionMapper.COLUMNS + " FROM file INNER JOIN fileVersion ON fileVersion.id = file.latestVersionId WHERE file.id = :fileId";
+    private static final String getLatestEnabledVersion = "SELECT " + FileVersionMapper.COLUMNS + " FROM file INNER JOIN fileVersion ON fileVersion.id = file.latestEnabledVersionId WHERE file.id = :fileId";
+    private static final String updateLatestVersions = "UPDATE file SET " +
+            "latestVersionId = COALESCE((SELECT id FROM fileVersion WHERE fileVersion.fileId = :fileId ORDER BY versionKey DESC, id DESC LIMIT 1), 0), " +
+            "latestEnabledVersionId = COALESCE((SELECT id FROM fileVersion WHERE fileVersion.fileId = :fileId AND isDisabled = 0 ORDER BY versionKey DESC, id DESC LIMIT 1), 0) " +
+            "WHERE id = :fileId";
+    private static final String getLatestEnabledVersionId = "SELECT latestEnabledVersionId FROM file WHERE id = :fileId";
+    private static final String getFilesByIds = "SELECT file.id, file.title, fileVersion.version, fileVersion.date, user.displayName FROM file " +
+            "LEFT JOIN fileVersion ON fileVersion.id = file.latestVersionId " +
+            "LEFT JOIN user ON user.id = fileVersion.userId WHERE file.id IN (:ids)";
 
     private int id;
     private String title;
@@ -58,211 +65,163 @@ public class FileModel implements ModelInterface {
     }
 
     public static FileModel findById(int id) {
-        NamedParameterJdbcTemplate template = new NamedParameterJdbcTemplate(Database2.getInstance().getBds());
+        NamedParameterJdbcTemplate template = Database2.getInstance().getTemplate();
         MapSqlParameterSource parameters = new MapSqlParameterSource();
         parameters.addValue("id", id);
-        List<Map<String, Object>> rows = template.queryForList(getById, parameters);
-        for (Map row : rows) {
-            Integer fileId = (Integer) row.get("id");
-            String title = (String) row.get("title");
-            return new FileModel(fileId, title);
+        List<FileModel> rows = template.query(getById, parameters, FileMapper.INSTANCE);
+        if (!rows.isEmpty()) {
+            return rows.get(0);
         }
         throw new NotFoundException("Файл не найден");
     }
 
     public static FileModel findByTitle(String title) throws SQLException {
-        NamedParameterJdbcTemplate template = new NamedParameterJdbcTemplate(Database2.getInstance().getBds());
+        NamedParameterJdbcTemplate template = Database2.getInstance().getTemplate();
         MapSqlParameterSource parameters = new MapSqlParameterSource();
         parameters.addValue("title", title);
-        List<Map<String, Object>> rows = template.queryForList(getByTitle, parameters);
-        for (Map row : rows) {
-            Integer fileId = (Integer) row.get("id");
-            String fileTitle = (String) row.get("title");
-            return new FileModel(fileId, fileTitle);
+        List<FileModel> rows = template.query(getByTitle, parameters, FileMapper.INSTANCE);
+        if (!rows.isEmpty()) {
+            return rows.get(0);
         }
         return null;
     }
 
     public static ArrayList<FileModel> findAll() throws SQLException {
-        ArrayList<FileModel> result = new ArrayList<FileModel>();
-        JdbcTemplate template = new JdbcTemplate(Database2.getInstance().getBds());
-        List<Map<String, Object>> rows = template.queryForList(getAll);
-        for (Map row : rows) {
-            Integer modelId = (Integer) row.get("id");
-            String title = (String) row.get("title");
-            result.add(new FileModel(modelId, title));
-        }
-        return result;
+        JdbcTemplate template = Database2.getInstance().getJdbcTemplate();
+        return new ArrayList<FileModel>(template.query(getAll, FileMapper.INSTANCE));
     }
 
-    public static ArrayList<FileModel> findAll(int limit, int offset) throws SQLException {
-        ArrayList<FileModel> result = new ArrayList<FileModel>();
-        NamedParameterJdbcTemplate template = new NamedParameterJdbcTemplate(Database2.getInstance().getBds());
+    /**
+     * Страница файлов по возрастанию id
+     * @param cursor Курсор из предыдущей страницы; пустой - первая страница
+     * @param limit Размер страницы
+     */
+    public static KeysetPage<FileModel> findPage(String cursor, int limit) {
+        PageCursor pageCursor = PageCursor.parse(cursor, 1);
+        NamedParameterJdbcTemplate template = Database2.getInstance().getTemplate();
         MapSqlParameterSource parameters = new MapSqlParameterSource();
-        parameters.addValue("limit", limit);
-        parameters.addValue("offset", offset);
-        List<Map<String, Object>> rows = template.queryForList(getAllLimit, parameters);
-        for (Map row : rows) {
-            Integer modelId = (Integer) row.get("id");
-            String title = (String) row.get("title");
-            result.add(new FileModel(modelId, title));
+        parameters.addValue("limit", limit + 1);
+        String sql = getFirstPage;
+        if (pageCursor != null) {
+            parameters.addValue("id", pageCursor.getKey(0));
+            sql = pageCursor.isBackward() ? getPageBefore : getPageAfter;
         }
-        return result;
+        List<FileModel> rows = template.query(sql, parameters, FileMapper.INSTANCE);
+        return KeysetPage.of(rows, limit, pageCursor, new KeysetPage.KeyExtractor<FileModel>() {
+            @Override
+            public long[] getKey(FileModel item) {
+                return new long[]{item.getId()};
+            }
+        });
     }
 
+    /**
+     * Количество файлов; значение кэшируется и может отставать
+     */
     public static int getCount() {
-        JdbcTemplate template = new JdbcTemplate(Database2.getInstance().getBds());
-        return template.queryForObject(getCount, Integer.class);
+        return CountCache.get("file", new CountCache.Counter() {
+            @Override
+            public int count() {
+                JdbcTemplate template = Database2.getInstance().getJdbcTemplate();
+                return template.queryForObject(getCount, Integer.class);
+            }
+        });
     }
 
     public boolean add() throws SQLException {
         if (this.validate()) {
-            NamedParameterJdbcTemplate template = new NamedParameterJdbcTemplate(Database2.getInstance().getBds());
+            NamedParameterJdbcTemplate template = Database2.getInstance().getTemplate();
             MapSqlParameterSource parameters = new MapSqlParameterSource();
             parameters.addValue("title", title);
             KeyHolder keyHolder = new GeneratedKeyHolder();
             template.update(saveNew, parameters, keyHolder);
             id = keyHolder.getKey().intValue();
+            SearchIndex.markFile(id);
+            TitleIndex.add(id, title);
+            // у нового файла еще нет категорий
+            AttentionQueueModel.refreshFile(id);
             return id > 0;
         } else {
             return false;
         }
     }
 
-    public static ArrayList<FileModel> findTitles(String query){
-        ArrayList<FileModel> result = new ArrayList<FileModel>();
-        NamedParameterJdbcTemplate template = new NamedParameterJdbcTemplate(Database2.getInstance().getBds());
-        MapSqlParameterSource parameters = new MapSqlParameterSource();
-        parameters.addValue("str", "%" + query + "%");
-        List<Map<String, Object>> rows = template.queryForList(getTitles, parameters);
-        for (Map row : rows) {
-            Integer modelId = (Integer) row.get("id");
-            String title = (String) row.get("title");
-            result.add(new FileModel(modelId, title));
-        }
-        return result;
-    }
-
-    public static ArrayList<CategoryFile> findFilesByTitles(String query){
+    /**
+     * Список файлов с последней версией по id
+     * @param ids Id файлов, например страница результатов поиска
+     * @return Файлы в порядке переданных id; отсутствующие в БД пропускаются
+     */
+    public static ArrayList<CategoryFile> findFilesByIds(List<Integer> ids) {
         ArrayList<CategoryFile> result = new ArrayList<CategoryFile>();
-        NamedParameterJdbcTemplate template = new NamedParameterJdbcTemplate(Database2.getInstance().getBds());
-        MapSqlParameterSource parameters = new MapSqlParameterSource();
-        parameters.addValue("str", "%" + query + "%");
-        List<Map<String, Object>> rows = template.queryForList(getFilesByTitle, parameters);
-        for (Map row : rows) {
-            Integer fileId = (Integer) row.get("id");
-            String title = (String) row.get("title");
-            String version = (String) row.get("version");
-            Long intDate = (Long) row.get("date");
-            java.util.Date date = new java.util.Date(intDate);
-            SimpleDateFormat df = new SimpleDateFormat("dd.MM.yyyy");
-            String strDate = df.format(date);
-            String userDN = (String) row.get("displayName");
-
-            CategoryFile file = new CategoryFile();
-            file.setId(fileId);
-            file.setTitle(title);
-            file.setVersion(version);
-            file.setDate(strDate);
-            file.setUserDN(userDN);
-            result.add(file);
+        if (ids.isEmpty()) {
+            return result;
         }
-        return result;
-    }
-
-    public static ArrayList<HashMap> findUnfilled(int limit, int offset) {
-        ArrayList<HashMap> result = new ArrayList<HashMap>();
-        NamedParameterJdbcTemplate template = new NamedParameterJdbcTemplate(Database2.getInstance().getBds());
+        NamedParameterJdbcTemplate template = Database2.getInstance().getTemplate();
         MapSqlParameterSource parameters = new MapSqlParameterSource();
-        parameters.addValue("isFilled", false);
-        parameters.addValue("limit", limit);
-        parameters.addValue("offset", offset);
-        List<Map<String, Object>> rows = template.queryForList(getAllUnfilled, parameters);
-        for (Map row : rows) {
-            HashMap<String, String> info = new HashMap<String, String>();
-            info.put("id", String.valueOf(row.get("id")));
-            info.put("title", String.valueOf(row.get("title")));
-            info.put("isNoCategory", String.valueOf(row.get("isNoCategory")));
-            result.add(info);
+        parameters.addValue("ids", ids);
+        HashMap<Integer, CategoryFile> files = new HashMap<Integer, CategoryFile>();
+        for (CategoryFile file : template.query(getFilesByIds, parameters, new CategoryFileMapper(false))) {
+            files.put(file.getId(), file);
+        }
+        for (Integer id : ids) {
+            CategoryFile file = files.get(id);
+            if (file != null) {
+                result.add(file);
+            }
         }
         return result;
     }
 
-    public static int getUnfilledCount() {
-        NamedParameterJdbcTemplate template = new NamedParameterJdbcTemplate(Database2.getInstance().getBds());
+    public FileVersionModel getLastVersion(boolean enabledOnly) {
+        String sql = enabledOnly ? getLatestEnabledVersion : getLatestVersion;
+        NamedParameterJdbcTemplate template = Database2.getInstance().getTemplate();
         MapSqlParameterSource parameters = new MapSqlParameterSource();
-        parameters.addValue("isFilled", false);
-        List<Map<String, Object>> rows = template.queryForList(getAllUnfilledCount, parameters);
-        int count = 0;
-        for (Map row : rows) {
-            HashMap<String, String> info = new HashMap<String, String>();
-            long c = (Long) row.get("count");
-            count += c;
+        parameters.addValue("fileId", id);
+        List<FileVersionModel> rows = template.query(sql, parameters, FileVersionMapper.INSTANCE);
+        if (!rows.isEmpty()) {
+            return rows.get(0);
         }
-        return count;
+        throw new NotFoundException("Версия не найдена");
     }
 
-    public FileVersionModel getLastVersion(boolean enabledOnly) {
-        String sql;
-        if (enabledOnly) {
-            sql = "SELECT * FROM fileVersion WHERE fileId = :fileId AND isDisabled = :isDisabled ORDER BY CONVERT(version, decimal) DESC LIMIT 1;";
-        } else {
-            sql = "SELECT * FROM fileVersion WHERE fileId = :fileId ORDER BY CONVERT(version, decimal) DESC LIMIT 1;";
+
+
+    /**
+     * Пересчет ссылок на последнюю версию и последнюю включенную версию файла
+     * Вызывается моделью версии при добавлении, изменении и удалении версии
+     * @param fileId Id файла
+     */
+    public static void refreshLatestVersions(int fileId) {
+        if (fileId <= 0) {
+            return;
         }
-        NamedParameterJdbcTemplate template = new NamedParameterJdbcTemplate(Database2.getInstance().getBds());
+        NamedParameterJdbcTemplate template = Database2.getInstance().getTemplate();
         MapSqlParameterSource parameters = new MapSqlParameterSource();
-        parameters.addValue("fileId", id);
-        parameters.addValue("isDisabled", false);
-        List<Map<String, Object>> rows = template.queryForList(sql, parameters);
-        for (Map row : rows) {
-            Integer id = (Integer) row.get("id");
-            Integer fileId = (Integer) row.get("fileId");
-            Integer userId = (Integer) row.get("userId");
-            String version = (String) row.get("version");
-            String fileName = (String) row.get("fileName");
-            String hash = (String) row.get("hash");
-            Long fileSize = (Long) row.get("fileSize");
-            Long date = (Long) row.get("date");
-            Boolean isFilled = ((Integer) row.get("isFilled") == 1);
-            Boolean isDisabled = ((Integer) row.get("isDisabled") == 1);
-            return  new FileVersionModel(id, fileId, userId, version, hash, fileSize, date, isFilled, fileName, isDisabled);
+        parameters.addValue("fileId", fileId);
+        boolean wasCounted = hasEnabledVersion(template, parameters);
+        template.update(updateLatestVersions, parameters);
+        // в категориях считаются только файлы с включенной версией; количества меняются, только если она появилась или пропала
+        if (hasEnabledVersion(template, parameters) != wasCounted) {
+            CategoryClosureModel.invalidateFileCountsByFile(fileId);
         }
-        throw new NotFoundException("Версия не найдена");
     }
 
-
+    private static boolean hasEnabledVersion(NamedParameterJdbcTemplate template, MapSqlParameterSource parameters) {
+        List<Integer> rows = template.queryForList(getLatestEnabledVersionId, parameters, Integer.class);
+        return !rows.isEmpty() && rows.get(0) > 0;
+    }
 
     public ArrayList<FileVersionModel> getVersionList(boolean onlyEnabled) {
-        ArrayList<FileVersionModel> result = new ArrayList<FileVersionModel>();
-        NamedParameterJdbcTemplate template = new NamedParameterJdbcTemplate(Database2.getInstance().getBds());
+        NamedParameterJdbcTemplate template = Database2.getInstance().getTemplate();
         MapSqlParameterSource parameters = new MapSqlParameterSource();
         parameters.addValue("fileId", id);
         parameters.addValue("isDisabled", false);
-        List<Map<String, Object>> rows;
-        if (onlyEnabled) {
-            rows = template.queryForList(getEnabledVersions, parameters);
-        } else {
-            rows = template.queryForList(getVersions, parameters);
-        }
-        for (Map row : rows) {
-            Integer modelId = (Integer) row.get("id");
-            Integer fileId = (Integer) row.get("fileId");
-            Integer userId = (Integer) row.get("userId");
-            String version = (String) row.get("version");
-            String hash = (String) row.get("hash");
-            String fileName = (String) row.get("fileName");
-            Long fileSize = (Long) row.get("fileSize");
-            Long date = (Long) row.get("date");
-            Boolean isFilled = (Integer) row.get("isFilled") == 1;
-            Boolean isDisabled = (Integer) row.get("isDisabled") == 1;
-            String bits = (String) row.get("bits");
-            result.add(new FileVersionModel(modelId, fileId, userId, version, hash, fileSize, date, isFilled, fileName, isDisabled, bits));
-        }
-        return result;
+        String sql = onlyEnabled ? getEnabledVersions : getVersions;
+        return new ArrayList<FileVersionModel>(template.query(sql, parameters, FileVersionMapper.WITH_BITS));
     }
 
     public int getVersionCount(int excludeVersionId) {
-        NamedParameterJdbcTemplate template = new NamedParameterJdbcTemplate(Database2.getInstance().getBds());
+        NamedParameterJdbcTemplate template = Database2.getInstance().getTemplate();
         MapSqlParameterSource parameters = new MapSqlParameterSource();
         parameters.addValue("fileId", id);
         parameters.addValue("id", excludeVersionId);
@@ -289,7 +248,7 @@ public class FileModel implements ModelInterface {
     }
 
     public boolean delete() throws SQLException {
-        NamedParameterJdbcTemplate template = new NamedParameterJdbcTemplate(Database2.getInstance().getBds());
+        NamedParameterJdbcTemplate template = Database2.getInstance().getTemplate();
         MapSqlParameterSource parameters = new MapSqlParameterSource();
 
         // удаляем свойства файла
@@ -301,6 +260,9 @@ public class FileModel implements ModelInterface {
         // удаляем сам файл
         parameters.addValue("id", id);
         int rows = template.update(deleteById, parameters);
+        SearchIndex.markFile(id);
+        TitleIndex.remove(id);
+        AttentionQueueModel.refreshFile(id);
         return rows > 0;
     }
 
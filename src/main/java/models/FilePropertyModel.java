@@ -2,24 +2,25 @@ package models;
 
 import db.Database2;
 import exceptions.NotFoundException;
+import models.mappers.FilePropertyMapper;
 import org.springframework.jdbc.core.namedparam.MapSqlParameterSource;
 import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
 import org.springframework.jdbc.support.GeneratedKeyHolder;
 import org.springframework.jdbc.support.KeyHolder;
+import search.SearchIndex;
 
 import java.sql.SQLException;
 import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
-import java.util.Map;
 
 public class FilePropertyModel implements ModelInterface {
     private static final String updateById = "UPDATE fileProperty SET value = :value WHERE id = :id";
     private static final String saveNew = "INSERT INTO fileProperty(fileId, propertyId, value) VALUES(:fileId, :propertyId, :value)";
-    private static final String getById = "SELECT fileProperty.id, fileProperty.fileId, property.title, fileProperty.propertyId, fileProperty.value FROM fileProperty LEFT JOIN property ON property.id = fileProperty.propertyId WHERE fileProperty.id = :id";
-    private static final String getByFile = "SELECT fileProperty.*, property.title FROM fileProperty LEFT JOIN property ON fileProperty.propertyId = property.id WHERE fileId = :fileId AND propertyId <> :fileName AND propertyId <> :version";
+    private static final String getById = "SELECT " + FilePropertyMapper.COLUMNS + " FROM fileProperty LEFT JOIN property ON property.id = fileProperty.propertyId WHERE fileProperty.id = :id";
+    static final String getByFile = "SELECT " + FilePropertyMapper.COLUMNS + " FROM fileProperty LEFT JOIN property ON fileProperty.propertyId = property.id WHERE fileProperty.fileId = :fileId AND propertyId <> :fileName AND propertyId <> :version";
     private static final String deleteById = "DELETE FROM fileProperty WHERE id = :id";
-    private static final String checkIsExist = "SELECT * FROM fileProperty WHERE fileId = :fileId AND propertyId = :propertyId";
+    static final String checkIsExist = "SELECT " + FilePropertyMapper.COLUMNS + " FROM fileProperty LEFT JOIN property ON property.id = fileProperty.propertyId WHERE fileProperty.fileId = :fileId AND fileProperty.propertyId = :propertyId";
     private static final String deleteByVersionId = "DELETE FROM fileProperty WHERE fileId = :fileId";
     private static final String deleteByPropertyId = "DELETE FROM fileProperty WHERE propertyId = :propertyId";
 
@@ -33,12 +34,13 @@ public class FilePropertyModel implements ModelInterface {
 
     public boolean update() throws SQLException {
         if (validate()) {
-            NamedParameterJdbcTemplate template = new NamedParameterJdbcTemplate(Database2.getInstance().getBds());
+            NamedParameterJdbcTemplate template = Database2.getInstance().getTemplate();
             MapSqlParameterSource parameters = new MapSqlParameterSource();
             parameters.addValue("id", id);
             parameters.addValue("value", value);
             int rows = template.update(updateById, parameters);
             if (rows > 0) {
+                SearchIndex.markFile(fileId);
                 return true;
             }
         }
@@ -66,43 +68,29 @@ public class FilePropertyModel implements ModelInterface {
 
     public static ArrayList<FilePropertyModel> getProperties(int fileId) throws SQLException {
         ArrayList<FilePropertyModel> result = new ArrayList<FilePropertyModel>();
-        NamedParameterJdbcTemplate template = new NamedParameterJdbcTemplate(Database2.getInstance().getBds());
+        NamedParameterJdbcTemplate template = Database2.getInstance().getTemplate();
         MapSqlParameterSource parameters = new MapSqlParameterSource();
         parameters.addValue("fileId", fileId);
         parameters.addValue("fileName", PropertyModel.PRODUCT_NAME);
         parameters.addValue("version", PropertyModel.FILE_VERSION);
-        List<Map<String, Object>> rows = template.queryForList(getByFile, parameters);
-
-        for (Map row : rows) {
-            Integer modelId = (Integer) row.get("id");
-            Integer modelFileId = (Integer) row.get("fileId");
-            Integer propertyId = (Integer) row.get("propertyId");
-            String title = (String) row.get("title");
-            String value = (String) row.get("value");
-            result.add(new FilePropertyModel(modelId, modelFileId, propertyId, value, title));
-        }
+        result.addAll(template.query(getByFile, parameters, FilePropertyMapper.INSTANCE));
         return result;
     }
 
     public static FilePropertyModel findById(int id) throws SQLException {
-        NamedParameterJdbcTemplate template = new NamedParameterJdbcTemplate(Database2.getInstance().getBds());
+        NamedParameterJdbcTemplate template = Database2.getInstance().getTemplate();
         MapSqlParameterSource parameters = new MapSqlParameterSource();
         parameters.addValue("id", id);
-        List<Map<String, Object>> rows = template.queryForList(getById, parameters);
-        for (Map row : rows) {
-            Integer rowId = (Integer) row.get("id");
-            Integer fileId = (Integer) row.get("fileId");
-            Integer propertyId = (Integer) row.get("propertyId");
-            String value = (String) row.get("value");
-            String title = (String) row.get("title");
-            return new FilePropertyModel(rowId, fileId, propertyId, value, title);
+        List<FilePropertyModel> rows = template.query(getById, parameters, FilePropertyMapper.INSTANCE);
+        if (!rows.isEmpty()) {
+            return rows.get(0);
         }
         throw new NotFoundException("Свойство файла не найдено");
     }
 
     public boolean add() throws SQLException {
         if (this.validate()) {
-            NamedParameterJdbcTemplate template = new NamedParameterJdbcTemplate(Database2.getInstance().getBds());
+            NamedParameterJdbcTemplate template = Database2.getInstance().getTemplate();
             MapSqlParameterSource parameters = new MapSqlParameterSource();
             parameters.addValue("fileId", fileId);
             parameters.addValue("propertyId", propertyId);
@@ -110,21 +98,20 @@ public class FilePropertyModel implements ModelInterface {
             KeyHolder keyHolder = new GeneratedKeyHolder();
             template.update(saveNew, parameters, keyHolder);
             id = keyHolder.getKey().intValue();
+            SearchIndex.markFile(fileId);
             return true;
         }
         return false;
     }
 
     public static FilePropertyModel isPropertyExist(int fileId, int propertyId) {
-        NamedParameterJdbcTemplate template = new NamedParameterJdbcTemplate(Database2.getInstance().getBds());
+        NamedParameterJdbcTemplate template = Database2.getInstance().getTemplate();
         MapSqlParameterSource parameters = new MapSqlParameterSource();
         parameters.addValue("fileId", fileId);
         parameters.addValue("propertyId", propertyId);
-        List<Map<String, Object>> rows = template.queryForList(checkIsExist, parameters);
-        for (Map row : rows) {
-            Integer itemId = (Integer) row.get("id");
-            String value = (String) row.get("value");
-            return new FilePropertyModel(itemId, fileId, propertyId, value);
+        List<FilePropertyModel> rows = template.query(checkIsExist, parameters, FilePropertyMapper.INSTANCE);
+        if (!rows.isEmpty()) {
+            return rows.get(0);
         }
         return null;
     }
@@ -169,26 +156,29 @@ public class FilePropertyModel implements ModelInterface {
     }
 
     public static boolean deleteByVersion(int fileId) {
-        NamedParameterJdbcTemplate template = new NamedParameterJdbcTemplate(Database2.getInstance().getBds());
+        NamedParameterJdbcTemplate template = Database2.getInstance().getTemplate();
         MapSqlParameterSource parameters = new MapSqlParameterSource();
         parameters.addValue("fileId", fileId);
         int rows = template.update(deleteByVersionId, parameters);
+        SearchIndex.markFile(fileId);
         return rows > 0;
     }
 
     public static boolean deleteByProperty(int propertyId) {
-        NamedParameterJdbcTemplate template = new NamedParameterJdbcTemplate(Database2.getInstance().getBds());
+        NamedParameterJdbcTemplate template = Database2.getInstance().getTemplate();
         MapSqlParameterSource parameters = new MapSqlParameterSource();
         parameters.addValue("propertyId", propertyId);
         int rows = template.update(deleteByPropertyId, parameters);
+        SearchIndex.markAll();
         return rows > 0;
     }
 
     public boolean delete() throws SQLException {
-        NamedParameterJdbcTemplate template = new NamedParameterJdbcTemplate(Database2.getInstance().getBds());
+        NamedParameterJdbcTemplate template = Database2.getInstance().getTemplate();
         MapSqlParameterSource parameters = new MapSqlParameterSource();
         parameters.addValue("id", id);
         int rows = template.update(deleteById, parameters);
+        SearchIndex.markFile(fileId);
         return rows > 0;
     }
 
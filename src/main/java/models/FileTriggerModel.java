@@ -2,6 +2,7 @@ package models;
 
 import db.Database2;
 import exceptions.NotFoundException;
+import models.mappers.FileTriggerMapper;
 import org.springframework.jdbc.core.namedparam.MapSqlParameterSource;
 import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
 import org.springframework.jdbc.support.GeneratedKeyHolder;
@@ -11,7 +12,6 @@ import java.sql.SQLException;
 import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
-import java.util.Map;
 import java.util.regex.Pattern;
 import java.util.regex.PatternSyntaxException;
 
@@ -19,40 +19,49 @@ import java.util.regex.PatternSyntaxException;
  * Модель шаблонов экспорта
  */
 public class FileTriggerModel implements ModelInterface {
-    private static final String saveNew = "INSERT INTO fileTrigger(extension, command, `regexp`) VALUES (:extension, :command, :regexp)";
-    private static final String getAll = "SELECT * FROM fileTrigger";
-    private static final String getById = "SELECT * FROM fileTrigger WHERE id = :id";
-    private static final String getByExtension = "SELECT * FROM fileTrigger WHERE extension = :extension";
+    private static final String saveNew = "INSERT INTO fileTrigger(extension, command, `regexp`, timeout) VALUES (:extension, :command, :regexp, :timeout)";
+    private static final String getAll = "SELECT " + FileTriggerMapper.COLUMNS + " FROM fileTrigger";
+    private static final String getById = "SELECT " + FileTriggerMapper.COLUMNS + " FROM fileTrigger WHERE id = :id";
     private static final String getCountByExtension = "SELECT count(id) FROM fileTrigger WHERE extension = :extension";
     private static final String deleteById = "DELETE FROM fileTrigger WHERE id = :id";
-    private static final String updateById = "UPDATE fileTrigger SET extension = :extension, command = :command, `regexp` = :regexp WHERE id = :id";
+    private static final String updateById = "UPDATE fileTrigger SET extension = :extension, command = :command, `regexp` = :regexp, timeout = :timeout WHERE id = :id";
+
+    /**
+     * Время выполнения команды по умолчанию, секунд
+     */
+    public static final int DEFAULT_TIMEOUT = 30;
+    public static final int MAX_TIMEOUT = 3600;
 
     private Integer id;
     private String extension;
     private String command;
     private String regexp;
+    private int timeout = DEFAULT_TIMEOUT;
 
     public HashMap<String, List<String>> errors = new HashMap<String, List<String>>();
 
     public FileTriggerModel() {}
 
-    public FileTriggerModel(int id, String extension, String command, String regexp) {
+    public FileTriggerModel(int id, String extension, String command, String regexp, int timeout) {
         this.id = id;
         this.extension = extension;
         this.command = command;
         this.regexp = regexp;
+        this.timeout = timeout;
     }
 
     public boolean update() throws SQLException {
         if (validate()) {
-            NamedParameterJdbcTemplate template = new NamedParameterJdbcTemplate(Database2.getInstance().getBds());
+            NamedParameterJdbcTemplate template = Database2.getInstance().getTemplate();
             MapSqlParameterSource queryParameters = new MapSqlParameterSource();
             queryParameters.addValue("id", id);
             queryParameters.addValue("extension", extension);
             queryParameters.addValue("command", command);
             queryParameters.addValue("regexp", regexp);
+            queryParameters.addValue("timeout", timeout);
             int rows = template.update(updateById, queryParameters);
             if (rows > 0) {
+                TriggerRegistry.invalidate();
                 return true;
             }
         }
@@ -61,36 +70,21 @@ public class FileTriggerModel implements ModelInterface {
 
     public boolean add() throws SQLException {
         if (validate()) {
-            NamedParameterJdbcTemplate template = new NamedParameterJdbcTemplate(Database2.getInstance().getBds());
+            NamedParameterJdbcTemplate template = Database2.getInstance().getTemplate();
             MapSqlParameterSource queryParameters = new MapSqlParameterSource();
             queryParameters.addValue("extension", extension);
             queryParameters.addValue("command", command);
             queryParameters.addValue("regexp", regexp);
+            queryParameters.addValue("timeout", timeout);
             KeyHolder keyHolder = new GeneratedKeyHolder();
             template.update(saveNew, queryParameters, keyHolder);
             id = keyHolder.getKey().intValue();
+            TriggerRegistry.invalidate();
             return id > 0;
         }
         return false;
     }
 
-    public static FileTriggerModel findByExtension (String extension) {
-        NamedParameterJdbcTemplate template = new NamedParameterJdbcTemplate(Database2.getInstance().getBds());
-        MapSqlParameterSource parameters = new MapSqlParameterSource();
-        parameters.addValue("extension", extension);
-        List<Map<String, Object>> rows = template.queryForList(getByExtension, parameters);
-
-        if (rows.size() > 0) {
-            Map<String, Object> result = rows.get(0);
-            int templateId = (Integer) result.get("id");
-            String extensionTemp = (String) result.get("extension");
-            String command = (String) result.get("command");
-            String regexp = (String) result.get("regexp");
-            return new FileTriggerModel(templateId, extensionTemp, command, regexp);
-        }
-        return null;
-    }
-
     public boolean validate() {
         // extension
         List<String> extensionErrors = new ArrayList<String>();
@@ -139,56 +133,51 @@ public class FileTriggerModel implements ModelInterface {
             errors.put("regexp", regexpErrors);
         }
 
+        // timeout
+        List<String> timeoutErrors = new ArrayList<String>();
+        if (timeout < 1 || timeout > MAX_TIMEOUT) {
+            result = false;
+            timeoutErrors.add("Время выполнения должно быть от 1 до " + MAX_TIMEOUT + " секунд");
+        }
+        if (timeoutErrors.size() > 0) {
+            errors.put("timeout", timeoutErrors);
+        }
+
 
         return result;
     }
 
     public boolean delete() throws SQLException {
-        NamedParameterJdbcTemplate template = new NamedParameterJdbcTemplate(Database2.getInstance().getBds());
+        NamedParameterJdbcTemplate template = Database2.getInstance().getTemplate();
         MapSqlParameterSource parameters = new MapSqlParameterSource();
         parameters.addValue("id", id);
         int rows = template.update(deleteById, parameters);
+        TriggerRegistry.invalidate();
         return rows > 0;
     }
 
     public static FileTriggerModel findById(int id) throws SQLException {
-        NamedParameterJdbcTemplate template = new NamedParameterJdbcTemplate(Database2.getInstance().getBds());
+        NamedParameterJdbcTemplate template = Database2.getInstance().getTemplate();
         MapSqlParameterSource parameters = new MapSqlParameterSource();
         parameters.addValue("id", id);
-        List<Map<String, Object>> rows = template.queryForList(getById, parameters);
-
-        if (rows.size() > 0) {
-            Map<String, Object> result = rows.get(0);
-            int templateId = (Integer) result.get("id");
-            String extension = (String) result.get("extension");
-            String command = (String) result.get("command");
-            String regexp = (String) result.get("regexp");
-            return new FileTriggerModel(templateId, extension, command, regexp);
+        List<FileTriggerModel> rows = template.query(getById, parameters, FileTriggerMapper.INSTANCE);
+        if (!rows.isEmpty()) {
+            return rows.get(0);
         }
         throw new NotFoundException("Триггер не найден", "404");
     }
 
     public static boolean isExtensionExist(String extension) {
-        NamedParameterJdbcTemplate template = new NamedParameterJdbcTemplate(Database2.getInstance().getBds());
+        NamedParameterJdbcTemplate template = Database2.getInstance().getTemplate();
         MapSqlParameterSource parameters = new MapSqlParameterSource();
         parameters.addValue("extension", extension);
         return template.queryForObject(getCountByExtension, parameters, Integer.class) > 0;
     }
 
     public static ArrayList<FileTriggerModel> findAll() throws SQLException {
-        ArrayList<FileTriggerModel> result = new ArrayList<FileTriggerModel>();
-        NamedParameterJdbcTemplate template = new NamedParameterJdbcTemplate(Database2.getInstance().getBds());
+        NamedParameterJdbcTemplate template = Database2.getInstance().getTemplate();
         MapSqlParameterSource parameters = new MapSqlParameterSource();
-        List<Map<String, Object>> rows;
-        rows = template.queryForList(getAll, parameters);
-        for (Map<String, Object> row : rows) {
-            Integer templateId = (Integer) row.get("id");
-            String extension = (String) row.get("extension");
-            String command = (String) row.get("command");
-            String regexp = (String) row.get("regexp");
-            result.add(new FileTriggerModel(templateId, extension, command, regexp));
-        }
-        return result;
+        return new ArrayList<FileTriggerModel>(template.query(getAll, parameters, FileTriggerMapper.INSTANCE));
     }
     public Integer getId() {
         return id;
@@ -221,4 +210,12 @@ public class FileTriggerModel implements ModelInterface {
     public void setRegexp(String regexp) {
         this.regexp = regexp;
     }
+
+    public int getTimeout() {
+        return timeout;
+    }
+
+    public void setTimeout(int timeout) {
+        this.timeout = timeout;
+    }
 }
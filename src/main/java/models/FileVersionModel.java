@@ -4,32 +4,46 @@ import config.Settings;
 import db.Database2;
 import exceptions.NotFoundException;
 import helpers.FileHelper;
+import helpers.VersionHelper;
+import helpers.hash.HashAlgorithm;
+import models.mappers.FileVersionMapper;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowCallbackHandler;
 import org.springframework.jdbc.core.namedparam.MapSqlParameterSource;
 import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
 import org.springframework.jdbc.support.GeneratedKeyHolder;
 import org.springframework.jdbc.support.KeyHolder;
+import search.SearchIndex;
 
 import javax.servlet.http.HttpServletRequest;
 import java.io.File;
 import java.sql.*;
 import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
-import java.util.Map;
+import java.util.Set;
 
 public class FileVersionModel implements ModelInterface {
-    private static String updateElem = "UPDATE fileVersion SET fileId = :fileId, userId = :userId, version = :version, hash = :hash, fileSize = :fileSize, date = :date, isFilled = :isFilled, fileName = :fileName, isDisabled = :isDisabled WHERE id = :id";
-    private static final String getById = "SELECT * FROM fileVersion WHERE id = :id";
-    private static final String getByIdAndFile = "SELECT * FROM fileVersion WHERE id = :id AND fileId = :fileId";
-    private static final String saveNew = "INSERT INTO fileVersion(fileId, userId, version, hash, fileSize, date, isFilled, fileName, isDisabled) VALUES(:fileId, :userId, :version, :hash, :fileSize, :date, :isFilled, :fileName, :isDisabled)";
-    private static final String isFileExist = "SELECT count(id) FROM fileVersion WHERE hash = :hash AND fileSize = :fileSize";
+    private static String updateElem = "UPDATE fileVersion SET fileId = :fileId, userId = :userId, version = :version, versionKey = :versionKey, hash = :hash, hashAlgorithm = :hashAlgorithm, fileSize = :fileSize, date = :date, isFilled = :isFilled, fileName = :fileName, isDisabled = :isDisabled WHERE id = :id";
+    private static final String getById = "SELECT " + FileVersionMapper.COLUMNS + " FROM fileVersion WHERE id = :id";
+    private static final String getByIdAndFile = "SELECT " + FileVersionMapper.COLUMNS + " FROM fileVersion WHERE id = :id AND fileId = :fileId";
+    private static final String saveNew = "INSERT INTO fileVersion(fileId, userId, version, versionKey, hash, hashAlgorithm, fileSize, date, isFilled, fileName, isDisabled) VALUES(:fileId, :userId, :version, :versionKey, :hash, :hashAlgorithm, :fileSize, :date, :isFilled, :fileName, :isDisabled)";
+    static final String isFileExist = "SELECT count(id) FROM fileVersion WHERE hash = :hash AND fileSize = :fileSize";
     private static final String deleteById = "DELETE FROM fileVersion WHERE id = :id";
+    private static final String getWithoutVersionKey = "SELECT id, fileId, version FROM fileVersion WHERE versionKey = '' LIMIT :limit";
+    private static final String updateVersionKey = "UPDATE fileVersion SET versionKey = :versionKey WHERE id = :id";
+    private static final String getBatchAfter = "SELECT " + FileVersionMapper.COLUMNS + " FROM fileVersion WHERE id > :id ORDER BY id ASC LIMIT :limit";
+    private static final String getCount = "SELECT count(id) FROM fileVersion";
 
     private int id;
     private int fileId;
+    // файл, к которому версия привязана в БД; нужен, чтобы обновить последнюю версию у прежнего файла при переносе
+    private int storedFileId;
     private int userId;
     private String version = "";
     private String hash;
+    private String hashAlgorithm = HashAlgorithm.MD5.getTitle();
     private String fileName;
     private long fileSize;
     private long date;
@@ -41,13 +55,15 @@ public class FileVersionModel implements ModelInterface {
 
     public boolean update() throws SQLException {
         if (validate()) {
-            NamedParameterJdbcTemplate template = new NamedParameterJdbcTemplate(Database2.getInstance().getBds());
+            NamedParameterJdbcTemplate template = Database2.getInstance().getTemplate();
             MapSqlParameterSource parameters = new MapSqlParameterSource();
             parameters.addValue("id", id);
             parameters.addValue("fileId", fileId);
             parameters.addValue("userId", userId);
             parameters.addValue("version", version);
+            parameters.addValue("versionKey", VersionHelper.toKey(version));
             parameters.addValue("hash", hash);
+            parameters.addValue("hashAlgorithm", hashAlgorithm);
             parameters.addValue("fileSize", fileSize);
             parameters.addValue("date", date);
             parameters.addValue("isFilled", isFilled);
@@ -55,6 +71,14 @@ public class FileVersionModel implements ModelInterface {
             parameters.addValue("isDisabled", isDisabled);
             int rows = template.update(updateElem, parameters);
             if (rows > 0) {
+                FileModel.refreshLatestVersions(fileId);
+                SearchIndex.markFile(fileId);
+                AttentionQueueModel.refreshVersion(id, !isFilled);
+                if (storedFileId != fileId) {
+                    FileModel.refreshLatestVersions(storedFileId);
+                    SearchIndex.markFile(storedFileId);
+                }
+                storedFileId = fileId;
                 return true;
             }
         }
@@ -76,6 +100,7 @@ public class FileVersionModel implements ModelInterface {
         this.isFilled = isFilled;
         this.fileName = fileName;
         this.isDisabled = isDisabled;
+        this.storedFileId = fileId;
     }
 
     public FileVersionModel(int id, int fileId, int userId, String version, String hash, long fileSize, long date, boolean isFilled, String fileName, boolean isDisabled, String bits) {
@@ -90,16 +115,19 @@ public class FileVersionModel implements ModelInterface {
         this.fileName = fileName;
         this.isDisabled = isDisabled;
         this.bits = bits;
+        this.storedFileId = fileId;
     }
 
     public boolean add() throws SQLException {
         if (this.validate()) {
-            NamedParameterJdbcTemplate template = new NamedParameterJdbcTemplate(Database2.getInstance().getBds());
+            NamedParameterJdbcTemplate template = Database2.getInstance().getTemplate();
             MapSqlParameterSource parameters = new MapSqlParameterSource();
             parameters.addValue("fileId", fileId);
             parameters.addValue("userId", userId);
             parameters.addValue("version", version);
+            parameters.addValue("versionKey", VersionHelper.toKey(version));
             parameters.addValue("hash", hash);
+            parameters.addValue("hashAlgorithm", hashAlgorithm);
             parameters.addValue("fileSize", fileSize);
             parameters.addValue("date", date);
             parameters.addValue("isFilled", isFilled);
@@ -108,6 +136,10 @@ public class FileVersionModel implements ModelInterface {
             KeyHolder keyHolder = new GeneratedKeyHolder();
             template.update(saveNew, parameters, keyHolder);
             id = keyHolder.getKey().intValue();
+            FileModel.refreshLatestVersions(fileId);
+            SearchIndex.markFile(fileId);
+            AttentionQueueModel.refreshVersion(id, !isFilled);
+            storedFileId = fileId;
             return id > 0;
         } else {
             return false;
@@ -120,7 +152,7 @@ public class FileVersionModel implements ModelInterface {
      * @return True если такой файл уже есть, иначе false
      */
     public static boolean isExist(String hash, long fileSize) {
-        NamedParameterJdbcTemplate template = new NamedParameterJdbcTemplate(Database2.getInstance().getBds());
+        NamedParameterJdbcTemplate template = Database2.getInstance().getTemplate();
         MapSqlParameterSource parameters = new MapSqlParameterSource();
         parameters.addValue("hash", hash);
         parameters.addValue("fileSize", fileSize);
@@ -128,45 +160,82 @@ public class FileVersionModel implements ModelInterface {
         return count > 0;
     }
 
+    /**
+     * Заполнение ключа сортировки у версий, которые миграция не смогла разобрать
+     * Версии обрабатываются пачками, каждая пачка - одним пакетным запросом;
+     * у затронутых файлов пересчитывается последняя версия
+     * @return Количество обновленных версий
+     */
+    public static int fillVersionKeys() {
+        NamedParameterJdbcTemplate template = Database2.getInstance().getTemplate();
+        int limit = 1000;
+        int count = 0;
+        while (true) {
+            MapSqlParameterSource parameters = new MapSqlParameterSource();
+            parameters.addValue("limit", limit);
+            final List<MapSqlParameterSource> batch = new ArrayList<MapSqlParameterSource>();
+            final Set<Integer> fileIds = new HashSet<Integer>();
+            template.query(getWithoutVersionKey, parameters, new RowCallbackHandler() {
+                @Override
+                public void processRow(ResultSet rs) throws SQLException {
+                    MapSqlParameterSource row = new MapSqlParameterSource();
+                    row.addValue("id", rs.getInt(1));
+                    row.addValue("versionKey", VersionHelper.toKey(rs.getString(3)));
+                    batch.add(row);
+                    fileIds.add(rs.getInt(2));
+                }
+            });
+            if (batch.isEmpty()) {
+                return count;
+            }
+            template.batchUpdate(updateVersionKey, batch.toArray(new MapSqlParameterSource[batch.size()]));
+            for (int fileId : fileIds) {
+                FileModel.refreshLatestVersions(fileId);
+            }
+            count += batch.size();
+            if (batch.size() < limit) {
+                return count;
+            }
+        }
+    }
+
+    /**
+     * Пачка версий для обхода всех версий по возрастанию id
+     * @param lastId Id последней обработанной версии; 0 - с начала
+     * @param limit Размер пачки
+     */
+    public static List<FileVersionModel> findBatchAfter(int lastId, int limit) {
+        NamedParameterJdbcTemplate template = Database2.getInstance().getTemplate();
+        MapSqlParameterSource parameters = new MapSqlParameterSource();
+        parameters.addValue("id", lastId);
+        parameters.addValue("limit", limit);
+        return template.query(getBatchAfter, parameters, FileVersionMapper.INSTANCE);
+    }
+
+    public static int getCount() {
+        JdbcTemplate template = Database2.getInstance().getJdbcTemplate();
+        return template.queryForObject(getCount, Integer.class);
+    }
+
     public static FileVersionModel findById(int id) throws SQLException {
-        NamedParameterJdbcTemplate template = new NamedParameterJdbcTemplate(Database2.getInstance().getBds());
+        NamedParameterJdbcTemplate template = Database2.getInstance().getTemplate();
         MapSqlParameterSource parameters = new MapSqlParameterSource();
         parameters.addValue("id", id);
-        List<Map<String, Object>> rows = template.queryForList(getById, parameters);
-        for (Map row : rows) {
-            Integer modelId = (Integer) row.get("id");
-            Integer fileId = (Integer) row.get("fileId");
-            Integer userId = (Integer) row.get("userId");
-            String version = (String) row.get("version");
-            String fileName = (String) row.get("fileName");
-            String hash = (String) row.get("hash");
-            Long fileSize = (Long) row.get("fileSize");
-            Long date = (Long) row.get("date");
-            boolean isFilled = ((Integer) row.get("isFilled") == 1);
-            boolean isDisabled = ((Integer) row.get("isDisabled") == 1);
-            return new FileVersionModel(modelId, fileId, userId, version, hash, fileSize, date, isFilled, fileName, isDisabled);
+        List<FileVersionModel> rows = template.query(getById, parameters, FileVersionMapper.INSTANCE);
+        if (!rows.isEmpty()) {
+            return rows.get(0);
         }
         throw new NotFoundException("Версия не найдена");
     }
 
     public static FileVersionModel findByIdAndFile(int id, int file) throws SQLException {
-        NamedParameterJdbcTemplate template = new NamedParameterJdbcTemplate(Database2.getInstance().getBds());
+        NamedParameterJdbcTemplate template = Database2.getInstance().getTemplate();
         MapSqlParameterSource parameters = new MapSqlParameterSource();
         parameters.addValue("id", id);
         parameters.addValue("fileId", file);
-        List<Map<String, Object>> rows = template.queryForList(getByIdAndFile, parameters);
-        for (Map row : rows) {
-            Integer modelId = (Integer) row.get("id");
-            Integer fileId = (Integer) row.get("fileId");
-            Integer userId = (Integer) row.get("userId");
-            String version = (String) row.get("version");
-            String fileName = (String) row.get("fileName");
-            String hash = (String) row.get("hash");
-            Long fileSize = (Long) row.get("fileSize");
-            Long date = (Long) row.get("date");
-            boolean isFilled = ((Integer) row.get("isFilled") == 1);
-            boolean isDisabled = ((Integer) row.get("isDisabled") == 1);
-            return new FileVersionModel(modelId, fileId, userId, version, hash, fileSize, date, isFilled, fileName, isDisabled);
+        List<FileVersionModel> rows = template.query(getByIdAndFile, parameters, FileVersionMapper.INSTANCE);
+        if (!rows.isEmpty()) {
+            return rows.get(0);
         }
         throw new NotFoundException("Версия не найдена");
     }
@@ -226,7 +295,7 @@ public class FileVersionModel implements ModelInterface {
 
     public boolean delete(HttpServletRequest request) throws SQLException {
         // всем категориям, прявязанным к этому элементу, надо изменить родителя на родителя этого элемента
-        NamedParameterJdbcTemplate template = new NamedParameterJdbcTemplate(Database2.getInstance().getBds());
+        NamedParameterJdbcTemplate template = Database2.getInstance().getTemplate();
         MapSqlParameterSource parameters = new MapSqlParameterSource();
 
         // удаляем свойства версии
@@ -257,6 +326,9 @@ public class FileVersionModel implements ModelInterface {
         // удаляем саму версию
         parameters.addValue("id", id);
         int rows = template.update(deleteById, parameters);
+        FileModel.refreshLatestVersions(fileId);
+        SearchIndex.markFile(fileId);
+        AttentionQueueModel.refreshVersion(id, false);
 
         return rows > 0;
     }
@@ -285,6 +357,14 @@ public class FileVersionModel implements ModelInterface {
         return hash;
     }
 
+    public String getHashAlgorithm() {
+        return hashAlgorithm;
+    }
+
+    public void setHashAlgorithm(String hashAlgorithm) {
+        this.hashAlgorithm = HashAlgorithm.fromTitle(hashAlgorithm).getTitle();
+    }
+
     public int getId() {
         return id;
     }
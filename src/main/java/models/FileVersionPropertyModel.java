@@ -2,26 +2,31 @@ package models;
 
 import db.Database2;
 import exceptions.NotFoundException;
+import models.mappers.FileVersionPropertyMapper;
 import org.springframework.jdbc.core.namedparam.MapSqlParameterSource;
 import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
 import org.springframework.jdbc.support.GeneratedKeyHolder;
 import org.springframework.jdbc.support.KeyHolder;
+import org.springframework.transaction.TransactionStatus;
+import org.springframework.transaction.support.TransactionCallback;
+import org.springframework.transaction.support.TransactionTemplate;
+import search.SearchIndex;
 
 import java.sql.*;
 import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
-import java.util.Map;
 
 public class FileVersionPropertyModel implements ModelInterface {
     private static final String updateById = "UPDATE fileVersionProperty SET value = :value WHERE id = :id";
-    private static final String getById = "SELECT fileVersionProperty.id, fileVersionProperty.fileVersionId, property.title, fileVersionProperty.propertyId, fileVersionProperty.value FROM fileVersionProperty LEFT JOIN property ON property.id = fileVersionProperty.propertyId WHERE fileVersionProperty.id = :id";
+    private static final String getById = "SELECT " + FileVersionPropertyMapper.COLUMNS + " FROM fileVersionProperty LEFT JOIN property ON property.id = fileVersionProperty.propertyId WHERE fileVersionProperty.id = :id";
     private static final String saveNew = "INSERT INTO fileVersionProperty(fileVersionId, propertyId, value) VALUES(:fileVersionId, :propertyId, :value)";
-    private static final String getByFileVersion = "SELECT fileVersionProperty.*, property.title FROM fileVersionProperty LEFT JOIN property ON fileVersionProperty.propertyId = property.id WHERE fileVersionId = :fileVersionId";
+    static final String getByFileVersion = "SELECT " + FileVersionPropertyMapper.COLUMNS + " FROM fileVersionProperty LEFT JOIN property ON fileVersionProperty.propertyId = property.id WHERE fileVersionProperty.fileVersionId = :fileVersionId";
     private static final String deleteById = "DELETE FROM fileVersionProperty WHERE id = :id";
     private static final String deleteByVersionId = "DELETE FROM fileVersionProperty WHERE fileVersionId = :fileVersionId";
     private static final String deleteByPropertyId = "DELETE FROM fileVersionProperty WHERE propertyId = :propertyId";
-    private static final String checkIsExist = "SELECT * FROM fileVersionProperty WHERE fileVersionId = :fileVersionId AND propertyId = :propertyId";
+    private static final String getByFileVersions = "SELECT " + FileVersionPropertyMapper.COLUMNS + " FROM fileVersionProperty LEFT JOIN property ON fileVersionProperty.propertyId = property.id WHERE fileVersionProperty.fileVersionId IN (:fileVersionIds)";
+    static final String checkIsExist = "SELECT " + FileVersionPropertyMapper.COLUMNS + " FROM fileVersionProperty LEFT JOIN property ON property.id = fileVersionProperty.propertyId WHERE fileVersionProperty.fileVersionId = :fileVersionId AND fileVersionProperty.propertyId = :propertyId";
 
     private int id;
     private int fileVersionId;
@@ -33,12 +38,13 @@ public class FileVersionPropertyModel implements ModelInterface {
 
     public boolean update() throws SQLException {
         if (validate()) {
-            NamedParameterJdbcTemplate template = new NamedParameterJdbcTemplate(Database2.getInstance().getBds());
+            NamedParameterJdbcTemplate template = Database2.getInstance().getTemplate();
             MapSqlParameterSource parameters = new MapSqlParameterSource();
             parameters.addValue("id", id);
             parameters.addValue("value", value);
             int rows = template.update(updateById, parameters);
             if (rows > 0) {
+                SearchIndex.markVersion(fileVersionId);
                 return true;
             }
         }
@@ -70,48 +76,38 @@ public class FileVersionPropertyModel implements ModelInterface {
     }
 
     public static FileVersionPropertyModel isPropertyExist(int fileVersionId, int propertyId) {
-        NamedParameterJdbcTemplate template = new NamedParameterJdbcTemplate(Database2.getInstance().getBds());
+        NamedParameterJdbcTemplate template = Database2.getInstance().getTemplate();
         MapSqlParameterSource parameters = new MapSqlParameterSource();
         parameters.addValue("fileVersionId", fileVersionId);
         parameters.addValue("propertyId", propertyId);
-        List<Map<String, Object>> rows = template.queryForList(checkIsExist, parameters);
-        for (Map row : rows) {
-            Integer itemId = (Integer) row.get("id");
-            String value = (String) row.get("value");
-            return new FileVersionPropertyModel(itemId, fileVersionId, propertyId, value);
+        List<FileVersionPropertyModel> rows = template.query(checkIsExist, parameters, FileVersionPropertyMapper.INSTANCE);
+        if (!rows.isEmpty()) {
+            return rows.get(0);
         }
         return null;
     }
 
     public static boolean deleteByVersion(int fileVersionId) {
-        NamedParameterJdbcTemplate template = new NamedParameterJdbcTemplate(Database2.getInstance().getBds());
+        NamedParameterJdbcTemplate template = Database2.getInstance().getTemplate();
         MapSqlParameterSource parameters = new MapSqlParameterSource();
         parameters.addValue("fileVersionId", fileVersionId);
         int rows = template.update(deleteByVersionId, parameters);
+        SearchIndex.markVersion(fileVersionId);
         return rows > 0;
     }
 
     public static ArrayList<FileVersionPropertyModel> getProperties(int fileVersionId) throws SQLException {
         ArrayList<FileVersionPropertyModel> result = new ArrayList<FileVersionPropertyModel>();
-        NamedParameterJdbcTemplate template = new NamedParameterJdbcTemplate(Database2.getInstance().getBds());
+        NamedParameterJdbcTemplate template = Database2.getInstance().getTemplate();
         MapSqlParameterSource parameters = new MapSqlParameterSource();
         parameters.addValue("fileVersionId", fileVersionId);
-        List<Map<String, Object>> rows = template.queryForList(getByFileVersion, parameters);
-
-        for (Map row : rows) {
-            Integer modelId = (Integer) row.get("id");
-            Integer versionId = (Integer) row.get("fileVersionId");
-            Integer propertyId = (Integer) row.get("propertyId");
-            String title = (String) row.get("title");
-            String value = (String) row.get("value");
-            result.add(new FileVersionPropertyModel(modelId, versionId, propertyId, value, title));
-        }
+        result.addAll(template.query(getByFileVersion, parameters, FileVersionPropertyMapper.INSTANCE));
         return result;
     }
 
     public boolean add() throws SQLException {
         if (this.validate()) {
-            NamedParameterJdbcTemplate template = new NamedParameterJdbcTemplate(Database2.getInstance().getBds());
+            NamedParameterJdbcTemplate template = Database2.getInstance().getTemplate();
             MapSqlParameterSource parameters = new MapSqlParameterSource();
             parameters.addValue("fileVersionId", fileVersionId);
             parameters.addValue("propertyId", propertyId);
@@ -119,23 +115,87 @@ public class FileVersionPropertyModel implements ModelInterface {
             KeyHolder keyHolder = new GeneratedKeyHolder();
             template.update(saveNew, parameters, keyHolder);
             id = keyHolder.getKey().intValue();
+            SearchIndex.markVersion(fileVersionId);
             return id > 0;
         }
         return false;
     }
 
+    /**
+     * Добавление нескольких свойств одним пакетом JDBC в одной транзакции
+     * Невалидные свойства пропускаются, их ошибки остаются в errors
+     * @param properties Свойства
+     * @return Количество добавленных свойств
+     */
+    public static int addBatch(List<FileVersionPropertyModel> properties) {
+        final List<MapSqlParameterSource> batch = new ArrayList<MapSqlParameterSource>();
+        for (FileVersionPropertyModel property : properties) {
+            if (property.validate()) {
+                MapSqlParameterSource parameters = new MapSqlParameterSource();
+                parameters.addValue("fileVersionId", property.fileVersionId);
+                parameters.addValue("propertyId", property.propertyId);
+                parameters.addValue("value", property.value);
+                batch.add(parameters);
+                SearchIndex.markVersion(property.fileVersionId);
+            }
+        }
+        if (batch.size() == 0) {
+            return 0;
+        }
+        final NamedParameterJdbcTemplate template = Database2.getInstance().getTemplate();
+        TransactionTemplate transaction = new TransactionTemplate(Database2.getInstance().getTransactionManager());
+        return transaction.execute(new TransactionCallback<Integer>() {
+            @Override
+            public Integer doInTransaction(TransactionStatus status) {
+                template.batchUpdate(saveNew, batch.toArray(new MapSqlParameterSource[batch.size()]));
+                return batch.size();
+            }
+        });
+    }
+
+    /**
+     * Изменение значений нескольких свойств одним пакетом JDBC; невалидные свойства пропускаются
+     * @param properties Свойства с id и новым значением
+     * @return Количество измененных свойств
+     */
+    public static int updateBatch(List<FileVersionPropertyModel> properties) {
+        List<MapSqlParameterSource> batch = new ArrayList<MapSqlParameterSource>();
+        for (FileVersionPropertyModel property : properties) {
+            if (property.validate()) {
+                MapSqlParameterSource parameters = new MapSqlParameterSource();
+                parameters.addValue("id", property.id);
+                parameters.addValue("value", property.value);
+                batch.add(parameters);
+                SearchIndex.markVersion(property.fileVersionId);
+            }
+        }
+        if (batch.size() > 0) {
+            Database2.getInstance().getTemplate().batchUpdate(updateById, batch.toArray(new MapSqlParameterSource[batch.size()]));
+        }
+        return batch.size();
+    }
+
+    /**
+     * Свойства нескольких версий одним запросом
+     * @param fileVersionIds Id версий
+     */
+    public static List<FileVersionPropertyModel> findByVersions(List<Integer> fileVersionIds) {
+        if (fileVersionIds.isEmpty()) {
+            return new ArrayList<FileVersionPropertyModel>();
+        }
+        NamedParameterJdbcTemplate template = Database2.getInstance().getTemplate();
+        MapSqlParameterSource parameters = new MapSqlParameterSource();
+        parameters.addValue("fileVersionIds", fileVersionIds);
+        return template.query(getByFileVersions, parameters, FileVersionPropertyMapper.INSTANCE);
+    }
+
     public static FileVersionPropertyModel findById(int id) throws SQLException {
-        NamedParameterJdbcTemplate template = new NamedParameterJdbcTemplate(Database2.getInstance().getBds());
+        NamedParameterJdbcTemplate template = Database2.getInstance().getTemplate();
         MapSqlParameterSource parameters = new MapSqlParameterSource();
         parameters.addValue("id", id);
-        List<Map<String, Object>> rows = template.queryForList(getById, parameters);
-        for (Map row : rows) {
-            Integer rowId = (Integer) row.get("id");
-            Integer fileVersionId = (Integer) row.get("fileVersionId");
-            Integer propertyId = (Integer) row.get("propertyId");
-            String value = (String) row.get("value");
-            String title = (String) row.get("title");
-            return new FileVersionPropertyModel(rowId, fileVersionId, propertyId, value, title);
+        List<FileVersionPropertyModel> rows = template.query(getById, parameters, FileVersionPropertyMapper.INSTANCE);
+        if (!rows.isEmpty()) {
+            return rows.get(0);
         }
         throw new NotFoundException("Свойство версии не найдено");
     }
@@ -180,18 +240,20 @@ public class FileVersionPropertyModel implements ModelInterface {
     }
 
     public static boolean deleteByProperty(int propertyId) {
-        NamedParameterJdbcTemplate template = new NamedParameterJdbcTemplate(Database2.getInstance().getBds());
+        NamedParameterJdbcTemplate template = Database2.getInstance().getTemplate();
         MapSqlParameterSource parameters = new MapSqlParameterSource();
         parameters.addValue("propertyId", propertyId);
         int rows = template.update(deleteByPropertyId, parameters);
+        SearchIndex.markAll();
         return rows > 0;
     }
 
     public boolean delete() throws SQLException {
-        NamedParameterJdbcTemplate template = new NamedParameterJdbcTemplate(Database2.getInstance().getBds());
+        NamedParameterJdbcTemplate template = Database2.getInstance().getTemplate();
         MapSqlParameterSource parameters = new MapSqlParameterSource();
         parameters.addValue("id", id);
         int rows = template.update(deleteById, parameters);
+        SearchIndex.markVersion(fileVersionId);
         return rows > 0;
     }
 
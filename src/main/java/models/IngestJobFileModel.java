@@ -0,0 +1,223 @@
+package models;
+
+import db.Database2;
+import models.mappers.IngestJobFileMapper;
+import org.springframework.jdbc.core.namedparam.MapSqlParameterSource;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
+import org.springframework.jdbc.support.GeneratedKeyHolder;
+import org.springframework.jdbc.support.KeyHolder;
+
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Модель файла в задании на добавление в каталог
+ */
+public class IngestJobFileModel implements ModelInterface {
+    private static final String saveNew = "INSERT INTO ingestJobFile(jobId, number, fileName, sourcePath, hash, hashAlgorithm, state, msg, fileVersionId, isFilled) VALUES (:jobId, :number, :fileName, :sourcePath, :hash, :hashAlgorithm, :state, :msg, :fileVersionId, :isFilled)";
+    private static final String updateById = "UPDATE ingestJobFile SET state = :state, msg = :msg, fileVersionId = :fileVersionId, isFilled = :isFilled WHERE id = :id";
+    private static final String updateState = "UPDATE ingestJobFile SET state = :state WHERE id = :id";
+    private static final String getByJob = "SELECT " + IngestJobFileMapper.COLUMNS + " FROM ingestJobFile WHERE jobId = :jobId ORDER BY number";
+    private static final String resetByJob = "UPDATE ingestJobFile SET state = :queued WHERE jobId = :jobId AND state IN (:states)";
+
+    public static final String QUEUED = "queued";
+    public static final String HASHING = "hashing";
+    public static final String PARSING = "parsing";
+    public static final String PERSISTED = "persisted";
+    public static final String FAILED = "failed";
+
+    private int id;
+    private int jobId;
+    private int number;
+    private String fileName;
+    private String sourcePath = "";
+    private String hash = "";
+    private String hashAlgorithm = "";
+    private String state = QUEUED;
+    private String msg;
+    private int fileVersionId = 0;
+    private boolean isFilled = false;
+
+    public IngestJobFileModel() {}
+
+    public IngestJobFileModel(int id, int jobId, int number, String fileName, String sourcePath, String hash, String hashAlgorithm, String state, String msg, int fileVersionId, boolean isFilled) {
+        this.id = id;
+        this.jobId = jobId;
+        this.number = number;
+        this.fileName = fileName;
+        this.sourcePath = sourcePath;
+        this.hash = hash;
+        this.hashAlgorithm = hashAlgorithm;
+        this.state = state;
+        this.msg = msg;
+        this.fileVersionId = fileVersionId;
+        this.isFilled = isFilled;
+    }
+
+    public boolean add() throws SQLException {
+        if (validate()) {
+            NamedParameterJdbcTemplate template = Database2.getInstance().getTemplate();
+            MapSqlParameterSource parameters = new MapSqlParameterSource();
+            parameters.addValue("jobId", jobId);
+            parameters.addValue("number", number);
+            parameters.addValue("fileName", fileName);
+            parameters.addValue("sourcePath", sourcePath);
+            parameters.addValue("hash", hash);
+            parameters.addValue("hashAlgorithm", hashAlgorithm);
+            parameters.addValue("state", state);
+            parameters.addValue("msg", msg);
+            parameters.addValue("fileVersionId", fileVersionId);
+            parameters.addValue("isFilled", isFilled);
+            KeyHolder keyHolder = new GeneratedKeyHolder();
+            template.update(saveNew, parameters, keyHolder);
+            id = keyHolder.getKey().intValue();
+            return id > 0;
+        }
+        return false;
+    }
+
+    public boolean update() throws SQLException {
+        NamedParameterJdbcTemplate template = Database2.getInstance().getTemplate();
+        MapSqlParameterSource parameters = new MapSqlParameterSource();
+        parameters.addValue("id", id);
+        parameters.addValue("state", state);
+        parameters.addValue("msg", msg);
+        parameters.addValue("fileVersionId", fileVersionId);
+        parameters.addValue("isFilled", isFilled);
+        int rows = template.update(updateById, parameters);
+        return rows > 0;
+    }
+
+    public boolean validate() {
+        return fileName != null && state != null;
+    }
+
+    public boolean delete() throws SQLException {
+        return false;
+    }
+
+    /**
+     * Смена этапа обработки файла
+     */
+    public static void updateState(int id, String state) {
+        NamedParameterJdbcTemplate template = Database2.getInstance().getTemplate();
+        MapSqlParameterSource parameters = new MapSqlParameterSource();
+        parameters.addValue("id", id);
+        parameters.addValue("state", state);
+        template.update(updateState, parameters);
+    }
+
+    /**
+     * Возврат в очередь файлов, обработка которых была прервана
+     */
+    public static void resetInterrupted(int jobId) {
+        NamedParameterJdbcTemplate template = Database2.getInstance().getTemplate();
+        MapSqlParameterSource parameters = new MapSqlParameterSource();
+        List<String> states = new ArrayList<String>();
+        states.add(HASHING);
+        states.add(PARSING);
+        parameters.addValue("jobId", jobId);
+        parameters.addValue("queued", QUEUED);
+        parameters.addValue("states", states);
+        template.update(resetByJob, parameters);
+    }
+
+    public static ArrayList<IngestJobFileModel> findByJob(int jobId) {
+        NamedParameterJdbcTemplate template = Database2.getInstance().getTemplate();
+        MapSqlParameterSource parameters = new MapSqlParameterSource();
+        parameters.addValue("jobId", jobId);
+        return new ArrayList<IngestJobFileModel>(template.query(getByJob, parameters, IngestJobFileMapper.INSTANCE));
+    }
+
+    public boolean isFinished() {
+        return PERSISTED.equals(state) || FAILED.equals(state);
+    }
+
+    public int getId() {
+        return id;
+    }
+
+    public int getJobId() {
+        return jobId;
+    }
+
+    public void setJobId(int jobId) {
+        this.jobId = jobId;
+    }
+
+    public int getNumber() {
+        return number;
+    }
+
+    public void setNumber(int number) {
+        this.number = number;
+    }
+
+    public String getFileName() {
+        return fileName;
+    }
+
+    public void setFileName(String fileName) {
+        this.fileName = fileName;
+    }
+
+    public String getSourcePath() {
+        return sourcePath;
+    }
+
+    public void setSourcePath(String sourcePath) {
+        this.sourcePath = sourcePath;
+    }
+
+    /**
+     * @return Хэш, посчитанный при приеме файла; пустая строка, если не посчитан
+     */
+    public String getHash() {
+        return hash;
+    }
+
+    public void setHash(String hash) {
+        this.hash = hash;
+    }
+
+    public String getHashAlgorithm() {
+        return hashAlgorithm;
+    }
+
+    public void setHashAlgorithm(String hashAlgorithm) {
+        this.hashAlgorithm = hashAlgorithm;
+    }
+
+    public String getState() {
+        return state;
+    }
+
+    public void setState(String state) {
+        this.state = state;
+    }
+
+    public String getMsg() {
+        return msg;
+    }
+
+    public void setMsg(String msg) {
+        this.msg = msg;
+    }
+
+    public int getFileVersionId() {
+        return fileVersionId;
+    }
+
+    public void setFileVersionId(int fileVersionId) {
+        this.fileVersionId = fileVersionId;
+    }
+
+    public boolean isFilled() {
+        return isFilled;
+    }
+
+    public void setIsFilled(boolean isFilled) {
+        this.isFilled = isFilled;
+    }
+}
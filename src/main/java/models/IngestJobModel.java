@@ -0,0 +1,180 @@
+package models;
+
+import db.Database2;
+import exceptions.NotFoundException;
+import models.mappers.IngestJobMapper;
+import org.springframework.jdbc.core.namedparam.MapSqlParameterSource;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
+import org.springframework.jdbc.support.GeneratedKeyHolder;
+import org.springframework.jdbc.support.KeyHolder;
+
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+
+/**
+ * Модель задания на добавление файлов в каталог
+ */
+public class IngestJobModel implements ModelInterface {
+    private static final String saveNew = "INSERT INTO ingestJob(type, userId, requestId, status, fileCount, dateCreated, dateUpdated) VALUES (:type, :userId, :requestId, :status, :fileCount, :dateCreated, :dateUpdated)";
+    private static final String updateById = "UPDATE ingestJob SET status = :status, fileCount = :fileCount, dateUpdated = :dateUpdated WHERE id = :id";
+    private static final String getById = "SELECT " + IngestJobMapper.COLUMNS + " FROM ingestJob WHERE id = :id";
+    private static final String getUnfinished = "SELECT " + IngestJobMapper.COLUMNS + " FROM ingestJob WHERE status IN (:statuses) ORDER BY id";
+
+    public static final String TYPE_UPLOAD = "upload";
+    public static final String TYPE_REQUEST = "request";
+
+    public static final String QUEUED = "queued";
+    public static final String RUNNING = "running";
+    public static final String DONE = "done";
+    public static final String FAILED = "failed";
+
+    private int id;
+    private String type;
+    private int userId;
+    private int requestId = 0;
+    private String status = QUEUED;
+    private int fileCount = 0;
+    private long dateCreated;
+    private long dateUpdated;
+
+    public IngestJobModel() {}
+
+    public IngestJobModel(int id, String type, int userId, int requestId, String status, int fileCount, long dateCreated, long dateUpdated) {
+        this.id = id;
+        this.type = type;
+        this.userId = userId;
+        this.requestId = requestId;
+        this.status = status;
+        this.fileCount = fileCount;
+        this.dateCreated = dateCreated;
+        this.dateUpdated = dateUpdated;
+    }
+
+    public boolean add() throws SQLException {
+        if (validate()) {
+            long time = new Date().getTime();
+            dateCreated = time;
+            dateUpdated = time;
+            NamedParameterJdbcTemplate template = Database2.getInstance().getTemplate();
+            MapSqlParameterSource parameters = new MapSqlParameterSource();
+            parameters.addValue("type", type);
+            parameters.addValue("userId", userId);
+            parameters.addValue("requestId", requestId);
+            parameters.addValue("status", status);
+            parameters.addValue("fileCount", fileCount);
+            parameters.addValue("dateCreated", dateCreated);
+            parameters.addValue("dateUpdated", dateUpdated);
+            KeyHolder keyHolder = new GeneratedKeyHolder();
+            template.update(saveNew, parameters, keyHolder);
+            id = keyHolder.getKey().intValue();
+            return id > 0;
+        }
+        return false;
+    }
+
+    public boolean update() throws SQLException {
+        if (validate()) {
+            dateUpdated = new Date().getTime();
+            NamedParameterJdbcTemplate template = Database2.getInstance().getTemplate();
+            MapSqlParameterSource parameters = new MapSqlParameterSource();
+            parameters.addValue("id", id);
+            parameters.addValue("status", status);
+            parameters.addValue("fileCount", fileCount);
+            parameters.addValue("dateUpdated", dateUpdated);
+            int rows = template.update(updateById, parameters);
+            return rows > 0;
+        }
+        return false;
+    }
+
+    public boolean validate() {
+        return type != null && status != null;
+    }
+
+    public boolean delete() throws SQLException {
+        // задания хранятся как история загрузок
+        return false;
+    }
+
+    public static IngestJobModel findById(int id) {
+        NamedParameterJdbcTemplate template = Database2.getInstance().getTemplate();
+        MapSqlParameterSource parameters = new MapSqlParameterSource();
+        parameters.addValue("id", id);
+        List<IngestJobModel> rows = template.query(getById, parameters, IngestJobMapper.INSTANCE);
+        if (!rows.isEmpty()) {
+            return rows.get(0);
+        }
+        throw new NotFoundException("Задание не найдено");
+    }
+
+    /**
+     * Задания, которые не были завершены (например, из-за перезапуска сервера)
+     */
+    public static ArrayList<IngestJobModel> findUnfinished() {
+        NamedParameterJdbcTemplate template = Database2.getInstance().getTemplate();
+        MapSqlParameterSource parameters = new MapSqlParameterSource();
+        List<String> statuses = new ArrayList<String>();
+        statuses.add(QUEUED);
+        statuses.add(RUNNING);
+        parameters.addValue("statuses", statuses);
+        return new ArrayList<IngestJobModel>(template.query(getUnfinished, parameters, IngestJobMapper.INSTANCE));
+    }
+
+    public boolean isFinished() {
+        return DONE.equals(status) || FAILED.equals(status);
+    }
+
+    public int getId() {
+        return id;
+    }
+
+    public String getType() {
+        return type;
+    }
+
+    public void setType(String type) {
+        this.type = type;
+    }
+
+    public int getUserId() {
+        return userId;
+    }
+
+    public void setUserId(int userId) {
+        this.userId = userId;
+    }
+
+    public int getRequestId() {
+        return requestId;
+    }
+
+    public void setRequestId(int requestId) {
+        this.requestId = requestId;
+    }
+
+    public String getStatus() {
+        return status;
+    }
+
+    public void setStatus(String status) {
+        this.status = status;
+    }
+
+    public int getFileCount() {
+        return fileCount;
+    }
+
+    public void setFileCount(int fileCount) {
+        this.fileCount = fileCount;
+    }
+
+    public long getDateCreated() {
+        return dateCreated;
+    }
+
+    public long getDateUpdated() {
+        return dateUpdated;
+    }
+}
@@ -0,0 +1,80 @@
+package models;
+
+import db.Database2;
+import helpers.hash.HashAlgorithm;
+import org.json.simple.JSONObject;
+import org.json.simple.parser.JSONParser;
+import org.json.simple.parser.ParseException;
+import org.springframework.jdbc.core.SingleColumnRowMapper;
+import org.springframework.jdbc.core.namedparam.MapSqlParameterSource;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
+
+import java.util.Date;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Кэш свойств, извлеченных из содержимого файла
+ * Ключ - хэш, алгоритм хэша и размер файла; запись считается устаревшей, если разборщик с тех пор изменился
+ * (версия разборщика не совпадает), и тогда перезаписывается
+ */
+public class MetadataCacheModel {
+    private static final String getByContent = "SELECT properties FROM metadataCache " +
+            "WHERE hash = :hash AND fileSize = :fileSize AND hashAlgorithm = :hashAlgorithm AND extractorVersion = :extractorVersion";
+    private static final String save = "INSERT INTO metadataCache(hash, hashAlgorithm, fileSize, extractorVersion, properties, date) " +
+            "VALUES (:hash, :hashAlgorithm, :fileSize, :extractorVersion, :properties, :date) " +
+            "ON DUPLICATE KEY UPDATE extractorVersion = VALUES(extractorVersion), properties = VALUES(properties), date = VALUES(date)";
+
+    /**
+     * Свойства из кэша
+     * @param extractorVersion Текущая версия разборщика
+     * @return Свойства или null, если записи нет или она получена другой версией разборщика
+     */
+    public static Map<Integer, String> find(String hash, HashAlgorithm algorithm, long fileSize, String extractorVersion) {
+        NamedParameterJdbcTemplate template = Database2.getInstance().getTemplate();
+        MapSqlParameterSource parameters = new MapSqlParameterSource();
+        parameters.addValue("hash", hash);
+        parameters.addValue("hashAlgorithm", algorithm.getTitle());
+        parameters.addValue("fileSize", fileSize);
+        parameters.addValue("extractorVersion", extractorVersion);
+        List<String> rows = template.query(getByContent, parameters, new SingleColumnRowMapper<String>(String.class));
+        if (rows.isEmpty()) {
+            return null;
+        }
+        try {
+            JSONObject json = (JSONObject) new JSONParser().parse(rows.get(0));
+            Map<Integer, String> properties = new HashMap<Integer, String>();
+            for (Object key : json.keySet()) {
+                properties.put(Integer.parseInt(String.valueOf(key)), (String) json.get(key));
+            }
+            return properties;
+        } catch (ParseException e) {
+            return null;
+        } catch (RuntimeException e) {
+            return null;
+        }
+    }
+
+    /**
+     * Сохранение свойств, полученных текущей версией разборщика
+     * @param properties Свойства; null сохраняется как пустой набор
+     */
+    public static void save(String hash, HashAlgorithm algorithm, long fileSize, String extractorVersion, Map<Integer, String> properties) {
+        JSONObject json = new JSONObject();
+        if (properties != null) {
+            for (Map.Entry<Integer, String> property : properties.entrySet()) {
+                json.put(String.valueOf(property.getKey()), property.getValue());
+            }
+        }
+        NamedParameterJdbcTemplate template = Database2.getInstance().getTemplate();
+        MapSqlParameterSource parameters = new MapSqlParameterSource();
+        parameters.addValue("hash", hash);
+        parameters.addValue("hashAlgorithm", algorithm.getTitle());
+        parameters.addValue("fileSize", fileSize);
+        parameters.addValue("extractorVersion", extractorVersion);
+        parameters.addValue("properties", json.toJSONString());
+        parameters.addValue("date", new Date().getTime());
+        template.update(save, parameters);
+    }
+}
@@ -1,7 +1,11 @@
 package models;
 
+import db.CountCache;
 import db.Database2;
 import exceptions.NotFoundException;
+import helpers.PageCursor;
+import models.helpers.KeysetPage;
+import models.mappers.PropertyMapper;
 import org.json.simple.JSONArray;
 import org.json.simple.JSONObject;
 import org.springframework.jdbc.core.JdbcTemplate;
@@ -33,16 +37,18 @@ public class PropertyModel implements ModelInterface {
     }
 
     private static final String saveNew = "INSERT INTO property(title) VALUES(:title)";
-    private static final String getAll = "SELECT * FROM property";
-    private static final String getAllCustom = "SELECT * FROM property WHERE id > 11";
-    private static final String getAllCustomByPage = "SELECT * FROM property WHERE id > 11 LIMIT :limit OFFSET :offset";
+    private static final String getAll = "SELECT " + PropertyMapper.COLUMNS + " FROM property";
+    private static final String getAllCustom = "SELECT " + PropertyMapper.COLUMNS + " FROM property WHERE id > 11";
+    private static final String getFirstCustomPage = "SELECT " + PropertyMapper.COLUMNS + " FROM property WHERE id > 11 ORDER BY id ASC LIMIT :limit";
+    private static final String getCustomPageAfter = "SELECT " + PropertyMapper.COLUMNS + " FROM property WHERE id > 11 AND id > :id ORDER BY id ASC LIMIT :limit";
+    private static final String getCustomPageBefore = "SELECT " + PropertyMapper.COLUMNS + " FROM property WHERE id > 11 AND id < :id ORDER BY id DESC LIMIT :limit";
     private static final String getCount = "SELECT count(id) FROM property WHERE id > 11";
-    private static final String getById = "SELECT * FROM property WHERE id = :id";
+    private static final String getById = "SELECT " + PropertyMapper.COLUMNS + " FROM property WHERE id = :id";
     private static final String deleteById = "DELETE FROM property WHERE id = :id";
     private static final String updateById = "UPDATE property SET title = :title WHERE id = :id";
     private static final String duplicateCheck = "SELECT count(id) FROM property WHERE title = :title";
-    private static final String getFileNotUsed = "SELECT * FROM property WHERE id <> 3 AND id <> 10 AND id NOT IN (SELECT propertyId FROM fileProperty WHERE fileId = :fileId);";
-    private static final String getVersionNotUsed = "SELECT * FROM property WHERE id <> 3 AND id <> 10 AND id NOT IN ( SELECT propertyId FROM fileVersionProperty WHERE fileVersionId = :fileId );";
+    private static final String getFileNotUsed = "SELECT " + PropertyMapper.COLUMNS + " FROM property WHERE id <> 3 AND id <> 10 AND id NOT IN (SELECT propertyId FROM fileProperty WHERE fileId = :fileId);";
+    private static final String getVersionNotUsed = "SELECT " + PropertyMapper.COLUMNS + " FROM property WHERE id <> 3 AND id <> 10 AND id NOT IN ( SELECT propertyId FROM fileVersionProperty WHERE fileVersionId = :fileId );";
 
     private int id;
     private String title;
@@ -82,50 +88,50 @@ public class PropertyModel implements ModelInterface {
         this.title = title;
     }
 
-    public static ArrayList<PropertyModel> findAll(int limit, int offset) throws SQLException {
-        ArrayList<PropertyModel> result = new ArrayList<PropertyModel>();
-        NamedParameterJdbcTemplate template = new NamedParameterJdbcTemplate(Database2.getInstance().getBds());
+    /**
+     * Страница пользовательских свойств по возрастанию id
+     * @param cursor Курсор из предыдущей страницы; пустой - первая страница
+     * @param limit Размер страницы
+     */
+    public static KeysetPage<PropertyModel> findPage(String cursor, int limit) throws SQLException {
+        PageCursor pageCursor = PageCursor.parse(cursor, 1);
+        NamedParameterJdbcTemplate template = Database2.getInstance().getTemplate();
         MapSqlParameterSource parameters = new MapSqlParameterSource();
-        parameters.addValue("limit", limit);
-        parameters.addValue("offset", offset);
-        List<Map<String, Object>> rows = template.queryForList(getAllCustomByPage, parameters);
-        for (Map row : rows) {
-            Integer modelId = (Integer) row.get("id");
-            String title = (String) row.get("title");
-            boolean isCustom =!isRequired(modelId);
-            result.add(new PropertyModel(modelId, title, isCustom));
+        parameters.addValue("limit", limit + 1);
+        String sql = getFirstCustomPage;
+        if (pageCursor != null) {
+            parameters.addValue("id", pageCursor.getKey(0));
+            sql = pageCursor.isBackward() ? getCustomPageBefore : getCustomPageAfter;
         }
-        return result;
+        List<PropertyModel> rows = template.query(sql, parameters, PropertyMapper.INSTANCE);
+        return KeysetPage.of(rows, limit, pageCursor, new KeysetPage.KeyExtractor<PropertyModel>() {
+            @Override
+            public long[] getKey(PropertyModel item) {
+                return new long[]{item.getId()};
+            }
+        });
     }
     public static ArrayList<PropertyModel> findAll() throws SQLException {
-        ArrayList<PropertyModel> result = new ArrayList<PropertyModel>();
-        JdbcTemplate template = new JdbcTemplate(Database2.getInstance().getBds());
-        List<Map<String, Object>> rows = template.queryForList(getAllCustom);
-        for (Map row : rows) {
-            Integer modelId = (Integer) row.get("id");
-            String title = (String) row.get("title");
-            boolean isCustom =!isRequired(modelId);
-            result.add(new PropertyModel(modelId, title, isCustom));
-        }
-        return result;
+        JdbcTemplate template = Database2.getInstance().getJdbcTemplate();
+        return new ArrayList<PropertyModel>(template.query(getAllCustom, PropertyMapper.INSTANCE));
     }
 
+    /**
+     * Количество пользовательских свойств; значение кэшируется и может отставать
+     */
     public static int getCount() {
-        JdbcTemplate template = new JdbcTemplate(Database2.getInstance().getBds());
-        return template.queryForObject(getCount, Integer.class);
+        return CountCache.get("property", new CountCache.Counter() {
+            @Override
+            public int count() {
+                JdbcTemplate template = Database2.getInstance().getJdbcTemplate();
+                return template.queryForObject(getCount, Integer.class);
+            }
+        });
     }
 
     public static ArrayList<PropertyModel> findAllCustom() throws SQLException {
-        ArrayList<PropertyModel> result = new ArrayList<PropertyModel>();
-        JdbcTemplate template = new JdbcTemplate(Database2.getInstance().getBds());
-        List<Map<String, Object>> rows = template.queryForList(getAllCustom);
-        for (Map row : rows) {
-            Integer modelId = (Integer) row.get("id");
-            String title = (String) row.get("title");
-            boolean isCustom =!isRequired(modelId);
-            result.add(new PropertyModel(modelId, title, isCustom));
-        }
-        return result;
+        JdbcTemplate template = Database2.getInstance().getJdbcTemplate();
+        return new ArrayList<PropertyModel>(template.query(getAllCustom, PropertyMapper.INSTANCE));
     }
 
     /**
@@ -139,18 +145,10 @@ public class PropertyModel implements ModelInterface {
         } else {
             query = getFileNotUsed;
         }
-        ArrayList<PropertyModel> result = new ArrayList<PropertyModel>();
-        NamedParameterJdbcTemplate template = new NamedParameterJdbcTemplate(Database2.getInstance().getBds());
+        NamedParameterJdbcTemplate template = Database2.getInstance().getTemplate();
         MapSqlParameterSource parameters = new MapSqlParameterSource();
         parameters.addValue("fileId", fileId);
-        List<Map<String, Object>> rows = template.queryForList(query, parameters);
-        for (Map row : rows) {
-            Integer modelId = (Integer) row.get("id");
-            String title = (String) row.get("title");
-            boolean isCustom = !isRequired(modelId);
-            result.add(new PropertyModel(modelId, title, isCustom));
-        }
-        return result;
+        return new ArrayList<PropertyModel>(template.query(query, parameters, PropertyMapper.INSTANCE));
     }
 
     public static String getAllJson() throws SQLException {
@@ -166,42 +164,31 @@ public class PropertyModel implements ModelInterface {
     }
 
     public static PropertyModel findById(int id) {
-        NamedParameterJdbcTemplate template = new NamedParameterJdbcTemplate(Database2.getInstance().getBds());
+        NamedParameterJdbcTemplate template = Database2.getInstance().getTemplate();
         MapSqlParameterSource parameters = new MapSqlParameterSource();
         parameters.addValue("id", id);
-        List<Map<String, Object>> rows = template.queryForList(getById, parameters);
-
-        if (rows.size() > 0) {
-            Map<String, Object> result = rows.get(0);
-            int modelId = (Integer) result.get("id");
-            String title = (String) result.get("title");
-            boolean isCustom =!isRequired(modelId);
-            return new PropertyModel(modelId, title, isCustom);
+        List<PropertyModel> rows = template.query(getById, parameters, PropertyMapper.INSTANCE);
+        if (!rows.isEmpty()) {
+            return rows.get(0);
         } else {
             throw new NotFoundException("Свойство не найдено");
         }
     }
 
     public static PropertyModel findCustomById(int id) throws SQLException {
-        NamedParameterJdbcTemplate template = new NamedParameterJdbcTemplate(Database2.getInstance().getBds());
+        NamedParameterJdbcTemplate template = Database2.getInstance().getTemplate();
         MapSqlParameterSource parameters = new MapSqlParameterSource();
         parameters.addValue("id", id);
-        List<Map<String, Object>> rows = template.queryForList(getById, parameters);
-
-        if (rows.size() > 0) {
-            Map<String, Object> result = rows.get(0);
-            int propertyId = (Integer) result.get("id");
-            String title = (String) result.get("title");
-            if (!isRequired(propertyId)) {
-                return new PropertyModel(propertyId, title, true);
-            }
+        List<PropertyModel> rows = template.query(getById, parameters, PropertyMapper.INSTANCE);
+        if (!rows.isEmpty() && !isRequired(rows.get(0).getId())) {
+            return rows.get(0);
         }
         throw new NotFoundException("Свойство не найдено", "404");
     }
 
     public boolean update() throws SQLException {
         if (validate()) {
-            NamedParameterJdbcTemplate template = new NamedParameterJdbcTemplate(Database2.getInstance().getBds());
+            NamedParameterJdbcTemplate template = Database2.getInstance().getTemplate();
             MapSqlParameterSource parameters = new MapSqlParameterSource();
             parameters.addValue("id", id);
             parameters.addValue("title", title);
@@ -215,7 +202,7 @@ public class PropertyModel implements ModelInterface {
 
     public boolean add() throws SQLException {
         if (this.validate()) {
-            NamedParameterJdbcTemplate template = new NamedParameterJdbcTemplate(Database2.getInstance().getBds());
+            NamedParameterJdbcTemplate template = Database2.getInstance().getTemplate();
             MapSqlParameterSource parameters = new MapSqlParameterSource();
             parameters.addValue("title", title);
             KeyHolder keyHolder = new GeneratedKeyHolder();
@@ -245,7 +232,7 @@ public class PropertyModel implements ModelInterface {
             titleErrors.add("Заполните название");
         }
 
-        NamedParameterJdbcTemplate template = new NamedParameterJdbcTemplate(Database2.getInstance().getBds());
+        NamedParameterJdbcTemplate template = Database2.getInstance().getTemplate();
         MapSqlParameterSource parameters = new MapSqlParameterSource();
         parameters.addValue("title", title);
         Integer count = template.queryForObject(duplicateCheck, parameters, Integer.class);
@@ -275,7 +262,7 @@ public class PropertyModel implements ModelInterface {
         }
         FilePropertyModel.deleteByProperty(id);
         FileVersionPropertyModel.deleteByProperty(id);
-        NamedParameterJdbcTemplate template = new NamedParameterJdbcTemplate(Database2.getInstance().getBds());
+        NamedParameterJdbcTemplate template = Database2.getInstance().getTemplate();
         MapSqlParameterSource parameters = new MapSqlParameterSource();
         parameters.addValue("id", id);
         int rows = template.update(deleteById, parameters);
@@ -0,0 +1,124 @@
+package models;
+
+import db.Database2;
+import org.apache.log4j.Logger;
+import org.json.simple.JSONArray;
+import org.json.simple.JSONObject;
+import org.springframework.jdbc.core.namedparam.MapSqlParameterSource;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Проверка планов частых запросов моделей через EXPLAIN
+ * Запрос помечается, если хотя бы одна таблица в нем читается полным просмотром (type = ALL или index)
+ */
+public class QueryPlanChecker {
+    private static final Logger logger = Logger.getLogger(QueryPlanChecker.class);
+
+    private static final List<CheckedQuery> queries = new ArrayList<CheckedQuery>();
+
+    static {
+        queries.add(new CheckedQuery("FileVersionModel.isExist", FileVersionModel.isFileExist,
+                new MapSqlParameterSource().addValue("hash", "").addValue("fileSize", 0)));
+        queries.add(new CheckedQuery("RequestFileModel.isExist", RequestFileModel.isFileExist,
+                new MapSqlParameterSource().addValue("hash", "").addValue("fileSize", 0)));
+        queries.add(new CheckedQuery("FileModel.findByTitle", FileModel.getByTitle,
+                new MapSqlParameterSource().addValue("title", "")));
+        queries.add(new CheckedQuery("FileModel.getVersionList", FileModel.getVersions,
+                new MapSqlParameterSource().addValue("fileId", 0)));
+        queries.add(new CheckedQuery("FileModel.getVersionList (только включенные)", FileModel.getEnabledVersions,
+                new MapSqlParameterSource().addValue("fileId", 0).addValue("isDisabled", false)));
+        queries.add(new CheckedQuery("FileVersionPropertyModel.getProperties", FileVersionPropertyModel.getByFileVersion,
+                new MapSqlParameterSource().addValue("fileVersionId", 0)));
+        queries.add(new CheckedQuery("FileVersionPropertyModel.isPropertyExist", FileVersionPropertyModel.checkIsExist,
+                new MapSqlParameterSource().addValue("fileVersionId", 0).addValue("propertyId", 0)));
+        queries.add(new CheckedQuery("FilePropertyModel.getProperties", FilePropertyModel.getByFile,
+                new MapSqlParameterSource().addValue("fileId", 0).addValue("fileName", PropertyModel.PRODUCT_NAME).addValue("version", PropertyModel.FILE_VERSION)));
+        queries.add(new CheckedQuery("FilePropertyModel.isPropertyExist", FilePropertyModel.checkIsExist,
+                new MapSqlParameterSource().addValue("fileId", 0).addValue("propertyId", 0)));
+        queries.add(new CheckedQuery("FileCategoryModel.getByFile", FileCategoryModel.getByFile,
+                new MapSqlParameterSource().addValue("fileId", 0)));
+        queries.add(new CheckedQuery("CategoryModel.getFiles", CategoryModel.getFiles,
+                new MapSqlParameterSource().addValue("categoryId", 0).addValue("limit", 10).addValue("offset", 0)));
+        queries.add(new CheckedQuery("CategoryModel.getFiles (с подкатегориями)", CategoryModel.getFilesWithDescendants,
+                new MapSqlParameterSource().addValue("categoryId", 0).addValue("limit", 10).addValue("offset", 0)));
+        queries.add(new CheckedQuery("AttentionQueueModel.findPage", AttentionQueueModel.getFirstPage,
+                new MapSqlParameterSource().addValue("limit", 11)));
+        queries.add(new CheckedQuery("RequestModel.getFiles", RequestModel.getFiles,
+                new MapSqlParameterSource().addValue("requestId", 0)));
+    }
+
+    /**
+     * Выполнение EXPLAIN для всех проверяемых запросов
+     * На почти пустых таблицах MySQL может выбрать полный просмотр и при наличии индекса,
+     * поэтому результат имеет смысл на реальном объеме данных
+     * @return json массив: название запроса, строки плана и признак полного просмотра
+     */
+    public static JSONArray check() {
+        NamedParameterJdbcTemplate template = Database2.getInstance().getTemplate();
+        JSONArray result = new JSONArray();
+        for (CheckedQuery query : queries) {
+            JSONObject item = new JSONObject();
+            item.put("name", query.name);
+            item.put("sql", query.sql);
+            JSONArray plan = new JSONArray();
+            boolean isFullScan = false;
+            try {
+                List<Map<String, Object>> rows = template.queryForList("EXPLAIN " + query.sql, query.parameters);
+                for (Map<String, Object> row : rows) {
+                    JSONObject step = new JSONObject();
+                    String type = row.get("type") == null ? null : String.valueOf(row.get("type"));
+                    step.put("table", row.get("table"));
+                    step.put("type", type);
+                    step.put("key", row.get("key"));
+                    step.put("rows", row.get("rows"));
+                    step.put("extra", row.get("Extra"));
+                    plan.add(step);
+                    if ("ALL".equals(type) || "index".equals(type)) {
+                        isFullScan = true;
+                    }
+                }
+            } catch (Exception e) {
+                item.put("error", e.getMessage());
+            }
+            item.put("plan", plan);
+            item.put("isFullScan", isFullScan);
+            result.add(item);
+        }
+        return result;
+    }
+
+    /**
+     * Проверка с записью запросов с полным просмотром в лог
+     * @return Названия запросов с полным просмотром
+     */
+    public static List<String> logFullScans() {
+        List<String> result = new ArrayList<String>();
+        for (Object item : check()) {
+            JSONObject query = (JSONObject) item;
+            if (query.get("error") != null) {
+                logger.warn("Не удалось проверить план запроса " + query.get("name") + ": " + query.get("error"));
+            } else if (Boolean.TRUE.equals(query.get("isFullScan"))) {
+                logger.warn("Запрос " + query.get("name") + " выполняется полным просмотром таблицы: " + query.get("plan"));
+                result.add((String) query.get("name"));
+            }
+        }
+        return Collections.unmodifiableList(result);
+    }
+
+    private static class CheckedQuery {
+        private final String name;
+        private final String sql;
+        private final MapSqlParameterSource parameters;
+
+        private CheckedQuery(String name, String sql, MapSqlParameterSource parameters) {
+            this.name = name;
+            this.sql = sql;
+            this.parameters = parameters;
+        }
+    }
+}
@@ -2,6 +2,7 @@ package models;
 
 import config.Settings;
 import db.Database2;
+import helpers.hash.HashAlgorithm;
 import org.springframework.jdbc.core.namedparam.MapSqlParameterSource;
 import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
 import org.springframework.jdbc.support.GeneratedKeyHolder;
@@ -15,13 +16,14 @@ import java.util.Map;
 import java.util.Set;
 
 public class RequestFileModel implements ModelInterface {
-    private static final String saveNew = "INSERT INTO requestFile(requestId, hash, fileName, fileSize, extension) VALUES(:requestId, :hash, :fileName, :fileSize, :extension)";
-    private static final String isFileExist = "SELECT count(id) FROM requestFile WHERE hash = :hash AND fileSize = :fileSize";
+    private static final String saveNew = "INSERT INTO requestFile(requestId, hash, hashAlgorithm, fileName, fileSize, extension) VALUES(:requestId, :hash, :hashAlgorithm, :fileName, :fileSize, :extension)";
+    static final String isFileExist = "SELECT count(id) FROM requestFile WHERE hash = :hash AND fileSize = :fileSize";
     private static final String deleteById = "DELETE FROM requestFile WHERE id = :id";
 
     private int id;
     private int requestId;
     private String hash;
+    private String hashAlgorithm = HashAlgorithm.MD5.getTitle();
     private String fileName;
     private String extension;
     private long fileSize;
@@ -42,10 +44,11 @@ public class RequestFileModel implements ModelInterface {
 
     public boolean add() throws SQLException {
         if (validate()) {
-            NamedParameterJdbcTemplate template = new NamedParameterJdbcTemplate(Database2.getInstance().getBds());
+            NamedParameterJdbcTemplate template = Database2.getInstance().getTemplate();
             MapSqlParameterSource parameters = new MapSqlParameterSource();
             parameters.addValue("requestId", requestId);
             parameters.addValue("hash", hash);
+            parameters.addValue("hashAlgorithm", hashAlgorithm);
             parameters.addValue("fileName", fileName);
             parameters.addValue("fileSize", fileSize);
             parameters.addValue("extension", extension);
@@ -79,7 +82,7 @@ public class RequestFileModel implements ModelInterface {
                 .append(fileName);
         File file = new File(newFileName.toString());
         boolean isDeleted = file.delete();
-        NamedParameterJdbcTemplate template = new NamedParameterJdbcTemplate(Database2.getInstance().getBds());
+        NamedParameterJdbcTemplate template = Database2.getInstance().getTemplate();
         MapSqlParameterSource parameters = new MapSqlParameterSource();
         parameters.addValue("id", id);
         int rows = template.update(deleteById, parameters);
@@ -92,7 +95,7 @@ public class RequestFileModel implements ModelInterface {
      * @return True если такой файл уже есть, иначе false
      */
     public static boolean isExist(String hash, long fileSize) {
-        NamedParameterJdbcTemplate template = new NamedParameterJdbcTemplate(Database2.getInstance().getBds());
+        NamedParameterJdbcTemplate template = Database2.getInstance().getTemplate();
         MapSqlParameterSource parameters = new MapSqlParameterSource();
         parameters.addValue("hash", hash);
         parameters.addValue("fileSize", fileSize);
@@ -132,6 +135,14 @@ public class RequestFileModel implements ModelInterface {
         this.hash = hash;
     }
 
+    public String getHashAlgorithm() {
+        return hashAlgorithm;
+    }
+
+    public void setHashAlgorithm(String hashAlgorithm) {
+        this.hashAlgorithm = HashAlgorithm.fromTitle(hashAlgorithm).getTitle();
+    }
+
     public int getRequestId() {
         return requestId;
     }
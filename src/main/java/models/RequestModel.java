@@ -1,7 +1,12 @@
 package models;
 
+import db.CountCache;
 import db.Database2;
 import exceptions.NotFoundException;
+import helpers.PageCursor;
+import models.helpers.KeysetPage;
+import models.mappers.RequestFileMapper;
+import models.mappers.RequestMapper;
 import org.springframework.jdbc.core.namedparam.MapSqlParameterSource;
 import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
 import org.springframework.jdbc.support.GeneratedKeyHolder;
@@ -10,16 +15,20 @@ import org.springframework.jdbc.support.KeyHolder;
 import java.sql.SQLException;
 import java.util.ArrayList;
 import java.util.List;
-import java.util.Map;
 
 public class RequestModel implements ModelInterface {
     private static final String saveNew = "INSERT INTO request(userId, text, status, date, comment) VALUES(:userId, :text, :status, :date, :comment)";
-    private static final String getAll = "SELECT * FROM request ORDER BY date DESC LIMIT :limit OFFSET :offset";
-    private static final String getAllByUser = "SELECT * FROM request WHERE userId = :userId ORDER BY date DESC LIMIT :limit OFFSET :offset";
+    // заявки выводятся от новых к старым; ключ сортировки - (date, id)
+    private static final String getFirstPage = "SELECT " + RequestMapper.COLUMNS + " FROM request ORDER BY date DESC, id DESC LIMIT :limit";
+    private static final String getPageAfter = "SELECT " + RequestMapper.COLUMNS + " FROM request WHERE (date < :date OR (date = :date AND id < :id)) ORDER BY date DESC, id DESC LIMIT :limit";
+    private static final String getPageBefore = "SELECT " + RequestMapper.COLUMNS + " FROM request WHERE (date > :date OR (date = :date AND id > :id)) ORDER BY date ASC, id ASC LIMIT :limit";
+    private static final String getFirstPageByUser = "SELECT " + RequestMapper.COLUMNS + " FROM request WHERE userId = :userId ORDER BY date DESC, id DESC LIMIT :limit";
+    private static final String getPageAfterByUser = "SELECT " + RequestMapper.COLUMNS + " FROM request WHERE userId = :userId AND (date < :date OR (date = :date AND id < :id)) ORDER BY date DESC, id DESC LIMIT :limit";
+    private static final String getPageBeforeByUser = "SELECT " + RequestMapper.COLUMNS + " FROM request WHERE userId = :userId AND (date > :date OR (date = :date AND id > :id)) ORDER BY date ASC, id ASC LIMIT :limit";
     private static final String getCountByUser = "SELECT count(id) FROM request WHERE userId = :userId";
     private static final String getCount = "SELECT count(id) FROM request";
-    private static final String getById = "SELECT * FROM request WHERE id = :id ORDER BY date DESC";
-    private static final String getFiles = "SELECT * FROM requestFile WHERE requestId = :requestId";
+    private static final String getById = "SELECT " + RequestMapper.COLUMNS + " FROM request WHERE id = :id ORDER BY date DESC";
+    static final String getFiles = "SELECT " + RequestFileMapper.COLUMNS + " FROM requestFile WHERE requestId = :requestId";
     private static final String deleteById = "DELETE FROM request WHERE id = :id";
     private static final String getNewCount = "SELECT count(id) FROM request WHERE status = :status AND userId = :userId";
     private static final String updateById = "UPDATE request SET status = :status, comment = :comment WHERE id = :id";
@@ -49,7 +58,7 @@ public class RequestModel implements ModelInterface {
 
     public boolean update() throws SQLException {
         if (validate()) {
-            NamedParameterJdbcTemplate template = new NamedParameterJdbcTemplate(Database2.getInstance().getBds());
+            NamedParameterJdbcTemplate template = Database2.getInstance().getTemplate();
             MapSqlParameterSource parameters = new MapSqlParameterSource();
             parameters.addValue("id", id);
             parameters.addValue("comment", comment);
@@ -62,7 +71,7 @@ public class RequestModel implements ModelInterface {
 
     public boolean add() throws SQLException {
         if (validate()) {
-            NamedParameterJdbcTemplate template = new NamedParameterJdbcTemplate(Database2.getInstance().getBds());
+            NamedParameterJdbcTemplate template = Database2.getInstance().getTemplate();
             MapSqlParameterSource parameters = new MapSqlParameterSource();
             parameters.addValue("text", text);
             parameters.addValue("date", date);
@@ -93,7 +102,7 @@ public class RequestModel implements ModelInterface {
         for (RequestFileModel file : files) {
             file.delete();
         }
-        NamedParameterJdbcTemplate template = new NamedParameterJdbcTemplate(Database2.getInstance().getBds());
+        NamedParameterJdbcTemplate template = Database2.getInstance().getTemplate();
         MapSqlParameterSource parameters = new MapSqlParameterSource();
         parameters.addValue("id", id);
         int rows = template.update(deleteById, parameters);
@@ -101,95 +110,97 @@ public class RequestModel implements ModelInterface {
     }
 
     public static RequestModel findById(int id) {
-        NamedParameterJdbcTemplate template = new NamedParameterJdbcTemplate(Database2.getInstance().getBds());
+        NamedParameterJdbcTemplate template = Database2.getInstance().getTemplate();
         MapSqlParameterSource parameters = new MapSqlParameterSource();
         parameters.addValue("id", id);
-        List<Map<String, Object>> rows = template.queryForList(getById, parameters);
-
-        if (rows.size() > 0) {
-            Map<String, Object> result = rows.get(0);
-            int requestId = (Integer) result.get("id");
-            int userId = (Integer) result.get("userId");
-            String text = (String) result.get("text");
-            int status = (Integer) result.get("status");
-            long date = (Long) result.get("date");
-            String comment = (String) result.get("comment");
-            return new RequestModel(requestId, userId, text, status, date, comment);
+        List<RequestModel> rows = template.query(getById, parameters, RequestMapper.INSTANCE);
+        if (!rows.isEmpty()) {
+            return rows.get(0);
         } else {
             throw new NotFoundException("Свойство не найдено");
         }
     }
 
-    public static ArrayList<RequestModel> findAll(int limit, int offset) {
-        ArrayList<RequestModel> result = new ArrayList<RequestModel>();
-        NamedParameterJdbcTemplate template = new NamedParameterJdbcTemplate(Database2.getInstance().getBds());
-        MapSqlParameterSource parameters = new MapSqlParameterSource();
-        parameters.addValue("limit", limit);
-        parameters.addValue("offset", offset);
-        List<Map<String, Object>> rows = template.queryForList(getAll, parameters);
-        for (Map row : rows) {
-            Integer reqId = (Integer) row.get("id");
-            Integer userId = (Integer) row.get("userId");
-            String text = (String) row.get("text");
-            Integer status = (Integer) row.get("status");
-            Long date = (Long) row.get("date");
-            String comment = (String) row.get("comment");
-            result.add(new RequestModel(reqId, userId, text, status, date, comment));
-        }
-        return result;
+    /**
+     * Страница заявок от новых к старым
+     * @param cursor Курсор из предыдущей страницы; пустой - первая страница
+     * @param limit Размер страницы
+     */
+    public static KeysetPage<RequestModel> findPage(String cursor, int limit) {
+        return findPage(0, cursor, limit);
     }
 
-    public ArrayList<RequestFileModel> getFiles() {
-        ArrayList<RequestFileModel> files = new ArrayList<RequestFileModel>();
-        NamedParameterJdbcTemplate template = new NamedParameterJdbcTemplate(Database2.getInstance().getBds());
+    /**
+     * Страница заявок пользователя от новых к старым
+     * @param userId Id пользователя; 0 - заявки всех пользователей
+     * @param cursor Курсор из предыдущей страницы; пустой - первая страница
+     * @param limit Размер страницы
+     */
+    public static KeysetPage<RequestModel> findPage(int userId, String cursor, int limit) {
+        PageCursor pageCursor = PageCursor.parse(cursor, 2);
+        NamedParameterJdbcTemplate template = Database2.getInstance().getTemplate();
         MapSqlParameterSource parameters = new MapSqlParameterSource();
-        parameters.addValue("requestId", id);
-        List<Map<String, Object>> rows = template.queryForList(getFiles, parameters);
-        for (Map<String, Object> row : rows) {
-            int fileId = (Integer) row.get("id");
-            String hash = (String) row.get("hash");
-            String fileName = (String) row.get("fileName");
-            String extension = (String) row.get("extension");
-            long fileSize = (Long) row.get("fileSize");
-            files.add(new RequestFileModel(fileId, id, hash, fileName, extension, fileSize));
+        parameters.addValue("userId", userId);
+        parameters.addValue("limit", limit + 1);
+        String sql;
+        if (pageCursor == null) {
+            sql = userId > 0 ? getFirstPageByUser : getFirstPage;
+        } else {
+            parameters.addValue("date", pageCursor.getKey(0));
+            parameters.addValue("id", pageCursor.getKey(1));
+            if (pageCursor.isBackward()) {
+                sql = userId > 0 ? getPageBeforeByUser : getPageBefore;
+            } else {
+                sql = userId > 0 ? getPageAfterByUser : getPageAfter;
+            }
         }
-        return files;
+        List<RequestModel> rows = template.query(sql, parameters, RequestMapper.INSTANCE);
+        return KeysetPage.of(rows, limit, pageCursor, new KeysetPage.KeyExtractor<RequestModel>() {
+            @Override
+            public long[] getKey(RequestModel item) {
+                return new long[]{item.date, item.id};
+            }
+        });
     }
 
-    public static ArrayList<RequestModel> findAllByUser(int userId, int limit, int offset) {
-        ArrayList<RequestModel> result = new ArrayList<RequestModel>();
-        NamedParameterJdbcTemplate template = new NamedParameterJdbcTemplate(Database2.getInstance().getBds());
+    public ArrayList<RequestFileModel> getFiles() {
+        NamedParameterJdbcTemplate template = Database2.getInstance().getTemplate();
         MapSqlParameterSource parameters = new MapSqlParameterSource();
-        parameters.addValue("userId", userId);
-        parameters.addValue("limit", limit);
-        parameters.addValue("offset", offset);
-        List<Map<String, Object>> rows = template.queryForList(getAllByUser, parameters);
-        for (Map row : rows) {
-            Integer reqId = (Integer) row.get("id");
-            String text = (String) row.get("text");
-            Integer status = (Integer) row.get("status");
-            Long date = (Long) row.get("date");
-            String comment = (String) row.get("comment");
-            result.add(new RequestModel(reqId, userId, text, status, date, comment));
-        }
-        return result;
+        parameters.addValue("requestId", id);
+        return new ArrayList<RequestFileModel>(template.query(getFiles, parameters, RequestFileMapper.INSTANCE));
     }
 
-    public static int getCountForUser(int userId) {
-        NamedParameterJdbcTemplate template = new NamedParameterJdbcTemplate(Database2.getInstance().getBds());
-        MapSqlParameterSource parameters = new MapSqlParameterSource();
-        parameters.addValue("userId", userId);
-        return template.queryForObject(getCountByUser, parameters, Integer.class);
+    /**
+     * Количество заявок пользователя; значение кэшируется и может отставать
+     */
+    public static int getCountForUser(final int userId) {
+        return CountCache.get("request:" + userId, new CountCache.Counter() {
+            @Override
+            public int count() {
+                NamedParameterJdbcTemplate template = Database2.getInstance().getTemplate();
+                MapSqlParameterSource parameters = new MapSqlParameterSource();
+                parameters.addValue("userId", userId);
+                return template.queryForObject(getCountByUser, parameters, Integer.class);
+            }
+        });
     }
 
+    /**
+     * Количество заявок; значение кэшируется и может отставать
+     */
     public static int getCount() {
-        NamedParameterJdbcTemplate template = new NamedParameterJdbcTemplate(Database2.getInstance().getBds());
-        MapSqlParameterSource parameters = new MapSqlParameterSource();
-        return template.queryForObject(getCount, parameters, Integer.class);
+        return CountCache.get("request", new CountCache.Counter() {
+            @Override
+            public int count() {
+                NamedParameterJdbcTemplate template = Database2.getInstance().getTemplate();
+                MapSqlParameterSource parameters = new MapSqlParameterSource();
+                return template.queryForObject(getCount, parameters, Integer.class);
+            }
+        });
     }
 
     public static int getNewCountForUser(int userId) {
-        NamedParameterJdbcTemplate template = new NamedParameterJdbcTemplate(Database2.getInstance().getBds());
+        NamedParameterJdbcTemplate template = Database2.getInstance().getTemplate();
         MapSqlParameterSource parameters = new MapSqlParameterSource();
         parameters.addValue("userId", userId);
         parameters.addValue("status", NEW);
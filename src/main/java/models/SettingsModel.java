@@ -2,6 +2,7 @@ package models;
 
 import db.Database2;
 import exceptions.NotFoundException;
+import models.mappers.SettingsMapper;
 import org.springframework.jdbc.core.namedparam.MapSqlParameterSource;
 import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
 import org.springframework.jdbc.support.GeneratedKeyHolder;
@@ -10,18 +11,18 @@ import org.springframework.jdbc.support.KeyHolder;
 import java.sql.SQLException;
 import java.util.ArrayList;
 import java.util.List;
-import java.util.Map;
 
 /**
  * Модель шаблонов экспорта
  */
 public class SettingsModel implements ModelInterface {
-    private static final String getById = "SELECT * FROM settings WHERE id = :id";
+    private static final String getById = "SELECT " + SettingsMapper.COLUMNS + " FROM settings WHERE id = :id";
     private static final String saveNew = "INSERT INTO settings(id, value) VALUES (:id, :value)";
     private static final String updateById = "UPDATE settings SET value = :value WHERE id = :id";
 
     public static final int UPLOAD_PATH = 1;
     public static final int UPLOAD_REQUEST_PATH = 2;
+    public static final int HASH_ALGORITHM = 3;
 
     private int id;
     private String value;
@@ -38,7 +39,7 @@ public class SettingsModel implements ModelInterface {
 
     public boolean update() throws SQLException {
         if (validate()) {
-            NamedParameterJdbcTemplate template = new NamedParameterJdbcTemplate(Database2.getInstance().getBds());
+            NamedParameterJdbcTemplate template = Database2.getInstance().getTemplate();
             MapSqlParameterSource parameters = new MapSqlParameterSource();
             parameters.addValue("id", id);
             parameters.addValue("value", value);
@@ -50,7 +51,7 @@ public class SettingsModel implements ModelInterface {
 
     public boolean add() throws SQLException {
         if (validate()) {
-            NamedParameterJdbcTemplate template = new NamedParameterJdbcTemplate(Database2.getInstance().getBds());
+            NamedParameterJdbcTemplate template = Database2.getInstance().getTemplate();
             MapSqlParameterSource queryParameters = new MapSqlParameterSource();
             queryParameters.addValue("id", id);
             queryParameters.addValue("value", value);
@@ -70,18 +71,11 @@ public class SettingsModel implements ModelInterface {
     }
 
     public static SettingsModel findById(int id) {
-        NamedParameterJdbcTemplate template = new NamedParameterJdbcTemplate(Database2.getInstance().getBds());
+        NamedParameterJdbcTemplate template = Database2.getInstance().getTemplate();
         MapSqlParameterSource parameters = new MapSqlParameterSource();
         parameters.addValue("id", id);
-        List<Map<String, Object>> rows = template.queryForList(getById, parameters);
-
-        if (rows.size() > 0) {
-            Map<String, Object> result = rows.get(0);
-            int settingId = (Integer) result.get("id");
-            String value = (String) result.get("value");
-            return new SettingsModel(settingId, value);
-        }
-        return null;
+        List<SettingsModel> rows = template.query(getById, parameters, SettingsMapper.INSTANCE);
+        return rows.isEmpty() ? null : rows.get(0);
     }
 
     public int getId() {
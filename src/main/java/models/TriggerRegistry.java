@@ -0,0 +1,136 @@
+package models;
+
+import db.Database2;
+import db.InvalidatingCache;
+import helpers.process.ProcessRunner;
+import models.mappers.FileTriggerMapper;
+import org.apache.log4j.Logger;
+
+import java.util.*;
+import java.util.regex.Pattern;
+import java.util.regex.PatternSyntaxException;
+
+/**
+ * Триггеры файлов в памяти
+ * Все триггеры читаются одним запросом; выражения компилируются, а команды разбираются на аргументы один раз.
+ * После добавления, изменения или удаления триггера кэш сбрасывается и при следующем обращении строится заново
+ */
+public class TriggerRegistry {
+    private static final Logger logger = Logger.getLogger(TriggerRegistry.class);
+
+    private static final String getAll = "SELECT " + FileTriggerMapper.COLUMNS + " FROM fileTrigger";
+
+    private static final InvalidatingCache<TriggerRegistry> cache = new InvalidatingCache<TriggerRegistry>(new InvalidatingCache.Loader<TriggerRegistry>() {
+        @Override
+        public TriggerRegistry load() {
+            return new TriggerRegistry(Database2.getInstance().getJdbcTemplate().query(getAll, FileTriggerMapper.INSTANCE));
+        }
+    });
+
+    // расширение в нижнем регистре - триггер; сравнение в БД тоже без учета регистра
+    private final Map<String, CompiledTrigger> byExtension;
+
+    private TriggerRegistry(List<FileTriggerModel> triggers) {
+        HashMap<String, CompiledTrigger> byExtension = new HashMap<String, CompiledTrigger>();
+        for (FileTriggerModel model : triggers) {
+            CompiledTrigger trigger = new CompiledTrigger(
+                    model.getExtension(),
+                    model.getCommand(),
+                    model.getRegexp(),
+                    model.getTimeout()
+            );
+            String key = trigger.extension.toLowerCase();
+            if (!byExtension.containsKey(key)) {
+                byExtension.put(key, trigger);
+            }
+        }
+        this.byExtension = byExtension;
+    }
+
+    /**
+     * Текущий реестр; при первом обращении после сброса читается из БД
+     */
+    public static TriggerRegistry get() {
+        return cache.get();
+    }
+
+    /**
+     * Сброс реестра после изменения триггеров; выполняется после фиксации текущей транзакции
+     */
+    public static void invalidate() {
+        cache.invalidate();
+    }
+
+    /**
+     * @param extension Расширение файла
+     * @return Триггер или null, если для расширения его нет
+     */
+    public CompiledTrigger findByExtension(String extension) {
+        return extension == null ? null : byExtension.get(extension.toLowerCase());
+    }
+
+    /**
+     * Триггер с разобранной командой и скомпилированным выражением; не изменяется
+     */
+    public static class CompiledTrigger {
+        private final String extension;
+        private final String command;
+        private final String regexp;
+        private final int timeout;
+        private final List<String> arguments;
+        private final Pattern pattern;
+
+        private CompiledTrigger(String extension, String command, String regexp, int timeout) {
+            this.extension = extension;
+            this.command = command;
+            this.regexp = regexp;
+            this.timeout = timeout;
+            this.arguments = Collections.unmodifiableList(ProcessRunner.split(command));
+            Pattern compiled = null;
+            try {
+                compiled = Pattern.compile(regexp);
+            } catch (PatternSyntaxException e) {
+                // выражение проверяется при сохранении; сюда попадают только записи, сохраненные до проверки
+                logger.warn("Ошибка в регулярке триггера для расширения " + extension + ": " + e.getDescription());
+            }
+            this.pattern = compiled;
+        }
+
+        /**
+         * Команда для файла: программа и аргументы с подставленным путем
+         * @param filePath Путь до файла; подставляется вместо {filePath} внутри аргумента
+         */
+        public List<String> getCommand(String filePath) {
+            List<String> result = new ArrayList<String>(arguments.size());
+            for (String argument : arguments) {
+                result.add(argument.replace("{filePath}", filePath));
+            }
+            return result;
+        }
+
+        /**
+         * Строка, меняющаяся при изменении команды или выражения; входит в версию кэша свойств
+         */
+        public String getDefinition() {
+            return command + "\n" + regexp;
+        }
+
+        public String getExtension() {
+            return extension;
+        }
+
+        /**
+         * @return Скомпилированное выражение или null, если оно некорректно
+         */
+        public Pattern getPattern() {
+            return pattern;
+        }
+
+        /**
+         * @return Максимальное время выполнения команды, секунд
+         */
+        public int getTimeout() {
+            return timeout;
+        }
+    }
+}
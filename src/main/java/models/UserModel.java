@@ -1,6 +1,10 @@
 package models;
 
+import db.CountCache;
 import db.Database2;
+import helpers.PageCursor;
+import models.helpers.KeysetPage;
+import models.mappers.UserMapper;
 import org.springframework.jdbc.core.JdbcTemplate;
 import org.springframework.jdbc.core.namedparam.MapSqlParameterSource;
 import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
@@ -12,8 +16,10 @@ import java.util.*;
 public class UserModel implements ModelInterface {
     private static final String saveNew = "INSERT INTO user(id, phone, email, displayName, department, departmentNumber, address) VALUES(:id, :phone, :email, :displayName, :department, :departmentNumber, :address)";
     private static final String updateById = "UPDATE user SET phone = :phone, email = :email, displayName = :displayName, department = :department, departmentNumber = :departmentNumber, address = :address WHERE id = :id";
-    private static final String getById = "SELECT * FROM user WHERE id = :id";
-    private static final String getAllOnPage = "SELECT * FROM user LIMIT :limit OFFSET :offset";
+    private static final String getById = "SELECT " + UserMapper.COLUMNS + " FROM user WHERE id = :id";
+    private static final String getFirstPage = "SELECT " + UserMapper.COLUMNS + " FROM user ORDER BY id ASC LIMIT :limit";
+    private static final String getPageAfter = "SELECT " + UserMapper.COLUMNS + " FROM user WHERE id > :id ORDER BY id ASC LIMIT :limit";
+    private static final String getPageBefore = "SELECT " + UserMapper.COLUMNS + " FROM user WHERE id < :id ORDER BY id DESC LIMIT :limit";
     private static final String deleteById = "DELETE FROM property WHERE id = :id";
     private static final String getCount = "SELECT count(id) FROM user";
 
@@ -49,56 +55,54 @@ public class UserModel implements ModelInterface {
         return id;
     }
 
+    /**
+     * Количество пользователей; значение кэшируется и может отставать
+     */
     public static int getCount() {
-        JdbcTemplate template = new JdbcTemplate(Database2.getInstance().getBds());
-        return template.queryForObject(getCount, Integer.class);
-    }
-
-    public static ArrayList<UserModel> findAll(int limit, int offset) throws SQLException {
-        ArrayList<UserModel> result = new ArrayList<UserModel>();
-        NamedParameterJdbcTemplate template = new NamedParameterJdbcTemplate(Database2.getInstance().getBds());MapSqlParameterSource parameters = new MapSqlParameterSource();
-        parameters.addValue("limit", limit);
-        parameters.addValue("offset", offset);
-        List<Map<String, Object>> rows = template.queryForList(getAllOnPage, parameters);
-        for (Map row : rows) {
-            Integer modelId = (Integer) row.get("id");
-            String phone = (String) row.get("phone");
-            String email = (String) row.get("email");
-            String displayName = (String) row.get("displayName");
-            String department = (String) row.get("department");
-            String departmentNumber = (String) row.get("departmentNumber");
-            String fax = (String) row.get("fax");
-            String address = (String) row.get("address");
-            result.add(new UserModel(modelId, phone, email, displayName, department, departmentNumber, address));
+        return CountCache.get("user", new CountCache.Counter() {
+            @Override
+            public int count() {
+                JdbcTemplate template = Database2.getInstance().getJdbcTemplate();
+                return template.queryForObject(getCount, Integer.class);
+            }
+        });
+    }
+
+    /**
+     * Страница пользователей по возрастанию id
+     * @param cursor Курсор из предыдущей страницы; пустой - первая страница
+     * @param limit Размер страницы
+     */
+    public static KeysetPage<UserModel> findPage(String cursor, int limit) throws SQLException {
+        PageCursor pageCursor = PageCursor.parse(cursor, 1);
+        NamedParameterJdbcTemplate template = Database2.getInstance().getTemplate();
+        MapSqlParameterSource parameters = new MapSqlParameterSource();
+        parameters.addValue("limit", limit + 1);
+        String sql = getFirstPage;
+        if (pageCursor != null) {
+            parameters.addValue("id", pageCursor.getKey(0));
+            sql = pageCursor.isBackward() ? getPageBefore : getPageAfter;
         }
-        return result;
+        List<UserModel> result = template.query(sql, parameters, UserMapper.INSTANCE);
+        return KeysetPage.of(result, limit, pageCursor, new KeysetPage.KeyExtractor<UserModel>() {
+            @Override
+            public long[] getKey(UserModel item) {
+                return new long[]{item.getId()};
+            }
+        });
     }
 
     public static UserModel findById(int id) {
-        NamedParameterJdbcTemplate template = new NamedParameterJdbcTemplate(Database2.getInstance().getBds());
+        NamedParameterJdbcTemplate template = Database2.getInstance().getTemplate();
         MapSqlParameterSource parameters = new MapSqlParameterSource();
         parameters.addValue("id", id);
-        List<Map<String, Object>> rows = template.queryForList(getById, parameters);
-
-        if (rows.size() > 0) {
-            Map<String, Object> result = rows.get(0);
-            int userId = (Integer) result.get("id");
-            String phone = (String) result.get("phone");
-            String email = (String) result.get("email");
-            String displayName = (String) result.get("displayName");
-            String department = (String) result.get("department");
-            String departmentNumber = (String) result.get("departmentNumber");
-            String fax = (String) result.get("fax");
-            String address = (String) result.get("address");
-            return new UserModel(userId, phone, email, displayName, department, departmentNumber, address);
-        } else {
-            return null;
-        }
+        List<UserModel> rows = template.query(getById, parameters, UserMapper.INSTANCE);
+        return rows.isEmpty() ? null : rows.get(0);
     }
 
     public boolean update() throws SQLException {
         if (validate()) {
-            NamedParameterJdbcTemplate template = new NamedParameterJdbcTemplate(Database2.getInstance().getBds());
+            NamedParameterJdbcTemplate template = Database2.getInstance().getTemplate();
             MapSqlParameterSource parameters = new MapSqlParameterSource();
             parameters.addValue("id", id);
             parameters.addValue("phone", phone);
@@ -115,7 +119,7 @@ public class UserModel implements ModelInterface {
 
     public boolean add() throws SQLException {
         if (this.validate()) {
-            NamedParameterJdbcTemplate template = new NamedParameterJdbcTemplate(Database2.getInstance().getBds());
+            NamedParameterJdbcTemplate template = Database2.getInstance().getTemplate();
             MapSqlParameterSource parameters = new MapSqlParameterSource();
             parameters.addValue("id", id);
             parameters.addValue("phone", phone);
@@ -142,7 +146,7 @@ public class UserModel implements ModelInterface {
     }
 
     public boolean delete() throws SQLException {
-        NamedParameterJdbcTemplate template = new NamedParameterJdbcTemplate(Database2.getInstance().getBds());
+        NamedParameterJdbcTemplate template = Database2.getInstance().getTemplate();
         MapSqlParameterSource parameters = new MapSqlParameterSource();
         parameters.addValue("id", id);
         int rows = template.update(deleteById, parameters);
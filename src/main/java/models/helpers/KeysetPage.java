@@ -0,0 +1,80 @@
+package models.helpers;
+
+import helpers.PageCursor;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Страница списка при выводе по ключу (keyset) и курсоры на соседние страницы
+ */
+public class KeysetPage<T> {
+    /**
+     * Ключ сортировки строки списка
+     */
+    public interface KeyExtractor<T> {
+        public long[] getKey(T item);
+    }
+
+    private final List<T> items;
+    private final String nextCursor;
+    private final String prevCursor;
+
+    private KeysetPage(List<T> items, String nextCursor, String prevCursor) {
+        this.items = items;
+        this.nextCursor = nextCursor;
+        this.prevCursor = prevCursor;
+    }
+
+    /**
+     * Сборка страницы из строк запроса
+     * Запрос выбирает limit + 1 строку: лишняя строка показывает, что дальше в этом направлении есть еще страница.
+     * Для курсора назад строки выбираются в обратном порядке и здесь разворачиваются
+     * @param rows Строки в порядке выборки
+     * @param limit Размер страницы
+     * @param cursor Курсор запроса; null - первая страница
+     * @param extractor Ключ сортировки строки
+     */
+    public static <T> KeysetPage<T> of(List<T> rows, int limit, PageCursor cursor, KeyExtractor<T> extractor) {
+        boolean hasMore = rows.size() > limit;
+        List<T> items = new ArrayList<T>(hasMore ? rows.subList(0, limit) : rows);
+        boolean isBackward = cursor != null && cursor.isBackward();
+        if (isBackward) {
+            Collections.reverse(items);
+        }
+        if (items.isEmpty()) {
+            return new KeysetPage<T>(items, null, null);
+        }
+        long[] firstKey = extractor.getKey(items.get(0));
+        long[] lastKey = extractor.getKey(items.get(items.size() - 1));
+        String next;
+        String prev;
+        if (isBackward) {
+            next = PageCursor.encode(false, lastKey);
+            prev = hasMore ? PageCursor.encode(true, firstKey) : null;
+        } else {
+            next = hasMore ? PageCursor.encode(false, lastKey) : null;
+            prev = cursor != null ? PageCursor.encode(true, firstKey) : null;
+        }
+        return new KeysetPage<T>(items, next, prev);
+    }
+
+    public List<T> getItems() {
+        return items;
+    }
+
+    /**
+     * Курсор следующей страницы; null - это последняя страница
+     */
+    public String getNextCursor() {
+        return nextCursor;
+    }
+
+    /**
+     * Курсор предыдущей страницы; null - это первая страница
+     */
+    public String getPrevCursor() {
+        return prevCursor;
+    }
+}
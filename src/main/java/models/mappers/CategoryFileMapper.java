@@ -0,0 +1,39 @@
+package models.mappers;
+
+import models.helpers.CategoryFile;
+import org.springframework.jdbc.core.RowMapper;
+
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.text.SimpleDateFormat;
+import java.util.Date;
+
+/**
+ * Чтение строк списка файлов (id, название, версия, дата, пользователь, [id версии]) по номерам колонок
+ * Формат даты хранится в маппере, поэтому экземпляр создается на один запрос
+ */
+public class CategoryFileMapper implements RowMapper<CategoryFile> {
+    private final SimpleDateFormat dateFormat = new SimpleDateFormat("dd.MM.yyyy");
+    private final boolean withVersionId;
+
+    /**
+     * @param withVersionId Шестой колонкой выбирается id версии
+     */
+    public CategoryFileMapper(boolean withVersionId) {
+        this.withVersionId = withVersionId;
+    }
+
+    @Override
+    public CategoryFile mapRow(ResultSet rs, int rowNum) throws SQLException {
+        CategoryFile file = new CategoryFile();
+        file.setId(rs.getInt(1));
+        file.setTitle(rs.getString(2));
+        file.setVersion(rs.getString(3));
+        file.setDate(dateFormat.format(new Date(rs.getLong(4))));
+        file.setUserDN(rs.getString(5));
+        if (withVersionId) {
+            file.setVersionId(rs.getInt(6));
+        }
+        return file;
+    }
+}
@@ -0,0 +1,21 @@
+package models.mappers;
+
+import models.CategoryModel;
+import org.springframework.jdbc.core.RowMapper;
+
+import java.sql.ResultSet;
+import java.sql.SQLException;
+
+/**
+ * Чтение категорий из результата запроса по номерам колонок
+ */
+public class CategoryMapper implements RowMapper<CategoryModel> {
+    public static final String COLUMNS = "category.id, category.parent, category.title, category.position";
+
+    public static final CategoryMapper INSTANCE = new CategoryMapper();
+
+    @Override
+    public CategoryModel mapRow(ResultSet rs, int rowNum) throws SQLException {
+        return new CategoryModel(rs.getInt(1), rs.getInt(2), rs.getInt(4), rs.getString(3));
+    }
+}
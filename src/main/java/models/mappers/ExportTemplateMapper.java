@@ -0,0 +1,21 @@
+package models.mappers;
+
+import models.ExportTemplateModel;
+import org.springframework.jdbc.core.RowMapper;
+
+import java.sql.ResultSet;
+import java.sql.SQLException;
+
+/**
+ * Чтение шаблонов экспорта из результата запроса по номерам колонок
+ */
+public class ExportTemplateMapper implements RowMapper<ExportTemplateModel> {
+    public static final String COLUMNS = "exportTemplate.id, exportTemplate.title, exportTemplate.parameters, exportTemplate.finalCommands, exportTemplate.finalCommandsInterpreter";
+
+    public static final ExportTemplateMapper INSTANCE = new ExportTemplateMapper();
+
+    @Override
+    public ExportTemplateModel mapRow(ResultSet rs, int rowNum) throws SQLException {
+        return new ExportTemplateModel(rs.getInt(1), rs.getString(2), rs.getString(3), rs.getString(4), rs.getInt(5));
+    }
+}
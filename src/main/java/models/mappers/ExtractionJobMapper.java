@@ -0,0 +1,22 @@
+package models.mappers;
+
+import models.ExtractionJobModel;
+import org.springframework.jdbc.core.RowMapper;
+
+import java.sql.ResultSet;
+import java.sql.SQLException;
+
+/**
+ * Чтение заданий извлечения свойств из результата запроса по номерам колонок
+ */
+public class ExtractionJobMapper implements RowMapper<ExtractionJobModel> {
+    public static final String COLUMNS = "extractionJob.id, extractionJob.userId, extractionJob.status, extractionJob.lastVersionId, extractionJob.totalCount, extractionJob.processedCount, extractionJob.changedCount, extractionJob.errorCount, extractionJob.dateCreated, extractionJob.dateUpdated";
+
+    public static final ExtractionJobMapper INSTANCE = new ExtractionJobMapper();
+
+    @Override
+    public ExtractionJobModel mapRow(ResultSet rs, int rowNum) throws SQLException {
+        return new ExtractionJobModel(rs.getInt(1), rs.getInt(2), rs.getString(3), rs.getInt(4), rs.getInt(5), rs.getInt(6), rs.getInt(7), rs.getInt(8),
+                rs.getLong(9), rs.getLong(10));
+    }
+}
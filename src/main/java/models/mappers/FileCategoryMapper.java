@@ -0,0 +1,21 @@
+package models.mappers;
+
+import models.helpers.FileCategory;
+import org.springframework.jdbc.core.RowMapper;
+
+import java.sql.ResultSet;
+import java.sql.SQLException;
+
+/**
+ * Чтение категорий файла из результата запроса по номерам колонок
+ */
+public class FileCategoryMapper implements RowMapper<FileCategory> {
+    public static final String COLUMNS = "category.id, category.title";
+
+    public static final FileCategoryMapper INSTANCE = new FileCategoryMapper();
+
+    @Override
+    public FileCategory mapRow(ResultSet rs, int rowNum) throws SQLException {
+        return new FileCategory(rs.getInt(1), rs.getString(2));
+    }
+}
@@ -0,0 +1,21 @@
+package models.mappers;
+
+import models.FileModel;
+import org.springframework.jdbc.core.RowMapper;
+
+import java.sql.ResultSet;
+import java.sql.SQLException;
+
+/**
+ * Чтение файлов из результата запроса по номерам колонок
+ */
+public class FileMapper implements RowMapper<FileModel> {
+    public static final String COLUMNS = "file.id, file.title";
+
+    public static final FileMapper INSTANCE = new FileMapper();
+
+    @Override
+    public FileModel mapRow(ResultSet rs, int rowNum) throws SQLException {
+        return new FileModel(rs.getInt(1), rs.getString(2));
+    }
+}
@@ -0,0 +1,21 @@
+package models.mappers;
+
+import models.FilePropertyModel;
+import org.springframework.jdbc.core.RowMapper;
+
+import java.sql.ResultSet;
+import java.sql.SQLException;
+
+/**
+ * Чтение свойств файла вместе с названием свойства по номерам колонок
+ */
+public class FilePropertyMapper implements RowMapper<FilePropertyModel> {
+    public static final String COLUMNS = "fileProperty.id, fileProperty.fileId, fileProperty.propertyId, fileProperty.value, property.title";
+
+    public static final FilePropertyMapper INSTANCE = new FilePropertyMapper();
+
+    @Override
+    public FilePropertyModel mapRow(ResultSet rs, int rowNum) throws SQLException {
+        return new FilePropertyModel(rs.getInt(1), rs.getInt(2), rs.getInt(3), rs.getString(4), rs.getString(5));
+    }
+}
@@ -0,0 +1,21 @@
+package models.mappers;
+
+import models.FileTriggerModel;
+import org.springframework.jdbc.core.RowMapper;
+
+import java.sql.ResultSet;
+import java.sql.SQLException;
+
+/**
+ * Чтение триггеров из результата запроса по номерам колонок
+ */
+public class FileTriggerMapper implements RowMapper<FileTriggerModel> {
+    public static final String COLUMNS = "fileTrigger.id, fileTrigger.extension, fileTrigger.command, fileTrigger.`regexp`, fileTrigger.timeout";
+
+    public static final FileTriggerMapper INSTANCE = new FileTriggerMapper();
+
+    @Override
+    public FileTriggerModel mapRow(ResultSet rs, int rowNum) throws SQLException {
+        return new FileTriggerModel(rs.getInt(1), rs.getString(2), rs.getString(3), rs.getString(4), rs.getInt(5));
+    }
+}
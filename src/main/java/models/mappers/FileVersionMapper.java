@@ -0,0 +1,44 @@
+package models.mappers;
+
+import models.FileVersionModel;
+import org.springframework.jdbc.core.RowMapper;
+
+import java.sql.ResultSet;
+import java.sql.SQLException;
+
+/**
+ * Чтение версий файла из результата запроса по номерам колонок
+ * Запрос должен выбирать колонки в порядке COLUMNS; для WITH_BITS следом идет разрядность
+ */
+public class FileVersionMapper implements RowMapper<FileVersionModel> {
+    public static final String COLUMNS = "fileVersion.id, fileVersion.fileId, fileVersion.userId, fileVersion.version, fileVersion.hash, fileVersion.hashAlgorithm, " +
+            "fileVersion.fileSize, fileVersion.date, fileVersion.isFilled, fileVersion.fileName, fileVersion.isDisabled";
+
+    public static final FileVersionMapper INSTANCE = new FileVersionMapper(false);
+    public static final FileVersionMapper WITH_BITS = new FileVersionMapper(true);
+
+    private final boolean withBits;
+
+    private FileVersionMapper(boolean withBits) {
+        this.withBits = withBits;
+    }
+
+    @Override
+    public FileVersionModel mapRow(ResultSet rs, int rowNum) throws SQLException {
+        FileVersionModel model = new FileVersionModel(
+                rs.getInt(1),
+                rs.getInt(2),
+                rs.getInt(3),
+                rs.getString(4),
+                rs.getString(5),
+                rs.getLong(7),
+                rs.getLong(8),
+                rs.getInt(9) == 1,
+                rs.getString(10),
+                rs.getInt(11) == 1,
+                withBits ? rs.getString(12) : null
+        );
+        model.setHashAlgorithm(rs.getString(6));
+        return model;
+    }
+}
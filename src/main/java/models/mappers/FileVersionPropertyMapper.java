@@ -0,0 +1,21 @@
+package models.mappers;
+
+import models.FileVersionPropertyModel;
+import org.springframework.jdbc.core.RowMapper;
+
+import java.sql.ResultSet;
+import java.sql.SQLException;
+
+/**
+ * Чтение свойств версии вместе с названием свойства по номерам колонок
+ */
+public class FileVersionPropertyMapper implements RowMapper<FileVersionPropertyModel> {
+    public static final String COLUMNS = "fileVersionProperty.id, fileVersionProperty.fileVersionId, fileVersionProperty.propertyId, fileVersionProperty.value, property.title";
+
+    public static final FileVersionPropertyMapper INSTANCE = new FileVersionPropertyMapper();
+
+    @Override
+    public FileVersionPropertyModel mapRow(ResultSet rs, int rowNum) throws SQLException {
+        return new FileVersionPropertyModel(rs.getInt(1), rs.getInt(2), rs.getInt(3), rs.getString(4), rs.getString(5));
+    }
+}
@@ -0,0 +1,22 @@
+package models.mappers;
+
+import models.IngestJobFileModel;
+import org.springframework.jdbc.core.RowMapper;
+
+import java.sql.ResultSet;
+import java.sql.SQLException;
+
+/**
+ * Чтение файлов задания загрузки из результата запроса по номерам колонок
+ */
+public class IngestJobFileMapper implements RowMapper<IngestJobFileModel> {
+    public static final String COLUMNS = "ingestJobFile.id, ingestJobFile.jobId, ingestJobFile.number, ingestJobFile.fileName, ingestJobFile.sourcePath, ingestJobFile.hash, ingestJobFile.hashAlgorithm, ingestJobFile.state, ingestJobFile.msg, ingestJobFile.fileVersionId, ingestJobFile.isFilled";
+
+    public static final IngestJobFileMapper INSTANCE = new IngestJobFileMapper();
+
+    @Override
+    public IngestJobFileModel mapRow(ResultSet rs, int rowNum) throws SQLException {
+        return new IngestJobFileModel(rs.getInt(1), rs.getInt(2), rs.getInt(3), rs.getString(4), rs.getString(5), rs.getString(6), rs.getString(7),
+                rs.getString(8), rs.getString(9), rs.getInt(10), rs.getInt(11) == 1);
+    }
+}
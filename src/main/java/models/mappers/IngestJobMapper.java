@@ -0,0 +1,21 @@
+package models.mappers;
+
+import models.IngestJobModel;
+import org.springframework.jdbc.core.RowMapper;
+
+import java.sql.ResultSet;
+import java.sql.SQLException;
+
+/**
+ * Чтение заданий загрузки из результата запроса по номерам колонок
+ */
+public class IngestJobMapper implements RowMapper<IngestJobModel> {
+    public static final String COLUMNS = "ingestJob.id, ingestJob.type, ingestJob.userId, ingestJob.requestId, ingestJob.status, ingestJob.fileCount, ingestJob.dateCreated, ingestJob.dateUpdated";
+
+    public static final IngestJobMapper INSTANCE = new IngestJobMapper();
+
+    @Override
+    public IngestJobModel mapRow(ResultSet rs, int rowNum) throws SQLException {
+        return new IngestJobModel(rs.getInt(1), rs.getString(2), rs.getInt(3), rs.getInt(4), rs.getString(5), rs.getInt(6), rs.getLong(7), rs.getLong(8));
+    }
+}
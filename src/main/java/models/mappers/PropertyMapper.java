@@ -0,0 +1,23 @@
+package models.mappers;
+
+import models.PropertyModel;
+import org.springframework.jdbc.core.RowMapper;
+
+import java.sql.ResultSet;
+import java.sql.SQLException;
+
+/**
+ * Чтение свойств из результата запроса по номерам колонок
+ * Признак пользовательского свойства вычисляется по id
+ */
+public class PropertyMapper implements RowMapper<PropertyModel> {
+    public static final String COLUMNS = "property.id, property.title";
+
+    public static final PropertyMapper INSTANCE = new PropertyMapper();
+
+    @Override
+    public PropertyModel mapRow(ResultSet rs, int rowNum) throws SQLException {
+        int id = rs.getInt(1);
+        return new PropertyModel(id, rs.getString(2), !PropertyModel.isRequired(id));
+    }
+}
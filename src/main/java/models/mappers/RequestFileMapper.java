@@ -0,0 +1,23 @@
+package models.mappers;
+
+import models.RequestFileModel;
+import org.springframework.jdbc.core.RowMapper;
+
+import java.sql.ResultSet;
+import java.sql.SQLException;
+
+/**
+ * Чтение файлов заявки из результата запроса по номерам колонок
+ */
+public class RequestFileMapper implements RowMapper<RequestFileModel> {
+    public static final String COLUMNS = "requestFile.id, requestFile.requestId, requestFile.hash, requestFile.fileName, requestFile.extension, requestFile.fileSize, requestFile.hashAlgorithm";
+
+    public static final RequestFileMapper INSTANCE = new RequestFileMapper();
+
+    @Override
+    public RequestFileModel mapRow(ResultSet rs, int rowNum) throws SQLException {
+        RequestFileModel model = new RequestFileModel(rs.getInt(1), rs.getInt(2), rs.getString(3), rs.getString(4), rs.getString(5), rs.getLong(6));
+        model.setHashAlgorithm(rs.getString(7));
+        return model;
+    }
+}
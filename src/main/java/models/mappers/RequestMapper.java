@@ -0,0 +1,21 @@
+package models.mappers;
+
+import models.RequestModel;
+import org.springframework.jdbc.core.RowMapper;
+
+import java.sql.ResultSet;
+import java.sql.SQLException;
+
+/**
+ * Чтение заявок из результата запроса по номерам колонок
+ */
+public class RequestMapper implements RowMapper<RequestModel> {
+    public static final String COLUMNS = "request.id, request.userId, request.text, request.status, request.date, request.comment";
+
+    public static final RequestMapper INSTANCE = new RequestMapper();
+
+    @Override
+    public RequestModel mapRow(ResultSet rs, int rowNum) throws SQLException {
+        return new RequestModel(rs.getInt(1), rs.getInt(2), rs.getString(3), rs.getInt(4), rs.getLong(5), rs.getString(6));
+    }
+}
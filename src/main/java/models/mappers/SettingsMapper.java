@@ -0,0 +1,21 @@
+package models.mappers;
+
+import models.SettingsModel;
+import org.springframework.jdbc.core.RowMapper;
+
+import java.sql.ResultSet;
+import java.sql.SQLException;
+
+/**
+ * Чтение настроек из результата запроса по номерам колонок
+ */
+public class SettingsMapper implements RowMapper<SettingsModel> {
+    public static final String COLUMNS = "settings.id, settings.value";
+
+    public static final SettingsMapper INSTANCE = new SettingsMapper();
+
+    @Override
+    public SettingsModel mapRow(ResultSet rs, int rowNum) throws SQLException {
+        return new SettingsModel(rs.getInt(1), rs.getString(2));
+    }
+}
@@ -0,0 +1,21 @@
+package models.mappers;
+
+import models.UserModel;
+import org.springframework.jdbc.core.RowMapper;
+
+import java.sql.ResultSet;
+import java.sql.SQLException;
+
+/**
+ * Чтение пользователей из результата запроса по номерам колонок
+ */
+public class UserMapper implements RowMapper<UserModel> {
+    public static final String COLUMNS = "user.id, user.phone, user.email, user.displayName, user.department, user.departmentNumber, user.address";
+
+    public static final UserMapper INSTANCE = new UserMapper();
+
+    @Override
+    public UserModel mapRow(ResultSet rs, int rowNum) throws SQLException {
+        return new UserModel(rs.getInt(1), rs.getString(2), rs.getString(3), rs.getString(4), rs.getString(5), rs.getString(6), rs.getString(7));
+    }
+}
@@ -0,0 +1,413 @@
+package search;
+
+import db.Database2;
+import db.UnitOfWork;
+import org.apache.log4j.Logger;
+import org.springframework.jdbc.core.RowCallbackHandler;
+import org.springframework.jdbc.core.namedparam.MapSqlParameterSource;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
+
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * Поисковый индекс файлов в памяти
+ * Обратный индекс: слово - файлы, в которых оно встречается, с весом. Индексируются название файла,
+ * номера версий, свойства файла и свойства его версий; название весит больше всего.
+ * Модели помечают измененные файлы и версии, индекс перечитывает их из БД перед следующим поиском
+ */
+public class SearchIndex {
+    private static final Logger logger = Logger.getLogger(SearchIndex.class);
+
+    private static final float TITLE_WEIGHT = 10f;
+    private static final float VERSION_WEIGHT = 3f;
+    private static final float FILE_PROPERTY_WEIGHT = 2f;
+    private static final float VERSION_PROPERTY_WEIGHT = 1f;
+    // совпадение по началу слова весит меньше полного совпадения
+    private static final float PREFIX_FACTOR = 0.5f;
+    // бонус, если запрос полностью совпадает с названием файла
+    private static final float EXACT_TITLE_BONUS = 100f;
+
+    private static final String getTitles = "SELECT id, title FROM file";
+    private static final String getVersions = "SELECT fileId, version FROM fileVersion WHERE fileId > 0";
+    private static final String getFileProperties = "SELECT fileId, value FROM fileProperty";
+    private static final String getVersionProperties = "SELECT fileVersion.fileId, fileVersionProperty.value FROM fileVersionProperty " +
+            "INNER JOIN fileVersion ON fileVersion.id = fileVersionProperty.fileVersionId WHERE fileVersion.fileId > 0";
+    private static final String getTitlesByIds = getTitles + " WHERE id IN (:ids)";
+    private static final String getVersionsByIds = getVersions + " AND fileId IN (:ids)";
+    private static final String getFilePropertiesByIds = getFileProperties + " WHERE fileId IN (:ids)";
+    private static final String getVersionPropertiesByIds = getVersionProperties + " AND fileVersion.fileId IN (:ids)";
+    private static final String getFileIdsByVersions = "SELECT DISTINCT fileId FROM fileVersion WHERE id IN (:ids)";
+
+    private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+    // слово - (id файла - вес); отсортировано, чтобы искать по началу слова
+    private final TreeMap<String, HashMap<Integer, Float>> postings = new TreeMap<String, HashMap<Integer, Float>>();
+    private final HashMap<Integer, Document> documents = new HashMap<Integer, Document>();
+
+    // перечитывание индекса выполняется одним потоком за раз
+    private final Object refreshLock = new Object();
+    private final Set<Integer> dirtyFiles = Collections.newSetFromMap(new ConcurrentHashMap<Integer, Boolean>());
+    private final Set<Integer> dirtyVersions = Collections.newSetFromMap(new ConcurrentHashMap<Integer, Boolean>());
+    private volatile boolean isAllDirty = false;
+    private volatile boolean isLoaded = false;
+
+    private SearchIndex() {
+    }
+
+    private static class IndexHolder {
+        private static final SearchIndex INSTANCE = new SearchIndex();
+    }
+
+    public static SearchIndex getInstance() {
+        return IndexHolder.INSTANCE;
+    }
+
+    /**
+     * Пометка файла как измененного
+     * Внутри транзакции пометка ставится после фиксации, чтобы индекс не перечитал незафиксированные данные
+     * @param fileId Id файла
+     */
+    public static void markFile(final int fileId) {
+        if (fileId <= 0) {
+            return;
+        }
+        UnitOfWork.afterCommit(new Runnable() {
+            @Override
+            public void run() {
+                getInstance().dirtyFiles.add(fileId);
+            }
+        });
+    }
+
+    /**
+     * Пометка версии как измененной (например, изменились ее свойства)
+     * @param fileVersionId Id версии
+     */
+    public static void markVersion(final int fileVersionId) {
+        if (fileVersionId <= 0) {
+            return;
+        }
+        UnitOfWork.afterCommit(new Runnable() {
+            @Override
+            public void run() {
+                getInstance().dirtyVersions.add(fileVersionId);
+            }
+        });
+    }
+
+    /**
+     * Пометка всего индекса как устаревшего; перед следующим поиском индекс строится заново
+     */
+    public static void markAll() {
+        UnitOfWork.afterCommit(new Runnable() {
+            @Override
+            public void run() {
+                getInstance().isAllDirty = true;
+            }
+        });
+    }
+
+    /**
+     * Поиск файлов
+     * Файл попадает в результат, если каждое слово запроса совпадает со словом файла полностью или по началу
+     * @param query Поисковый запрос
+     * @param limit Количество файлов на странице
+     * @param offset Смещение
+     * @return Страница id файлов по убыванию релевантности и общее количество найденных
+     */
+    public SearchResult search(String query, int limit, int offset) {
+        refresh();
+        Set<String> tokens = Tokenizer.tokenize(query);
+        if (tokens.isEmpty()) {
+            return new SearchResult(new ArrayList<Integer>(), 0);
+        }
+        final String exactTitle = query.trim().toLowerCase(Locale.ROOT);
+
+        lock.readLock().lock();
+        try {
+            HashMap<Integer, Float> scores = null;
+            for (String token : tokens) {
+                HashMap<Integer, Float> tokenScores = new HashMap<Integer, Float>();
+                for (Map.Entry<String, HashMap<Integer, Float>> term : postings.subMap(token, true, token + Character.MAX_VALUE, false).entrySet()) {
+                    float factor = term.getKey().equals(token) ? 1f : PREFIX_FACTOR;
+                    for (Map.Entry<Integer, Float> posting : term.getValue().entrySet()) {
+                        float score = posting.getValue() * factor;
+                        Float current = tokenScores.get(posting.getKey());
+                        if (current == null || current < score) {
+                            tokenScores.put(posting.getKey(), score);
+                        }
+                    }
+                }
+                if (scores == null) {
+                    scores = tokenScores;
+                } else {
+                    Iterator<Map.Entry<Integer, Float>> iterator = scores.entrySet().iterator();
+                    while (iterator.hasNext()) {
+                        Map.Entry<Integer, Float> entry = iterator.next();
+                        Float score = tokenScores.get(entry.getKey());
+                        if (score == null) {
+                            iterator.remove();
+                        } else {
+                            entry.setValue(entry.getValue() + score);
+                        }
+                    }
+                }
+                if (scores.isEmpty()) {
+                    break;
+                }
+            }
+
+            for (Map.Entry<Integer, Float> entry : scores.entrySet()) {
+                Document document = documents.get(entry.getKey());
+                if (document != null && document.lowerTitle.equals(exactTitle)) {
+                    entry.setValue(entry.getValue() + EXACT_TITLE_BONUS);
+                }
+            }
+
+            final HashMap<Integer, Float> finalScores = scores;
+            List<Integer> ids = new ArrayList<Integer>(scores.keySet());
+            Collections.sort(ids, new Comparator<Integer>() {
+                @Override
+                public int compare(Integer a, Integer b) {
+                    int byScore = Float.compare(finalScores.get(b), finalScores.get(a));
+                    if (byScore != 0) {
+                        return byScore;
+                    }
+                    int byTitle = documents.get(a).lowerTitle.compareTo(documents.get(b).lowerTitle);
+                    return byTitle != 0 ? byTitle : a.compareTo(b);
+                }
+            });
+
+            int from = Math.min(Math.max(offset, 0), ids.size());
+            int to = Math.min(from + limit, ids.size());
+            return new SearchResult(new ArrayList<Integer>(ids.subList(from, to)), ids.size());
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Построение индекса в отдельном потоке при старте приложения, чтобы первый поиск не ждал загрузки
+     */
+    public static void rebuildInBackground() {
+        Thread thread = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    getInstance().rebuild();
+                } catch (Exception e) {
+                    logger.warn("Не удалось построить поисковый индекс: " + e.getMessage());
+                }
+            }
+        }, "search-index");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    /**
+     * Построение индекса заново по всем файлам
+     */
+    public void rebuild() {
+        synchronized (refreshLock) {
+            // пометки, сделанные во время чтения, останутся и будут обработаны следующим обновлением
+            isAllDirty = false;
+            dirtyFiles.clear();
+            dirtyVersions.clear();
+
+            long start = System.currentTimeMillis();
+            NamedParameterJdbcTemplate template = Database2.getInstance().getTemplate();
+            HashMap<Integer, DocumentBuilder> builders = load(template, new MapSqlParameterSource(),
+                    getTitles, getVersions, getFileProperties, getVersionProperties);
+
+            int termCount;
+            lock.writeLock().lock();
+            try {
+                postings.clear();
+                documents.clear();
+                for (Map.Entry<Integer, DocumentBuilder> entry : builders.entrySet()) {
+                    add(entry.getKey(), entry.getValue().build());
+                }
+                termCount = postings.size();
+            } finally {
+                lock.writeLock().unlock();
+            }
+            isLoaded = true;
+            logger.info("Поисковый индекс построен: файлов - " + builders.size() + ", слов - " + termCount + ", " + (System.currentTimeMillis() - start) + " мс");
+        }
+    }
+
+    /**
+     * Перечитывание помеченных файлов; при первом обращении индекс строится целиком
+     */
+    public void refresh() {
+        if (!isLoaded || isAllDirty) {
+            synchronized (refreshLock) {
+                if (!isLoaded || isAllDirty) {
+                    rebuild();
+                }
+            }
+        }
+        if (dirtyFiles.isEmpty() && dirtyVersions.isEmpty()) {
+            return;
+        }
+        synchronized (refreshLock) {
+            NamedParameterJdbcTemplate template = Database2.getInstance().getTemplate();
+            Set<Integer> fileIds = drain(dirtyFiles);
+            Set<Integer> versionIds = drain(dirtyVersions);
+            if (!versionIds.isEmpty()) {
+                MapSqlParameterSource parameters = new MapSqlParameterSource();
+                parameters.addValue("ids", versionIds);
+                fileIds.addAll(template.queryForList(getFileIdsByVersions, parameters, Integer.class));
+            }
+            fileIds.remove(0);
+            if (fileIds.isEmpty()) {
+                return;
+            }
+
+            MapSqlParameterSource parameters = new MapSqlParameterSource();
+            parameters.addValue("ids", fileIds);
+            HashMap<Integer, DocumentBuilder> builders = load(template, parameters,
+                    getTitlesByIds, getVersionsByIds, getFilePropertiesByIds, getVersionPropertiesByIds);
+
+            lock.writeLock().lock();
+            try {
+                for (Integer fileId : fileIds) {
+                    remove(fileId);
+                    DocumentBuilder builder = builders.get(fileId);
+                    // файла нет в таблице file - он удален
+                    if (builder != null) {
+                        add(fileId, builder.build());
+                    }
+                }
+            } finally {
+                lock.writeLock().unlock();
+            }
+        }
+    }
+
+    private static Set<Integer> drain(Set<Integer> source) {
+        Set<Integer> result = new HashSet<Integer>();
+        Iterator<Integer> iterator = source.iterator();
+        while (iterator.hasNext()) {
+            result.add(iterator.next());
+            iterator.remove();
+        }
+        return result;
+    }
+
+    /**
+     * Чтение данных файлов; строки обрабатываются по одной, без промежуточных списков
+     */
+    private static HashMap<Integer, DocumentBuilder> load(NamedParameterJdbcTemplate template, MapSqlParameterSource parameters,
+                                                          String titlesSql, String versionsSql, String filePropertiesSql, String versionPropertiesSql) {
+        final HashMap<Integer, DocumentBuilder> builders = new HashMap<Integer, DocumentBuilder>();
+        template.query(titlesSql, parameters, new RowCallbackHandler() {
+            @Override
+            public void processRow(ResultSet rs) throws SQLException {
+                builders.put(rs.getInt(1), new DocumentBuilder(rs.getString(2)));
+            }
+        });
+        template.query(versionsSql, parameters, new FieldHandler(builders, VERSION_WEIGHT));
+        template.query(filePropertiesSql, parameters, new FieldHandler(builders, FILE_PROPERTY_WEIGHT));
+        template.query(versionPropertiesSql, parameters, new FieldHandler(builders, VERSION_PROPERTY_WEIGHT));
+        return builders;
+    }
+
+    private void add(int fileId, Document document) {
+        documents.put(fileId, document);
+        for (Map.Entry<String, Float> term : document.terms.entrySet()) {
+            HashMap<Integer, Float> files = postings.get(term.getKey());
+            if (files == null) {
+                files = new HashMap<Integer, Float>();
+                postings.put(term.getKey(), files);
+            }
+            files.put(fileId, term.getValue());
+        }
+    }
+
+    private void remove(int fileId) {
+        Document document = documents.remove(fileId);
+        if (document == null) {
+            return;
+        }
+        for (String term : document.terms.keySet()) {
+            HashMap<Integer, Float> files = postings.get(term);
+            if (files != null) {
+                files.remove(fileId);
+                if (files.isEmpty()) {
+                    postings.remove(term);
+                }
+            }
+        }
+    }
+
+    /**
+     * Проиндексированный файл
+     */
+    private static class Document {
+        private final String lowerTitle;
+        private final Map<String, Float> terms;
+
+        private Document(String lowerTitle, Map<String, Float> terms) {
+            this.lowerTitle = lowerTitle;
+            this.terms = terms;
+        }
+    }
+
+    /**
+     * Сбор слов файла по полям; слово, встреченное в поле несколько раз (например, в свойствах разных версий), учитывается один раз
+     */
+    private static class DocumentBuilder {
+        private final String title;
+        private final HashMap<Float, Set<String>> fields = new HashMap<Float, Set<String>>();
+
+        private DocumentBuilder(String title) {
+            this.title = title;
+            addText(TITLE_WEIGHT, title);
+        }
+
+        private void addText(float weight, String text) {
+            Set<String> terms = fields.get(weight);
+            if (terms == null) {
+                terms = new HashSet<String>();
+                fields.put(weight, terms);
+            }
+            terms.addAll(Tokenizer.tokenize(text));
+        }
+
+        private Document build() {
+            HashMap<String, Float> terms = new HashMap<String, Float>();
+            for (Map.Entry<Float, Set<String>> field : fields.entrySet()) {
+                for (String term : field.getValue()) {
+                    Float weight = terms.get(term);
+                    terms.put(term, weight == null ? field.getKey() : weight + field.getKey());
+                }
+            }
+            return new Document(title == null ? "" : title.toLowerCase(Locale.ROOT), terms);
+        }
+    }
+
+    /**
+     * Добавление текста из строк (id файла, текст) в поле с заданным весом
+     */
+    private static class FieldHandler implements RowCallbackHandler {
+        private final HashMap<Integer, DocumentBuilder> builders;
+        private final float weight;
+
+        private FieldHandler(HashMap<Integer, DocumentBuilder> builders, float weight) {
+            this.builders = builders;
+            this.weight = weight;
+        }
+
+        @Override
+        public void processRow(ResultSet rs) throws SQLException {
+            DocumentBuilder builder = builders.get(rs.getInt(1));
+            if (builder != null) {
+                builder.addText(weight, rs.getString(2));
+            }
+        }
+    }
+}
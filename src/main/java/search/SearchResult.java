@@ -0,0 +1,30 @@
+package search;
+
+import java.util.List;
+
+/**
+ * Страница результатов поиска
+ */
+public class SearchResult {
+    private final List<Integer> fileIds;
+    private final int total;
+
+    public SearchResult(List<Integer> fileIds, int total) {
+        this.fileIds = fileIds;
+        this.total = total;
+    }
+
+    /**
+     * Id файлов на странице в порядке убывания релевантности
+     */
+    public List<Integer> getFileIds() {
+        return fileIds;
+    }
+
+    /**
+     * Количество найденных файлов на всех страницах
+     */
+    public int getTotal() {
+        return total;
+    }
+}
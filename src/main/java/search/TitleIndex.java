@@ -0,0 +1,346 @@
+package search;
+
+import db.Database2;
+import db.UnitOfWork;
+import org.apache.log4j.Logger;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowCallbackHandler;
+
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.*;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * Индекс названий файлов в памяти для автодополнения
+ * Названия хранятся в отсортированном массиве суффиксов: все суффиксы, начинающиеся с запроса, лежат подряд
+ * и находятся двоичным поиском, поэтому поиск подстроки не обращается к БД.
+ * Добавленные и удаленные после построения файлы хранятся отдельно и вливаются в массив, когда их накопится MERGE_THRESHOLD
+ */
+public class TitleIndex {
+    private static final Logger logger = Logger.getLogger(TitleIndex.class);
+
+    private static final String getTitles = "SELECT id, title FROM file";
+
+    private static final int MERGE_THRESHOLD = 1000;
+    // длина названия не больше 255 символов, смещение суффикса помещается в младшие 8 бит
+    private static final int OFFSET_BITS = 8;
+    private static final int OFFSET_MASK = (1 << OFFSET_BITS) - 1;
+
+    private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+    private volatile boolean isLoaded = false;
+    private Snapshot snapshot = new Snapshot(new int[0], new String[0]);
+    // изменения после построения массива суффиксов
+    private final HashMap<Integer, String> added = new HashMap<Integer, String>();
+    private final HashSet<Integer> removed = new HashSet<Integer>();
+
+    private TitleIndex() {
+    }
+
+    private static class IndexHolder {
+        private static final TitleIndex INSTANCE = new TitleIndex();
+    }
+
+    public static TitleIndex getInstance() {
+        return IndexHolder.INSTANCE;
+    }
+
+    /**
+     * Добавление названия нового файла; внутри транзакции - после ее фиксации
+     * @param fileId Id файла
+     * @param title Название
+     */
+    public static void add(final int fileId, final String title) {
+        UnitOfWork.afterCommit(new Runnable() {
+            @Override
+            public void run() {
+                getInstance().put(fileId, title);
+            }
+        });
+    }
+
+    /**
+     * Удаление названия файла; внутри транзакции - после ее фиксации
+     * @param fileId Id файла
+     */
+    public static void remove(final int fileId) {
+        UnitOfWork.afterCommit(new Runnable() {
+            @Override
+            public void run() {
+                getInstance().delete(fileId);
+            }
+        });
+    }
+
+    /**
+     * Загрузка названий всех файлов из БД
+     */
+    public void load() {
+        lock.writeLock().lock();
+        try {
+            long start = System.currentTimeMillis();
+            final ArrayList<Integer> ids = new ArrayList<Integer>();
+            final ArrayList<String> titles = new ArrayList<String>();
+            JdbcTemplate template = Database2.getInstance().getJdbcTemplate();
+            template.query(getTitles, new RowCallbackHandler() {
+                @Override
+                public void processRow(ResultSet rs) throws SQLException {
+                    ids.add(rs.getInt(1));
+                    titles.add(rs.getString(2));
+                }
+            });
+            int[] idArray = new int[ids.size()];
+            for (int i = 0; i < idArray.length; i++) {
+                idArray[i] = ids.get(i);
+            }
+            snapshot = new Snapshot(idArray, titles.toArray(new String[titles.size()]));
+            added.clear();
+            removed.clear();
+            isLoaded = true;
+            logger.info("Индекс названий файлов построен: файлов - " + idArray.length + ", " + (System.currentTimeMillis() - start) + " мс");
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Поиск названий, содержащих строку
+     * Сначала названия, начинающиеся со строки, затем совпадения с начала слова, затем остальные;
+     * внутри группы - более короткие названия, затем по алфавиту
+     * @param query Строка поиска
+     * @param limit Максимальное количество результатов
+     * @return Пары id файла - название
+     */
+    public List<Map.Entry<Integer, String>> find(String query, int limit) {
+        if (!isLoaded) {
+            synchronized (this) {
+                if (!isLoaded) {
+                    load();
+                }
+            }
+        }
+        ArrayList<Map.Entry<Integer, String>> result = new ArrayList<Map.Entry<Integer, String>>();
+        String needle = query == null ? "" : query.trim().toLowerCase(Locale.ROOT);
+        if (needle.length() == 0 || limit <= 0) {
+            return result;
+        }
+
+        lock.readLock().lock();
+        try {
+            // id файла - лучшее совпадение в его названии
+            HashMap<Integer, Match> matches = new HashMap<Integer, Match>();
+            int from = snapshot.lowerBound(needle);
+            for (int i = from; i < snapshot.suffixes.length && snapshot.startsWith(i, needle); i++) {
+                int entry = (int) (snapshot.suffixes[i] >>> OFFSET_BITS);
+                int fileId = snapshot.fileIds[entry];
+                if (!removed.contains(fileId)) {
+                    offer(matches, fileId, snapshot.titles[entry], snapshot.lowerTitles[entry], (int) (snapshot.suffixes[i] & OFFSET_MASK));
+                }
+            }
+            for (Map.Entry<Integer, String> entry : added.entrySet()) {
+                String lowerTitle = entry.getValue().toLowerCase(Locale.ROOT);
+                int offset = lowerTitle.indexOf(needle);
+                while (offset >= 0) {
+                    offer(matches, entry.getKey(), entry.getValue(), lowerTitle, offset);
+                    offset = lowerTitle.indexOf(needle, offset + 1);
+                }
+            }
+
+            PriorityQueue<Match> top = new PriorityQueue<Match>(limit + 1, Collections.reverseOrder());
+            for (Match match : matches.values()) {
+                top.add(match);
+                if (top.size() > limit) {
+                    top.poll();
+                }
+            }
+            ArrayList<Match> sorted = new ArrayList<Match>(top);
+            Collections.sort(sorted);
+            for (Match match : sorted) {
+                result.add(new AbstractMap.SimpleImmutableEntry<Integer, String>(match.fileId, match.title));
+            }
+            return result;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    private static void offer(HashMap<Integer, Match> matches, int fileId, String title, String lowerTitle, int offset) {
+        Match match = new Match(fileId, title, lowerTitle, offset);
+        Match current = matches.get(fileId);
+        if (current == null || match.compareTo(current) < 0) {
+            matches.put(fileId, match);
+        }
+    }
+
+    private void put(int fileId, String title) {
+        if (title == null) {
+            return;
+        }
+        lock.writeLock().lock();
+        try {
+            removed.remove(fileId);
+            added.put(fileId, title);
+            mergeIfNeeded();
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    private void delete(int fileId) {
+        lock.writeLock().lock();
+        try {
+            if (added.remove(fileId) == null) {
+                removed.add(fileId);
+            }
+            mergeIfNeeded();
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Перестроение массива суффиксов из текущего содержимого без обращения к БД
+     */
+    private void mergeIfNeeded() {
+        if (added.size() + removed.size() < MERGE_THRESHOLD) {
+            return;
+        }
+        LinkedHashMap<Integer, String> titles = new LinkedHashMap<Integer, String>();
+        for (int i = 0; i < snapshot.fileIds.length; i++) {
+            if (!removed.contains(snapshot.fileIds[i])) {
+                titles.put(snapshot.fileIds[i], snapshot.titles[i]);
+            }
+        }
+        titles.putAll(added);
+        int[] ids = new int[titles.size()];
+        int i = 0;
+        for (Integer id : titles.keySet()) {
+            ids[i++] = id;
+        }
+        snapshot = new Snapshot(ids, titles.values().toArray(new String[titles.size()]));
+        added.clear();
+        removed.clear();
+    }
+
+    /**
+     * Неизменяемый массив суффиксов
+     * Суффикс кодируется числом: номер названия в старших битах, смещение в младших
+     */
+    private static class Snapshot {
+        private final int[] fileIds;
+        private final String[] titles;
+        private final String[] lowerTitles;
+        private final long[] suffixes;
+
+        private Snapshot(int[] fileIds, String[] titles) {
+            this.fileIds = fileIds;
+            this.titles = titles;
+            this.lowerTitles = new String[titles.length];
+            int count = 0;
+            for (int i = 0; i < titles.length; i++) {
+                String title = titles[i] == null ? "" : titles[i];
+                if (title.length() > OFFSET_MASK + 1) {
+                    title = title.substring(0, OFFSET_MASK + 1);
+                }
+                lowerTitles[i] = title.toLowerCase(Locale.ROOT);
+                count += lowerTitles[i].length();
+            }
+            Long[] codes = new Long[count];
+            int position = 0;
+            for (int i = 0; i < lowerTitles.length; i++) {
+                for (int offset = 0; offset < lowerTitles[i].length(); offset++) {
+                    codes[position++] = ((long) i << OFFSET_BITS) | offset;
+                }
+            }
+            Arrays.sort(codes, new Comparator<Long>() {
+                @Override
+                public int compare(Long a, Long b) {
+                    return compareSuffixes(a, b);
+                }
+            });
+            suffixes = new long[count];
+            for (int i = 0; i < count; i++) {
+                suffixes[i] = codes[i];
+            }
+        }
+
+        private String text(long code) {
+            return lowerTitles[(int) (code >>> OFFSET_BITS)];
+        }
+
+        private int compareSuffixes(long a, long b) {
+            String textA = text(a);
+            String textB = text(b);
+            int i = (int) (a & OFFSET_MASK);
+            int j = (int) (b & OFFSET_MASK);
+            while (i < textA.length() && j < textB.length()) {
+                char charA = textA.charAt(i++);
+                char charB = textB.charAt(j++);
+                if (charA != charB) {
+                    return charA - charB;
+                }
+            }
+            return (textA.length() - i) - (textB.length() - j);
+        }
+
+        /**
+         * Первый суффикс, не меньший строки поиска
+         */
+        private int lowerBound(String needle) {
+            int low = 0;
+            int high = suffixes.length;
+            while (low < high) {
+                int middle = (low + high) >>> 1;
+                String text = text(suffixes[middle]);
+                int offset = (int) (suffixes[middle] & OFFSET_MASK);
+                int end = Math.min(text.length(), offset + needle.length());
+                if (text.substring(offset, end).compareTo(needle) < 0) {
+                    low = middle + 1;
+                } else {
+                    high = middle;
+                }
+            }
+            return low;
+        }
+
+        private boolean startsWith(int index, String needle) {
+            return text(suffixes[index]).startsWith(needle, (int) (suffixes[index] & OFFSET_MASK));
+        }
+    }
+
+    /**
+     * Совпадение строки поиска с названием
+     */
+    private static class Match implements Comparable<Match> {
+        private final int fileId;
+        private final String title;
+        private final String lowerTitle;
+        // 0 - с начала названия, 1 - с начала слова, 2 - внутри слова
+        private final int rank;
+
+        private Match(int fileId, String title, String lowerTitle, int offset) {
+            this.fileId = fileId;
+            this.title = title;
+            this.lowerTitle = lowerTitle;
+            if (offset == 0) {
+                rank = 0;
+            } else if (!Character.isLetterOrDigit(lowerTitle.charAt(offset - 1))) {
+                rank = 1;
+            } else {
+                rank = 2;
+            }
+        }
+
+        @Override
+        public int compareTo(Match other) {
+            if (rank != other.rank) {
+                return rank - other.rank;
+            }
+            if (lowerTitle.length() != other.lowerTitle.length()) {
+                return lowerTitle.length() - other.lowerTitle.length();
+            }
+            int byTitle = lowerTitle.compareTo(other.lowerTitle);
+            return byTitle != 0 ? byTitle : fileId - other.fileId;
+        }
+    }
+}
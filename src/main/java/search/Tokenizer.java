@@ -0,0 +1,59 @@
+package search;
+
+import java.util.LinkedHashSet;
+import java.util.Locale;
+import java.util.Set;
+
+/**
+ * Разбиение текста на слова для поискового индекса
+ * Слово - последовательность букв, цифр и точек; точки по краям отбрасываются.
+ * Для слов с точками (версии, имена файлов) дополнительно добавляются их части: "setup.exe" - это "setup.exe", "setup", "exe"
+ */
+public class Tokenizer {
+    /**
+     * @param text Текст
+     * @return Уникальные слова в нижнем регистре в порядке появления
+     */
+    public static Set<String> tokenize(String text) {
+        Set<String> result = new LinkedHashSet<String>();
+        if (text == null) {
+            return result;
+        }
+        String lower = text.toLowerCase(Locale.ROOT);
+        int start = -1;
+        for (int i = 0; i <= lower.length(); i++) {
+            char c = i < lower.length() ? lower.charAt(i) : ' ';
+            boolean isWordChar = Character.isLetterOrDigit(c) || c == '.';
+            if (isWordChar && start < 0) {
+                start = i;
+            } else if (!isWordChar && start >= 0) {
+                addWord(lower.substring(start, i), result);
+                start = -1;
+            }
+        }
+        return result;
+    }
+
+    private static void addWord(String word, Set<String> result) {
+        int from = 0;
+        int to = word.length();
+        while (from < to && word.charAt(from) == '.') {
+            from++;
+        }
+        while (to > from && word.charAt(to - 1) == '.') {
+            to--;
+        }
+        if (from == to) {
+            return;
+        }
+        word = word.substring(from, to);
+        result.add(word);
+        if (word.indexOf('.') >= 0) {
+            for (String part : word.split("\\.")) {
+                if (part.length() > 0) {
+                    result.add(part);
+                }
+            }
+        }
+    }
+}
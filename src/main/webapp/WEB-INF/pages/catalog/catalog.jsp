@@ -12,12 +12,13 @@
 <script>
     var loadFilesByCategory = '<spring:url value="/catalog/ajax-load-files" />';
     var categoryId = ${categoryId};
+    var withSubcategories = ${withSubcategories};
     var trees = [
         <c:forEach items="${trees}" var="item" varStatus="itemStat">
             {
                 id: "jst_${item.id}",
                 parent: "<c:choose><c:when test="${item.parent == \"0\"}">#</c:when><c:otherwise>jst_${item.parent}</c:otherwise></c:choose>",
-                text: "${item.title}"
+                text: "${item.title} (<c:out value="${empty fileCounts[item.id] ? 0 : fileCounts[item.id]}" />)"
                 <c:if test="${item.id == categoryId}">,
                     state: {
                         opened: true,
@@ -31,11 +32,33 @@
 
 <h2>${pageTitle}</h2>
 
+<c:if test="${not empty categoryPath}">
+    <ol class="breadcrumb">
+        <c:forEach items="${categoryPath}" var="pathItem" varStatus="pathStat">
+            <li<c:if test="${pathStat.last}"> class="active"</c:if>>
+                <a href="<spring:url value="/catalog?categoryId=${pathItem.id}" />">${pathItem.title}</a>
+            </li>
+        </c:forEach>
+    </ol>
+</c:if>
+
 <br>
 
 <div class="row">
     <div class="col-md-4 catalog-holder" id="treesHolder"></div>
     <div class="col-md-8" id="filesHolder">
+        <c:if test="${categoryId > 0}">
+            <p>
+                <c:choose>
+                    <c:when test="${withSubcategories}">
+                        <a href="<spring:url value="/catalog?categoryId=${categoryId}" />">Только файлы этой категории</a>
+                    </c:when>
+                    <c:otherwise>
+                        <a href="<spring:url value="/catalog?categoryId=${categoryId}&withSubcategories=true" />">Включая подкатегории</a>
+                    </c:otherwise>
+                </c:choose>
+            </p>
+        </c:if>
         <c:forEach items="${categoryFiles}" var="file" varStatus="itemStat">
             <div class="file-box">
                 <div class="file">
@@ -53,4 +76,8 @@
     </div>
 </div>
 
+<c:if test="${pageCount > 1}">
+    <jsp:include page="../widgets/paginator.jsp" />
+</c:if>
+
 <jsp:include page="../layouts/layout_bottom.jsp" />
\ No newline at end of file
@@ -5,7 +5,7 @@
 
 <div class="well well-sm">
     <h3>Доступные переменные:</h3>
-    <div><strong>{filePath}</strong> - Путь до файла</div>
+    <div><strong>{filePath}</strong> - Путь до файла (передается одним аргументом, кавычки не нужны)</div>
     <h3>Ключи для доступа к свойствам:</h3>
     <div><strong><%= TriggerHelper.titleKey %></strong> - Название</div>
     <div><strong><%= TriggerHelper.versionKey %></strong> - Версия</div>
@@ -54,5 +54,17 @@
         </c:if>
     </div>
 
+    <div class="form-group <c:if test="${errors.get(\"timeout\") != null}">has-error</c:if>">
+        <label for="timeout">Время выполнения, секунд</label>
+        <input type="number" class="form-control" name="timeout" required min="1" max="3600" id="timeout" placeholder="Время выполнения" value="<c:choose><c:when test="${trigger.timeout > 0}">${trigger.timeout}</c:when><c:otherwise>30</c:otherwise></c:choose>">
+        <c:if test="${errors.get(\"timeout\") != null}">
+            <span class="help-block">
+                <c:forEach items="${errors.get(\"timeout\")}" var="item" varStatus="itemStat">
+                    <div>${item}</div>
+                </c:forEach>
+            </span>
+        </c:if>
+    </div>
+
     <button type="submit" class="btn btn-success">Сохранить</button>
 </form>
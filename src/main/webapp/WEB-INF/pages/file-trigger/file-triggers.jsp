@@ -32,6 +32,7 @@
         <th>Расширение</th>
         <th>Команда</th>
         <th>Регулярка</th>
+        <th>Время, с</th>
         <th></th>
     </tr>
     </thead>
@@ -41,6 +42,7 @@
             <td>${item.extension}</td>
             <td>${item.command}</td>
             <td><c:out value="${item.regexp}"/></td>
+            <td>${item.timeout}</td>
             <td>
                 <a href="<spring:url value="/file-trigger-edit?id=" />${item.id}" class="icon">
                     <i class="fa fa-edit"></i>
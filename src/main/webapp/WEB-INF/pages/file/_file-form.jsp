@@ -4,6 +4,7 @@
 <script>
     var fileTitleUrl = "<spring:url value="/file-title-autocomplete" />";
     var fileFillingUrl = "<spring:url value="/file-filling" />";
+    var ingestJobUrl = "<spring:url value="/ingest-job" />";
 </script>
 
 <div class="row">
@@ -16,6 +17,7 @@
                         <div class="text-center m-t-md">
                             <form id="my-awesome-dropzone" class="dropzone" action="<spring:url value="/file-add-handler" />">
                                 <div class="dropzone-previews"></div>
+                                <div id="ingestProgress" class="pull-left"></div>
                                 <button type="submit" class="btn btn-primary pull-right">Загрузить файлы</button>
                             </form>
                         </div>
@@ -59,9 +59,9 @@
     </tbody>
 </table>
 
-<c:if test="${pageCount > 1}">
+<c:if test="${not empty nextCursor or not empty prevCursor}">
     <c:set var="pageUrl" value="properties" scope="request" />
-    <jsp:include page="../widgets/paginator.jsp" />
+    <jsp:include page="../widgets/cursor-paginator.jsp" />
 </c:if>
 
 <jsp:include page="../layouts/layout_bottom.jsp" />
\ No newline at end of file
@@ -18,6 +18,12 @@
 
 <br>
 
+<c:if test="${ingestJobId != null}">
+    <div class="alert alert-info" id="ingestJob" data-url="<spring:url value="/ingest-job?id=${ingestJobId}" />">
+        Файлы заявки добавляются в каталог: <span class="ingest-progress">0</span>
+    </div>
+</c:if>
+
 <c:if test="${isModerator == true}">
     <p>
         <a class="btn btn-success" href="<spring:url value="/request-accept?requestId=${requestModel.id}" />">Принять</a>
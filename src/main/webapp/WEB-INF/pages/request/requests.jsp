@@ -49,9 +49,9 @@
     </tbody>
 </table>
 
-<c:if test="${pageCount > 1}">
-    <c:set var="pageUrl" value="requests" scope="request" />
-    <jsp:include page="../widgets/paginator.jsp" />
+<c:if test="${not empty nextCursor or not empty prevCursor}">
+    <c:set var="pageUrl" value="request-list" scope="request" />
+    <jsp:include page="../widgets/cursor-paginator.jsp" />
 </c:if>
 
 <jsp:include page="../layouts/layout_bottom.jsp" />
\ No newline at end of file
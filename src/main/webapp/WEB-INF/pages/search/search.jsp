@@ -9,6 +9,7 @@
 
 
 <h2>${pageTitle}</h2>
+<p>Найдено файлов: ${total}</p>
 
 <br>
 
@@ -21,4 +22,8 @@
     </div>
 </div>
 
+<c:if test="${pageCount > 1}">
+    <jsp:include page="../widgets/paginator.jsp" />
+</c:if>
+
 <jsp:include page="../layouts/layout_bottom.jsp" />
\ No newline at end of file
@@ -7,6 +7,12 @@
 </jsp:include>
 
 <script src="<spring:url value="/resources/js/pages/setting/init-settings.js" />"></script>
+<script src="<spring:url value="/resources/js/pages/setting/extraction-job.js" />"></script>
+<script>
+    var extractionJobUrl = "<spring:url value="/extraction-job" />";
+    var extractionJobStartUrl = "<spring:url value="/extraction-job-start" />";
+    var extractionJobStopUrl = "<spring:url value="/extraction-job-stop" />";
+</script>
 
 <h2>${pageTitle}</h2>
 
@@ -46,6 +52,15 @@
             </span>
         </c:if>
     </div>
+    <div class="form-group">
+        <label for="hashAlgorithm">Алгоритм хэширования новых файлов</label>
+        <select class="form-control" name="hashAlgorithm" id="hashAlgorithm">
+            <c:forEach items="${hashAlgorithms}" var="algorithm">
+                <option value="${algorithm.title}" <c:if test="${algorithm.title == hashAlgorithm}">selected</c:if>>${algorithm.title}</option>
+            </c:forEach>
+        </select>
+        <span class="help-block">Дубликаты ищутся по хэшу текущего алгоритма: после смены алгоритма уже загруженные файлы не будут найдены как дубликаты</span>
+    </div>
 
     <br>
 
@@ -69,6 +84,93 @@
         <label for="dbPool">Размер пула соединений</label>
         <input type="text" class="form-control" name="dbPool" required id="dbPool" value="${dbProperties.get("db.poolSize")}">
     </div>
+    <div class="form-group <c:if test="${errors.get(\"dbMaxTotal\") != null}">has-error</c:if>">
+        <label for="dbMaxTotal">Максимальное количество соединений</label>
+        <input type="number" class="form-control" name="dbMaxTotal" id="dbMaxTotal" placeholder="20" value="${dbProperties.get("db.maxTotal")}">
+        <c:if test="${errors.get(\"dbMaxTotal\") != null}">
+            <span class="help-block">
+                <div>${errors.get("dbMaxTotal")}</div>
+            </span>
+        </c:if>
+    </div>
+    <div class="form-group <c:if test="${errors.get(\"dbMaxIdle\") != null}">has-error</c:if>">
+        <label for="dbMaxIdle">Максимальное количество свободных соединений</label>
+        <input type="number" class="form-control" name="dbMaxIdle" id="dbMaxIdle" placeholder="10" value="${dbProperties.get("db.maxIdle")}">
+        <c:if test="${errors.get(\"dbMaxIdle\") != null}">
+            <span class="help-block">
+                <div>${errors.get("dbMaxIdle")}</div>
+            </span>
+        </c:if>
+    </div>
+    <div class="form-group <c:if test="${errors.get(\"dbMinIdle\") != null}">has-error</c:if>">
+        <label for="dbMinIdle">Минимальное количество свободных соединений</label>
+        <input type="number" class="form-control" name="dbMinIdle" id="dbMinIdle" placeholder="0" value="${dbProperties.get("db.minIdle")}">
+        <c:if test="${errors.get(\"dbMinIdle\") != null}">
+            <span class="help-block">
+                <div>${errors.get("dbMinIdle")}</div>
+            </span>
+        </c:if>
+    </div>
+    <div class="form-group <c:if test="${errors.get(\"dbMaxWait\") != null}">has-error</c:if>">
+        <label for="dbMaxWait">Время ожидания свободного соединения (мс)</label>
+        <input type="number" class="form-control" name="dbMaxWait" id="dbMaxWait" placeholder="10000" value="${dbProperties.get("db.maxWaitMillis")}">
+        <c:if test="${errors.get(\"dbMaxWait\") != null}">
+            <span class="help-block">
+                <div>${errors.get("dbMaxWait")}</div>
+            </span>
+        </c:if>
+    </div>
+    <div class="form-group <c:if test="${errors.get(\"dbValidationQuery\") != null}">has-error</c:if>">
+        <label for="dbValidationQuery">Запрос проверки соединения</label>
+        <input type="text" class="form-control" name="dbValidationQuery" id="dbValidationQuery" placeholder="SELECT 1" value="${dbProperties.get("db.validationQuery")}">
+        <c:if test="${errors.get(\"dbValidationQuery\") != null}">
+            <span class="help-block">
+                <div>${errors.get("dbValidationQuery")}</div>
+            </span>
+        </c:if>
+    </div>
+    <div class="form-group <c:if test="${errors.get(\"dbEvictionRuns\") != null}">has-error</c:if>">
+        <label for="dbEvictionRuns">Интервал проверки свободных соединений (мс)</label>
+        <input type="number" class="form-control" name="dbEvictionRuns" id="dbEvictionRuns" placeholder="60000" value="${dbProperties.get("db.timeBetweenEvictionRunsMillis")}">
+        <c:if test="${errors.get(\"dbEvictionRuns\") != null}">
+            <span class="help-block">
+                <div>${errors.get("dbEvictionRuns")}</div>
+            </span>
+        </c:if>
+    </div>
+    <div class="form-group <c:if test="${errors.get(\"dbMinEvictableIdle\") != null}">has-error</c:if>">
+        <label for="dbMinEvictableIdle">Время простоя, после которого соединение закрывается (мс)</label>
+        <input type="number" class="form-control" name="dbMinEvictableIdle" id="dbMinEvictableIdle" placeholder="300000" value="${dbProperties.get("db.minEvictableIdleTimeMillis")}">
+        <c:if test="${errors.get(\"dbMinEvictableIdle\") != null}">
+            <span class="help-block">
+                <div>${errors.get("dbMinEvictableIdle")}</div>
+            </span>
+        </c:if>
+    </div>
+    <div class="form-group <c:if test="${errors.get(\"dbRemoveAbandonedTimeout\") != null}">has-error</c:if>">
+        <label for="dbRemoveAbandonedTimeout">Время, после которого невозвращенное соединение считается утечкой (с, 0 - не проверять)</label>
+        <input type="number" class="form-control" name="dbRemoveAbandonedTimeout" id="dbRemoveAbandonedTimeout" placeholder="0" value="${dbProperties.get("db.removeAbandonedTimeout")}">
+        <c:if test="${errors.get(\"dbRemoveAbandonedTimeout\") != null}">
+            <span class="help-block">
+                <div>${errors.get("dbRemoveAbandonedTimeout")}</div>
+            </span>
+        </c:if>
+    </div>
+    <div class="form-group <c:if test="${errors.get(\"dbMaxStatements\") != null}">has-error</c:if>">
+        <label for="dbMaxStatements">Количество подготовленных запросов на соединение</label>
+        <input type="number" class="form-control" name="dbMaxStatements" id="dbMaxStatements" placeholder="100" value="${dbProperties.get("db.maxOpenPreparedStatements")}">
+        <span class="help-block">0 - не кэшировать подготовленные запросы</span>
+        <c:if test="${errors.get(\"dbMaxStatements\") != null}">
+            <span class="help-block">
+                <div>${errors.get("dbMaxStatements")}</div>
+            </span>
+        </c:if>
+    </div>
+    <p>
+        <a href="<spring:url value="/settings-db-pool" />" target="_blank">Текущее состояние пула соединений</a>
+        &nbsp;|&nbsp;
+        <a href="<spring:url value="/settings-query-plans" />" target="_blank">Планы частых запросов</a>
+    </p>
 
     <br>
 
@@ -187,4 +289,15 @@
     <button type="submit" class="btn btn-success">Сохранить</button>
 </form>
 
+<h2>Повторное извлечение свойств</h2>
+<p>Свойства всех загруженных версий извлекаются из файлов заново, например после изменения триггера. Задание выполняется в фоне и продолжается после перезапуска приложения.</p>
+<div id="extractionJob">
+    <p id="extractionJobStatus">Заданий еще не было</p>
+    <div class="progress">
+        <div id="extractionJobProgress" class="progress-bar" style="width: 0%;"></div>
+    </div>
+    <button type="button" id="extractionJobStart" class="btn btn-primary">Запустить</button>
+    <button type="button" id="extractionJobStop" class="btn btn-white" style="display: none;">Остановить</button>
+</div>
+
 <jsp:include page="../layouts/layout_bottom.jsp" />
\ No newline at end of file
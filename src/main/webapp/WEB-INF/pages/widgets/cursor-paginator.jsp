@@ -0,0 +1,15 @@
+<%@ taglib prefix="spring" uri="http://www.springframework.org/tags" %>
+<%@ taglib prefix="c" uri="http://java.sun.com/jsp/jstl/core" %>
+<%@ page contentType="text/html;charset=UTF-8" language="java" %>
+
+<div class="btn-group">
+    <c:if test="${not empty prevCursor}">
+        <a href="<spring:url value="/${pageUrl}?${pageParams}cursor=" />${prevCursor}" type="button" class="btn btn-white"><i class="fa fa-chevron-left"></i></a>
+    </c:if>
+    <c:if test="${not empty nextCursor}">
+        <a href="<spring:url value="/${pageUrl}?${pageParams}cursor=" />${nextCursor}" type="button" class="btn btn-white"><i class="fa fa-chevron-right"></i></a>
+    </c:if>
+</div>
+<c:if test="${not empty total}">
+    <span class="text-muted">Всего: около ${total}</span>
+</c:if>
@@ -12,6 +12,6 @@ $(function(){
     });
     treesHolder.on("select_node.jstree", function (e, data) {
         var categoryId = parseId(data.selected[0]);
-        location.search = "?categoryId=" + categoryId;
+        location.search = "?categoryId=" + categoryId + (withSubcategories ? "&withSubcategories=true" : "");
     });
 });
\ No newline at end of file
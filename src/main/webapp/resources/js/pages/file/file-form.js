@@ -128,29 +128,10 @@ $(function () {
             this.on("sendingmultiple", function() {
             });
             this.on("successmultiple", function(files, response) {
-                console.log(files);
-                console.log(response);
-                var errorCount = 0;
-                response.errors.forEach(function(item, i){
-                    var elem = $(files[item.number].previewElement);
-                    elem.removeClass('dz-success').addClass('dz-error');
-                    elem.find('.dz-error-message').text(item.msg);
-                    errorCount++;
+                // файлы обрабатываются в фоновом задании, ждем его завершения
+                pollIngestJob(response.jobId, function (job) {
+                    showUploadResult(files, job);
                 });
-                var needNextBtn = false;
-                response.success.forEach(function(item, i){
-                    filesInfo.push(item);
-                    if (!item.isFilled) {
-                        needNextBtn = true;
-                    }
-
-                });
-                if (errorCount < files.length) {
-                    // показываем кнопку далее если хоть 1 файл не заполнен
-                    if (needNextBtn) {
-                        steps.find('ul[role="menu"]').show();
-                    }
-                }
             });
             this.on("errormultiple", function(files, response) {
                 console.log("err mult");
@@ -159,6 +140,46 @@ $(function () {
     };
 });
 
+/**
+ * Опрос задания на добавление файлов до его завершения
+ */
+function pollIngestJob(jobId, onFinish) {
+    $.getJSON(ingestJobUrl, {id: jobId}, function (job) {
+        $('#ingestProgress').text('Обработано файлов: ' + job.processedCount + ' из ' + job.fileCount);
+        if (job.isFinished) {
+            onFinish(job);
+        } else {
+            setTimeout(function () {
+                pollIngestJob(jobId, onFinish);
+            }, 1000);
+        }
+    });
+}
+
+function showUploadResult(files, response) {
+    var errorCount = 0;
+    response.errors.forEach(function(item, i){
+        var elem = $(files[item.number].previewElement);
+        elem.removeClass('dz-success').addClass('dz-error');
+        elem.find('.dz-error-message').text(item.msg);
+        errorCount++;
+    });
+    var needNextBtn = false;
+    response.success.forEach(function(item, i){
+        filesInfo.push(item);
+        if (!item.isFilled) {
+            needNextBtn = true;
+        }
+
+    });
+    if (errorCount < files.length) {
+        // показываем кнопку далее если хоть 1 файл не заполнен
+        if (needNextBtn) {
+            steps.find('ul[role="menu"]').show();
+        }
+    }
+}
+
 var fileTemplate = '<div class="file-holder" data-versionid="{fileVersionId}">\
                         <h3>Файл: {fileName}</h3>\
                         <div class="form-group title-block">\
@@ -5,4 +5,27 @@ $(function(){
         }
         return false;
     });
+
+    // ход добавления файлов принятой заявки в каталог
+    var ingestJob = $('#ingestJob');
+    if (ingestJob.length > 0) {
+        var pollJob = function () {
+            $.getJSON(ingestJob.data('url'), function (data) {
+                ingestJob.find('.ingest-progress').text(data.processedCount + ' из ' + data.fileCount);
+                if (!data.isFinished) {
+                    setTimeout(pollJob, 1000);
+                    return;
+                }
+                // имена файлов и сообщения приходят от пользователей, поэтому выводятся только как текст
+                ingestJob.removeClass('alert-info')
+                    .addClass(data.errors.length > 0 ? 'alert-warning' : 'alert-success')
+                    .empty()
+                    .append($('<div>').text('Добавлено файлов: ' + data.success.length));
+                data.errors.forEach(function (item) {
+                    ingestJob.append($('<div>').text(data.files[item.number].fileName + ': ' + item.msg));
+                });
+            });
+        };
+        pollJob();
+    }
 });
\ No newline at end of file
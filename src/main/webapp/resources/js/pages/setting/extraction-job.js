@@ -0,0 +1,79 @@
+$(function () {
+    var statusTitles = {
+        queued: 'в очереди',
+        running: 'выполняется',
+        done: 'выполнено',
+        failed: 'ошибка',
+        stopped: 'остановлено'
+    };
+    var jobId = null;
+    var isStopped = false;
+    var timer = null;
+
+    function render(job) {
+        if (job.id == undefined) {
+            return;
+        }
+        jobId = job.id;
+        var percent = job.totalCount > 0 ? Math.min(100, Math.round(job.processedCount * 100 / job.totalCount)) : 100;
+        $('#extractionJobStatus').text('Задание #' + job.id + ': ' + statusTitles[job.status]
+            + '; обработано версий ' + job.processedCount + ' из ' + job.totalCount
+            + ', изменено ' + job.changedCount + ', ошибок ' + job.errorCount);
+        $('#extractionJobProgress').css('width', percent + '%');
+        isStopped = job.status == 'stopped';
+        $('#extractionJobStart').text(isStopped ? 'Продолжить' : 'Запустить').toggle(job.isFinished);
+        $('#extractionJobStop').toggle(!job.isFinished);
+        if (!job.isFinished && timer == null) {
+            timer = setInterval(load, 3000);
+        } else if (job.isFinished && timer != null) {
+            clearInterval(timer);
+            timer = null;
+        }
+    }
+
+    function load() {
+        $.ajax({
+            url: extractionJobUrl,
+            method: "get",
+            dataType: "json",
+            success: render
+        });
+    }
+
+    $('#extractionJobStart').on('click', function () {
+        var question = isStopped
+            ? "Продолжить остановленное задание с места остановки?"
+            : "Запустить повторное извлечение свойств всех версий?";
+        if (confirm(question)) {
+            $.ajax({
+                url: extractionJobStartUrl,
+                method: "post",
+                dataType: "json",
+                success: function () {
+                    toastr.success('Задание запущено');
+                    load();
+                },
+                error: function () {
+                    toastr.error('Ошибка при запуске задания');
+                }
+            });
+        }
+    });
+
+    $('#extractionJobStop').on('click', function () {
+        $.ajax({
+            url: extractionJobStopUrl,
+            method: "post",
+            dataType: "json",
+            data: {id: jobId},
+            success: function () {
+                load();
+            },
+            error: function () {
+                toastr.error('Ошибка при остановке задания');
+            }
+        });
+    });
+
+    load();
+});